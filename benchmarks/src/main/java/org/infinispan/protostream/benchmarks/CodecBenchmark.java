@@ -0,0 +1,125 @@
+package org.infinispan.protostream.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.infinispan.protostream.ProtobufTagMarshaller;
+import org.infinispan.protostream.ProtobufUtil;
+import org.infinispan.protostream.SerializationContext;
+import org.infinispan.protostream.WrappedMessage;
+import org.infinispan.protostream.benchmarks.model.BenchmarkContexts;
+import org.infinispan.protostream.benchmarks.model.Person;
+import org.infinispan.protostream.impl.ByteArrayOutputStreamEx;
+import org.infinispan.protostream.impl.TagWriterImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the encoders and decoders behind the different kinds of input and output: byte arrays, heap and direct
+ * {@link ByteBuffer}s and streams. The same wrapped message is written and read in all cases.
+ *
+ * @since 5.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+   public enum IoKind {
+      BYTE_ARRAY,
+      HEAP_BYTE_BUFFER,
+      DIRECT_BYTE_BUFFER,
+      STREAM
+   }
+
+   @Param({"BYTE_ARRAY", "HEAP_BYTE_BUFFER", "DIRECT_BYTE_BUFFER", "STREAM"})
+   public IoKind io;
+
+   private SerializationContext ctx;
+
+   private Person person;
+
+   private byte[] bytes;
+
+   private ByteBuffer inputBuffer;
+
+   private ByteBuffer outputBuffer;
+
+   private ByteArrayOutputStreamEx outputStream;
+
+   private ProtobufTagMarshaller<WrappedMessage> wrappedMessageMarshaller;
+
+   @Setup
+   public void setup() throws IOException {
+      ctx = BenchmarkContexts.newContext(BenchmarkContexts.MarshallerKind.GENERATED);
+      person = Person.sample();
+      bytes = ProtobufUtil.toWrappedByteArray(ctx, person);
+      wrappedMessageMarshaller = (ProtobufTagMarshaller<WrappedMessage>) ctx.<WrappedMessage>getMarshaller(WrappedMessage.class);
+      switch (io) {
+         case HEAP_BYTE_BUFFER:
+            inputBuffer = ByteBuffer.wrap(bytes);
+            outputBuffer = ByteBuffer.allocate(bytes.length * 2);
+            break;
+         case DIRECT_BYTE_BUFFER:
+            inputBuffer = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+            outputBuffer = ByteBuffer.allocateDirect(bytes.length * 2);
+            break;
+         case STREAM:
+            outputStream = new ByteArrayOutputStreamEx(bytes.length * 2);
+            break;
+         default:
+            break;
+      }
+   }
+
+   @Benchmark
+   public Object write() throws IOException {
+      switch (io) {
+         case BYTE_ARRAY:
+            return ProtobufUtil.toWrappedByteArray(ctx, person);
+         case HEAP_BYTE_BUFFER:
+         case DIRECT_BYTE_BUFFER: {
+            outputBuffer.clear();
+            TagWriterImpl out = TagWriterImpl.newInstance(ctx, outputBuffer);
+            wrappedMessageMarshaller.write(out, new WrappedMessage(person));
+            out.flush();
+            return outputBuffer;
+         }
+         case STREAM:
+            outputStream.reset();
+            ProtobufUtil.toWrappedStream(ctx, outputStream, person);
+            return outputStream;
+         default:
+            throw new IllegalStateException("Unknown I/O kind " + io);
+      }
+   }
+
+   @Benchmark
+   public Person read() throws IOException {
+      switch (io) {
+         case BYTE_ARRAY:
+            return ProtobufUtil.fromWrappedByteArray(ctx, bytes);
+         case HEAP_BYTE_BUFFER:
+         case DIRECT_BYTE_BUFFER:
+            return ProtobufUtil.fromWrappedByteBuffer(ctx, inputBuffer.duplicate());
+         case STREAM:
+            return ProtobufUtil.fromWrappedStream(ctx, new ByteArrayInputStream(bytes));
+         default:
+            throw new IllegalStateException("Unknown I/O kind " + io);
+      }
+   }
+}
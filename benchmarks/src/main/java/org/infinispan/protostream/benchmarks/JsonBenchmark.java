@@ -0,0 +1,79 @@
+package org.infinispan.protostream.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.infinispan.protostream.ProtobufUtil;
+import org.infinispan.protostream.SerializationContext;
+import org.infinispan.protostream.benchmarks.model.BenchmarkContexts;
+import org.infinispan.protostream.benchmarks.model.Person;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the conversion of wrapped messages to canonical JSON and back. The conversion to JSON is measured both into a
+ * {@code String} and streamed as UTF-8 into an {@code OutputStream}. The conversion back is measured from a
+ * {@code Reader} into a byte array and from UTF-8 bytes streamed into an {@code OutputStream}.
+ *
+ * @since 5.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+
+   @Param({"false", "true"})
+   public boolean prettyPrint;
+
+   private SerializationContext ctx;
+
+   private byte[] bytes;
+
+   private String json;
+
+   private byte[] jsonBytes;
+
+   @Setup
+   public void setup() throws IOException {
+      ctx = BenchmarkContexts.newContext(BenchmarkContexts.MarshallerKind.GENERATED);
+      bytes = ProtobufUtil.toWrappedByteArray(ctx, Person.sample());
+      json = ProtobufUtil.toCanonicalJSON(ctx, bytes, prettyPrint);
+      jsonBytes = json.getBytes(StandardCharsets.UTF_8);
+   }
+
+   @Benchmark
+   public String toJson() throws IOException {
+      return ProtobufUtil.toCanonicalJSON(ctx, bytes, prettyPrint);
+   }
+
+   @Benchmark
+   public void toJsonStream() throws IOException {
+      ProtobufUtil.toCanonicalJSON(ctx, bytes, OutputStream.nullOutputStream(), prettyPrint);
+   }
+
+   @Benchmark
+   public byte[] fromJson() throws IOException {
+      return ProtobufUtil.fromCanonicalJSON(ctx, new StringReader(json));
+   }
+
+   @Benchmark
+   public void fromJsonStream() throws IOException {
+      ProtobufUtil.fromCanonicalJSON(ctx, new ByteArrayInputStream(jsonBytes), OutputStream.nullOutputStream());
+   }
+}
@@ -0,0 +1,66 @@
+package org.infinispan.protostream.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.infinispan.protostream.ProtobufUtil;
+import org.infinispan.protostream.SerializationContext;
+import org.infinispan.protostream.benchmarks.model.BenchmarkContexts;
+import org.infinispan.protostream.benchmarks.model.Person;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the generated {@code ProtobufTagMarshaller}s with the legacy {@code MessageMarshaller}s on the same domain
+ * model and the same bytes, without the {@code WrappedMessage} envelope.
+ *
+ * @since 5.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MarshallerBenchmark {
+
+   @Param({"GENERATED", "LEGACY"})
+   public BenchmarkContexts.MarshallerKind marshaller;
+
+   private SerializationContext ctx;
+
+   private Person person;
+
+   private byte[] bytes;
+
+   @Setup
+   public void setup() throws IOException {
+      ctx = BenchmarkContexts.newContext(marshaller);
+      person = Person.sample();
+      bytes = ProtobufUtil.toByteArray(ctx, person);
+   }
+
+   @Benchmark
+   public byte[] write() throws IOException {
+      return ProtobufUtil.toByteArray(ctx, person);
+   }
+
+   @Benchmark
+   public Person read() throws IOException {
+      return ProtobufUtil.fromByteArray(ctx, bytes, Person.class);
+   }
+
+   @Benchmark
+   public int computeSize() throws IOException {
+      return ProtobufUtil.computeMessageSize(ctx, person);
+   }
+}
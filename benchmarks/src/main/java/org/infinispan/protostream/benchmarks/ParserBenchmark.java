@@ -0,0 +1,87 @@
+package org.infinispan.protostream.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.infinispan.protostream.FieldProjection;
+import org.infinispan.protostream.ProtobufParser;
+import org.infinispan.protostream.ProtobufUtil;
+import org.infinispan.protostream.SerializationContext;
+import org.infinispan.protostream.TagHandler;
+import org.infinispan.protostream.benchmarks.model.BenchmarkContexts;
+import org.infinispan.protostream.benchmarks.model.Person;
+import org.infinispan.protostream.descriptors.Descriptor;
+import org.infinispan.protostream.descriptors.FieldDescriptor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link ProtobufParser} reporting all fields of a message compared to reporting only the fields selected by a
+ * {@link FieldProjection}, either a top level key or a field of a nested message.
+ *
+ * @since 5.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+   private byte[] bytes;
+
+   private Descriptor descriptor;
+
+   private FieldProjection keyProjection;
+
+   private FieldProjection nestedProjection;
+
+   @Setup
+   public void setup() throws IOException {
+      SerializationContext ctx = BenchmarkContexts.newContext(BenchmarkContexts.MarshallerKind.GENERATED);
+      bytes = ProtobufUtil.toByteArray(ctx, Person.sample());
+      descriptor = ctx.getMessageDescriptor("benchmark.Person");
+      keyProjection = FieldProjection.of(descriptor, "id");
+      nestedProjection = FieldProjection.of(descriptor, "address.postCode");
+   }
+
+   @Benchmark
+   public int parseAll() throws IOException {
+      CountingHandler handler = new CountingHandler();
+      ProtobufParser.INSTANCE.parse(handler, descriptor, bytes);
+      return handler.count;
+   }
+
+   @Benchmark
+   public int parseKey() throws IOException {
+      CountingHandler handler = new CountingHandler();
+      ProtobufParser.INSTANCE.parse(handler, keyProjection, bytes);
+      return handler.count;
+   }
+
+   @Benchmark
+   public int parseNestedField() throws IOException {
+      CountingHandler handler = new CountingHandler();
+      ProtobufParser.INSTANCE.parse(handler, nestedProjection, bytes);
+      return handler.count;
+   }
+
+   private static final class CountingHandler implements TagHandler {
+
+      int count;
+
+      @Override
+      public void onTag(int fieldNumber, FieldDescriptor fieldDescriptor, Object tagValue) {
+         count++;
+      }
+   }
+}
@@ -0,0 +1,125 @@
+package org.infinispan.protostream.benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.infinispan.protostream.FileDescriptorSource;
+import org.infinispan.protostream.ProtobufUtil;
+import org.infinispan.protostream.SerializationContext;
+import org.infinispan.protostream.config.Configuration;
+import org.infinispan.protostream.descriptors.FileDescriptor;
+import org.infinispan.protostream.impl.parser.ProtostreamProtoParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures parsing {@code .proto} files alone and the complete {@code registerProtoFiles}, which also resolves the
+ * types, both for all files at once and for one file at a time, as done by separate initializers. Parsing is measured
+ * both in the calling thread and in parallel on the common pool. The schema is
+ * generated: a number of files, each defining messages and an enum that refer to the types of the previous file.
+ *
+ * @since 5.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchemaBenchmark {
+
+   @Param({"1", "20"})
+   public int files;
+
+   @Param({"10"})
+   public int messagesPerFile;
+
+   private Configuration configuration;
+
+   private Configuration parallelConfiguration;
+
+   private FileDescriptorSource source;
+
+   private FileDescriptorSource[] sourcePerFile;
+
+   @Setup
+   public void setup() {
+      configuration = Configuration.builder().build();
+      parallelConfiguration = Configuration.builder().parserExecutor(ForkJoinPool.commonPool()).build();
+      source = new FileDescriptorSource();
+      sourcePerFile = new FileDescriptorSource[files];
+      for (int f = 0; f < files; f++) {
+         String file = generateFile(f);
+         source.addProtoFile(fileName(f), file);
+         sourcePerFile[f] = FileDescriptorSource.fromString(fileName(f), file);
+      }
+   }
+
+   private static String fileName(int file) {
+      return "schema" + file + ".proto";
+   }
+
+   private String generateFile(int file) {
+      StringBuilder sb = new StringBuilder();
+      sb.append("syntax = \"proto2\";\n");
+      sb.append("package bench.f").append(file).append(";\n");
+      if (file > 0) {
+         sb.append("import \"").append(fileName(file - 1)).append("\";\n");
+      }
+      sb.append("/**\n * @TypeId(").append(1_000_000 + file * 1000).append(")\n */\n");
+      sb.append("enum Status {\n   ACTIVE = 0;\n   SUSPENDED = 1;\n   CLOSED = 2;\n}\n");
+      for (int m = 0; m < messagesPerFile; m++) {
+         sb.append("/**\n * @TypeId(").append(1_000_000 + file * 1000 + m + 1).append(")\n */\n");
+         sb.append("message M").append(m).append(" {\n");
+         sb.append("   optional int32 id = 1;\n");
+         sb.append("   optional string name = 2;\n");
+         sb.append("   repeated int64 values = 3 [packed = true];\n");
+         sb.append("   optional Status status = 4;\n");
+         sb.append("   map<string, string> attributes = 5;\n");
+         if (m > 0) {
+            sb.append("   optional M").append(m - 1).append(" previous = 6;\n");
+         }
+         if (file > 0) {
+            sb.append("   optional bench.f").append(file - 1).append(".M").append(m).append(" parent = 7;\n");
+         }
+         sb.append("}\n");
+      }
+      return sb.toString();
+   }
+
+   @Benchmark
+   public Map<String, FileDescriptor> parse() {
+      return new ProtostreamProtoParser(configuration).parse(source);
+   }
+
+   @Benchmark
+   public Map<String, FileDescriptor> parseParallel() {
+      return new ProtostreamProtoParser(parallelConfiguration).parse(source);
+   }
+
+   @Benchmark
+   public SerializationContext register() {
+      SerializationContext ctx = ProtobufUtil.newSerializationContext(configuration);
+      ctx.registerProtoFiles(source);
+      return ctx;
+   }
+
+   @Benchmark
+   public SerializationContext registerEachFile() {
+      SerializationContext ctx = ProtobufUtil.newSerializationContext(configuration);
+      for (FileDescriptorSource fileSource : sourcePerFile) {
+         ctx.registerProtoFiles(fileSource);
+      }
+      return ctx;
+   }
+}
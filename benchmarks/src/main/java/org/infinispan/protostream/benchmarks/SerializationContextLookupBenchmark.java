@@ -0,0 +1,72 @@
+package org.infinispan.protostream.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.infinispan.protostream.BaseMarshaller;
+import org.infinispan.protostream.ProtobufUtil;
+import org.infinispan.protostream.SerializationContext;
+import org.infinispan.protostream.benchmarks.model.BenchmarkSchemaImpl;
+import org.infinispan.protostream.benchmarks.model.Person;
+import org.infinispan.protostream.descriptors.Descriptor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the marshaller and descriptor lookups of a shared {@link SerializationContext} from many threads at once.
+ * All threads hit the same context, as they do in a server, so any contention on the lookup path shows up as a drop
+ * in per-thread throughput. Compare against a single threaded baseline with {@code -t 1} to check the scaling.
+ *
+ * @since 5.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(Threads.MAX)
+public class SerializationContextLookupBenchmark {
+
+   private SerializationContext ctx;
+
+   private Person person;
+
+   @Setup
+   public void setup() {
+      ctx = ProtobufUtil.newSerializationContext();
+      BenchmarkSchemaImpl schema = new BenchmarkSchemaImpl();
+      schema.registerSchema(ctx);
+      schema.registerMarshallers(ctx);
+      person = Person.sample();
+   }
+
+   @Benchmark
+   public BaseMarshaller<Person> marshallerByInstance() {
+      return ctx.getMarshaller(person);
+   }
+
+   @Benchmark
+   public BaseMarshaller<Person> marshallerByClass() {
+      return ctx.getMarshaller(Person.class);
+   }
+
+   @Benchmark
+   public Descriptor descriptorByName() {
+      return ctx.getMessageDescriptor("benchmark.Person");
+   }
+
+   @Benchmark
+   public byte[] toWrappedByteArray() throws IOException {
+      return ProtobufUtil.toWrappedByteArray(ctx, person);
+   }
+}
@@ -0,0 +1,130 @@
+package org.infinispan.protostream.benchmarks;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.infinispan.protostream.ProtobufUtil;
+import org.infinispan.protostream.SerializationContext;
+import org.infinispan.protostream.TagReader;
+import org.infinispan.protostream.TagWriter;
+import org.infinispan.protostream.impl.TagReaderImpl;
+import org.infinispan.protostream.impl.TagWriterImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decodes varints and fixed size values from a byte array. The varints follow several size distributions: the one
+ * of typical messages, where most values are tags, lengths and small numbers, and ones where all varints have the same
+ * size.
+ *
+ * @since 5.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VarintBenchmark {
+
+   private static final int COUNT = 1024;
+
+   public enum Distribution {
+      /**
+       * 70% of 1 byte, 20% of 2 bytes, 7% of 3 to 5 bytes and 3% of 10 bytes (negative int32 values).
+       */
+      TYPICAL,
+      ONE_BYTE,
+      FIVE_BYTES,
+      TEN_BYTES
+   }
+
+   @Param({"TYPICAL", "ONE_BYTE", "FIVE_BYTES", "TEN_BYTES"})
+   public Distribution distribution;
+
+   private SerializationContext ctx;
+
+   private byte[] varints;
+
+   private byte[] fixed;
+
+   @Setup
+   public void setup() throws IOException {
+      ctx = ProtobufUtil.newSerializationContext();
+      Random random = new Random(42);
+      TagWriterImpl sizer = TagWriterImpl.newInstance(ctx);
+      long[] values = new long[COUNT];
+      for (int i = 0; i < COUNT; i++) {
+         values[i] = nextValue(random);
+         sizer.writeVarint64(values[i]);
+      }
+      varints = new byte[sizer.getWrittenBytes()];
+      TagWriter writer = TagWriterImpl.newInstance(ctx, varints);
+      for (long value : values) {
+         writer.writeVarint64(value);
+      }
+      writer.flush();
+
+      // any bytes make valid fixed size values
+      fixed = new byte[COUNT * 12];
+      random.nextBytes(fixed);
+   }
+
+   private long nextValue(Random random) {
+      switch (distribution) {
+         case TYPICAL: {
+            int p = random.nextInt(100);
+            if (p < 70) {
+               return random.nextInt(1 << 7);
+            } else if (p < 90) {
+               return (1 << 7) + random.nextInt((1 << 14) - (1 << 7));
+            } else if (p < 97) {
+               return (1 << 14) + random.nextInt(Integer.MAX_VALUE - (1 << 14));
+            }
+            return -1 - random.nextInt(1000);
+         }
+         case ONE_BYTE:
+            return random.nextInt(1 << 7);
+         case FIVE_BYTES:
+            return (1L << 28) + random.nextInt(Integer.MAX_VALUE - (1 << 28));
+         case TEN_BYTES:
+            return -1 - random.nextInt(Integer.MAX_VALUE);
+         default:
+            throw new IllegalStateException("Unknown distribution " + distribution);
+      }
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(COUNT)
+   public long readVarint64() throws IOException {
+      TagReader reader = TagReaderImpl.newInstance(ctx, varints);
+      long sum = 0;
+      for (int i = 0; i < COUNT; i++) {
+         sum += reader.readUInt64();
+      }
+      return sum;
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(COUNT)
+   public long readFixed() throws IOException {
+      TagReader reader = TagReaderImpl.newInstance(ctx, fixed);
+      long sum = 0;
+      for (int i = 0; i < COUNT; i++) {
+         sum += reader.readFixed32();
+         sum += reader.readFixed64();
+      }
+      return sum;
+   }
+}
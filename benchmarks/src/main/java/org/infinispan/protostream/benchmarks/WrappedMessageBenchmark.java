@@ -0,0 +1,111 @@
+package org.infinispan.protostream.benchmarks;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import org.infinispan.protostream.ProtobufUtil;
+import org.infinispan.protostream.SerializationContext;
+import org.infinispan.protostream.benchmarks.model.BenchmarkContexts;
+import org.infinispan.protostream.benchmarks.model.Person;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@code WrappedMessage} round trips for each kind of value it handles: primitives, messages and containers.
+ *
+ * @since 5.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WrappedMessageBenchmark {
+
+   public enum ValueKind {
+      INT,
+      LONG,
+      STRING,
+      BYTES,
+      INSTANT,
+      MESSAGE,
+      MESSAGE_LIST,
+      INT_ARRAY
+   }
+
+   @Param({"INT", "LONG", "STRING", "BYTES", "INSTANT", "MESSAGE", "MESSAGE_LIST", "INT_ARRAY"})
+   public ValueKind kind;
+
+   /**
+    * The number of elements of the containers.
+    */
+   @Param({"100"})
+   public int size;
+
+   private SerializationContext ctx;
+
+   private Object value;
+
+   private byte[] bytes;
+
+   @Setup
+   public void setup() throws IOException {
+      ctx = BenchmarkContexts.newContext(BenchmarkContexts.MarshallerKind.GENERATED);
+      value = createValue();
+      bytes = ProtobufUtil.toWrappedByteArray(ctx, value);
+   }
+
+   private Object createValue() {
+      switch (kind) {
+         case INT:
+            return 123456;
+         case LONG:
+            return 1700000000000L;
+         case STRING:
+            return "The quick brown fox jumps over the lazy dog";
+         case BYTES: {
+            byte[] value = new byte[size];
+            for (int i = 0; i < size; i++) {
+               value[i] = (byte) i;
+            }
+            return value;
+         }
+         case INSTANT:
+            return Instant.ofEpochSecond(1700000000L, 123456789);
+         case MESSAGE:
+            return Person.sample();
+         case MESSAGE_LIST:
+            return BenchmarkContexts.samplePeople(size);
+         case INT_ARRAY: {
+            int[] value = new int[size];
+            for (int i = 0; i < size; i++) {
+               value[i] = i * 1000;
+            }
+            return value;
+         }
+         default:
+            throw new IllegalStateException("Unknown value kind " + kind);
+      }
+   }
+
+   @Benchmark
+   public byte[] write() throws IOException {
+      return ProtobufUtil.toWrappedByteArray(ctx, value);
+   }
+
+   @Benchmark
+   public Object read() throws IOException {
+      return ProtobufUtil.fromWrappedByteArray(ctx, bytes);
+   }
+}
@@ -0,0 +1,40 @@
+package org.infinispan.protostream.benchmarks.model;
+
+import org.infinispan.protostream.annotations.ProtoFactory;
+import org.infinispan.protostream.annotations.ProtoField;
+
+/**
+ * A small nested message of the benchmark domain model.
+ *
+ * @since 5.0
+ */
+public class Address {
+
+   @ProtoField(1)
+   final String street;
+
+   @ProtoField(2)
+   final String postCode;
+
+   @ProtoField(number = 3, defaultValue = "0")
+   final int number;
+
+   @ProtoFactory
+   public Address(String street, String postCode, int number) {
+      this.street = street;
+      this.postCode = postCode;
+      this.number = number;
+   }
+
+   public String getStreet() {
+      return street;
+   }
+
+   public String getPostCode() {
+      return postCode;
+   }
+
+   public int getNumber() {
+      return number;
+   }
+}
@@ -0,0 +1,66 @@
+package org.infinispan.protostream.benchmarks.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.infinispan.protostream.ProtobufUtil;
+import org.infinispan.protostream.SerializationContext;
+import org.infinispan.protostream.config.Configuration;
+import org.infinispan.protostream.types.java.CommonContainerTypesSchema;
+
+/**
+ * Creates the serialization contexts shared by the benchmarks, so that all of them measure the same setup.
+ *
+ * @since 5.0
+ */
+public final class BenchmarkContexts {
+
+   /**
+    * Selects the marshallers registered for the domain model.
+    */
+   public enum MarshallerKind {
+      /**
+       * The {@code ProtobufTagMarshaller}s generated by the annotation processor.
+       */
+      GENERATED,
+      /**
+       * The hand written {@code MessageMarshaller}s of {@link LegacyMarshallers}.
+       */
+      LEGACY
+   }
+
+   private BenchmarkContexts() {
+   }
+
+   /**
+    * Creates a context with the benchmark schema, the given kind of marshallers for the domain model and the common
+    * container types. Collection elements are wrapped, which is required for containers of messages.
+    */
+   public static SerializationContext newContext(MarshallerKind kind) {
+      SerializationContext ctx = ProtobufUtil.newSerializationContext(Configuration.builder().wrapCollectionElements(true).build());
+      BenchmarkSchemaImpl schema = new BenchmarkSchemaImpl();
+      schema.registerSchema(ctx);
+      if (kind == MarshallerKind.GENERATED) {
+         schema.registerMarshallers(ctx);
+      } else {
+         ctx.registerMarshaller(new LegacyMarshallers.AddressMarshaller());
+         ctx.registerMarshaller(new LegacyMarshallers.PersonMarshaller());
+      }
+      new CommonContainerTypesSchema().registerSchema(ctx);
+      new CommonContainerTypesSchema().registerMarshallers(ctx);
+      return ctx;
+   }
+
+   /**
+    * Creates a list of distinct people derived from {@link Person#sample()}.
+    */
+   public static ArrayList<Person> samplePeople(int size) {
+      Person sample = Person.sample();
+      ArrayList<Person> people = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+         people.add(new Person(sample.getId() + i, sample.getName() + ' ' + i, sample.getEmail(), sample.getAddress(),
+               List.copyOf(sample.getPhoneNumbers()), sample.getLastUpdated() + i));
+      }
+      return people;
+   }
+}
@@ -0,0 +1,15 @@
+package org.infinispan.protostream.benchmarks.model;
+
+import org.infinispan.protostream.GeneratedSchema;
+import org.infinispan.protostream.annotations.ProtoSchema;
+
+@ProtoSchema(
+      includeClasses = {
+            Address.class,
+            Person.class
+      },
+      schemaFileName = "benchmark.proto",
+      schemaFilePath = "proto/",
+      schemaPackageName = "benchmark")
+public interface BenchmarkSchema extends GeneratedSchema {
+}
@@ -0,0 +1,81 @@
+package org.infinispan.protostream.benchmarks.model;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.infinispan.protostream.MessageMarshaller;
+
+/**
+ * Hand written {@link MessageMarshaller}s for the benchmark domain model, producing the same bytes as the generated
+ * marshallers. They exercise the legacy field name based read/write path.
+ *
+ * @since 5.0
+ */
+public final class LegacyMarshallers {
+
+   private LegacyMarshallers() {
+   }
+
+   public static final class AddressMarshaller implements MessageMarshaller<Address> {
+
+      @Override
+      public String getTypeName() {
+         return "benchmark.Address";
+      }
+
+      @Override
+      public Class<? extends Address> getJavaClass() {
+         return Address.class;
+      }
+
+      @Override
+      public Address readFrom(ProtoStreamReader reader) throws IOException {
+         String street = reader.readString("street");
+         String postCode = reader.readString("postCode");
+         int number = reader.readInt("number");
+         return new Address(street, postCode, number);
+      }
+
+      @Override
+      public void writeTo(ProtoStreamWriter writer, Address address) throws IOException {
+         writer.writeString("street", address.getStreet());
+         writer.writeString("postCode", address.getPostCode());
+         writer.writeInt("number", address.getNumber());
+      }
+   }
+
+   public static final class PersonMarshaller implements MessageMarshaller<Person> {
+
+      @Override
+      public String getTypeName() {
+         return "benchmark.Person";
+      }
+
+      @Override
+      public Class<? extends Person> getJavaClass() {
+         return Person.class;
+      }
+
+      @Override
+      public Person readFrom(ProtoStreamReader reader) throws IOException {
+         int id = reader.readInt("id");
+         String name = reader.readString("name");
+         String email = reader.readString("email");
+         Address address = reader.readObject("address", Address.class);
+         List<String> phoneNumbers = reader.readCollection("phoneNumbers", new ArrayList<>(), String.class);
+         long lastUpdated = reader.readLong("lastUpdated");
+         return new Person(id, name, email, address, phoneNumbers, lastUpdated);
+      }
+
+      @Override
+      public void writeTo(ProtoStreamWriter writer, Person person) throws IOException {
+         writer.writeInt("id", person.getId());
+         writer.writeString("name", person.getName());
+         writer.writeString("email", person.getEmail());
+         writer.writeObject("address", person.getAddress(), Address.class);
+         writer.writeCollection("phoneNumbers", person.getPhoneNumbers(), String.class);
+         writer.writeLong("lastUpdated", person.getLastUpdated());
+      }
+   }
+}
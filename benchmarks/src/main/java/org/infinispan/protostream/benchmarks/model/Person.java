@@ -0,0 +1,77 @@
+package org.infinispan.protostream.benchmarks.model;
+
+import java.util.List;
+
+import org.infinispan.protostream.annotations.ProtoFactory;
+import org.infinispan.protostream.annotations.ProtoField;
+
+/**
+ * The root message of the benchmark domain model. It mixes scalars, strings, a nested message and a repeated field,
+ * which is representative of typical user entities. Do not change it lightly, results are only comparable across
+ * runs that use the same model.
+ *
+ * @since 5.0
+ */
+public class Person {
+
+   @ProtoField(number = 1, defaultValue = "0")
+   final int id;
+
+   @ProtoField(2)
+   final String name;
+
+   @ProtoField(3)
+   final String email;
+
+   @ProtoField(4)
+   final Address address;
+
+   @ProtoField(5)
+   final List<String> phoneNumbers;
+
+   @ProtoField(number = 6, defaultValue = "0")
+   final long lastUpdated;
+
+   @ProtoFactory
+   public Person(int id, String name, String email, Address address, List<String> phoneNumbers, long lastUpdated) {
+      this.id = id;
+      this.name = name;
+      this.email = email;
+      this.address = address;
+      this.phoneNumbers = phoneNumbers;
+      this.lastUpdated = lastUpdated;
+   }
+
+   public int getId() {
+      return id;
+   }
+
+   public String getName() {
+      return name;
+   }
+
+   public String getEmail() {
+      return email;
+   }
+
+   public Address getAddress() {
+      return address;
+   }
+
+   public List<String> getPhoneNumbers() {
+      return phoneNumbers;
+   }
+
+   public long getLastUpdated() {
+      return lastUpdated;
+   }
+
+   /**
+    * Creates the fixed sample instance used by the benchmarks.
+    */
+   public static Person sample() {
+      return new Person(1234, "Jane Doe", "jane.doe@example.com",
+            new Address("Main Street", "SW1A 1AA", 221),
+            List.of("+44 20 7946 0000", "+44 20 7946 0001"), 1700000000000L);
+   }
+}
@@ -0,0 +1,311 @@
+package org.infinispan.protostream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.infinispan.protostream.impl.BaseMarshallerDelegate;
+import org.infinispan.protostream.impl.Log;
+import org.infinispan.protostream.impl.SegmentedOutputBuffer;
+import org.infinispan.protostream.impl.SerializationContextImpl;
+import org.infinispan.protostream.impl.TagReaderImpl;
+
+/**
+ * Reads lazily the length delimited messages written by a {@link DelimitedMessageWriter}, or by the
+ * {@code writeDelimitedTo} method of Protobuf messages, from a stream, a channel or a buffer. A message is read only when
+ * {@link #hasNext()} or {@link #next()} is invoked, and the input ends cleanly only between two messages.
+ * <p>
+ * Streams and channels are read ahead into a single buffer, reused for all messages, which grows as the bytes of a large
+ * message arrive and shrinks back once the message is read. Messages are parsed in place in that buffer, or in the given
+ * {@link ByteBuffer}, by the same reader. When the configuration enables {@link
+ * org.infinispan.protostream.config.Configuration#zeroCopyBytes() zero copy bytes}, the messages read from streams and
+ * channels are copied to an array of their own instead, because the fields they hold may be views over it. A message
+ * longer than the {@link #withMaxMessageSize maximum message size} is rejected before it is read. Channels must be
+ * blocking. The reader does not close its input. It is not thread-safe.
+ *
+ * @param <T> the type of the messages, or {@code Object} when reading wrapped messages of any type
+ * @since 5.0
+ */
+public final class DelimitedMessageReader<T> implements Iterator<T> {
+
+   private static final int DEFAULT_BUFFER_SIZE = ProtobufUtil.DEFAULT_STREAM_BUFFER_SIZE;
+
+   public static final int DEFAULT_MAX_MESSAGE_SIZE = 64 << 20;
+
+   // a buffer grown larger than this is replaced by one of the default size once the large message is read
+   private static final int MAX_RETAINED_BUFFER_SIZE = 16 * DEFAULT_BUFFER_SIZE;
+
+   private final SerializationContextImpl ctx;
+
+   // the type of the messages, null if they are wrapped
+   private final Class<T> clazz;
+
+   // the input is one of in, channel or byteBuffer
+   private final InputStream in;
+
+   private final ReadableByteChannel channel;
+
+   private final ByteBuffer byteBuffer;
+
+   // the bytes read ahead from in or channel, between bufPos and bufEnd
+   private byte[] buf;
+
+   private int bufPos;
+
+   private int bufEnd;
+
+   private TagReaderImpl reader;
+
+   private int maxMessageSize = DEFAULT_MAX_MESSAGE_SIZE;
+
+   private T next;
+
+   private boolean hasNext;
+
+   private boolean atEnd;
+
+   private DelimitedMessageReader(ImmutableSerializationContext ctx, Class<T> clazz, InputStream in, ReadableByteChannel channel, ByteBuffer byteBuffer) {
+      if (clazz != null && clazz.isEnum()) {
+         throw new IllegalArgumentException("The Class argument must not be an Enum");
+      }
+      this.ctx = (SerializationContextImpl) ctx;
+      this.clazz = clazz;
+      this.in = in;
+      this.channel = channel;
+      this.byteBuffer = byteBuffer;
+      this.buf = byteBuffer == null ? new byte[DEFAULT_BUFFER_SIZE] : null;
+   }
+
+   public static <T> DelimitedMessageReader<T> of(ImmutableSerializationContext ctx, InputStream in, Class<T> clazz) {
+      return new DelimitedMessageReader<>(ctx, Objects.requireNonNull(clazz), Objects.requireNonNull(in), null, null);
+   }
+
+   public static <T> DelimitedMessageReader<T> of(ImmutableSerializationContext ctx, ReadableByteChannel channel, Class<T> clazz) {
+      return new DelimitedMessageReader<>(ctx, Objects.requireNonNull(clazz), null, Objects.requireNonNull(channel), null);
+   }
+
+   /**
+    * Reads the messages from the remaining bytes of the buffer, advancing its position past each message read.
+    */
+   public static <T> DelimitedMessageReader<T> of(ImmutableSerializationContext ctx, ByteBuffer byteBuffer, Class<T> clazz) {
+      return new DelimitedMessageReader<>(ctx, Objects.requireNonNull(clazz), null, null, Objects.requireNonNull(byteBuffer));
+   }
+
+   public static <T> DelimitedMessageReader<T> ofWrapped(ImmutableSerializationContext ctx, InputStream in) {
+      return new DelimitedMessageReader<>(ctx, null, Objects.requireNonNull(in), null, null);
+   }
+
+   public static <T> DelimitedMessageReader<T> ofWrapped(ImmutableSerializationContext ctx, ReadableByteChannel channel) {
+      return new DelimitedMessageReader<>(ctx, null, null, Objects.requireNonNull(channel), null);
+   }
+
+   public static <T> DelimitedMessageReader<T> ofWrapped(ImmutableSerializationContext ctx, ByteBuffer byteBuffer) {
+      return new DelimitedMessageReader<>(ctx, null, null, null, Objects.requireNonNull(byteBuffer));
+   }
+
+   /**
+    * Sets the maximum length of a message, {@link #DEFAULT_MAX_MESSAGE_SIZE} by default. A longer message causes a
+    * {@link MalformedProtobufException}, as the length of a message is read from the input and a corrupt one could
+    * otherwise cause the allocation of a huge buffer.
+    *
+    * @return this reader
+    */
+   public DelimitedMessageReader<T> withMaxMessageSize(int maxMessageSize) {
+      if (maxMessageSize <= 0) {
+         throw new IllegalArgumentException("maxMessageSize must be positive");
+      }
+      this.maxMessageSize = maxMessageSize;
+      return this;
+   }
+
+   /**
+    * @throws UncheckedIOException if the next message cannot be read
+    */
+   @Override
+   public boolean hasNext() {
+      if (!hasNext && !atEnd) {
+         try {
+            readNext();
+         } catch (IOException e) {
+            throw new UncheckedIOException(e);
+         }
+      }
+      return hasNext;
+   }
+
+   /**
+    * @throws UncheckedIOException if the next message cannot be read
+    */
+   @Override
+   public T next() {
+      if (!hasNext()) {
+         throw new NoSuchElementException();
+      }
+      T t = next;
+      next = null;
+      hasNext = false;
+      return t;
+   }
+
+   /**
+    * Returns a sequential stream of the remaining messages, read as the stream is consumed.
+    */
+   public Stream<T> stream() {
+      return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED), false);
+   }
+
+   private void readNext() throws IOException {
+      int length = readLength();
+      if (length < 0) {
+         atEnd = true;
+         return;
+      }
+      if (length > maxMessageSize) {
+         throw Log.LOG.messageTooLarge(length, maxMessageSize);
+      }
+      if (byteBuffer != null) {
+         if (length > byteBuffer.remaining()) {
+            throw Log.LOG.messageTruncated();
+         }
+         ByteBuffer message = byteBuffer.slice().limit(length);
+         byteBuffer.position(byteBuffer.position() + length);
+         next = read(resetReader(message));
+      } else {
+         if (!fill(length)) {
+            throw Log.LOG.messageTruncated();
+         }
+         int from = bufPos;
+         bufPos += length;
+         if (ctx.getConfiguration().zeroCopyBytes()) {
+            // the message may keep views over its bytes, which the buffer must not overwrite
+            next = read(resetReader(Arrays.copyOfRange(buf, from, bufPos), 0, length));
+         } else {
+            next = read(resetReader(buf, from, length));
+         }
+         shrinkBuffer();
+      }
+      hasNext = true;
+   }
+
+   private void shrinkBuffer() {
+      int buffered = bufEnd - bufPos;
+      if (buf.length > MAX_RETAINED_BUFFER_SIZE && buffered <= DEFAULT_BUFFER_SIZE) {
+         byte[] dest = new byte[DEFAULT_BUFFER_SIZE];
+         System.arraycopy(buf, bufPos, dest, 0, buffered);
+         buf = dest;
+         bufPos = 0;
+         bufEnd = buffered;
+      }
+   }
+
+   private T read(TagReaderImpl in) throws IOException {
+      try {
+         if (clazz == null) {
+            return WrappedMessage.read(ctx, in);
+         }
+         BaseMarshallerDelegate<T> marshallerDelegate = ctx.getMarshallerDelegate(clazz);
+         return marshallerDelegate.unmarshall(in, null);
+      } catch (IOException | RuntimeException | Error e) {
+         // a failed read may leave state behind, start over with a new reader
+         reader = null;
+         throw e;
+      }
+   }
+
+   private TagReaderImpl resetReader(byte[] bytes, int offset, int length) {
+      if (reader == null) {
+         reader = TagReaderImpl.newInstance(ctx, bytes, offset, length);
+      } else {
+         reader.reset(bytes, offset, length);
+      }
+      return reader;
+   }
+
+   private TagReaderImpl resetReader(ByteBuffer message) {
+      if (reader == null) {
+         reader = TagReaderImpl.newInstance(ctx, message);
+      } else {
+         reader.reset(message);
+      }
+      return reader;
+   }
+
+   /**
+    * Reads the varint length of the next message.
+    *
+    * @return the length, or -1 if the input ended before the next message
+    */
+   private int readLength() throws IOException {
+      int length = 0;
+      for (int shift = 0; shift < 32; shift += 7) {
+         int b = readByte();
+         if (b < 0) {
+            if (shift == 0) {
+               return -1;
+            }
+            throw Log.LOG.messageTruncated();
+         }
+         length |= (b & 0x7F) << shift;
+         if ((b & 0x80) == 0) {
+            if (length < 0) {
+               throw Log.LOG.negativeLength();
+            }
+            return length;
+         }
+      }
+      throw Log.LOG.malformedVarint();
+   }
+
+   private int readByte() throws IOException {
+      if (byteBuffer != null) {
+         return byteBuffer.hasRemaining() ? byteBuffer.get() & 0xFF : -1;
+      }
+      return fill(1) ? buf[bufPos++] & 0xFF : -1;
+   }
+
+   /**
+    * Reads ahead until at least {@code required} bytes are buffered, moving the buffered bytes to the start of the buffer
+    * if they would not fit. The buffer is only grown when full, by doubling its size, so its size stays proportional to
+    * the bytes actually read whatever the required count.
+    *
+    * @return {@code false} if the input ended first
+    */
+   private boolean fill(int required) throws IOException {
+      if (bufEnd - bufPos >= required) {
+         return true;
+      }
+      if (required > buf.length - bufPos) {
+         int buffered = bufEnd - bufPos;
+         System.arraycopy(buf, bufPos, buf, 0, buffered);
+         bufPos = 0;
+         bufEnd = buffered;
+      }
+      if (channel != null) {
+         SegmentedOutputBuffer.requireBlocking(channel);
+      }
+      while (bufEnd - bufPos < required) {
+         if (bufEnd == buf.length) {
+            // the buffered bytes start at 0 here, see above
+            buf = Arrays.copyOf(buf, (int) Math.min((long) buf.length << 1, required));
+         }
+         int n = in != null
+               ? in.read(buf, bufEnd, buf.length - bufEnd)
+               : channel.read(ByteBuffer.wrap(buf, bufEnd, buf.length - bufEnd));
+         if (n < 0) {
+            return false;
+         }
+         bufEnd += n;
+      }
+      return true;
+   }
+}
@@ -0,0 +1,120 @@
+package org.infinispan.protostream;
+
+import static org.infinispan.protostream.descriptors.WireType.MAX_VARINT_SIZE;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Objects;
+
+import org.infinispan.protostream.impl.BaseMarshallerDelegate;
+import org.infinispan.protostream.impl.SegmentedOutputBuffer;
+import org.infinispan.protostream.impl.SerializationContextImpl;
+import org.infinispan.protostream.impl.TagWriterImpl;
+
+/**
+ * Appends messages to a stream or channel, each one preceded by its length encoded as a varint, like the
+ * {@code writeDelimitedTo} method of Protobuf messages. The messages can be read back one by one with a
+ * {@link DelimitedMessageReader}.
+ * <p>
+ * Each message is marshalled into a {@link SegmentedOutputBuffer} by the same writer, both reused for all messages, and
+ * then written with its length. Channels must be blocking. The writer does not own the stream or channel and never
+ * closes it. It is not thread-safe.
+ *
+ * @since 5.0
+ */
+public final class DelimitedMessageWriter {
+
+   private final SerializationContextImpl ctx;
+
+   private final OutputStream out;
+
+   private final WritableByteChannel channel;
+
+   private final SegmentedOutputBuffer buffer = new SegmentedOutputBuffer();
+
+   private final TagWriterImpl writer;
+
+   private final byte[] length = new byte[MAX_VARINT_SIZE];
+
+   public DelimitedMessageWriter(ImmutableSerializationContext ctx, OutputStream out) {
+      this(ctx, Objects.requireNonNull(out, "out cannot be null"), null);
+   }
+
+   public DelimitedMessageWriter(ImmutableSerializationContext ctx, WritableByteChannel channel) {
+      this(ctx, null, Objects.requireNonNull(channel, "channel cannot be null"));
+   }
+
+   private DelimitedMessageWriter(ImmutableSerializationContext ctx, OutputStream out, WritableByteChannel channel) {
+      this.ctx = (SerializationContextImpl) ctx;
+      this.out = out;
+      this.channel = channel;
+      this.writer = TagWriterImpl.newInstance(ctx, buffer);
+   }
+
+   /**
+    * Appends a message that is not wrapped. It must be read back by a reader of the same type.
+    */
+   public void write(Object t) throws IOException {
+      Objects.requireNonNull(t, "Object to marshall cannot be null");
+      writer.reset();
+      BaseMarshallerDelegate<Object> marshallerDelegate = ctx.getMarshallerDelegate(t);
+      marshallerDelegate.marshall(writer, null, t);
+      writer.flush();
+      writeBuffer();
+   }
+
+   /**
+    * Appends a message wrapped in a {@link WrappedMessage}, so messages of different types can follow each other.
+    */
+   public void writeWrapped(Object t) throws IOException {
+      writer.reset();
+      WrappedMessage.write(ctx, writer, t);
+      writeBuffer();
+   }
+
+   private void writeBuffer() throws IOException {
+      long size = buffer.size();
+      if (size > Integer.MAX_VALUE) {
+         throw new IllegalStateException("Message too large to be length delimited : " + size + " bytes");
+      }
+      int lengthSize = encodeLength((int) size);
+      if (out != null) {
+         out.write(length, 0, lengthSize);
+         buffer.writeTo(out);
+         return;
+      }
+      SegmentedOutputBuffer.requireBlocking(channel);
+      ByteBuffer[] segments = buffer.toByteBuffers();
+      ByteBuffer[] buffers = new ByteBuffer[segments.length + 1];
+      buffers[0] = ByteBuffer.wrap(length, 0, lengthSize);
+      System.arraycopy(segments, 0, buffers, 1, segments.length);
+      if (channel instanceof GatheringByteChannel gatheringChannel) {
+         int first = 0;
+         while (first < buffers.length) {
+            gatheringChannel.write(buffers, first, buffers.length - first);
+            while (first < buffers.length && !buffers[first].hasRemaining()) {
+               first++;
+            }
+         }
+      } else {
+         for (ByteBuffer b : buffers) {
+            while (b.hasRemaining()) {
+               channel.write(b);
+            }
+         }
+      }
+   }
+
+   private int encodeLength(int value) {
+      int i = 0;
+      while ((value & 0xFFFFFF80) != 0) {
+         length[i++] = (byte) ((value & 0x7F) | 0x80);
+         value >>>= 7;
+      }
+      length[i++] = (byte) value;
+      return i;
+   }
+}
@@ -4,6 +4,10 @@ package org.infinispan.protostream;
  * Contract to be implemented by marshallers of {@link Enum} types. Translates a Java enum into an {@code int} value
  * that is suitable for serializing with Protobuf. The returned integer value must be one of the values defined in the
  * .proto schema file. The marshaller implementation must be stateless and thread-safe.
+ * <p>
+ * The mapping must also be fixed: when the marshaller is registered, the results of {@link #encode} for every constant
+ * and of {@link #decode} for the numbers defined in the schema may be computed once and cached, so that later calls
+ * for those values do not reach the marshaller.
  *
  * @author anistor@redhat.com
  * @since 1.0
@@ -0,0 +1,182 @@
+package org.infinispan.protostream;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.infinispan.protostream.descriptors.Descriptor;
+import org.infinispan.protostream.descriptors.FieldDescriptor;
+
+/**
+ * A selection of fields of a message type, compiled from dotted field paths like {@code "name"} or
+ * {@code "address.street"}, that tells {@link ProtobufParser} which fields to report. Fields that are not selected are
+ * skipped without being decoded, and nested messages that are not selected are skipped by length. A path that ends at
+ * a message field selects the whole nested message.
+ * <p>
+ * When none of the selected fields is repeated, the parser stops reading a message as soon as each selected field has
+ * been seen once. The Protobuf encoding allows a singular field to occur more than once, in which case the last value
+ * wins, but marshallers write each field once. Stopping early is what makes extracting a key from the head of a
+ * large message cheap, since the rest of it is not read at all.
+ * <p>
+ * A projection is immutable and can be shared and reused for any number of parse operations.
+ *
+ * @since 5.0
+ */
+public final class FieldProjection {
+
+   private final Descriptor descriptor;
+
+   /**
+    * The selected fields of this message, in the order they were first mentioned.
+    */
+   private final FieldDescriptor[] fields;
+
+   /**
+    * The selection within each of the {@link #fields}, or {@code null} where the field is selected as a whole.
+    */
+   private final FieldProjection[] nested;
+
+   /**
+    * Whether the parser can stop reading the message once each selected field was seen.
+    */
+   private final boolean stopEarly;
+
+   private FieldProjection(Descriptor descriptor, FieldDescriptor[] fields, FieldProjection[] nested) {
+      this.descriptor = descriptor;
+      this.fields = fields;
+      this.nested = nested;
+      boolean stopEarly = fields.length <= Long.SIZE;
+      for (int i = 0; stopEarly && i < fields.length; i++) {
+         stopEarly = !fields[i].isRepeated() && (nested[i] == null || nested[i].stopEarly);
+      }
+      this.stopEarly = stopEarly;
+   }
+
+   /**
+    * Compiles the given field paths against a message type.
+    *
+    * @throws IllegalArgumentException if a path is malformed, names a field that does not exist, or continues past a
+    *                                  field that is not a message
+    */
+   public static FieldProjection of(Descriptor descriptor, String... paths) {
+      return of(descriptor, Arrays.asList(paths));
+   }
+
+   public static FieldProjection of(Descriptor descriptor, Collection<String> paths) {
+      if (descriptor == null) {
+         throw new IllegalArgumentException("descriptor cannot be null");
+      }
+      if (paths.isEmpty()) {
+         throw new IllegalArgumentException("At least one field path is required");
+      }
+      List<String[]> splitPaths = new ArrayList<>(paths.size());
+      for (String path : paths) {
+         String[] names = path.split("\\.", -1);
+         for (String name : names) {
+            if (name.isEmpty()) {
+               throw new IllegalArgumentException("Invalid field path '" + path + "'");
+            }
+         }
+         splitPaths.add(names);
+      }
+      return compile(descriptor, splitPaths, 0);
+   }
+
+   private static FieldProjection compile(Descriptor descriptor, List<String[]> paths, int depth) {
+      List<FieldDescriptor> fields = new ArrayList<>();
+      List<List<String[]>> subPaths = new ArrayList<>();
+      for (String[] path : paths) {
+         FieldDescriptor fd = descriptor.findFieldByName(path[depth]);
+         if (fd == null) {
+            throw new IllegalArgumentException("Field '" + path[depth] + "' of path '" + String.join(".", path)
+                  + "' was not found in message type " + descriptor.getFullName());
+         }
+         int i = fields.indexOf(fd);
+         if (i < 0) {
+            i = fields.size();
+            fields.add(fd);
+            subPaths.add(new ArrayList<>());
+         }
+         List<String[]> fieldPaths = subPaths.get(i);
+         if (path.length == depth + 1) {
+            // the field is selected as a whole, which covers any other path through it
+            fieldPaths.clear();
+            fieldPaths.add(null);
+         } else {
+            if (fd.getMessageType() == null || fd.isMap()) {
+               throw new IllegalArgumentException("Field '" + fd.getName() + "' of path '" + String.join(".", path)
+                     + "' is not a message");
+            }
+            if (fieldPaths.isEmpty() || fieldPaths.get(0) != null) {
+               fieldPaths.add(path);
+            }
+         }
+      }
+      FieldProjection[] nested = new FieldProjection[fields.size()];
+      for (int i = 0; i < nested.length; i++) {
+         List<String[]> fieldPaths = subPaths.get(i);
+         if (fieldPaths.get(0) != null) {
+            nested[i] = compile(fields.get(i).getMessageType(), fieldPaths, depth + 1);
+         }
+      }
+      return new FieldProjection(descriptor, fields.toArray(new FieldDescriptor[0]), nested);
+   }
+
+   public Descriptor getDescriptor() {
+      return descriptor;
+   }
+
+   /**
+    * The number of fields selected directly in this message.
+    */
+   int size() {
+      return fields.length;
+   }
+
+   /**
+    * Returns the index of the selected field with the given number, or -1 if it is not selected. Projections select few
+    * fields, so a linear scan is the fastest lookup.
+    */
+   int indexOf(int fieldNumber) {
+      for (int i = 0; i < fields.length; i++) {
+         if (fields[i].getNumber() == fieldNumber) {
+            return i;
+         }
+      }
+      return -1;
+   }
+
+   FieldDescriptor getField(int index) {
+      return fields[index];
+   }
+
+   FieldProjection getNested(int index) {
+      return nested[index];
+   }
+
+   boolean isStopEarly() {
+      return stopEarly;
+   }
+
+   @Override
+   public String toString() {
+      StringBuilder sb = new StringBuilder("FieldProjection{").append(descriptor.getFullName()).append(':');
+      appendFields(sb);
+      return sb.append('}').toString();
+   }
+
+   private void appendFields(StringBuilder sb) {
+      sb.append('[');
+      for (int i = 0; i < fields.length; i++) {
+         if (i > 0) {
+            sb.append(", ");
+         }
+         sb.append(fields[i].getName());
+         if (nested[i] != null) {
+            nested[i].appendFields(sb);
+         }
+      }
+      sb.append(']');
+   }
+}
@@ -6,6 +6,7 @@ import java.io.InputStream;
 import java.io.Reader;
 import java.io.UncheckedIOException;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -27,6 +28,11 @@ public final class FileDescriptorSource {
     */
    private final Map<String, String> files = new LinkedHashMap<>();
 
+   /**
+    * The precompiled forms of some of the files, keyed by file name.
+    */
+   private final Map<String, byte[]> precompiledFiles = new HashMap<>();
+
    /**
     * Optional progress callback. If non-null it will be invoked based on the status of each parsed file.
     */
@@ -109,6 +115,21 @@ public final class FileDescriptorSource {
       // discard the leading slash
       String path = name.startsWith("/") ? name.substring(1) : name;
       files.put(path, fileContents);
+      precompiledFiles.remove(path);
+      return this;
+   }
+
+   /**
+    * Add a proto file, given a name, the file contents as a {@link String} and its precompiled form as generated by the
+    * annotation processor. The precompiled form is used instead of parsing the contents if it was generated by a
+    * compatible version of ProtoStream from the same contents, otherwise the contents are parsed as usual.
+    */
+   public FileDescriptorSource addProtoFile(String name, String fileContents, byte[] precompiled) {
+      if (precompiled == null) {
+         throw new IllegalArgumentException("precompiled argument cannot be null");
+      }
+      addProtoFile(name, fileContents);
+      precompiledFiles.put(name.startsWith("/") ? name.substring(1) : name, precompiled);
       return this;
    }
 
@@ -177,6 +198,10 @@ public final class FileDescriptorSource {
       return new FileDescriptorSource().addProtoFile(name, fileContents);
    }
 
+   public static FileDescriptorSource fromString(String name, String fileContents, byte[] precompiled) {
+      return new FileDescriptorSource().addProtoFile(name, fileContents, precompiled);
+   }
+
    /**
     * @deprecated This method was added for internal use and is deprecated since 4.3.4 to be removed in 5.
     * Replaced by {@link #getFiles()}
@@ -194,6 +219,13 @@ public final class FileDescriptorSource {
       return Collections.unmodifiableMap(files);
    }
 
+   /**
+    * The precompiled forms of the files that have one, keyed by file name.
+    */
+   public Map<String, byte[]> getPrecompiledFiles() {
+      return Collections.unmodifiableMap(precompiledFiles);
+   }
+
    public ProgressCallback getProgressCallback() {
       return progressCallback;
    }
@@ -142,4 +142,23 @@ public interface ImmutableSerializationContext {
     * @throws IllegalArgumentException if the given type name is not known to this context
     */
    GenericDescriptor getDescriptorByName(String fullTypeName);
+
+   /**
+    * Creates a new codec that reuses its buffers across marshalling operations. The codec is not thread-safe.
+    *
+    * @throws IllegalArgumentException if this context was not created by {@link ProtobufUtil#newSerializationContext}
+    */
+   default ProtobufCodec newCodec() {
+      return new ProtobufCodec(this);
+   }
+
+   /**
+    * Borrows a codec from a pool owned by this context, creating a new one if the pool is empty. The codec must be
+    * closed after use, to return it to the pool. Contexts without a pool return a new codec every time.
+    *
+    * @throws IllegalArgumentException if this context was not created by {@link ProtobufUtil#newSerializationContext}
+    */
+   default ProtobufCodec acquireCodec() {
+      return newCodec();
+   }
 }
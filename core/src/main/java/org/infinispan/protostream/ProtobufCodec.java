@@ -0,0 +1,280 @@
+package org.infinispan.protostream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.infinispan.protostream.impl.BaseMarshallerDelegate;
+import org.infinispan.protostream.impl.SegmentedOutputBuffer;
+import org.infinispan.protostream.impl.SerializationContextImpl;
+import org.infinispan.protostream.impl.TagReaderImpl;
+import org.infinispan.protostream.impl.TagWriterImpl;
+
+/**
+ * Marshalls and unmarshalls objects like {@link ProtobufUtil} does, but reuses the same writer, reader and output
+ * buffer for all operations. Once the buffer has grown to fit the typical message, the only allocation left when
+ * marshalling is the resulting byte array.
+ * <p>
+ * A codec is not thread-safe. Create one per thread with {@link ImmutableSerializationContext#newCodec()}, or borrow one
+ * from the pool of the context with {@link ImmutableSerializationContext#acquireCodec()} and {@link #close()} it when
+ * done, which returns it to the pool. The pool is not bound to threads, so it also works with virtual threads.
+ *
+ * @since 5.0
+ */
+public final class ProtobufCodec implements AutoCloseable {
+
+   private final SerializationContextImpl ctx;
+
+   private final Pool pool;
+
+   private TagWriterImpl writer;
+
+   // writes into segmentedBuffer, for messages that are not returned as an array
+   private TagWriterImpl segmentedWriter;
+
+   private SegmentedOutputBuffer segmentedBuffer;
+
+   private TagReaderImpl reader;
+
+   /**
+    * @throws IllegalArgumentException if the context was not created by {@link ProtobufUtil#newSerializationContext}
+    */
+   public ProtobufCodec(ImmutableSerializationContext ctx) {
+      this(ctx, null);
+   }
+
+   private ProtobufCodec(ImmutableSerializationContext ctx, Pool pool) {
+      this.ctx = checkContext(ctx);
+      this.pool = pool;
+   }
+
+   private static SerializationContextImpl checkContext(ImmutableSerializationContext ctx) {
+      if (ctx instanceof SerializationContextImpl serCtx) {
+         return serCtx;
+      }
+      throw new IllegalArgumentException("A ProtobufCodec requires a context created by ProtobufUtil.newSerializationContext(), found "
+            + (ctx == null ? null : ctx.getClass().getName()));
+   }
+
+   public ImmutableSerializationContext getSerializationContext() {
+      return ctx;
+   }
+
+   private TagWriterImpl resetWriter() {
+      if (writer == null) {
+         writer = TagWriterImpl.newReusableInstance(ctx, ProtobufUtil.DEFAULT_ARRAY_BUFFER_SIZE);
+      } else {
+         writer.reset();
+      }
+      return writer;
+   }
+
+   public byte[] toByteArray(Object t) throws IOException {
+      Objects.requireNonNull(t, "Object to marshall cannot be null");
+      TagWriterImpl out = resetWriter();
+      try {
+         BaseMarshallerDelegate<Object> marshallerDelegate = ctx.getMarshallerDelegate(t);
+         marshallerDelegate.marshall(out, null, t);
+         out.flush();
+         return out.toByteArray();
+      } catch (IOException | RuntimeException | Error e) {
+         // a failed operation may leave state behind, start over with a new writer
+         writer = null;
+         throw e;
+      }
+   }
+
+   public byte[] toWrappedByteArray(Object t) throws IOException {
+      Objects.requireNonNull(t, "Object to marshall cannot be null");
+      TagWriterImpl out = resetWriter();
+      try {
+         WrappedMessage.write(ctx, out, t);
+         return out.toByteArray();
+      } catch (IOException | RuntimeException | Error e) {
+         writer = null;
+         throw e;
+      }
+   }
+
+   private TagWriterImpl resetSegmentedWriter() {
+      if (segmentedWriter == null) {
+         segmentedBuffer = new SegmentedOutputBuffer();
+         segmentedWriter = TagWriterImpl.newInstance(ctx, segmentedBuffer);
+      } else {
+         segmentedWriter.reset();
+      }
+      return segmentedWriter;
+   }
+
+   private SegmentedOutputBuffer writeSegmented(Object t, boolean wrapped) throws IOException {
+      Objects.requireNonNull(t, "Object to marshall cannot be null");
+      TagWriterImpl out = resetSegmentedWriter();
+      try {
+         if (wrapped) {
+            WrappedMessage.write(ctx, out, t);
+         } else {
+            BaseMarshallerDelegate<Object> marshallerDelegate = ctx.getMarshallerDelegate(t);
+            marshallerDelegate.marshall(out, null, t);
+            out.flush();
+         }
+         return segmentedBuffer;
+      } catch (IOException | RuntimeException | Error e) {
+         segmentedWriter = null;
+         throw e;
+      }
+   }
+
+   /**
+    * Marshalls into the segments of a buffer that is reused by this codec, so that large messages are not copied while
+    * the buffer grows, and returns a buffer wrapping an exact copy of the message.
+    */
+   public ByteBuffer toByteBuffer(Object t) throws IOException {
+      return ByteBuffer.wrap(writeSegmented(t, false).toByteArray());
+   }
+
+   public ByteBuffer toWrappedByteBuffer(Object t) throws IOException {
+      return ByteBuffer.wrap(writeSegmented(t, true).toByteArray());
+   }
+
+   /**
+    * Marshalls a wrapped message into the segments of a buffer that is reused by this codec and writes them to the
+    * channel with gathering writes, without copying the message.
+    *
+    * @return the number of bytes written
+    * @throws IllegalArgumentException if the channel is in non-blocking mode
+    */
+   public long toWrappedChannel(Object t, GatheringByteChannel channel) throws IOException {
+      return writeSegmented(t, true).writeTo(channel);
+   }
+
+   private TagReaderImpl resetReader(byte[] bytes, int offset, int length) {
+      if (reader == null) {
+         reader = TagReaderImpl.newInstance(ctx, bytes, offset, length);
+      } else {
+         reader.reset(bytes, offset, length);
+      }
+      return reader;
+   }
+
+   private TagReaderImpl resetReader(ByteBuffer byteBuffer) {
+      if (reader == null) {
+         reader = TagReaderImpl.newInstance(ctx, byteBuffer);
+      } else {
+         reader.reset(byteBuffer);
+      }
+      return reader;
+   }
+
+   public <A> A fromByteArray(byte[] bytes, Class<A> clazz) throws IOException {
+      return fromByteArray(bytes, 0, bytes.length, clazz);
+   }
+
+   public <A> A fromByteArray(byte[] bytes, int offset, int length, Class<A> clazz) throws IOException {
+      return readFrom(resetReader(bytes, offset, length), clazz);
+   }
+
+   public <A> A fromByteBuffer(ByteBuffer byteBuffer, Class<A> clazz) throws IOException {
+      return readFrom(resetReader(byteBuffer), clazz);
+   }
+
+   private <A> A readFrom(TagReaderImpl in, Class<A> clazz) throws IOException {
+      if (clazz.isEnum()) {
+         throw new IllegalArgumentException("The Class argument must not be an Enum");
+      }
+      try {
+         BaseMarshallerDelegate<A> marshallerDelegate = ctx.getMarshallerDelegate(clazz);
+         return marshallerDelegate.unmarshall(in, null);
+      } catch (IOException | RuntimeException | Error e) {
+         reader = null;
+         throw e;
+      }
+   }
+
+   public <A> A fromWrappedByteArray(byte[] bytes) throws IOException {
+      return fromWrappedByteArray(bytes, 0, bytes.length);
+   }
+
+   public <A> A fromWrappedByteArray(byte[] bytes, int offset, int length) throws IOException {
+      return readWrapped(resetReader(bytes, offset, length));
+   }
+
+   public <A> A fromWrappedByteBuffer(ByteBuffer byteBuffer) throws IOException {
+      return readWrapped(resetReader(byteBuffer));
+   }
+
+   private <A> A readWrapped(TagReaderImpl in) throws IOException {
+      try {
+         return WrappedMessage.read(ctx, in);
+      } catch (IOException | RuntimeException | Error e) {
+         reader = null;
+         throw e;
+      }
+   }
+
+   /**
+    * Returns this codec to the pool it was acquired from. Does nothing for codecs that were not obtained from a pool.
+    * The codec must not be used after closing it.
+    */
+   @Override
+   public void close() {
+      if (pool != null) {
+         pool.release(this);
+      }
+   }
+
+   /**
+    * A bounded pool of codecs, kept in an array of slots so that acquiring and releasing do not allocate. When the pool
+    * is empty a new codec is created, and when it is full the released codec is left to the garbage collector. Each
+    * search starts at a random slot, to spread concurrent threads over the slots.
+    */
+   public static final class Pool {
+
+      private final ImmutableSerializationContext ctx;
+
+      private final AtomicReferenceArray<ProtobufCodec> slots;
+
+      /**
+       * @throws IllegalArgumentException if the context was not created by {@link ProtobufUtil#newSerializationContext}
+       */
+      public Pool(ImmutableSerializationContext ctx, int size) {
+         if (size <= 0) {
+            throw new IllegalArgumentException("size must be positive");
+         }
+         this.ctx = checkContext(ctx);
+         this.slots = new AtomicReferenceArray<>(size);
+      }
+
+      /**
+       * Takes a codec from the pool, or creates a new one if the pool is empty. The codec must be
+       * {@link ProtobufCodec#close() closed} to give it back.
+       */
+      public ProtobufCodec acquire() {
+         int size = slots.length();
+         int start = ThreadLocalRandom.current().nextInt(size);
+         for (int i = 0; i < size; i++) {
+            int slot = (start + i) % size;
+            if (slots.get(slot) != null) {
+               ProtobufCodec codec = slots.getAndSet(slot, null);
+               if (codec != null) {
+                  return codec;
+               }
+            }
+         }
+         return new ProtobufCodec(ctx, this);
+      }
+
+      private void release(ProtobufCodec codec) {
+         int size = slots.length();
+         int start = ThreadLocalRandom.current().nextInt(size);
+         for (int i = 0; i < size; i++) {
+            int slot = (start + i) % size;
+            if (slots.get(slot) == null && slots.compareAndSet(slot, null, codec)) {
+               return;
+            }
+         }
+      }
+   }
+}
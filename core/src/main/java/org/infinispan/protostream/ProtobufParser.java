@@ -53,6 +53,32 @@ public final class ProtobufParser {
       parseInternal(tagHandler, messageDescriptor, in);
    }
 
+   /**
+    * Parses only the fields selected by a projection. Everything else is skipped without being decoded, and once all
+    * selected fields were seen the rest of the input is not read at all, if the projection allows that (see
+    * {@link FieldProjection}). An input stream or reader is then left positioned within the message.
+    */
+   public void parse(TagHandler tagHandler, FieldProjection projection, InputStream input) throws IOException {
+      parse(tagHandler, projection, TagReaderImpl.newInstance(null, input));
+   }
+
+   public void parse(TagHandler tagHandler, FieldProjection projection, byte[] buf, int off, int len) throws IOException {
+      parse(tagHandler, projection, TagReaderImpl.newInstance(null, buf, off, len));
+   }
+
+   public void parse(TagHandler tagHandler, FieldProjection projection, byte[] buf) throws IOException {
+      parse(tagHandler, projection, TagReaderImpl.newInstance(null, buf));
+   }
+
+   public void parse(TagHandler tagHandler, FieldProjection projection, TagReader in) throws IOException {
+      if (projection == null) {
+         throw new IllegalArgumentException("projection cannot be null");
+      }
+      tagHandler.onStart(projection.getDescriptor());
+      parseProjection(tagHandler, projection, in);
+      tagHandler.onEnd();
+   }
+
    private void parseInternal(TagHandler tagHandler, Descriptor messageDescriptor, TagReader in) throws IOException {
       tagHandler.onStart(messageDescriptor);
       parseMessage(tagHandler, messageDescriptor, in);
@@ -62,86 +88,168 @@ public final class ProtobufParser {
    private void parseMessage(TagHandler tagHandler, Descriptor messageDescriptor, TagReader in) throws IOException {
       int tag;
       while ((tag = in.readTag()) != 0) {
-         final int fieldNumber = WireType.getTagFieldNumber(tag);
-         final WireType wireType = WireType.fromTag(tag);
-         final FieldDescriptor fd = messageDescriptor != null ? messageDescriptor.findFieldByNumber(fieldNumber) : null;
-         switch (wireType) {
-            case LENGTH_DELIMITED: {
-               if (fd == null) {
-                  byte[] value = in.readByteArray();
-                  tagHandler.onTag(fieldNumber, null, value);
-               } else if (fd instanceof MapDescriptor md) {
-                  int length = in.readUInt32();
-                  int oldLimit = in.pushLimit(length);
-                  tagHandler.onStartNested(fieldNumber, fd);
-                  parseMessage(tagHandler, md.asDescriptor(), in);
-                  tagHandler.onEndNested(fieldNumber, fd);
-                  in.checkLastTagWas(0);
-                  in.popLimit(oldLimit);
-               } else if (fd.getType() == Type.STRING) {
-                  String value = in.readString();
-                  tagHandler.onTag(fieldNumber, fd, value);
-               } else if (fd.getType() == Type.BYTES) {
-                  byte[] value = in.readByteArray();
-                  tagHandler.onTag(fieldNumber, fd, value);
-               } else if (fd.getType() == Type.MESSAGE) {
-                  int length = in.readUInt32();
-                  int oldLimit = in.pushLimit(length);
-                  tagHandler.onStartNested(fieldNumber, fd);
-                  parseMessage(tagHandler, fd.getMessageType(), in);
-                  tagHandler.onEndNested(fieldNumber, fd);
-                  in.checkLastTagWas(0);
-                  in.popLimit(oldLimit);
-               }
-               break;
+         int fieldNumber = WireType.getTagFieldNumber(tag);
+         FieldDescriptor fd = messageDescriptor != null ? messageDescriptor.findFieldByNumber(fieldNumber) : null;
+         parseField(tagHandler, tag, fd, in);
+      }
+   }
+
+   /**
+    * Returns {@code true} if the parsing stopped as soon as all selected fields were seen, leaving the rest of the
+    * message unread.
+    */
+   private boolean parseProjection(TagHandler tagHandler, FieldProjection projection, TagReader in) throws IOException {
+      boolean stopEarly = projection.isStopEarly();
+      long pending = stopEarly ? -1L >>> (Long.SIZE - projection.size()) : 0;
+      int tag;
+      while ((tag = in.readTag()) != 0) {
+         int fieldNumber = WireType.getTagFieldNumber(tag);
+         int i = projection.indexOf(fieldNumber);
+         if (i < 0) {
+            in.skipField(tag);
+            continue;
+         }
+         FieldDescriptor fd = projection.getField(i);
+         FieldProjection nested = projection.getNested(i);
+         boolean complete = true;
+         if (nested == null) {
+            parseField(tagHandler, tag, fd, in);
+         } else {
+            if (WireType.getTagWireType(tag) != WireType.WIRETYPE_LENGTH_DELIMITED) {
+               throw new IOException("Unexpected wire type " + WireType.fromTag(tag) + " for field " + fieldNumber + " of type " + fd.getType());
+            }
+            int length = in.readUInt32();
+            int oldLimit = in.pushLimit(length);
+            tagHandler.onStartNested(fieldNumber, fd);
+            complete = parseProjection(tagHandler, nested, in);
+            if (complete) {
+               skipRemainingFields(in);
             }
+            tagHandler.onEndNested(fieldNumber, fd);
+            in.checkLastTagWas(0);
+            in.popLimit(oldLimit);
+         }
+         if (stopEarly && complete) {
+            pending &= ~(1L << i);
+            if (pending == 0) {
+               return true;
+            }
+         }
+      }
+      return false;
+   }
 
-            case START_GROUP: {
+   private static void skipRemainingFields(TagReader in) throws IOException {
+      if (in instanceof TagReaderImpl reader) {
+         // the length of the nested message is known, jump straight to its end
+         reader.skipToLimit();
+         return;
+      }
+      int tag;
+      while ((tag = in.readTag()) != 0) {
+         in.skipField(tag);
+      }
+   }
+
+   private void parseField(TagHandler tagHandler, int tag, FieldDescriptor fd, TagReader in) throws IOException {
+      int fieldNumber = WireType.getTagFieldNumber(tag);
+      WireType wireType = WireType.fromTag(tag);
+      switch (wireType) {
+         case LENGTH_DELIMITED: {
+            if (fd == null) {
+               tagHandler.onBytes(fieldNumber, null, in.readByteBuffer());
+            } else if (fd instanceof MapDescriptor md) {
+               int length = in.readUInt32();
+               int oldLimit = in.pushLimit(length);
                tagHandler.onStartNested(fieldNumber, fd);
-               parseMessage(tagHandler, fd == null ? null : fd.getMessageType(), in);
-               in.checkLastTagWas(WireType.makeTag(fieldNumber, WireType.WIRETYPE_END_GROUP));
+               parseMessage(tagHandler, md.asDescriptor(), in);
                tagHandler.onEndNested(fieldNumber, fd);
-               break;
+               in.checkLastTagWas(0);
+               in.popLimit(oldLimit);
+            } else if (fd.getType() == Type.STRING) {
+               tagHandler.onString(fieldNumber, fd, in.readString());
+            } else if (fd.getType() == Type.BYTES) {
+               tagHandler.onBytes(fieldNumber, fd, in.readByteBuffer());
+            } else if (fd.getType() == Type.MESSAGE) {
+               int length = in.readUInt32();
+               int oldLimit = in.pushLimit(length);
+               tagHandler.onStartNested(fieldNumber, fd);
+               parseMessage(tagHandler, fd.getMessageType(), in);
+               tagHandler.onEndNested(fieldNumber, fd);
+               in.checkLastTagWas(0);
+               in.popLimit(oldLimit);
+            } else if (fd.getType().isPackable() && (fd.isRepeated() || isWrappedMessageField(fd))) {
+               // a packed field, each element is reported individually as if it was not packed. The non-repeated
+               // fields of WrappedMessage are accepted too, the elements of primitive arrays are packed in them
+               int length = in.readUInt32();
+               int oldLimit = in.pushLimit(length);
+               while (!in.isAtEnd()) {
+                  readScalar(tagHandler, fieldNumber, fd, in);
+               }
+               in.popLimit(oldLimit);
+            } else {
+               // the wire type does not match the declared type, skip it and report it as an unknown field
+               tagHandler.onBytes(fieldNumber, null, in.readByteBuffer());
             }
+            break;
+         }
+
+         case START_GROUP: {
+            tagHandler.onStartNested(fieldNumber, fd);
+            parseMessage(tagHandler, fd == null ? null : fd.getMessageType(), in);
+            in.checkLastTagWas(WireType.makeTag(fieldNumber, WireType.WIRETYPE_END_GROUP));
+            tagHandler.onEndNested(fieldNumber, fd);
+            break;
+         }
 
-            case FIXED32:
-            case FIXED64:
-            case VARINT: {
-               if (fd == null) {
-                  if (wireType == WireType.FIXED32) {
-                     tagHandler.onTag(fieldNumber, null, in.readFixed32());
-                  } else if (wireType == WireType.FIXED64) {
-                     tagHandler.onTag(fieldNumber, null, in.readFixed64());
-                  } else {
-                     tagHandler.onTag(fieldNumber, null, in.readUInt64());
-                  }
+         case FIXED32:
+         case FIXED64:
+         case VARINT: {
+            if (fd == null) {
+               if (wireType == WireType.FIXED32) {
+                  tagHandler.onInt32(fieldNumber, null, in.readFixed32());
+               } else if (wireType == WireType.FIXED64) {
+                  tagHandler.onInt64(fieldNumber, null, in.readFixed64());
                } else {
-                  Object value = switch (fd.getType()) {
-                     case DOUBLE -> in.readDouble();
-                     case FLOAT -> in.readFloat();
-                     case BOOL -> in.readBool();
-                     case INT32 -> in.readInt32();
-                     case SFIXED32 -> in.readSFixed32();
-                     case FIXED32 -> in.readFixed32();
-                     case UINT32 -> in.readUInt32();
-                     case SINT32 -> in.readSInt32();
-                     case INT64 -> in.readInt64();
-                     case UINT64 -> in.readUInt64();
-                     case FIXED64 -> in.readFixed64();
-                     case SFIXED64 -> in.readSFixed64();
-                     case SINT64 -> in.readSInt64();
-                     case ENUM -> in.readEnum();
-                     default ->
-                           throw new IOException("Unexpected field type " + fd.getType() + " for field " + fieldNumber);
-                  };
-                  tagHandler.onTag(fieldNumber, fd, value);
+                  tagHandler.onInt64(fieldNumber, null, in.readUInt64());
                }
-               break;
+            } else {
+               readScalar(tagHandler, fieldNumber, fd, in);
             }
-
-            default:
-               throw new IOException("Found tag with invalid wire type : tag=" + tag + ", wireType=" + wireType);
+            break;
          }
+
+         default:
+            throw new IOException("Found tag with invalid wire type : tag=" + tag + ", wireType=" + wireType);
+      }
+   }
+
+   private static boolean isWrappedMessageField(FieldDescriptor fd) {
+      Descriptor containingMessage = fd.getContainingMessage();
+      return containingMessage != null && WrappedMessage.PROTOBUF_TYPE_NAME.equals(containingMessage.getFullName());
+   }
+
+   /**
+    * Reads a scalar value and reports it with the typed callback of the handler, so that it is not boxed unless the
+    * handler wants it boxed.
+    */
+   private static void readScalar(TagHandler tagHandler, int fieldNumber, FieldDescriptor fd, TagReader in) throws IOException {
+      switch (fd.getType()) {
+         case DOUBLE -> tagHandler.onDouble(fieldNumber, fd, in.readDouble());
+         case FLOAT -> tagHandler.onFloat(fieldNumber, fd, in.readFloat());
+         case BOOL -> tagHandler.onBool(fieldNumber, fd, in.readBool());
+         case INT32 -> tagHandler.onInt32(fieldNumber, fd, in.readInt32());
+         case SFIXED32 -> tagHandler.onInt32(fieldNumber, fd, in.readSFixed32());
+         case FIXED32 -> tagHandler.onInt32(fieldNumber, fd, in.readFixed32());
+         case UINT32 -> tagHandler.onInt32(fieldNumber, fd, in.readUInt32());
+         case SINT32 -> tagHandler.onInt32(fieldNumber, fd, in.readSInt32());
+         case INT64 -> tagHandler.onInt64(fieldNumber, fd, in.readInt64());
+         case UINT64 -> tagHandler.onInt64(fieldNumber, fd, in.readUInt64());
+         case FIXED64 -> tagHandler.onInt64(fieldNumber, fd, in.readFixed64());
+         case SFIXED64 -> tagHandler.onInt64(fieldNumber, fd, in.readSFixed64());
+         case SINT64 -> tagHandler.onInt64(fieldNumber, fd, in.readSInt64());
+         case ENUM -> tagHandler.onEnum(fieldNumber, fd, in.readEnum());
+         default -> throw new IOException("Unexpected field type " + fd.getType() + " for field " + fd.getNumber());
       }
    }
 }
@@ -4,13 +4,16 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
+import java.io.Writer;
 import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.Objects;
 
 import org.infinispan.protostream.config.Configuration;
 import org.infinispan.protostream.impl.BaseMarshallerDelegate;
-import org.infinispan.protostream.impl.ByteArrayOutputStreamEx;
 import org.infinispan.protostream.impl.JsonUtils;
 import org.infinispan.protostream.impl.SerializationContextImpl;
 import org.infinispan.protostream.impl.TagReaderImpl;
@@ -75,15 +78,15 @@ public final class ProtobufUtil {
    }
 
    public static byte[] toByteArray(ImmutableSerializationContext ctx, Object t) throws IOException {
-      ByteArrayOutputStream baos = new ByteArrayOutputStream(DEFAULT_ARRAY_BUFFER_SIZE);
-      writeTo(ctx, baos, t);
-      return baos.toByteArray();
+      try (ProtobufCodec codec = ctx.acquireCodec()) {
+         return codec.toByteArray(t);
+      }
    }
 
    public static ByteBuffer toByteBuffer(ImmutableSerializationContext ctx, Object t) throws IOException {
-      ByteArrayOutputStreamEx baos = new ByteArrayOutputStreamEx(DEFAULT_ARRAY_BUFFER_SIZE);
-      writeTo(ctx, baos, t);
-      return baos.getByteBuffer();
+      try (ProtobufCodec codec = ctx.acquireCodec()) {
+         return codec.toByteBuffer(t);
+      }
    }
 
    private static <A> A readFrom(TagReaderImpl in, Class<A> clazz) throws IOException {
@@ -98,6 +101,10 @@ public final class ProtobufUtil {
       return readFrom(TagReaderImpl.newInstance(ctx, in), clazz);
    }
 
+   public static <A> A readFrom(ImmutableSerializationContext ctx, InputStream in, int bufferSize, Class<A> clazz) throws IOException {
+      return readFrom(TagReaderImpl.newInstance(ctx, in, bufferSize), clazz);
+   }
+
    public static <A> A fromByteArray(ImmutableSerializationContext ctx, byte[] bytes, Class<A> clazz) throws IOException {
       return readFrom(TagReaderImpl.newInstance(ctx, bytes), clazz);
    }
@@ -133,12 +140,22 @@ public final class ProtobufUtil {
    }
 
    public static <A> A fromWrappedStream(ImmutableSerializationContext ctx, InputStream in) throws IOException {
-      return WrappedMessage.read(ctx, TagReaderImpl.newInstance(ctx, in));
+      return fromWrappedStream(ctx, in, DEFAULT_STREAM_BUFFER_SIZE);
+   }
+
+   public static <A> A fromWrappedStream(ImmutableSerializationContext ctx, InputStream in, int bufferSize) throws IOException {
+      return WrappedMessage.read(ctx, TagReaderImpl.newInstance(ctx, in, bufferSize));
    }
 
    //todo [anistor] should make it possible to plug in a custom wrapping strategy instead of the default one
    public static byte[] toWrappedByteArray(ImmutableSerializationContext ctx, Object t) throws IOException {
-      return toWrappedByteArray(ctx, t, DEFAULT_ARRAY_BUFFER_SIZE);
+      if (t == null) {
+         // a null value is written as an empty message, as WrappedMessage does
+         return new byte[0];
+      }
+      try (ProtobufCodec codec = ctx.acquireCodec()) {
+         return codec.toWrappedByteArray(t);
+      }
    }
 
    public static byte[] toWrappedByteArray(ImmutableSerializationContext ctx, Object t, int bufferSize) throws IOException {
@@ -148,9 +165,33 @@ public final class ProtobufUtil {
    }
 
    public static ByteBuffer toWrappedByteBuffer(ImmutableSerializationContext ctx, Object t) throws IOException {
-      ByteArrayOutputStreamEx baos = new ByteArrayOutputStreamEx(DEFAULT_ARRAY_BUFFER_SIZE);
-      WrappedMessage.write(ctx, TagWriterImpl.newInstanceNoBuffer(ctx, baos), t);
-      return baos.getByteBuffer();
+      if (t == null) {
+         // a null value is written as an empty message, as WrappedMessage does
+         return ByteBuffer.allocate(0);
+      }
+      try (ProtobufCodec codec = ctx.acquireCodec()) {
+         return codec.toWrappedByteBuffer(t);
+      }
+   }
+
+   /**
+    * Writes a wrapped message into the remaining space of a buffer, advancing its position. The buffer can be direct,
+    * for instance a mapped file, in which case the message is encoded straight into it without going through the heap.
+    */
+   public static void toWrappedByteBuffer(ImmutableSerializationContext ctx, ByteBuffer out, Object t) throws IOException {
+      WrappedMessage.write(ctx, TagWriterImpl.newInstance(ctx, out), t);
+   }
+
+   /**
+    * Writes a wrapped message to a channel, using gathering writes of the segments it was marshalled into.
+    *
+    * @return the number of bytes written
+    * @throws IllegalArgumentException if the channel is in non-blocking mode
+    */
+   public static long toWrappedChannel(ImmutableSerializationContext ctx, GatheringByteChannel channel, Object t) throws IOException {
+      try (ProtobufCodec codec = ctx.acquireCodec()) {
+         return codec.toWrappedChannel(t, channel);
+      }
    }
 
    public static void toWrappedStream(ImmutableSerializationContext ctx, OutputStream out, Object t) throws IOException {
@@ -188,7 +229,91 @@ public final class ProtobufUtil {
       return JsonUtils.toCanonicalJSON(ctx, bytes, prettyPrint);
    }
 
+   /**
+    * Converts a Protobuf encoded message to its <a href="https://developers.google.com/protocol-buffers/docs/proto3#json">
+    * canonical JSON representation</a> and writes it to a {@link Writer} while parsing, so that memory use does not
+    * grow with the size of the document. The writer is flushed but not closed.
+    *
+    * @param ctx         the serialization context
+    * @param bytes       the Protobuf encoded message bytes to parse
+    * @param out         the destination of the JSON representation
+    * @param prettyPrint indicates if the JSON output should use a 'pretty' human-readable format or a compact format
+    * @throws IOException if I/O operations fail
+    */
+   public static void toCanonicalJSON(ImmutableSerializationContext ctx, byte[] bytes, Writer out, boolean prettyPrint) throws IOException {
+      JsonUtils.toCanonicalJSON(ctx, TagReaderImpl.newInstance(ctx, bytes), out, prettyPrint);
+   }
+
+   public static void toCanonicalJSON(ImmutableSerializationContext ctx, ByteBuffer byteBuffer, Writer out, boolean prettyPrint) throws IOException {
+      JsonUtils.toCanonicalJSON(ctx, TagReaderImpl.newInstance(ctx, byteBuffer), out, prettyPrint);
+   }
+
+   public static void toCanonicalJSON(ImmutableSerializationContext ctx, InputStream in, Writer out, boolean prettyPrint) throws IOException {
+      JsonUtils.toCanonicalJSON(ctx, TagReaderImpl.newInstance(ctx, in), out, prettyPrint);
+   }
+
+   /**
+    * Like {@link #toCanonicalJSON(ImmutableSerializationContext, byte[], Writer, boolean)}, but writes the JSON
+    * representation to an {@link OutputStream}, encoded in UTF-8. The stream is flushed but not closed.
+    */
+   public static void toCanonicalJSON(ImmutableSerializationContext ctx, byte[] bytes, OutputStream out, boolean prettyPrint) throws IOException {
+      toCanonicalJSON(ctx, bytes, new OutputStreamWriter(out, StandardCharsets.UTF_8), prettyPrint);
+   }
+
+   public static void toCanonicalJSON(ImmutableSerializationContext ctx, ByteBuffer byteBuffer, OutputStream out, boolean prettyPrint) throws IOException {
+      toCanonicalJSON(ctx, byteBuffer, new OutputStreamWriter(out, StandardCharsets.UTF_8), prettyPrint);
+   }
+
+   public static void toCanonicalJSON(ImmutableSerializationContext ctx, InputStream in, OutputStream out, boolean prettyPrint) throws IOException {
+      toCanonicalJSON(ctx, in, new OutputStreamWriter(out, StandardCharsets.UTF_8), prettyPrint);
+   }
+
    public static byte[] fromCanonicalJSON(ImmutableSerializationContext ctx, Reader reader) throws IOException {
       return JsonUtils.fromCanonicalJSON(ctx, reader);
    }
+
+   /**
+    * Converts UTF-8 encoded JSON to Protobuf. Reading bytes directly avoids decoding them to chars first. The stream is
+    * closed.
+    */
+   public static byte[] fromCanonicalJSON(ImmutableSerializationContext ctx, InputStream in) throws IOException {
+      return JsonUtils.fromCanonicalJSON(ctx, in);
+   }
+
+   /**
+    * Converts JSON to Protobuf and writes the result to an {@link OutputStream} as it goes, instead of returning it as a
+    * byte array. The stream is flushed but neither the reader nor the stream is closed.
+    */
+   public static void fromCanonicalJSON(ImmutableSerializationContext ctx, Reader reader, OutputStream out) throws IOException {
+      JsonUtils.fromCanonicalJSON(ctx, reader, TagWriterImpl.newInstance(ctx, out));
+   }
+
+   public static void fromCanonicalJSON(ImmutableSerializationContext ctx, InputStream in, OutputStream out) throws IOException {
+      JsonUtils.fromCanonicalJSON(ctx, in, TagWriterImpl.newInstance(ctx, out));
+   }
+
+   /**
+    * Converts JSON to Protobuf and writes the result into a {@link ByteBuffer}, starting at its current position, which
+    * is advanced past the written bytes.
+    *
+    * @throws java.nio.BufferOverflowException if the result does not fit in the remaining space
+    */
+   public static void fromCanonicalJSON(ImmutableSerializationContext ctx, Reader reader, ByteBuffer out) throws IOException {
+      JsonUtils.fromCanonicalJSON(ctx, reader, TagWriterImpl.newInstance(ctx, out));
+   }
+
+   public static void fromCanonicalJSON(ImmutableSerializationContext ctx, InputStream in, ByteBuffer out) throws IOException {
+      JsonUtils.fromCanonicalJSON(ctx, in, TagWriterImpl.newInstance(ctx, out));
+   }
+
+   /**
+    * Converts JSON to Protobuf and writes the result to the given {@link TagWriter}, which is flushed at the end.
+    */
+   public static void fromCanonicalJSON(ImmutableSerializationContext ctx, Reader reader, TagWriter out) throws IOException {
+      JsonUtils.fromCanonicalJSON(ctx, reader, out);
+   }
+
+   public static void fromCanonicalJSON(ImmutableSerializationContext ctx, InputStream in, TagWriter out) throws IOException {
+      JsonUtils.fromCanonicalJSON(ctx, in, out);
+   }
 }
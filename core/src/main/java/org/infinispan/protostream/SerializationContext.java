@@ -1,5 +1,6 @@
 package org.infinispan.protostream;
 
+import java.util.Collection;
 import java.util.Set;
 
 import net.jcip.annotations.ThreadSafe;
@@ -22,6 +23,25 @@ public interface SerializationContext extends ImmutableSerializationContext {
     */
    void registerProtoFiles(FileDescriptorSource source) throws DescriptorParserException;
 
+   /**
+    * Registers the schemas and then the marshallers of several initializers. The schema files of all of them, including
+    * the ones registered by the initializers they depend on, are parsed and resolved together in a single step, so
+    * shared dependencies are processed only once. Files that are already registered with identical contents are kept
+    * as they are.
+    *
+    * @param initializers the initializers, in the order their schemas and marshallers are to be registered
+    * @throws DescriptorParserException if any of the schemas is invalid
+    * @since 5.0
+    */
+   default void registerInitializers(Collection<? extends SerializationContextInitializer> initializers) throws DescriptorParserException {
+      for (SerializationContextInitializer initializer : initializers) {
+         initializer.registerSchema(this);
+      }
+      for (SerializationContextInitializer initializer : initializers) {
+         initializer.registerMarshallers(this);
+      }
+   }
+
    /**
     * Unregisters a file. All types defined in it are removed and also the types from all dependant files. The status of
     * dependant files is set to 'unresolved'.
@@ -41,6 +61,19 @@ public interface SerializationContext extends ImmutableSerializationContext {
     */
    void registerMarshaller(BaseMarshaller<?> marshaller);
 
+   /**
+    * Registers several type marshallers, as if {@link #registerMarshaller} was invoked for each of them in turn. The
+    * context may apply them all at once, which is cheaper than registering them one by one.
+    *
+    * @param marshallers the marshaller instances
+    * @since 5.0
+    */
+   default void registerMarshallers(Collection<? extends BaseMarshaller<?>> marshallers) {
+      for (BaseMarshaller<?> marshaller : marshallers) {
+         registerMarshaller(marshaller);
+      }
+   }
+
    void unregisterMarshaller(BaseMarshaller<?> marshaller);
 
    /**
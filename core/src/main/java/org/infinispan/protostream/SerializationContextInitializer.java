@@ -16,7 +16,8 @@ import java.io.UncheckedIOException;
  * ProtoStream library.
  * <p>
  * <em>NOTE:</em> Methods {@link #getProtoFileName()} and {@link #getProtoFile()} will be removed from this interface in
- * ver. 5 but will continue to exist in {@link GeneratedSchema}, which extends this interface.
+ * ver. 5 but will continue to exist in {@link GeneratedSchema}, which extends this interface. Manually written
+ * implementations of this interface do not need to implement them.
  *
  * @author anistor@redhat.com
  * @since 4.3
@@ -30,7 +31,9 @@ public interface SerializationContextInitializer {
     * as {@link GeneratedSchema#getProtoFileName()}. See <a href="https://issues.redhat.com/browse/IPROTO-154">IPROTO-154</a>.
     */
    @Deprecated
-   String getProtoFileName();
+   default String getProtoFileName() {
+      throw new UnsupportedOperationException();
+   }
 
    /**
     * Returns the contents of the proto file as a {@link String}. The returned value must be guaranteed to be the same
@@ -43,7 +46,9 @@ public interface SerializationContextInitializer {
     * as {@link GeneratedSchema#getProtoFile()}. See <a href="https://issues.redhat.com/browse/IPROTO-154">IPROTO-154</a>.
     */
    @Deprecated
-   String getProtoFile() throws UncheckedIOException;
+   default String getProtoFile() throws UncheckedIOException {
+      throw new UnsupportedOperationException();
+   }
 
    /**
     * Registers schema files to the given {@link SerializationContext}. This is always invoked before
@@ -1,11 +1,16 @@
 package org.infinispan.protostream;
 
+import java.nio.ByteBuffer;
 
 import org.infinispan.protostream.descriptors.FieldDescriptor;
 import org.infinispan.protostream.descriptors.GenericDescriptor;
 
 /**
  * An event based interface for consuming a (read only) Protobuf stream containing exactly one top level message.
+ * <p>
+ * {@link ProtobufParser} reports each primitive field with the typed callback matching its type, for example
+ * {@link #onInt32} or {@link #onString}. By default these box the value and delegate to {@link #onTag}, so handlers
+ * only need to implement {@code onTag}. Handlers that override the typed callbacks they care about avoid the boxing.
  *
  * @author anistor@redhat.com
  * @since 1.0
@@ -29,6 +34,90 @@ public interface TagHandler {
    default void onTag(int fieldNumber, FieldDescriptor fieldDescriptor, Object tagValue) {
    }
 
+   /**
+    * A field of type {@code int32}, {@code uint32}, {@code sint32}, {@code fixed32} or {@code sfixed32}, or an unknown
+    * field with a 32-bit wire type.
+    *
+    * @param fieldNumber     the field number
+    * @param fieldDescriptor the field descriptor, or {@code null} if this is an unknown field.
+    * @since 5.0
+    */
+   default void onInt32(int fieldNumber, FieldDescriptor fieldDescriptor, int value) {
+      onTag(fieldNumber, fieldDescriptor, value);
+   }
+
+   /**
+    * A field of type {@code int64}, {@code uint64}, {@code sint64}, {@code fixed64} or {@code sfixed64}, or an unknown
+    * field with a varint or 64-bit wire type.
+    *
+    * @param fieldNumber     the field number
+    * @param fieldDescriptor the field descriptor, or {@code null} if this is an unknown field.
+    * @since 5.0
+    */
+   default void onInt64(int fieldNumber, FieldDescriptor fieldDescriptor, long value) {
+      onTag(fieldNumber, fieldDescriptor, value);
+   }
+
+   /**
+    * A field of type {@code float}.
+    *
+    * @since 5.0
+    */
+   default void onFloat(int fieldNumber, FieldDescriptor fieldDescriptor, float value) {
+      onTag(fieldNumber, fieldDescriptor, value);
+   }
+
+   /**
+    * A field of type {@code double}.
+    *
+    * @since 5.0
+    */
+   default void onDouble(int fieldNumber, FieldDescriptor fieldDescriptor, double value) {
+      onTag(fieldNumber, fieldDescriptor, value);
+   }
+
+   /**
+    * A field of type {@code bool}.
+    *
+    * @since 5.0
+    */
+   default void onBool(int fieldNumber, FieldDescriptor fieldDescriptor, boolean value) {
+      onTag(fieldNumber, fieldDescriptor, value);
+   }
+
+   /**
+    * A field of an enum type.
+    *
+    * @param value the number of the enum value
+    * @since 5.0
+    */
+   default void onEnum(int fieldNumber, FieldDescriptor fieldDescriptor, int value) {
+      onTag(fieldNumber, fieldDescriptor, value);
+   }
+
+   /**
+    * A field of type {@code string}.
+    *
+    * @since 5.0
+    */
+   default void onString(int fieldNumber, FieldDescriptor fieldDescriptor, String value) {
+      onTag(fieldNumber, fieldDescriptor, value);
+   }
+
+   /**
+    * A field of type {@code bytes}, or an unknown length delimited field. The buffer may be a view of the input being
+    * parsed, so it is only valid for the duration of the call. The default implementation copies it to a byte array.
+    *
+    * @param fieldNumber     the field number
+    * @param fieldDescriptor the field descriptor, or {@code null} if this is an unknown field.
+    * @since 5.0
+    */
+   default void onBytes(int fieldNumber, FieldDescriptor fieldDescriptor, ByteBuffer value) {
+      byte[] bytes = new byte[value.remaining()];
+      value.get(bytes);
+      onTag(fieldNumber, fieldDescriptor, bytes);
+   }
+
    /**
     * Start of a nested message.
     *
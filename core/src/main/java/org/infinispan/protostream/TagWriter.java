@@ -62,4 +62,92 @@ public interface TagWriter {
 
    void writeBytes(int number, byte[] value, int offset, int length) throws IOException;
    // end high level ops
+
+   // start packed repeated field ops, these write nothing if the array is empty
+   // the defaults write one field per element, which readers accept as well, implementations override them to write a
+   // single length delimited record
+   default void writePackedInt32(int number, int[] values) throws IOException {
+      for (int value : values) {
+         writeInt32(number, value);
+      }
+   }
+
+   default void writePackedUInt32(int number, int[] values) throws IOException {
+      for (int value : values) {
+         writeUInt32(number, value);
+      }
+   }
+
+   default void writePackedSInt32(int number, int[] values) throws IOException {
+      for (int value : values) {
+         writeSInt32(number, value);
+      }
+   }
+
+   default void writePackedFixed32(int number, int[] values) throws IOException {
+      for (int value : values) {
+         writeFixed32(number, value);
+      }
+   }
+
+   default void writePackedSFixed32(int number, int[] values) throws IOException {
+      for (int value : values) {
+         writeSFixed32(number, value);
+      }
+   }
+
+   default void writePackedInt64(int number, long[] values) throws IOException {
+      for (long value : values) {
+         writeInt64(number, value);
+      }
+   }
+
+   default void writePackedUInt64(int number, long[] values) throws IOException {
+      for (long value : values) {
+         writeUInt64(number, value);
+      }
+   }
+
+   default void writePackedSInt64(int number, long[] values) throws IOException {
+      for (long value : values) {
+         writeSInt64(number, value);
+      }
+   }
+
+   default void writePackedFixed64(int number, long[] values) throws IOException {
+      for (long value : values) {
+         writeFixed64(number, value);
+      }
+   }
+
+   default void writePackedSFixed64(int number, long[] values) throws IOException {
+      for (long value : values) {
+         writeSFixed64(number, value);
+      }
+   }
+
+   default void writePackedEnum(int number, int[] values) throws IOException {
+      for (int value : values) {
+         writeEnum(number, value);
+      }
+   }
+
+   default void writePackedBool(int number, boolean[] values) throws IOException {
+      for (boolean value : values) {
+         writeBool(number, value);
+      }
+   }
+
+   default void writePackedDouble(int number, double[] values) throws IOException {
+      for (double value : values) {
+         writeDouble(number, value);
+      }
+   }
+
+   default void writePackedFloat(int number, float[] values) throws IOException {
+      for (float value : values) {
+         writeFloat(number, value);
+      }
+   }
+   // end packed repeated field ops
 }
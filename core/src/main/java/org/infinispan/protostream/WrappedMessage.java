@@ -1,17 +1,22 @@
 package org.infinispan.protostream;
 
+import org.infinispan.protostream.annotations.impl.GeneratedMarshallerBase;
 import org.infinispan.protostream.containers.ElementContainerAdapter;
 import org.infinispan.protostream.containers.IndexedElementContainerAdapter;
 import org.infinispan.protostream.containers.IterableElementContainerAdapter;
+import org.infinispan.protostream.containers.PrimitiveArrayContainerAdapter;
 import org.infinispan.protostream.descriptors.WireType;
 import org.infinispan.protostream.impl.BaseMarshallerDelegate;
 import org.infinispan.protostream.impl.ByteArrayOutputStreamEx;
 import org.infinispan.protostream.impl.EnumMarshallerDelegate;
+import org.infinispan.protostream.impl.Log;
 import org.infinispan.protostream.impl.SerializationContextImpl;
 import org.infinispan.protostream.impl.TagReaderImpl;
 import org.infinispan.protostream.impl.TagWriterImpl;
+import org.infinispan.protostream.impl.WrappingPlan;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.time.Instant;
 import java.util.Date;
 import java.util.Iterator;
@@ -282,6 +287,9 @@ public final class WrappedMessage {
          out.writeBool(WRAPPED_BOOL, (Boolean) t);
       } else if (t instanceof byte[]) {
          out.writeBytes(WRAPPED_BYTES, (byte[]) t);
+      } else if (t instanceof ByteBuffer) {
+         // as read back with zeroCopyBytes; write the remaining bytes without moving the position of the caller's buffer
+         out.writeBytes(WRAPPED_BYTES, ((ByteBuffer) t).duplicate());
       } else {
          return false;
       }
@@ -297,45 +305,36 @@ public final class WrappedMessage {
          return;
       }
       // This is either a message type or an enum. Try to lookup a marshaller.
-      BaseMarshallerDelegate<T> marshallerDelegate = ((SerializationContextImpl) ctx).getMarshallerDelegate(t);
-      BaseMarshaller<T> marshaller = marshallerDelegate.getMarshaller();
+      WrappingPlan<T> plan = ((SerializationContextImpl) ctx).getWrappingPlan(t);
+      BaseMarshallerDelegate<T> marshallerDelegate = plan.getMarshallerDelegate();
 
-      if (marshaller instanceof ElementContainerAdapter) {
-         writeContainer(ctx, out, marshallerDelegate, t);
-      } else {
-         // Write the type discriminator, either the fully qualified name or a numeric type id.
-         String typeName = marshaller.getTypeName();
-         int typeId = mapTypeIdOut(typeName, ctx);
-         if (typeId < 0) {
-            out.writeString(WRAPPED_TYPE_NAME, typeName);
-         } else {
-            out.writeUInt32(WRAPPED_TYPE_ID, typeId);
-         }
+      // Write the type discriminator, either the fully qualified name or a numeric type id.
+      byte[] typeHeader = plan.getTypeHeader();
+      out.writeRawBytes(typeHeader, 0, typeHeader.length);
 
-         if (t.getClass().isEnum()) {
+      switch (plan.getKind()) {
+         case CONTAINER:
+            writeContainer(ctx, out, marshallerDelegate, t);
+            break;
+         case ENUM:
             ((EnumMarshallerDelegate) marshallerDelegate).encode(WRAPPED_ENUM, (Enum<?>) t, out);
-         } else {
-            ByteArrayOutputStreamEx buffer = new ByteArrayOutputStreamEx();
-            TagWriterImpl nestedCtx = TagWriterImpl.newInstanceNoBuffer(ctx, buffer);
-            marshallerDelegate.marshall(nestedCtx, null, t);
-            nestedCtx.flush();
-            out.writeBytes(WRAPPED_MESSAGE, buffer.getByteBuffer());
-         }
+            break;
+         default:
+            if (out instanceof TagWriterImpl writer) {
+               writer.writeMessageField(marshallerDelegate, WRAPPED_MESSAGE, t);
+            } else {
+               ByteArrayOutputStreamEx buffer = new ByteArrayOutputStreamEx();
+               TagWriterImpl nestedCtx = TagWriterImpl.newInstanceNoBuffer(ctx, buffer);
+               marshallerDelegate.marshall(nestedCtx, null, t);
+               nestedCtx.flush();
+               out.writeBytes(WRAPPED_MESSAGE, buffer.getByteBuffer());
+            }
       }
       out.flush();
    }
 
    private static void writeContainer(ImmutableSerializationContext ctx, TagWriter out, BaseMarshallerDelegate marshallerDelegate, Object container) throws IOException {
       BaseMarshaller containerMarshaller = marshallerDelegate.getMarshaller();
-      String typeName = containerMarshaller.getTypeName();
-      int typeId = mapTypeIdOut(typeName, ctx);
-
-      if (typeId < 0) {
-         out.writeString(WRAPPED_CONTAINER_TYPE_NAME, typeName);
-      } else {
-         out.writeUInt32(WRAPPED_CONTAINER_TYPE_ID, typeId);
-      }
-
       int containerSize = ((ElementContainerAdapter) containerMarshaller).getNumElements(container);
       out.writeUInt32(WRAPPED_CONTAINER_SIZE, containerSize);
 
@@ -345,7 +344,12 @@ public final class WrappedMessage {
       nestedCtx.flush();
       out.writeBytes(WRAPPED_CONTAINER_MESSAGE, buffer.getByteBuffer());
 
-      if (ctx.getConfiguration().wrapCollectionElements()) {
+      if (containerMarshaller instanceof PrimitiveArrayContainerAdapter adapter && ctx.getConfiguration().packPrimitiveArrays()) {
+         // all elements go in a single packed field, using the field number of a single element
+         if (containerSize > 0) {
+            adapter.writeElements(out, adapter.getElementFieldNumber(), container);
+         }
+      } else if (ctx.getConfiguration().wrapCollectionElements()) {
          writeContainerWrappingElements(containerMarshaller, containerSize, container, ctx, out, buffer);
       } else {
          writeContainerWithoutWrappingElements(containerMarshaller, containerSize, container, ctx, out);
@@ -408,7 +412,11 @@ public final class WrappedMessage {
    }
 
    private static <T> T readMessage(ImmutableSerializationContext ctx, TagReader in, boolean nulls) throws IOException {
-      ValueOrTag<T> primitiveValue = tryReadPrimitive(in, nulls);
+      return readMessage(ctx, in, in.readTag(), nulls);
+   }
+
+   private static <T> T readMessage(ImmutableSerializationContext ctx, TagReader in, int tag, boolean nulls) throws IOException {
+      ValueOrTag<T> primitiveValue = tryReadPrimitive(ctx, tag, in, nulls);
       if (primitiveValue.hasValue()) {
          return primitiveValue.getValue();
       }
@@ -417,8 +425,7 @@ public final class WrappedMessage {
       return readCustomObject(primitiveValue.getTag(), ctx, in);
    }
 
-   private static <T> ValueOrTag<T> tryReadPrimitive(TagReader in, boolean nulls) throws IOException {
-      var tag = in.readTag();
+   private static <T> ValueOrTag<T> tryReadPrimitive(ImmutableSerializationContext ctx, int tag, TagReader in, boolean nulls) throws IOException {
       Object value = null;
       switch (tag) {
          case WRAPPED_EMPTY << WireType.TAG_TYPE_NUM_BITS | WireType.WIRETYPE_VARINT: {
@@ -449,7 +456,7 @@ public final class WrappedMessage {
             break;
          }
          case WRAPPED_BYTES << WireType.TAG_TYPE_NUM_BITS | WireType.WIRETYPE_LENGTH_DELIMITED: {
-            value = in.readByteArray();
+            value = ctx.getConfiguration().zeroCopyBytes() ? in.readByteBuffer().asReadOnlyBuffer() : in.readByteArray();
             break;
          }
          case WRAPPED_BOOL << WireType.TAG_TYPE_NUM_BITS | WireType.WIRETYPE_VARINT: {
@@ -516,7 +523,8 @@ public final class WrappedMessage {
       String typeName = null;
       Integer typeId = null;
       int enumValue = -1;
-      byte[] messageBytes = null;
+      ByteBuffer messageBytes = null;
+      boolean messageRead = false;
       Object value = null;
       int fieldCount = 0;
       int expectedFieldCount;
@@ -548,7 +556,15 @@ public final class WrappedMessage {
             }
             case WRAPPED_MESSAGE << WireType.TAG_TYPE_NUM_BITS | WireType.WIRETYPE_LENGTH_DELIMITED: {
                expectedFieldCount = 2;
-               messageBytes = in.readByteArray();
+               BaseMarshallerDelegate<?> marshallerDelegate = fieldCount == 2 && (typeName != null || typeId != null)
+                     ? getMarshallerDelegate(ctx, typeName, typeId) : null;
+               if (marshallerDelegate != null && in instanceof TagReaderImpl && canReadInPlace(marshallerDelegate)) {
+                  // the type is already known, so the message can be parsed in place
+                  value = readMessageInPlace((TagReaderImpl) in, marshallerDelegate);
+                  messageRead = true;
+               } else {
+                  messageBytes = in.readByteBuffer();
+               }
                break;
             }
             case WRAPPED_INSTANT_SECONDS << WireType.TAG_TYPE_NUM_BITS | WireType.WIRETYPE_VARINT: {
@@ -569,6 +585,13 @@ public final class WrappedMessage {
          }
       } while ((tag = in.readTag()) != 0);
 
+      if (messageRead) {
+         if (fieldCount != expectedFieldCount) {
+            throw new IOException("Invalid WrappedMessage encoding.");
+         }
+         return (T) value;
+      }
+
       if (value == null && typeName == null && typeId == null && messageBytes == null) {
          return null;
       }
@@ -584,13 +607,11 @@ public final class WrappedMessage {
          throw new IOException("Invalid WrappedMessage encoding.");
       }
 
-      if (typeId != null) {
-         typeName = ctx.getDescriptorByTypeId(typeId).getFullName();
-      }
-      BaseMarshallerDelegate<T> marshallerDelegate = ((SerializationContextImpl) ctx).getMarshallerDelegate(typeName);
+      BaseMarshallerDelegate<T> marshallerDelegate = getMarshallerDelegate(ctx, typeName, typeId);
       if (messageBytes != null) {
-         // it's a Message type
-         TagReaderImpl nestedInput = TagReaderImpl.newInstance(ctx, messageBytes);
+         // it's a Message type, found before its type or read from an arbitrary TagReader
+         TagReaderImpl nestedInput = canReadInPlace(marshallerDelegate)
+               ? TagReaderImpl.newInstance(ctx, messageBytes) : TagReaderImpl.newInstance(ctx, toByteArray(messageBytes));
          return marshallerDelegate.unmarshall(nestedInput, null);
       } else {
          // it's an Enum
@@ -604,11 +625,60 @@ public final class WrappedMessage {
       }
    }
 
+   private static <T> BaseMarshallerDelegate<T> getMarshallerDelegate(ImmutableSerializationContext ctx, String typeName, Integer typeId) {
+      if (typeId != null) {
+         typeName = ctx.getDescriptorByTypeId(typeId).getFullName();
+      }
+      return ((SerializationContextImpl) ctx).getMarshallerDelegate(typeName);
+   }
+
+   /**
+    * Whether the marshaller can be handed a reader limited to a region of a larger input. Hand written
+    * {@link ProtobufTagMarshaller}s may call {@link TagReader#fullBufferArray()}, which needs a reader of their own
+    * positioned at the start of its buffer.
+    */
+   private static boolean canReadInPlace(BaseMarshallerDelegate<?> marshallerDelegate) {
+      BaseMarshaller<?> marshaller = marshallerDelegate.getMarshaller();
+      return !(marshaller instanceof ProtobufTagMarshaller) || marshaller instanceof GeneratedMarshallerBase;
+   }
+
+   private static byte[] toByteArray(ByteBuffer buffer) {
+      byte[] bytes = new byte[buffer.remaining()];
+      buffer.get(bytes);
+      return bytes;
+   }
+
+   /**
+    * Unmarshalls a length delimited message directly from the input, limiting the reader to the length of the message
+    * instead of copying it.
+    */
+   private static Object readMessageInPlace(TagReaderImpl in, BaseMarshallerDelegate<?> marshallerDelegate) throws IOException {
+      int oldLimit = in.pushLimit(in.readUInt32());
+      Object message = marshallerDelegate.unmarshall(in, null);
+      skipToLimit(in);
+      in.popLimit(oldLimit);
+      return message;
+   }
+
+   /**
+    * Skips whatever the unmarshaller left unread up to the current limit. A separate reader would just ignore it.
+    *
+    * @throws MalformedProtobufException if an end group tag is found, as there is no group to end
+    */
+   private static void skipToLimit(TagReader in) throws IOException {
+      int tag;
+      while ((tag = in.readTag()) != 0) {
+         if (!in.skipField(tag)) {
+            throw new MalformedProtobufException("Unexpected end group tag " + tag + " in a nested message");
+         }
+      }
+   }
+
    private static Object readContainer(ImmutableSerializationContext ctx, TagReader in, int tag) throws IOException {
       int containerSize = -1;
       String containerTypeName = null;
       Integer containerTypeId = null;
-      byte[] containerMessage = null;
+      ByteBuffer containerMessage = null;
 
       int fieldCount = 0;
       while (tag != 0) {
@@ -625,7 +695,7 @@ public final class WrappedMessage {
                break;
             }
             case WRAPPED_CONTAINER_MESSAGE << WireType.TAG_TYPE_NUM_BITS | WireType.WIRETYPE_LENGTH_DELIMITED:
-               containerMessage = in.readByteArray();
+               containerMessage = in.readByteBuffer();
                break;
             default:
                throw new IllegalStateException("Unexpected tag : " + tag + " (Field number : "
@@ -654,7 +724,10 @@ public final class WrappedMessage {
       if (!(containerMarshaller instanceof ElementContainerAdapter)) {
          throw new IllegalStateException("The unmarshaller is not a container adapter : " + containerMarshaller.getJavaClass().getName());
       }
-      TagReaderImpl nestedInput = TagReaderImpl.newNestedInstance((ProtobufTagMarshaller.ReadContext) in, containerMessage);
+      // containerMessage is a slice of the input when possible, so this does not copy
+      TagReaderImpl nestedInput = canReadInPlace(marshallerDelegate)
+            ? TagReaderImpl.newNestedInstance((ProtobufTagMarshaller.ReadContext) in, containerMessage)
+            : TagReaderImpl.newNestedInstance((ProtobufTagMarshaller.ReadContext) in, toByteArray(containerMessage));
 
       // pass the size to the marshaller of the container object
       nestedInput.setParam(CONTAINER_SIZE_CONTEXT_PARAM, containerSize);
@@ -663,58 +736,89 @@ public final class WrappedMessage {
          throw new IllegalStateException("The unmarshalled container must not be null");
       }
 
-      if (ctx.getConfiguration().wrapCollectionElements()) {
-         readContainerWithWrappedElements(containerMarshaller, containerSize, container, ctx, in);
+      if (containerSize == 0) {
+         return container;
+      }
+
+      int elementTag = in.readTag();
+      if (containerMarshaller instanceof PrimitiveArrayContainerAdapter adapter
+            && elementTag == WireType.makeTag(adapter.getElementFieldNumber(), WireType.WIRETYPE_LENGTH_DELIMITED)) {
+         int oldLimit = in.pushLimit(in.readUInt32());
+         // the adapter reads as many elements as the container holds, which must be exactly those of the packed field
+         if (adapter.getNumElements(container) != containerSize) {
+            throw Log.LOG.containerSizeMismatch(containerSize, null);
+         }
+         try {
+            adapter.readElements(in, container);
+         } catch (MalformedProtobufException e) {
+            // the packed field holds fewer elements
+            throw Log.LOG.containerSizeMismatch(containerSize, e);
+         }
+         if (!in.isAtEnd()) {
+            // the packed field holds more elements
+            throw Log.LOG.containerSizeMismatch(containerSize, null);
+         }
+         in.popLimit(oldLimit);
+      } else if (ctx.getConfiguration().wrapCollectionElements()) {
+         readContainerWithWrappedElements(containerMarshaller, containerSize, container, ctx, in, elementTag);
       } else {
-         readContainerWithoutWrappedElements(containerMarshaller, containerSize, container, ctx, in);
+         readContainerWithoutWrappedElements(containerMarshaller, containerSize, container, ctx, in, elementTag);
       }
 
       return container;
    }
 
+   /**
+    * Reads the elements of the container. The tag of the first element was already read.
+    */
    private static void readContainerWithWrappedElements(BaseMarshaller<?> containerMarshaller, int containerSize,
-                                                        Object container, ImmutableSerializationContext ctx, TagReader in) throws IOException {
+                                                        Object container, ImmutableSerializationContext ctx, TagReader in, int firstTag) throws IOException {
       if (containerMarshaller instanceof IterableElementContainerAdapter adapter) {
           for (int i = 0; i < containerSize; i++) {
-            adapter.appendElement(container, readContainerElementWrapped(ctx, in));
+            adapter.appendElement(container, readContainerElementWrapped(ctx, in, i == 0 ? firstTag : in.readTag()));
          }
       } else if (containerMarshaller instanceof IndexedElementContainerAdapter adapter) {
           for (int i = 0; i < containerSize; i++) {
-            adapter.setElement(container, i, readContainerElementWrapped(ctx, in));
+            adapter.setElement(container, i, readContainerElementWrapped(ctx, in, i == 0 ? firstTag : in.readTag()));
          }
       } else {
          throw new IllegalStateException("Unknown container adapter kind : " + containerMarshaller.getJavaClass().getName());
       }
    }
 
+   /**
+    * Reads the elements of the container. The tag of the first element was already read.
+    */
    private static void readContainerWithoutWrappedElements(BaseMarshaller<?> containerMarshaller, int containerSize,
-                                                        Object container, ImmutableSerializationContext ctx, TagReader in) throws IOException {
+                                                        Object container, ImmutableSerializationContext ctx, TagReader in, int firstTag) throws IOException {
       if (containerMarshaller instanceof IterableElementContainerAdapter adapter) {
           for (int i = 0; i < containerSize; i++) {
-            adapter.appendElement(container, readMessage(ctx, in, true));
+            adapter.appendElement(container, readMessage(ctx, in, i == 0 ? firstTag : in.readTag(), true));
          }
       } else if (containerMarshaller instanceof IndexedElementContainerAdapter adapter) {
           for (int i = 0; i < containerSize; i++) {
-            adapter.setElement(container, i, readMessage(ctx, in, true));
+            adapter.setElement(container, i, readMessage(ctx, in, i == 0 ? firstTag : in.readTag(), true));
          }
       } else {
          throw new IllegalStateException("Unknown container adapter kind : " + containerMarshaller.getJavaClass().getName());
       }
    }
 
-   private static <E> E readContainerElementWrapped(ImmutableSerializationContext ctx, TagReader in) throws IOException {
-      ValueOrTag<E> primitiveValue = tryReadPrimitive(in, true);
+   private static <E> E readContainerElementWrapped(ImmutableSerializationContext ctx, TagReader in, int tag) throws IOException {
+      ValueOrTag<E> primitiveValue = tryReadPrimitive(ctx, tag, in, true);
       if (primitiveValue.hasValue()) {
          return primitiveValue.getValue();
       }
       assert primitiveValue.hasTag();
-      var tag = primitiveValue.getTag();
       if (tag != (WRAPPED_MESSAGE << WireType.TAG_TYPE_NUM_BITS | WireType.WIRETYPE_LENGTH_DELIMITED)) {
          throw new IllegalStateException("Unexpected tag : " + tag + " (Field number : "
                  + WireType.getTagFieldNumber(tag) + ", Wire type : " + WireType.getTagWireType(tag) + ")");
       }
-      var elementReader = TagReaderImpl.newInstance(ctx, in.readByteArray());
-      return readMessage(ctx, elementReader, true);
+      int oldLimit = in.pushLimit(in.readUInt32());
+      E element = readMessage(ctx, in, true);
+      skipToLimit(in);
+      in.popLimit(oldLimit);
+      return element;
    }
 
    /**
@@ -724,17 +828,6 @@ public final class WrappedMessage {
       return typeId;
    }
 
-   /**
-    * Map type id to old value, during writing, to support schema evolution.
-    */
-   private static int mapTypeIdOut(String typeName, ImmutableSerializationContext ctx) {
-      Integer typeId = ctx.getDescriptorByName(typeName).getTypeId();
-      if (typeId == null) {
-         return -1;
-      }
-      return typeId;
-   }
-
    @Override
    public boolean equals(Object o) {
       if (this == o) return true;
@@ -87,4 +87,13 @@ public @interface ProtoField {
    Class<? extends Map> mapImplementation() default Map.class;
 
    String oneof() default "";
+
+   /**
+    * Use the packed encoding for a repeated field of a scalar numeric, bool or enum type. All the elements are written
+    * as a single length-delimited record instead of one tagged record per element. Readers always accept both the
+    * packed and the unpacked encoding, regardless of this setting.
+    *
+    * @since 5.0
+    */
+   boolean packed() default false;
 }
@@ -2,6 +2,7 @@ package org.infinispan.protostream.annotations.impl;
 
 import java.io.StringWriter;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
@@ -35,6 +36,16 @@ public abstract class AbstractMarshallerCodeGenerator {
 
    protected static final String ADAPTER_FIELD_NAME = "__a$";
 
+   private static final String ENUM_VALUES_FIELD_NAME = "__values$";
+
+   private static final String TAG_FIELD_NAME_PREFIX = "__t$";
+
+   /**
+    * Enum numbers are decoded by indexing a table of constants, unless it would have more than this many empty slots per
+    * constant, in which case a switch is generated.
+    */
+   private static final int MAX_EMPTY_ENUM_SLOTS_PER_VALUE = 3;
+
    private final XTypeFactory typeFactory;
 
    /**
@@ -63,6 +74,15 @@ public abstract class AbstractMarshallerCodeGenerator {
       IndentWriter iw = new IndentWriter(sw);
       iw.println("{");
       iw.inc();
+      if (hasEnumValuesTable(enumTypeMetadata)) {
+         int min = enumTypeMetadata.getMembers().firstKey();
+         int max = enumTypeMetadata.getMembers().lastKey();
+         iw.printf("if ($1 < %d || $1 > %d) return null;\n", min, max);
+         iw.printf("return %s[%s];\n", ENUM_VALUES_FIELD_NAME, min == 0 ? "$1" : "$1 - (" + min + ")");
+         iw.dec();
+         iw.println("}");
+         return sw.toString();
+      }
       iw.println("switch ($1) {");
       iw.inc();
       for (ProtoEnumValueMetadata value : enumTypeMetadata.getMembers().values()) {
@@ -87,6 +107,7 @@ public abstract class AbstractMarshallerCodeGenerator {
       IndentWriter iw = new IndentWriter(sw);
       iw.println("{");
       iw.inc();
+      // a switch on the ordinal compiles to a table lookup, and covers enums having constants without a Protobuf number
       iw.println("switch ($1.ordinal()) {");
       iw.inc();
       for (ProtoEnumValueMetadata value : enumTypeMetadata.getMembers().values()) {
@@ -100,6 +121,68 @@ public abstract class AbstractMarshallerCodeGenerator {
       return sw.toString();
    }
 
+   /**
+    * Generates the static field holding the table used by the decode method, the constant of each number, if the
+    * numbers are dense enough.
+    */
+   protected void generateEnumTableFields(ProtoEnumTypeMetadata enumTypeMetadata, IndentWriter iw) {
+      if (hasEnumValuesTable(enumTypeMetadata)) {
+         int min = enumTypeMetadata.getMembers().firstKey();
+         int max = enumTypeMetadata.getMembers().lastKey();
+         iw.printf("private static final %s[] %s = {", enumTypeMetadata.getJavaClassName(), ENUM_VALUES_FIELD_NAME);
+         for (long number = min; number <= max; number++) {
+            ProtoEnumValueMetadata value = enumTypeMetadata.getMembers().get((int) number);
+            iw.append(number == min ? "" : ", ").append(value == null ? "null" : value.getJavaEnumName());
+         }
+         iw.append("};\n\n");
+      }
+   }
+
+   /**
+    * Generates the static fields holding the tags of the fields of a message, pre-encoded by
+    * {@link TagWriterImpl#preEncodeTag}, for the generated write method to pass to the {@code writeTagged} and
+    * {@code putTagged} methods of {@link TagWriterImpl}. The tags are encoded when the generated class is initialized,
+    * as the encoding is internal to the version of the library in use.
+    */
+   protected void generateTagFields(ProtoMessageTypeMetadata messageTypeMetadata, IndentWriter iw) {
+      boolean added = false;
+      for (ProtoFieldMetadata fieldMetadata : messageTypeMetadata.getFields().values()) {
+         if (hasPreEncodedTag(fieldMetadata)) {
+            iw.printf("private static final int %s = %s.preEncodeTag(%d, %s.%s);\n", makeTagFieldName(fieldMetadata),
+                  TagWriterImpl.class.getName(), fieldMetadata.getNumber(), WireType.class.getName(), fieldMetadata.getProtobufType().getWireType().name());
+            added = true;
+         }
+      }
+      if (added) {
+         iw.println();
+      }
+   }
+
+   /**
+    * Is the field written with a pre-encoded tag? Only the non-packed fields of scalar or enum type can be, provided the
+    * field number is small enough.
+    */
+   private static boolean hasPreEncodedTag(ProtoFieldMetadata fieldMetadata) {
+      if (fieldMetadata.isMap() || fieldMetadata.isPacked() || fieldMetadata.getNumber() > TagWriterImpl.MAX_PRE_ENCODED_FIELD_NUMBER) {
+         return false;
+      }
+      return switch (fieldMetadata.getProtobufType()) {
+         case GROUP, MESSAGE, MAP -> false;
+         default -> true;
+      };
+   }
+
+   private static int preEncodedTagSize(ProtoFieldMetadata fieldMetadata) {
+      // the tags that can be pre-encoded take at most two bytes
+      return WireType.makeTag(fieldMetadata.getNumber(), fieldMetadata.getProtobufType().getWireType()) < 0x80 ? 1 : 2;
+   }
+
+   private static boolean hasEnumValuesTable(ProtoEnumTypeMetadata enumTypeMetadata) {
+      int count = enumTypeMetadata.getMembers().size();
+      long span = (long) enumTypeMetadata.getMembers().lastKey() - enumTypeMetadata.getMembers().firstKey() + 1;
+      return span <= (long) count * (MAX_EMPTY_ENUM_SLOTS_PER_VALUE + 1);
+   }
+
    /**
     * Returns the protobuf qualified type name, including the package name.
     */
@@ -167,6 +250,13 @@ public abstract class AbstractMarshallerCodeGenerator {
       return "__a$" + field.getNumber();
    }
 
+   /**
+    * Make the name of the static field holding the pre-encoded tag of a field.
+    */
+   private String makeTagFieldName(ProtoFieldMetadata field) {
+      return TAG_FIELD_NAME_PREFIX + field.getNumber();
+   }
+
    /**
     * Make field name for caching a marshaller delegate for a related message.
     */
@@ -302,7 +392,7 @@ public abstract class AbstractMarshallerCodeGenerator {
       iw.inc();
       if (getUnknownFieldSetFieldStatement != null) {
          iw.printf("%s.UnknownFieldSet u = %s;\n", PROTOSTREAM_PACKAGE, getUnknownFieldSetFieldStatement);
-         iw.printf("if (u == null) u = new %s.impl.UnknownFieldSetImpl();\n", PROTOSTREAM_PACKAGE);
+         iw.println("if (u == null) u = newUnknownFieldSet($1);");
          iw.println("if (!u.readSingleField(tag, $in)) done = true;");
          iw.printf("if (!u.isEmpty()) %s;\n", setUnknownFieldSetFieldStatement);
       } else {
@@ -488,14 +578,10 @@ public abstract class AbstractMarshallerCodeGenerator {
          case SFIXED32:
          case SFIXED64:
          case SINT32:
-         case SINT64: {
-            if (noFactory || fieldMetadata.isRepeated()) {
-               iw.printf("%s ", fieldMetadata.getJavaTypeName());
-            }
-            iw.printf("%s = %s;\n", v, box(convert("$in." + makeStreamIOMethodName(fieldMetadata, false) + "()", fieldMetadata), fieldMetadata.getJavaType()));
-            genSetField(iw, fieldMetadata, trackedFields, messageTypeMetadata);
+         case SINT64:
+         case ENUM:
+            generateScalarFieldRead(messageTypeMetadata, fieldMetadata, iw, noFactory, trackedFields, getUnknownFieldSetFieldStatement, setUnknownFieldSetFieldStatement);
             break;
-         }
          case GROUP: {
             String mdField = initMarshallerDelegateField(iw, fieldMetadata);
             if (noFactory || fieldMetadata.isRepeated()) {
@@ -519,27 +605,6 @@ public abstract class AbstractMarshallerCodeGenerator {
             genSetField(iw, fieldMetadata, trackedFields, messageTypeMetadata);
             break;
          }
-         case ENUM: {
-            String mdField = initMarshallerDelegateField(iw, fieldMetadata);
-            iw.println("int enumVal = $in.readEnum();");
-            if (noFactory || fieldMetadata.isRepeated()) {
-               iw.printf("%s ", fieldMetadata.getJavaTypeName());
-            }
-            iw.printf("%s = (%s) %s.getMarshaller().decode(enumVal);\n", v, fieldMetadata.getJavaTypeName(), mdField);
-            iw.printf("if (%s == null) {\n", v);
-            if (getUnknownFieldSetFieldStatement != null) {
-               iw.inc();
-               iw.printf("%s.UnknownFieldSet u = %s;\n", PROTOSTREAM_PACKAGE, getUnknownFieldSetFieldStatement);
-               iw.printf("if (u == null) { u = new %s.impl.UnknownFieldSetImpl(); %s; }\n", PROTOSTREAM_PACKAGE, setUnknownFieldSetFieldStatement);
-               iw.printf("u.putVarintField(%d, enumVal);\n", fieldMetadata.getNumber());
-               iw.dec();
-            }
-            iw.println("} else {");
-            iw.inc();
-            genSetField(iw, fieldMetadata, trackedFields, messageTypeMetadata);
-            iw.dec().println("}");
-            break;
-         }
          case MAP: {
             ProtoMapMetadata mapMetadata = (ProtoMapMetadata) fieldMetadata;
             iw.println("int $len = $in.readUInt32();");
@@ -557,6 +622,50 @@ public abstract class AbstractMarshallerCodeGenerator {
       }
       iw.println("break;");
       iw.dec().println("}");
+
+      if (fieldMetadata.isRepeated() && !fieldMetadata.isMap() && fieldMetadata.getProtobufType().isPackable()) {
+         // repeated scalars are accepted in packed form too, no matter how the field was declared
+         iw.printf("case %s: {\n", makeFieldTag(fieldMetadata.getNumber(), WireType.LENGTH_DELIMITED));
+         iw.inc();
+         iw.println("int $packedLimit = $in.pushLimit($in.readUInt32());");
+         iw.println("while (!$in.isAtEnd()) {");
+         iw.inc();
+         generateScalarFieldRead(messageTypeMetadata, fieldMetadata, iw, noFactory, trackedFields, getUnknownFieldSetFieldStatement, setUnknownFieldSetFieldStatement);
+         iw.dec().println("}");
+         iw.println("$in.popLimit($packedLimit);");
+         iw.println("break;");
+         iw.dec().println("}");
+      }
+   }
+
+   private void generateScalarFieldRead(ProtoMessageTypeMetadata messageTypeMetadata, ProtoFieldMetadata fieldMetadata, IndentWriter iw, boolean noFactory, Map<String, Integer> trackedFields, String getUnknownFieldSetFieldStatement, String setUnknownFieldSetFieldStatement) {
+      final String v = makeFieldLocalVar(fieldMetadata);
+      if (fieldMetadata.getProtobufType() == Type.ENUM) {
+         String mdField = initMarshallerDelegateField(iw, fieldMetadata);
+         iw.println("int enumVal = $in.readEnum();");
+         if (noFactory || fieldMetadata.isRepeated()) {
+            iw.printf("%s ", fieldMetadata.getJavaTypeName());
+         }
+         iw.printf("%s = (%s) %s.getMarshaller().decode(enumVal);\n", v, fieldMetadata.getJavaTypeName(), mdField);
+         iw.printf("if (%s == null) {\n", v);
+         if (getUnknownFieldSetFieldStatement != null) {
+            iw.inc();
+            iw.printf("%s.UnknownFieldSet u = %s;\n", PROTOSTREAM_PACKAGE, getUnknownFieldSetFieldStatement);
+            iw.printf("if (u == null) { u = newUnknownFieldSet($1); %s; }\n", setUnknownFieldSetFieldStatement);
+            iw.printf("u.putVarintField(%d, enumVal);\n", fieldMetadata.getNumber());
+            iw.dec();
+         }
+         iw.println("} else {");
+         iw.inc();
+         genSetField(iw, fieldMetadata, trackedFields, messageTypeMetadata);
+         iw.dec().println("}");
+      } else {
+         if (noFactory || fieldMetadata.isRepeated()) {
+            iw.printf("%s ", fieldMetadata.getJavaTypeName());
+         }
+         iw.printf("%s = %s;\n", v, box(convert("$in." + makeStreamIOMethodName(fieldMetadata, false) + "()", fieldMetadata), fieldMetadata.getJavaType()));
+         genSetField(iw, fieldMetadata, trackedFields, messageTypeMetadata);
+      }
    }
 
    private String generateMapFieldReadMethod(ProtoFieldMetadata fieldMetadata, IndentWriter iw, boolean readNext) {
@@ -700,88 +809,18 @@ public abstract class AbstractMarshallerCodeGenerator {
       if (!messageTypeMetadata.getFields().isEmpty() || getUnknownFieldSetFieldStatement != null) {
          iw.printf("%s $out = (%s) $1.getWriter();\n", TagWriterImpl.class.getName(), TagWriterImpl.class.getName());
          iw.printf("final %s o = (%s) $2;\n", messageTypeMetadata.getJavaClassName(), messageTypeMetadata.getJavaClassName());
-         for (ProtoFieldMetadata fieldMetadata : messageTypeMetadata.getFields().values()) {
-            iw.println("{");
-            iw.inc();
-            if (BaseProtoSchemaGenerator.generateMarshallerDebugComments) {
-               iw.printf("// type = %s, name = %s\n", fieldMetadata.getProtobufType(), fieldMetadata.getName());
+         List<ProtoFieldMetadata> fields = new ArrayList<>(messageTypeMetadata.getFields().values());
+         for (int i = 0; i < fields.size(); ) {
+            int end = i;
+            while (end < fields.size() && isReservableField(fields.get(end))) {
+               end++;
             }
-            final String v = makeFieldLocalVar(fieldMetadata);
-            final String f = fieldMetadata.isRepeated() ? (fieldMetadata.isArray() ? makeArrayLocalVar(fieldMetadata) : makeCollectionLocalVar(fieldMetadata)) : v;
-            iw.print("final ");
-            if (fieldMetadata.isRepeated()) {
-               if (fieldMetadata.isArray()) {
-                  iw.printf("%s[]", fieldMetadata.getJavaTypeName());
-               } else if (fieldMetadata.isMap()) {
-                  ProtoMapMetadata mapFieldMetadata = (ProtoMapMetadata) fieldMetadata;
-                  iw.printf("java.util.Map<%s, %s>",
-                        mapFieldMetadata.getKey().getJavaTypeName(),
-                        mapFieldMetadata.getValue().getJavaTypeName()
-                  );
-               } else {
-                  iw.printf("java.util.Collection<%s>", fieldMetadata.getJavaTypeName());
-               }
+            if (end - i > 1) {
+               generateReservedFieldsWrite(iw, messageTypeMetadata, fields.subList(i, end));
+               i = end;
             } else {
-               iw.print(fieldMetadata.getJavaTypeName());
-            }
-            iw.printf(" %s = %s;\n", f, createGetPropExpr(messageTypeMetadata, fieldMetadata, "o"));
-
-            if (fieldMetadata.isRequired()) {
-               boolean couldBeNull = fieldMetadata.isRepeated()
-                     || fieldMetadata.isBoxedPrimitive()
-                     || fieldMetadata.getProtobufType() == Type.BYTES
-                     || fieldMetadata.getProtobufType().getJavaType() == JavaType.STRING
-                     || fieldMetadata.getProtobufType().getJavaType() == JavaType.BYTE_STRING
-                     || fieldMetadata.getProtobufType().getJavaType() == JavaType.ENUM
-                     || fieldMetadata.getProtobufType().getJavaType() == JavaType.MESSAGE;
-               if (couldBeNull) {
-                  iw.append("if (").append(f).append(" == null) throw new IllegalStateException(\"Required field must not be null : ").append(fieldMetadata.getName()).append("\");\n");
-               }
-            } else if (fieldMetadata.isRepeated() || !fieldMetadata.getJavaType().isPrimitive()) {
-               iw.append("if (").append(f).append(" != null) ");
-            }
-
-            if (fieldMetadata.isRepeated()) {
-               iw.append('\n');
-               iw.inc();
-               if (fieldMetadata.isArray()) {
-                  iw.printf("for (int i = 0; i < %s.length; i++) {\n", f);
-                  iw.inc();
-                  iw.printf("final %s %s = %s[i];\n", fieldMetadata.getJavaTypeName(), v, f);
-               } else if (fieldMetadata.isMap()) {
-                  ProtoMapMetadata mapFieldMetadata = (ProtoMapMetadata) fieldMetadata;
-                  iw.printf("for (java.util.Iterator<java.util.Map.Entry<%s, %s>> it = %s.entrySet().iterator(); it.hasNext(); ) {\n",
-                        mapFieldMetadata.getKey().getJavaTypeName(),
-                        mapFieldMetadata.getValue().getJavaTypeName(),
-                        f);
-                  iw.inc();
-                  iw.printf("final java.util.Map.Entry<%s, %s> %s = it.next();\n",
-                        mapFieldMetadata.getKey().getJavaTypeName(),
-                        mapFieldMetadata.getValue().getJavaTypeName(),
-                        v
-                  );
-                  iw.printf("try (NestedWriter $n = new NestedWriter($1, %d)) {\n", fieldMetadata.getNumber());
-                  iw.inc();
-                  iw.println("$out = $n.getWriter();");
-                  writeFieldValue(mapFieldMetadata.getKey(), iw, v + ".getKey()", "$out");
-                  writeFieldValue(mapFieldMetadata.getValue(), iw, v + ".getValue()", "$out");
-                  iw.dec();
-                  iw.println("}");
-                  iw.printf("$out = (%s) $1.getWriter();\n", TagWriterImpl.class.getName());
-               } else {
-                  iw.printf("for (java.util.Iterator<%s> it = %s.iterator(); it.hasNext(); ) {\n", fieldMetadata.getJavaTypeName(), f);
-                  iw.inc();
-                  iw.printf("final %s %s = it.next();\n", fieldMetadata.getJavaTypeName(), v);
-               }
-            }
-            if (!fieldMetadata.isMap()) {
-               writeFieldValue(fieldMetadata, iw, v);
-            }
-            if (fieldMetadata.isRepeated()) {
-               iw.dec().println("}");
-               iw.dec();
+               generateFieldWrite(iw, messageTypeMetadata, fields.get(i++));
             }
-            iw.dec().println("}");
          }
 
          if (getUnknownFieldSetFieldStatement != null) {
@@ -794,8 +833,159 @@ public abstract class AbstractMarshallerCodeGenerator {
       }
    }
 
+   private void generateFieldWrite(IndentWriter iw, ProtoMessageTypeMetadata messageTypeMetadata, ProtoFieldMetadata fieldMetadata) {
+      iw.println("{");
+      iw.inc();
+      if (BaseProtoSchemaGenerator.generateMarshallerDebugComments) {
+         iw.printf("// type = %s, name = %s\n", fieldMetadata.getProtobufType(), fieldMetadata.getName());
+      }
+      final String v = makeFieldLocalVar(fieldMetadata);
+      final String f = fieldMetadata.isRepeated() ? (fieldMetadata.isArray() ? makeArrayLocalVar(fieldMetadata) : makeCollectionLocalVar(fieldMetadata)) : v;
+      iw.print("final ");
+      if (fieldMetadata.isRepeated()) {
+         if (fieldMetadata.isArray()) {
+            iw.printf("%s[]", fieldMetadata.getJavaTypeName());
+         } else if (fieldMetadata.isMap()) {
+            ProtoMapMetadata mapFieldMetadata = (ProtoMapMetadata) fieldMetadata;
+            iw.printf("java.util.Map<%s, %s>",
+                  mapFieldMetadata.getKey().getJavaTypeName(),
+                  mapFieldMetadata.getValue().getJavaTypeName()
+            );
+         } else {
+            iw.printf("java.util.Collection<%s>", fieldMetadata.getJavaTypeName());
+         }
+      } else {
+         iw.print(fieldMetadata.getJavaTypeName());
+      }
+      iw.printf(" %s = %s;\n", f, createGetPropExpr(messageTypeMetadata, fieldMetadata, "o"));
+
+      if (fieldMetadata.isRequired()) {
+         boolean couldBeNull = fieldMetadata.isRepeated()
+               || fieldMetadata.isBoxedPrimitive()
+               || fieldMetadata.getProtobufType() == Type.BYTES
+               || fieldMetadata.getProtobufType().getJavaType() == JavaType.STRING
+               || fieldMetadata.getProtobufType().getJavaType() == JavaType.BYTE_STRING
+               || fieldMetadata.getProtobufType().getJavaType() == JavaType.ENUM
+               || fieldMetadata.getProtobufType().getJavaType() == JavaType.MESSAGE;
+         if (couldBeNull) {
+            iw.append("if (").append(f).append(" == null) throw new IllegalStateException(\"Required field must not be null : ").append(fieldMetadata.getName()).append("\");\n");
+         }
+      } else if (fieldMetadata.isRepeated() || !fieldMetadata.getJavaType().isPrimitive()) {
+         iw.append("if (").append(f).append(" != null) ");
+      }
+
+      if (fieldMetadata.isPacked()) {
+         iw.println("{");
+         iw.inc();
+         writePackedFieldValue(fieldMetadata, iw, f);
+         iw.dec().println("}");
+         iw.dec().println("}");
+         return;
+      }
+
+      if (fieldMetadata.isRepeated()) {
+         iw.append('\n');
+         iw.inc();
+         if (fieldMetadata.isArray()) {
+            iw.printf("for (int i = 0; i < %s.length; i++) {\n", f);
+            iw.inc();
+            iw.printf("final %s %s = %s[i];\n", fieldMetadata.getJavaTypeName(), v, f);
+         } else if (fieldMetadata.isMap()) {
+            ProtoMapMetadata mapFieldMetadata = (ProtoMapMetadata) fieldMetadata;
+            iw.printf("for (java.util.Iterator<java.util.Map.Entry<%s, %s>> it = %s.entrySet().iterator(); it.hasNext(); ) {\n",
+                  mapFieldMetadata.getKey().getJavaTypeName(),
+                  mapFieldMetadata.getValue().getJavaTypeName(),
+                  f);
+            iw.inc();
+            iw.printf("final java.util.Map.Entry<%s, %s> %s = it.next();\n",
+                  mapFieldMetadata.getKey().getJavaTypeName(),
+                  mapFieldMetadata.getValue().getJavaTypeName(),
+                  v
+            );
+            iw.printf("try (NestedWriter $n = new NestedWriter($1, %d)) {\n", fieldMetadata.getNumber());
+            iw.inc();
+            iw.println("$out = $n.getWriter();");
+            writeFieldValue(mapFieldMetadata.getKey(), iw, v + ".getKey()", "$out");
+            writeFieldValue(mapFieldMetadata.getValue(), iw, v + ".getValue()", "$out");
+            iw.dec();
+            iw.println("}");
+            iw.printf("$out = (%s) $1.getWriter();\n", TagWriterImpl.class.getName());
+         } else {
+            iw.printf("for (java.util.Iterator<%s> it = %s.iterator(); it.hasNext(); ) {\n", fieldMetadata.getJavaTypeName(), f);
+            iw.inc();
+            iw.printf("final %s %s = it.next();\n", fieldMetadata.getJavaTypeName(), v);
+         }
+      }
+      if (!fieldMetadata.isMap()) {
+         writeFieldValue(fieldMetadata, iw, v);
+      }
+      if (fieldMetadata.isRepeated()) {
+         iw.dec().println("}");
+         iw.dec();
+      }
+      iw.dec().println("}");
+   }
+
+   /**
+    * Can the field be written by one of the {@code putTagged} methods of {@link TagWriterImpl} after reserving space for
+    * it? Only fields of a fixed size that are always written qualify, these are the singular fields of primitive type.
+    */
+   private boolean isReservableField(ProtoFieldMetadata fieldMetadata) {
+      if (fieldMetadata.isRepeated() || !fieldMetadata.getJavaType().isPrimitive() || !hasPreEncodedTag(fieldMetadata)) {
+         return false;
+      }
+      return switch (fieldMetadata.getProtobufType()) {
+         case DOUBLE, FLOAT, FIXED32, SFIXED32, FIXED64, SFIXED64, BOOL -> true;
+         default -> false;
+      };
+   }
+
+   /**
+    * Writes a run of consecutive fixed size fields with a single check for space, falling back to writing them one by
+    * one if the writer cannot reserve space.
+    */
+   private void generateReservedFieldsWrite(IndentWriter iw, ProtoMessageTypeMetadata messageTypeMetadata, List<ProtoFieldMetadata> fields) {
+      iw.println("{");
+      iw.inc();
+      int space = 0;
+      for (ProtoFieldMetadata fieldMetadata : fields) {
+         if (BaseProtoSchemaGenerator.generateMarshallerDebugComments) {
+            iw.printf("// type = %s, name = %s\n", fieldMetadata.getProtobufType(), fieldMetadata.getName());
+         }
+         iw.printf("final %s %s = %s;\n", fieldMetadata.getJavaTypeName(), makeFieldLocalVar(fieldMetadata), createGetPropExpr(messageTypeMetadata, fieldMetadata, "o"));
+         space += preEncodedTagSize(fieldMetadata) + switch (fieldMetadata.getProtobufType()) {
+            case BOOL -> 1;
+            case FLOAT, FIXED32, SFIXED32 -> WireType.FIXED_32_SIZE;
+            default -> WireType.FIXED_64_SIZE;
+         };
+      }
+      iw.printf("if ($out.reserve(%d)) {\n", space);
+      iw.inc();
+      for (ProtoFieldMetadata fieldMetadata : fields) {
+         iw.printf("$out.%s(%s, %s);\n", makePutTaggedMethodName(fieldMetadata), makeTagFieldName(fieldMetadata), makeFieldLocalVar(fieldMetadata));
+      }
+      iw.dec().println("} else {");
+      iw.inc();
+      for (ProtoFieldMetadata fieldMetadata : fields) {
+         writeFieldValue(fieldMetadata, iw, makeFieldLocalVar(fieldMetadata));
+      }
+      iw.dec().println("}");
+      iw.dec().println("}");
+   }
+
    private void writeFieldValue(ProtoFieldMetadata fieldMetadata, IndentWriter iw, String v) {
-      writeFieldValue(fieldMetadata, iw, v, "$out");
+      if (!hasPreEncodedTag(fieldMetadata)) {
+         writeFieldValue(fieldMetadata, iw, v, "$out");
+      } else if (fieldMetadata.getProtobufType() == Type.ENUM) {
+         iw.println("{");
+         iw.inc();
+         String mdField = initMarshallerDelegateField(iw, fieldMetadata);
+         iw.printf("$out.%s(%s, %s.getMarshaller().encode(%s));\n", makeTaggedWriteMethodName(fieldMetadata), makeTagFieldName(fieldMetadata), mdField, v);
+         iw.dec();
+         iw.println("}");
+      } else {
+         iw.printf("$out.%s(%s, %s);\n", makeTaggedWriteMethodName(fieldMetadata), makeTagFieldName(fieldMetadata), unbox(v, fieldMetadata.getJavaType()));
+      }
    }
 
    private void writeFieldValue(ProtoFieldMetadata fieldMetadata, IndentWriter iw, String v, String out) {
@@ -852,6 +1042,49 @@ public abstract class AbstractMarshallerCodeGenerator {
       }
    }
 
+   /**
+    * Writes all elements of a packed repeated field at once. The elements are first copied into a primitive array
+    * unless the field is already an array of the right primitive type.
+    */
+   private void writePackedFieldValue(ProtoFieldMetadata fieldMetadata, IndentWriter iw, String f) {
+      final String v = makeFieldLocalVar(fieldMetadata);
+      final Class<?> packedType = switch (fieldMetadata.getProtobufType()) {
+         case INT32, UINT32, SINT32, FIXED32, SFIXED32, ENUM -> int.class;
+         case INT64, UINT64, SINT64, FIXED64, SFIXED64 -> long.class;
+         case DOUBLE -> double.class;
+         case FLOAT -> float.class;
+         case BOOL -> boolean.class;
+         default -> throw new IllegalStateException("Field type cannot be packed : " + fieldMetadata.getProtobufType());
+      };
+      String writeMethod = makePackedWriteMethodName(fieldMetadata);
+      if (fieldMetadata.isArray() && fieldMetadata.getJavaType() == typeFactory.fromClass(packedType)) {
+         iw.printf("$out.%s(%d, %s);\n", writeMethod, fieldMetadata.getNumber(), f);
+         return;
+      }
+      String mdField = null;
+      if (fieldMetadata.getProtobufType() == Type.ENUM) {
+         mdField = initMarshallerDelegateField(iw, fieldMetadata);
+      }
+      iw.printf("final %s[] $p = new %s[%s];\n", packedType.getName(), packedType.getName(), fieldMetadata.isArray() ? f + ".length" : f + ".size()");
+      iw.println("int $i = 0;");
+      if (fieldMetadata.isArray()) {
+         iw.printf("for (int i = 0; i < %s.length; i++) {\n", f);
+         iw.inc();
+         iw.printf("final %s %s = %s[i];\n", fieldMetadata.getJavaTypeName(), v, f);
+      } else {
+         iw.printf("for (java.util.Iterator<%s> it = %s.iterator(); it.hasNext(); ) {\n", fieldMetadata.getJavaTypeName(), f);
+         iw.inc();
+         iw.printf("final %s %s = it.next();\n", fieldMetadata.getJavaTypeName(), v);
+      }
+      if (mdField != null) {
+         iw.printf("$p[$i++] = %s.getMarshaller().encode(%s);\n", mdField, v);
+      } else {
+         iw.printf("$p[$i++] = %s;\n", unbox(v, fieldMetadata.getJavaType()));
+      }
+      iw.dec().println("}");
+      iw.printf("$out.%s(%d, $p);\n", writeMethod, fieldMetadata.getNumber());
+   }
+
    private String initMarshallerDelegateField(IndentWriter iw, ProtoFieldMetadata fieldMetadata) {
       String fieldName = makeMarshallerDelegateFieldName(fieldMetadata);
       iw.printf("if (%s == null) %s = ", fieldName, fieldName);
@@ -888,6 +1121,64 @@ public abstract class AbstractMarshallerCodeGenerator {
       return (isWrite ? "write" : "read") + suffix;
    }
 
+   /**
+    * Make the name of the {@code writePacked} method of {@link org.infinispan.protostream.TagWriter} for a packed field.
+    */
+   private static String makePackedWriteMethodName(ProtoFieldMetadata fieldMetadata) {
+      return switch (fieldMetadata.getProtobufType()) {
+         case DOUBLE -> "writePackedDouble";
+         case FLOAT -> "writePackedFloat";
+         case INT64 -> "writePackedInt64";
+         case UINT64 -> "writePackedUInt64";
+         case INT32 -> "writePackedInt32";
+         case FIXED64 -> "writePackedFixed64";
+         case FIXED32 -> "writePackedFixed32";
+         case BOOL -> "writePackedBool";
+         case UINT32 -> "writePackedUInt32";
+         case ENUM -> "writePackedEnum";
+         case SFIXED32 -> "writePackedSFixed32";
+         case SFIXED64 -> "writePackedSFixed64";
+         case SINT32 -> "writePackedSInt32";
+         case SINT64 -> "writePackedSInt64";
+         default -> throw new IllegalStateException("Field type cannot be packed : " + fieldMetadata.getProtobufType());
+      };
+   }
+
+   private static String makeTaggedWriteMethodName(ProtoFieldMetadata fieldMetadata) {
+      return switch (fieldMetadata.getProtobufType()) {
+         case DOUBLE -> "writeTaggedDouble";
+         case FLOAT -> "writeTaggedFloat";
+         case INT64 -> "writeTaggedInt64";
+         case UINT64 -> "writeTaggedUInt64";
+         case INT32 -> "writeTaggedInt32";
+         case FIXED64 -> "writeTaggedFixed64";
+         case FIXED32 -> "writeTaggedFixed32";
+         case BOOL -> "writeTaggedBool";
+         case STRING -> "writeTaggedString";
+         case BYTES -> "writeTaggedBytes";
+         case UINT32 -> "writeTaggedUInt32";
+         case ENUM -> "writeTaggedEnum";
+         case SFIXED32 -> "writeTaggedSFixed32";
+         case SFIXED64 -> "writeTaggedSFixed64";
+         case SINT32 -> "writeTaggedSInt32";
+         case SINT64 -> "writeTaggedSInt64";
+         default -> throw new IllegalStateException("Field type cannot have a pre-encoded tag : " + fieldMetadata.getProtobufType());
+      };
+   }
+
+   private static String makePutTaggedMethodName(ProtoFieldMetadata fieldMetadata) {
+      return switch (fieldMetadata.getProtobufType()) {
+         case DOUBLE -> "putTaggedDouble";
+         case FLOAT -> "putTaggedFloat";
+         case FIXED64 -> "putTaggedFixed64";
+         case FIXED32 -> "putTaggedFixed32";
+         case BOOL -> "putTaggedBool";
+         case SFIXED32 -> "putTaggedSFixed32";
+         case SFIXED64 -> "putTaggedSFixed64";
+         default -> throw new IllegalStateException("Field type cannot be written to reserved space : " + fieldMetadata.getProtobufType());
+      };
+   }
+
    /**
     * Cast the given value if necessary. This is usually needed for the types that we are forced to represent as 32-bit
     * integers because of Protobuf's lack of support for integral types of 8 and 16 bits.
@@ -3,10 +3,14 @@ package org.infinispan.protostream.annotations.impl;
 import java.io.IOException;
 
 import org.infinispan.protostream.ProtobufTagMarshaller;
+import org.infinispan.protostream.UnknownFieldSet;
+import org.infinispan.protostream.config.Configuration;
 import org.infinispan.protostream.impl.BaseMarshallerDelegate;
 import org.infinispan.protostream.impl.ByteArrayOutputStreamEx;
 import org.infinispan.protostream.impl.Log;
+import org.infinispan.protostream.impl.RawUnknownFieldSet;
 import org.infinispan.protostream.impl.TagWriterImpl;
+import org.infinispan.protostream.impl.UnknownFieldSetImpl;
 
 /**
  * Base class for generated message marshallers. Provides some handy helper methods.
@@ -26,6 +30,13 @@ public class GeneratedMarshallerBase {
       return marshallerDelegate.unmarshall(ctx, null);
    }
 
+   /**
+    * Invoked by generated code.
+    */
+   protected final UnknownFieldSet newUnknownFieldSet(ProtobufTagMarshaller.ReadContext ctx) {
+      return ctx.getSerializationContext().getConfiguration().compactUnknownFields() ? new RawUnknownFieldSet() : new UnknownFieldSetImpl();
+   }
+
    /**
     * Invoked by generated code.
     */
@@ -41,10 +52,15 @@ public class GeneratedMarshallerBase {
     * Invoked by generated code.
     */
    protected final <T> void writeNestedMessage(BaseMarshallerDelegate<T> marshallerDelegate, ProtobufTagMarshaller.WriteContext ctx, int fieldNumber, T message) throws IOException {
-      int maxNestedMessageDepth = ctx.getSerializationContext().getConfiguration().maxNestedMessageDepth();
+      Configuration cfg = ctx.getSerializationContext().getConfiguration();
+      int maxNestedMessageDepth = cfg.maxNestedMessageDepth();
       if (ctx.depth() >= maxNestedMessageDepth) {
          throw log.maxNestedMessageDepth(maxNestedMessageDepth, message.getClass());
       }
+      if (cfg.precomputeNestedMessageSizes() && ctx instanceof TagWriterImpl) {
+         ((TagWriterImpl) ctx).writeNestedMessage(marshallerDelegate, fieldNumber, message);
+         return;
+      }
       try (NestedWriter nested = new NestedWriter(ctx, fieldNumber)) {
          writeMessage(marshallerDelegate, nested.writer, message);
       }
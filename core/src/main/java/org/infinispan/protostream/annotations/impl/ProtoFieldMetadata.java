@@ -30,6 +30,7 @@ public class ProtoFieldMetadata implements HasProtoSchema {
    private final boolean isRequired;
    private final boolean isRepeated;
    private final boolean isArray;
+   private final boolean isPacked;
    private final Object defaultValue;
    private final String propertyName;
    private final XMember declaringMember;
@@ -39,7 +40,7 @@ public class ProtoFieldMetadata implements HasProtoSchema {
 
    ProtoFieldMetadata(int number, String name, String oneof, XClass javaType,
                       XClass repeatedImplementation, Type protobufType, ProtoTypeMetadata protoTypeMetadata,
-                      boolean isRequired, boolean isRepeated, boolean isArray, Object defaultValue,
+                      boolean isRequired, boolean isRepeated, boolean isArray, boolean isPacked, Object defaultValue,
                       XField field) {
       this.number = number;
       this.name = name;
@@ -50,6 +51,7 @@ public class ProtoFieldMetadata implements HasProtoSchema {
       this.isRequired = isRequired;
       this.isRepeated = isRepeated;
       this.isArray = isArray;
+      this.isPacked = isPacked;
       this.defaultValue = defaultValue;
       this.protobufType = protobufType;
       this.declaringMember = field;
@@ -62,7 +64,7 @@ public class ProtoFieldMetadata implements HasProtoSchema {
 
    ProtoFieldMetadata(int number, String name, String oneof, XClass javaType,
                       XClass repeatedImplementation, Type protobufType, ProtoTypeMetadata protoTypeMetadata,
-                      boolean isRequired, boolean isRepeated, boolean isArray, Object defaultValue,
+                      boolean isRequired, boolean isRepeated, boolean isArray, boolean isPacked, Object defaultValue,
                       String propertyName, XMethod definingMethod, XMethod getter, XMethod setter) {
       this.number = number;
       this.name = name;
@@ -73,6 +75,7 @@ public class ProtoFieldMetadata implements HasProtoSchema {
       this.isRequired = isRequired;
       this.isRepeated = isRepeated;
       this.isArray = isArray;
+      this.isPacked = isPacked;
       this.defaultValue = defaultValue;
       this.protobufType = protobufType;
       this.field = null;
@@ -135,6 +138,10 @@ public class ProtoFieldMetadata implements HasProtoSchema {
       return isArray;
    }
 
+   public boolean isPacked() {
+      return isPacked;
+   }
+
    public boolean isMap() {
       return false;
    }
@@ -197,6 +204,10 @@ public class ProtoFieldMetadata implements HasProtoSchema {
          }
       }
 
+      if (isPacked) {
+         iw.append(" [packed = true]");
+      }
+
       if (BaseProtoSchemaGenerator.generateSchemaDebugComments) {
          iw.append(" /* ");
          if (field != null) {
@@ -270,6 +281,7 @@ public class ProtoFieldMetadata implements HasProtoSchema {
             ", isRequired=" + isRequired +
             ", isRepeated=" + isRepeated +
             ", isArray=" + isArray +
+            ", isPacked=" + isPacked +
             ", defaultValue=" + defaultValue +
             ", propertyName='" + propertyName + '\'' +
             ", declaringMember=" + declaringMember +
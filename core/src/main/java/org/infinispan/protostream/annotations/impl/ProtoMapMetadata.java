@@ -11,15 +11,15 @@ public class ProtoMapMetadata extends ProtoFieldMetadata {
    private final ProtoFieldMetadata value;
 
    ProtoMapMetadata(int number, String name, XClass keyJavaType, XClass valueJavaType, XClass mapImplementation, Type keyType, Type valueType, ProtoTypeMetadata protoTypeMetadata, XField field) {
-      super(number, name, null, null, mapImplementation, Type.MAP, null, false, true, false, null, field);
-      key = new ProtoFieldMetadata(1, "key", null, keyJavaType, null, keyType, protoTypeMetadata, false, false, false, null, field);
-      value = new ProtoFieldMetadata(2, "value", null, valueJavaType, null, valueType, protoTypeMetadata, false, false, false, null, field);
+      super(number, name, null, null, mapImplementation, Type.MAP, null, false, true, false, false, null, field);
+      key = new ProtoFieldMetadata(1, "key", null, keyJavaType, null, keyType, protoTypeMetadata, false, false, false, false, null, field);
+      value = new ProtoFieldMetadata(2, "value", null, valueJavaType, null, valueType, protoTypeMetadata, false, false, false, false, null, field);
    }
 
    ProtoMapMetadata(int number, String name, XClass keyJavaType, XClass keyValueType, XClass mapImplementation, Type keyType, Type valueType, ProtoTypeMetadata protoTypeMetadata, String propertyName, XMethod definingMethod, XMethod getter, XMethod setter) {
-      super(number, name, null, null, mapImplementation, Type.MAP, null, false, true, false, null, propertyName, definingMethod, getter, setter);
-      key = new ProtoFieldMetadata(1, "key", null, keyJavaType, null, keyType, protoTypeMetadata, false, false, false, null, null, definingMethod, null, null);
-      value = new ProtoFieldMetadata(2, "value", null, keyValueType, null, valueType, protoTypeMetadata, false, false, false, null, null, definingMethod, null, null);
+      super(number, name, null, null, mapImplementation, Type.MAP, null, false, true, false, false, null, propertyName, definingMethod, getter, setter);
+      key = new ProtoFieldMetadata(1, "key", null, keyJavaType, null, keyType, protoTypeMetadata, false, false, false, false, null, null, definingMethod, null, null);
+      value = new ProtoFieldMetadata(2, "value", null, keyValueType, null, valueType, protoTypeMetadata, false, false, false, false, null, null, definingMethod, null, null);
    }
 
    @Override
@@ -38,6 +38,7 @@ import org.infinispan.protostream.containers.IndexedElementContainer;
 import org.infinispan.protostream.containers.IndexedElementContainerAdapter;
 import org.infinispan.protostream.containers.IterableElementContainer;
 import org.infinispan.protostream.containers.IterableElementContainerAdapter;
+import org.infinispan.protostream.containers.PrimitiveArrayContainerAdapter;
 import org.infinispan.protostream.descriptors.JavaType;
 import org.infinispan.protostream.descriptors.Type;
 import org.infinispan.protostream.impl.Log;
@@ -67,6 +68,8 @@ public class ProtoMessageTypeMetadata extends ProtoTypeMetadata {
 
    private final boolean isIterableContainer;
 
+   private final boolean isPrimitiveArrayContainer;
+
    private XExecutable factory;
 
    private XField unknownFieldSetField;
@@ -85,6 +88,7 @@ public class ProtoMessageTypeMetadata extends ProtoTypeMetadata {
       this.isAdapter = javaClass != annotatedClass;
       this.isIndexedContainer = annotatedClass.isAssignableTo(isAdapter ? IndexedElementContainerAdapter.class : IndexedElementContainer.class);
       this.isIterableContainer = annotatedClass.isAssignableTo(isAdapter ? IterableElementContainerAdapter.class : IterableElementContainer.class);
+      this.isPrimitiveArrayContainer = isAdapter && annotatedClass.isAssignableTo(PrimitiveArrayContainerAdapter.class);
 
       checkInstantiability();
 
@@ -118,6 +122,13 @@ public class ProtoMessageTypeMetadata extends ProtoTypeMetadata {
       return isIterableContainer;
    }
 
+   /**
+    * An indexed container adapter that can also read and write its elements in packed form.
+    */
+   public boolean isPrimitiveArrayContainer() {
+      return isPrimitiveArrayContainer;
+   }
+
    public boolean isContainer() {
       return isIterableContainer || isIndexedContainer;
    }
@@ -521,8 +532,9 @@ public class ProtoMessageTypeMetadata extends ProtoTypeMetadata {
                      throw new ProtoSchemaBuilderException("Primitive field '" + fieldName + "' of " + clazz.getCanonicalName() + " is not nullable so it should be either marked required or should have a default value, while processing " + this.protoSchemaGenerator.generator);
                   }
                   // Create the field metadata
+                  boolean isPacked = validatePacked(clazz, annotation, fieldName, protobufType, isRepeated);
                   fieldMetadata = new ProtoFieldMetadata(number, fieldName, oneof, javaType, repeatedImplementation,
-                        protobufType, protoTypeMetadata, isRequired, isRepeated, isArray, defaultValue,
+                        protobufType, protoTypeMetadata, isRequired, isRepeated, isArray, isPacked, defaultValue,
                         propertyName, method, getter, setter);
                }
 
@@ -633,8 +645,9 @@ public class ProtoMessageTypeMetadata extends ProtoTypeMetadata {
                   } else {
                      repeatedImplementation = getCollectionImplementation(clazz, field.getType(), getCollectionImplementationFromAnnotation(annotation), fieldName, isRepeated);
                   }
+                  boolean isPacked = validatePacked(clazz, annotation, fieldName, protobufType, isRepeated);
                   fieldMetadata = new ProtoFieldMetadata(number, fieldName, oneof, javaType, repeatedImplementation,
-                        protobufType, protoTypeMetadata, isRequired, isRepeated, isArray, defaultValue, field);
+                        protobufType, protoTypeMetadata, isRequired, isRepeated, isArray, isPacked, defaultValue, field);
                }
 
                ProtoFieldMetadata existing = fieldsByNumber.get(number);
@@ -683,6 +696,16 @@ public class ProtoMessageTypeMetadata extends ProtoTypeMetadata {
       return oneof;
    }
 
+   private boolean validatePacked(XClass clazz, ProtoField annotation, String fieldName, Type protobufType, boolean isRepeated) {
+      if (annotation == null || !annotation.packed()) {
+         return false;
+      }
+      if (!isRepeated || !protobufType.isPackable()) {
+         throw new ProtoSchemaBuilderException("Field '" + fieldName + "' of " + clazz.getCanonicalName() + " cannot be marked packed because only repeated fields of scalar numeric, bool or enum types can be packed, while processing " + this.protoSchemaGenerator.generator);
+      }
+      return true;
+   }
+
    private void validateField(XClass clazz, XField field) {
       if (isAdapter) {
          throw new ProtoSchemaBuilderException("No ProtoStream annotations should be present on fields when @ProtoAdapter is present on a class : " + clazz.getCanonicalName() + '.' + field);
@@ -785,9 +808,10 @@ public class ProtoMessageTypeMetadata extends ProtoTypeMetadata {
             }
             fieldMetadata = new ProtoMapMetadata(fieldNumber, fieldName, keyJavaType, javaType, repeatedImplementation, keyType, protobufType, protoTypeMetadata, fieldName, getter, getter, null);
          } else {
+            boolean isPacked = validatePacked(clazz, annotation, fieldName, protobufType, isRepeated);
             fieldMetadata = new ProtoFieldMetadata(fieldNumber, fieldName, oneof, javaType,
                   repeatedImplementation, protobufType, protoTypeMetadata,
-                  false, isRepeated, isArray, defaultValue, fieldName,
+                  false, isRepeated, isArray, isPacked, defaultValue, fieldName,
                   getter, getter, null);
          }
          checkReserved(fieldMetadata);
@@ -1,6 +1,7 @@
 package org.infinispan.protostream.config;
 
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 import org.infinispan.protostream.config.impl.ConfigurationImpl;
 import org.infinispan.protostream.descriptors.AnnotationElement;
@@ -51,6 +52,38 @@ public interface Configuration {
 
    boolean wrapCollectionElements();
 
+   /**
+    * Indicates if the size of nested messages is computed in a first pass, so that generated marshallers can write the
+    * nested message directly into the output of the parent message instead of buffering it. This is {@code false} by
+    * default.
+    */
+   boolean precomputeNestedMessageSizes();
+
+   /**
+    * Indicates if arrays of primitives are written by {@link org.infinispan.protostream.WrappedMessage} as a single
+    * packed field instead of one field per element. This is {@code false} by default.
+    */
+   boolean packPrimitiveArrays();
+
+   /**
+    * Indicates if {@code bytes} values wrapped in a {@link org.infinispan.protostream.WrappedMessage} are read as
+    * read-only {@link java.nio.ByteBuffer} slices of the input instead of copies. This is {@code false} by default.
+    */
+   boolean zeroCopyBytes();
+
+   /**
+    * Indicates if unknown fields are kept in their wire format by a
+    * {@link org.infinispan.protostream.impl.RawUnknownFieldSet} instead of being decoded to one object per value. This
+    * is {@code false} by default.
+    */
+   boolean compactUnknownFields();
+
+   /**
+    * The executor used to parse the files of a {@link org.infinispan.protostream.FileDescriptorSource} concurrently, or
+    * {@code null} if they are parsed one after the other by the registering thread. This is {@code null} by default.
+    */
+   Executor parserExecutor();
+
    AnnotationsConfig annotationsConfig();
 
    interface AnnotationsConfig {
@@ -106,6 +139,73 @@ public interface Configuration {
        */
       Builder wrapCollectionElements(boolean wrapCollectionElements);
 
+      /**
+       * Computes the size of nested messages before writing them, in a separate pass, so they can be written directly
+       * into the output of the enclosing message instead of being buffered and copied. The sizes are computed once per
+       * nested message for each top level marshalling operation.
+       * <p>
+       * WARNING: the marshallers of the nested messages are invoked twice for each message, so they must be
+       * deterministic. The binary format is not affected by this option.
+       *
+       * @param precomputeNestedMessageSizes {@code true} to enable the size computation pass, {@code false} otherwise.
+       * @return This instance.
+       */
+      Builder precomputeNestedMessageSizes(boolean precomputeNestedMessageSizes);
+
+      /**
+       * Writes the elements of arrays of primitives as a single packed field when wrapping them in a
+       * {@link org.infinispan.protostream.WrappedMessage}, instead of writing each (boxed) element as a separate field.
+       * Only arrays whose adapter implements {@link org.infinispan.protostream.containers.PrimitiveArrayContainerAdapter}
+       * are affected. Both formats are always accepted when reading.
+       * <p>
+       * WARNING: enabling this option will change the binary format in a way that older readers cannot parse. Enable it
+       * only when all readers support the packed format.
+       *
+       * @param packPrimitiveArrays {@code true} to pack the elements, {@code false} otherwise.
+       * @return This instance.
+       */
+      Builder packPrimitiveArrays(boolean packPrimitiveArrays);
+
+      /**
+       * Reads the {@code bytes} values wrapped in a {@link org.infinispan.protostream.WrappedMessage}, either top level
+       * or container elements, as read-only {@link java.nio.ByteBuffer} slices that share the input instead of copying
+       * them to a new {@code byte[]}. Inputs that are not backed by an array or a buffer (streams) are still copied.
+       * <p>
+       * WARNING: the caller must guarantee that the input is not modified or reused for as long as the unmarshalled
+       * objects are in use. Also, unmarshalled values are of type {@link java.nio.ByteBuffer} instead of {@code byte[]}.
+       *
+       * @param zeroCopyBytes {@code true} to slice the input, {@code false} to copy.
+       * @return This instance.
+       */
+      Builder zeroCopyBytes(boolean zeroCopyBytes);
+
+      /**
+       * Keeps the unknown fields of a message, the ones a marshaller does not read, as the raw bytes they were read from
+       * instead of one boxed value or copied {@code byte[]} per field. This saves memory and allocations when messages
+       * with many fields unknown to this version of the schema are read and written back, as happens during rolling
+       * upgrades. A field is only decoded if it is requested from the {@link org.infinispan.protostream.UnknownFieldSet}.
+       * <p>
+       * The fields are written back in the order they were read, not ordered by field number.
+       *
+       * @param compactUnknownFields {@code true} to keep the raw bytes, {@code false} to decode every field.
+       * @return This instance.
+       */
+      Builder compactUnknownFields(boolean compactUnknownFields);
+
+      /**
+       * Parses the files registered together in a {@link org.infinispan.protostream.FileDescriptorSource} concurrently,
+       * on the given executor and in the registering thread. The registering thread only waits for the files already
+       * being parsed by the executor, so the executor may be bounded, or even be the one running the registration. The resulting
+       * descriptors and the errors reported to the {@link org.infinispan.protostream.FileDescriptorSource.ProgressCallback}
+       * keep the order of the files in the source, and the callback is only invoked by the registering thread.
+       * <p>
+       * Type resolution is not affected, it always happens in the registering thread, after parsing.
+       *
+       * @param parserExecutor the executor, or {@code null} to parse in the registering thread.
+       * @return This instance.
+       */
+      Builder parserExecutor(Executor parserExecutor);
+
       AnnotationsConfig.Builder annotationsConfig();
 
       Configuration build();
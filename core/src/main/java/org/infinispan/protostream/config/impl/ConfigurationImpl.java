@@ -2,6 +2,7 @@ package org.infinispan.protostream.config.impl;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 import org.infinispan.protostream.config.AnnotationConfiguration;
 import org.infinispan.protostream.config.Configuration;
@@ -19,6 +20,11 @@ public final class ConfigurationImpl implements Configuration {
    private final int maxNestedMessageDepth;
    private final SchemaValidation schemaValidation;
    private final boolean wrapCollectionElements;
+   private final boolean precomputeNestedMessageSizes;
+   private final boolean packPrimitiveArrays;
+   private final boolean zeroCopyBytes;
+   private final boolean compactUnknownFields;
+   private final Executor parserExecutor;
 
    private ConfigurationImpl(BuilderImpl builder, Map<String, AnnotationConfigurationImpl> annotations) {
       this.logOutOfSequenceReads = builder.logOutOfSequenceReads;
@@ -27,6 +33,11 @@ public final class ConfigurationImpl implements Configuration {
       this.maxNestedMessageDepth = builder.maxNestedMessageDepth;
       this.schemaValidation = builder.schemaValidation;
       this.wrapCollectionElements = builder.wrapCollectionElements;
+      this.precomputeNestedMessageSizes = builder.precomputeNestedMessageSizes;
+      this.packPrimitiveArrays = builder.packPrimitiveArrays;
+      this.zeroCopyBytes = builder.zeroCopyBytes;
+      this.compactUnknownFields = builder.compactUnknownFields;
+      this.parserExecutor = builder.parserExecutor;
       this.annotationsConfig = new AnnotationsConfigImpl(annotations, builder.logUndefinedAnnotations);
    }
 
@@ -55,6 +66,31 @@ public final class ConfigurationImpl implements Configuration {
       return wrapCollectionElements;
    }
 
+   @Override
+   public boolean precomputeNestedMessageSizes() {
+      return precomputeNestedMessageSizes;
+   }
+
+   @Override
+   public boolean packPrimitiveArrays() {
+      return packPrimitiveArrays;
+   }
+
+   @Override
+   public boolean zeroCopyBytes() {
+      return zeroCopyBytes;
+   }
+
+   @Override
+   public boolean compactUnknownFields() {
+      return compactUnknownFields;
+   }
+
+   @Override
+   public Executor parserExecutor() {
+      return parserExecutor;
+   }
+
    @Override
    public AnnotationsConfig annotationsConfig() {
       return annotationsConfig;
@@ -69,6 +105,12 @@ public final class ConfigurationImpl implements Configuration {
             ", annotationsConfig=" + annotationsConfig +
             ", maxNestedMessageDepth=" + maxNestedMessageDepth +
             ", schemaValidation=" + schemaValidation +
+            ", wrapCollectionElements=" + wrapCollectionElements +
+            ", precomputeNestedMessageSizes=" + precomputeNestedMessageSizes +
+            ", packPrimitiveArrays=" + packPrimitiveArrays +
+            ", zeroCopyBytes=" + zeroCopyBytes +
+            ", compactUnknownFields=" + compactUnknownFields +
+            ", parserExecutor=" + parserExecutor +
             '}';
    }
 
@@ -108,6 +150,11 @@ public final class ConfigurationImpl implements Configuration {
       private Boolean logUndefinedAnnotations;
       private SchemaValidation schemaValidation = SchemaValidation.DEFAULT;
       private boolean wrapCollectionElements;
+      private boolean precomputeNestedMessageSizes;
+      private boolean packPrimitiveArrays;
+      private boolean zeroCopyBytes;
+      private boolean compactUnknownFields;
+      private Executor parserExecutor;
 
       final class AnnotationsConfigBuilderImpl implements AnnotationsConfig.Builder {
 
@@ -179,6 +226,36 @@ public final class ConfigurationImpl implements Configuration {
          return this;
       }
 
+      @Override
+      public Builder precomputeNestedMessageSizes(boolean precomputeNestedMessageSizes) {
+         this.precomputeNestedMessageSizes = precomputeNestedMessageSizes;
+         return this;
+      }
+
+      @Override
+      public Builder packPrimitiveArrays(boolean packPrimitiveArrays) {
+         this.packPrimitiveArrays = packPrimitiveArrays;
+         return this;
+      }
+
+      @Override
+      public Builder zeroCopyBytes(boolean zeroCopyBytes) {
+         this.zeroCopyBytes = zeroCopyBytes;
+         return this;
+      }
+
+      @Override
+      public Builder compactUnknownFields(boolean compactUnknownFields) {
+         this.compactUnknownFields = compactUnknownFields;
+         return this;
+      }
+
+      @Override
+      public Builder parserExecutor(Executor parserExecutor) {
+         this.parserExecutor = parserExecutor;
+         return this;
+      }
+
       @Override
       public AnnotationsConfig.Builder annotationsConfig() {
          if (annotationsConfigBuilder == null) {
@@ -0,0 +1,34 @@
+package org.infinispan.protostream.containers;
+
+import java.io.IOException;
+
+import org.infinispan.protostream.TagReader;
+import org.infinispan.protostream.TagWriter;
+
+/**
+ * An indexed container adapter for arrays of primitives. The elements can be written all at once as a single packed
+ * field, avoiding the boxing and the per-element tag of {@link IndexedElementContainerAdapter}. The packed field uses
+ * the number of the {@link org.infinispan.protostream.WrappedMessage} field that holds a single element, so the values
+ * have the same encoding as in the element by element format.
+ *
+ * @since 5.0
+ */
+public interface PrimitiveArrayContainerAdapter<C, E> extends IndexedElementContainerAdapter<C, E> {
+
+   /**
+    * The number of the {@link org.infinispan.protostream.WrappedMessage} field used for a single element, for example
+    * {@link org.infinispan.protostream.WrappedMessage#WRAPPED_INT32}.
+    */
+   int getElementFieldNumber();
+
+   /**
+    * Writes all elements of the container as a single packed field.
+    */
+   void writeElements(TagWriter out, int fieldNumber, C container) throws IOException;
+
+   /**
+    * Reads the elements of a packed field into the container, which was already created with the right size. The
+    * reader is limited to the contents of the packed field.
+    */
+   void readElements(TagReader in, C container) throws IOException;
+}
@@ -23,13 +23,26 @@ import org.infinispan.protostream.impl.SparseBitSet;
  * @since 2.0
  */
 public final class Descriptor extends ReservableDescriptor implements GenericDescriptor {
+
+   /**
+    * Fields with numbers below this are looked up in an array indexed by field number, so that the lookup done for every
+    * tag while parsing is an array load. Higher numbers, which are rare, are looked up in a map.
+    */
+   private static final int MAX_INDEXED_FIELD_NUMBER = 256;
+
+   private static final FieldDescriptor[] NO_FIELDS = new FieldDescriptor[0];
+
    private Integer typeId;
    private final List<Option> options;
    private final List<FieldDescriptor> fields;
    private final List<OneOfDescriptor> oneofs;
    private final List<Descriptor> nestedMessageTypes;
    private final List<EnumDescriptor> nestedEnumTypes;
-   private final Map<Integer, FieldDescriptor> fieldsByNumber;
+   private final FieldDescriptor[] fieldsByIndex;
+   /**
+    * The fields numbered {@link #MAX_INDEXED_FIELD_NUMBER} or above, or {@code null} if there are none.
+    */
+   private final Map<Integer, FieldDescriptor> sparseFieldsByNumber;
    private final Map<String, FieldDescriptor> fieldsByName;
    private FileDescriptor fileDescriptor;
    private Descriptor containingType;
@@ -40,13 +53,33 @@ public final class Descriptor extends ReservableDescriptor implements GenericDes
       this.fields = List.copyOf(builder.fields);
       this.oneofs = List.copyOf(builder.oneOfs);
       int totalFields = this.fields.size() + this.oneofs.size();
-      fieldsByNumber = new HashMap<>(totalFields);
+      Map<Integer, FieldDescriptor> fieldsByNumber = new HashMap<>(totalFields);
       fieldsByName = new HashMap<>(totalFields);
-      addFields(builder.fields);
+      addFields(builder.fields, fieldsByNumber);
       for (OneOfDescriptor oneOf : oneofs) {
-         addFields(oneOf.getFields());
+         addFields(oneOf.getFields(), fieldsByNumber);
          oneOf.setContainingMessage(this);
       }
+      int maxIndexedNumber = 0;
+      Map<Integer, FieldDescriptor> sparseFields = null;
+      for (FieldDescriptor field : fieldsByNumber.values()) {
+         int number = field.getNumber();
+         if (number < MAX_INDEXED_FIELD_NUMBER) {
+            maxIndexedNumber = Math.max(maxIndexedNumber, number);
+         } else {
+            if (sparseFields == null) {
+               sparseFields = new HashMap<>();
+            }
+            sparseFields.put(number, field);
+         }
+      }
+      fieldsByIndex = fieldsByNumber.isEmpty() ? NO_FIELDS : new FieldDescriptor[maxIndexedNumber + 1];
+      for (FieldDescriptor field : fieldsByNumber.values()) {
+         if (field.getNumber() < MAX_INDEXED_FIELD_NUMBER) {
+            fieldsByIndex[field.getNumber()] = field;
+         }
+      }
+      sparseFieldsByNumber = sparseFields;
       this.nestedMessageTypes = List.copyOf(builder.nestedMessageTypes);
       this.nestedEnumTypes = List.copyOf(builder.nestedEnumTypes);
       for (Descriptor nested : nestedMessageTypes) {
@@ -57,7 +90,7 @@ public final class Descriptor extends ReservableDescriptor implements GenericDes
       }
    }
 
-   private void addFields(List<? extends FieldDescriptor> fields) {
+   private void addFields(List<? extends FieldDescriptor> fields, Map<Integer, FieldDescriptor> fieldsByNumber) {
       for (FieldDescriptor field : fields) {
          if (reservedNames.contains(field.getName())) {
             throw Log.LOG.reservedName(field.getName(), fullName);
@@ -106,7 +139,10 @@ public final class Descriptor extends ReservableDescriptor implements GenericDes
    }
 
    public FieldDescriptor findFieldByNumber(int number) {
-      return fieldsByNumber.get(number);
+      if (number >= 0 && number < fieldsByIndex.length) {
+         return fieldsByIndex[number];
+      }
+      return sparseFieldsByNumber == null ? null : sparseFieldsByNumber.get(number);
    }
 
    public FieldDescriptor findFieldByName(String name) {
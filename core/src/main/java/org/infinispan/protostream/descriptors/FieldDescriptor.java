@@ -81,6 +81,19 @@ public class FieldDescriptor extends AnnotatedDescriptorImpl implements Annotate
       return false;
    }
 
+   /**
+    * Indicates if this is a repeated field of a scalar numeric, bool or enum type that was explicitly declared with
+    * the {@code [packed = true]} option, and should be written using the packed encoding. Readers must accept both the
+    * packed and the unpacked encoding regardless of this option.
+    */
+   public boolean isPacked() {
+      if (!isRepeated() || type == null || !type.isPackable()) {
+         return false;
+      }
+      Option packed = getOptionByName("packed");
+      return packed != null && "true".equals(String.valueOf(packed.getValue()));
+   }
+
    public JavaType getJavaType() {
       return getType().getJavaType();
    }
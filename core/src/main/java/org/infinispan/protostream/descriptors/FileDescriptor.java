@@ -148,6 +148,13 @@ public final class FileDescriptor {
       return Stream.concat(dependencies.stream(), publicDependencies.stream()).toList();
    }
 
+   /**
+    * The imports declared as {@code import public}, a subset of {@link #getDependencies()}.
+    */
+   public List<String> getPublicDependencies() {
+      return publicDependencies;
+   }
+
    public boolean isResolved() {
       return status.isResolved();
    }
@@ -1,5 +1,6 @@
 package org.infinispan.protostream.descriptors;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -47,18 +48,26 @@ public class ResolutionContext {
    }
 
    public void resolve() {
-      // clear errors and put in unresolved state whatever is not already resolved
+      // files resolved by previous calls stay resolved, only the new ones and those left unresolved need to be visited
+      List<FileDescriptor> pending = new ArrayList<>();
       for (FileDescriptor fileDescriptor : fileDescriptorMap.values()) {
+         if (!fileDescriptor.isResolved()) {
+            pending.add(fileDescriptor);
+         }
+      }
+
+      // clear errors and put in unresolved state whatever is not already resolved
+      for (FileDescriptor fileDescriptor : pending) {
          fileDescriptor.clearErrors();
       }
 
-      // resolve imports and types for all files
-      for (FileDescriptor fileDescriptor : fileDescriptorMap.values()) {
+      // resolve imports and types
+      for (FileDescriptor fileDescriptor : pending) {
          fileDescriptor.resolveDependencies(this);
       }
 
       // clear errors and leave in unresolved state whatever could not be resolved
-      for (FileDescriptor fileDescriptor : fileDescriptorMap.values()) {
+      for (FileDescriptor fileDescriptor : pending) {
          fileDescriptor.clearErrors();
       }
    }
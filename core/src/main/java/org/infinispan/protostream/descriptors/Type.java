@@ -100,6 +100,14 @@ public enum Type {
             this == FIXED64;
    }
 
+   /**
+    * Returns {@code true} only if repeated fields of this type can use the packed encoding (scalar numeric, bool and
+    * enum types), {@code false} otherwise.
+    */
+   public boolean isPackable() {
+      return wireType == WireType.VARINT || wireType == WireType.FIXED32 || wireType == WireType.FIXED64;
+   }
+
    public boolean isValidMapKey() {
       return switch (this) {
          case UINT32, UINT64, SINT32, SINT64, SFIXED32, SFIXED64, INT32, INT64, STRING, BOOL, FIXED32, FIXED64 -> true;
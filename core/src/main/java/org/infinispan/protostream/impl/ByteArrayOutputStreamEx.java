@@ -18,7 +18,7 @@ public final class ByteArrayOutputStreamEx extends ByteArrayOutputStream {
       super(size);
    }
 
-   public synchronized ByteBuffer getByteBuffer() {
+   public ByteBuffer getByteBuffer() {
       return ByteBuffer.wrap(buf, 0, count);
    }
 }
\ No newline at end of file
@@ -1,8 +1,7 @@
 package org.infinispan.protostream.impl;
 
 import java.io.IOException;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Arrays;
 
 import org.infinispan.protostream.EnumMarshaller;
 import org.infinispan.protostream.ProtobufTagMarshaller;
@@ -14,21 +13,100 @@ import org.infinispan.protostream.descriptors.EnumValueDescriptor;
 import org.infinispan.protostream.descriptors.FieldDescriptor;
 
 /**
+ * Encodes and decodes enums with tables computed once from the {@link EnumDescriptor} and the {@link EnumMarshaller},
+ * which is expected to be a fixed mapping: the number of each enum constant indexed by ordinal and, if the defined
+ * numbers are dense enough, the constant of each number between the lowest and the highest defined one. Anything
+ * outside the tables is handed over to the marshaller.
+ *
  * @author anistor@redhat.com
  * @since 1.0
  */
 public final class EnumMarshallerDelegate<T extends Enum<T>> extends BaseMarshallerDelegate<T> {
 
+   /**
+    * Marks the constants that are not in {@link #numberByOrdinal}, because the marshaller rejects them or maps them to an
+    * undefined number. Encoding them takes the slow path, which reports the error.
+    */
+   private static final long NO_NUMBER = Long.MIN_VALUE;
+
+   /**
+    * The table of constants by number is only built if it has no more than this many empty slots per defined number.
+    */
+   private static final int MAX_EMPTY_SLOTS_PER_VALUE = 3;
+
    private final EnumMarshaller<T> enumMarshaller;
 
-   private final Set<Integer> definedValues;
+   /**
+    * The defined numbers, sorted.
+    */
+   private final int[] definedValues;
+
+   private final long[] numberByOrdinal;
+
+   private final int minNumber;
+
+   /**
+    * The decoded constant of each number starting with {@link #minNumber}, or {@code null} if the defined numbers are too
+    * sparse.
+    */
+   private final T[] constantByNumber;
 
    EnumMarshallerDelegate(EnumMarshaller<T> enumMarshaller, EnumDescriptor enumDescriptor) {
       this.enumMarshaller = enumMarshaller;
-      definedValues = new HashSet<>();
-      for (EnumValueDescriptor evd : enumDescriptor.getValues()) {
-         definedValues.add(evd.getNumber());
+      definedValues = enumDescriptor.getValues().stream().mapToInt(EnumValueDescriptor::getNumber).sorted().distinct().toArray();
+
+      T[] constants = enumConstants(enumMarshaller);
+      numberByOrdinal = new long[constants.length];
+      for (T constant : constants) {
+         long number = NO_NUMBER;
+         try {
+            int encoded = enumMarshaller.encode(constant);
+            if (isDefined(encoded)) {
+               number = encoded;
+            }
+         } catch (RuntimeException e) {
+            // left for encode() to report
+         }
+         numberByOrdinal[constant.ordinal()] = number;
       }
+
+      minNumber = definedValues.length == 0 ? 0 : definedValues[0];
+      constantByNumber = constantsByNumber(constants);
+   }
+
+   private T[] constantsByNumber(T[] constants) {
+      if (constants.length == 0 || definedValues.length == 0) {
+         return null;
+      }
+      long span = (long) definedValues[definedValues.length - 1] - minNumber + 1;
+      if (span > (long) definedValues.length * (MAX_EMPTY_SLOTS_PER_VALUE + 1)) {
+         return null;
+      }
+      T[] table = Arrays.copyOf(constants, (int) span);
+      try {
+         for (int i = 0; i < table.length; i++) {
+            table[i] = enumMarshaller.decode(minNumber + i);
+         }
+      } catch (RuntimeException e) {
+         // the marshaller does not follow the contract, leave the errors to decode()
+         return null;
+      }
+      return table;
+   }
+
+   private static <T extends Enum<T>> T[] enumConstants(EnumMarshaller<T> enumMarshaller) {
+      T[] constants = enumMarshaller.getJavaClass().getEnumConstants();
+      if (constants == null) {
+         // not an enum class, let the marshaller handle everything
+         @SuppressWarnings("unchecked")
+         T[] none = (T[]) new Enum[0];
+         return none;
+      }
+      return constants;
+   }
+
+   private boolean isDefined(int number) {
+      return Arrays.binarySearch(definedValues, number) >= 0;
    }
 
    @Override
@@ -42,11 +120,19 @@ public final class EnumMarshallerDelegate<T extends Enum<T>> extends BaseMarshal
    }
 
    public void encode(int fieldNumber, T value, TagWriter out) throws IOException {
+      out.writeEnum(fieldNumber, encode(value));
+   }
+
+   private int encode(T value) {
+      int ordinal = value.ordinal();
+      if (ordinal < numberByOrdinal.length && numberByOrdinal[ordinal] != NO_NUMBER) {
+         return (int) numberByOrdinal[ordinal];
+      }
       int enumValue = enumMarshaller.encode(value);
-      if (!definedValues.contains(enumValue)) {
+      if (!isDefined(enumValue)) {
          throw new IllegalStateException("Undefined enum value " + enumValue + " for " + enumMarshaller.getTypeName());
       }
-      out.writeEnum(fieldNumber, enumValue);
+      return enumValue;
    }
 
    @Override
@@ -77,7 +163,14 @@ public final class EnumMarshallerDelegate<T extends Enum<T>> extends BaseMarshal
    }
 
    public T decode(int expectedTag, int enumValue, UnknownFieldSet unknownFieldSet) {
-      T decoded = enumMarshaller.decode(enumValue);
+      T decoded;
+      int index = enumValue - minNumber;
+      // the subtraction may overflow, so both signs are checked
+      if (constantByNumber != null && enumValue >= minNumber && index >= 0 && index < constantByNumber.length) {
+         decoded = constantByNumber[index];
+      } else {
+         decoded = enumMarshaller.decode(enumValue);
+      }
 
       if (decoded == null && unknownFieldSet != null) {
          // the enum value was not recognized by the EnumMarshaller so rather than discarding it we add it to the unknown
@@ -21,9 +21,11 @@ import static org.infinispan.protostream.WrappedMessage.WRAPPED_TYPE_NAME;
 import static org.infinispan.protostream.WrappedMessage.WRAPPED_UINT32;
 import static org.infinispan.protostream.WrappedMessage.WRAPPED_UINT64;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -36,6 +38,7 @@ import org.infinispan.protostream.ImmutableSerializationContext;
 import org.infinispan.protostream.ProtobufParser;
 import org.infinispan.protostream.ProtobufUtil;
 import org.infinispan.protostream.TagHandler;
+import org.infinispan.protostream.TagReader;
 import org.infinispan.protostream.TagWriter;
 import org.infinispan.protostream.WrappedMessage;
 import org.infinispan.protostream.descriptors.AnnotatedDescriptor;
@@ -70,15 +73,57 @@ public final class JsonUtils {
 
    private static final String JSON_VALUE_FIELD = "_value";
 
+   /**
+    * When streaming, the output is buffered until it reaches this many chars and then handed over to the writer.
+    */
+   private static final int OUTPUT_BUFFER_SIZE = 8192;
+
    private JsonUtils() {
    }
 
    public static byte[] fromCanonicalJSON(ImmutableSerializationContext ctx, Reader reader) throws IOException {
-      ByteArrayOutputStream baos = new ByteArrayOutputStream(ProtobufUtil.DEFAULT_ARRAY_BUFFER_SIZE);
+      try (reader) {
+         TagWriterImpl writer = TagWriterImpl.newReusableInstance(ctx, ProtobufUtil.DEFAULT_ARRAY_BUFFER_SIZE);
+         fromCanonicalJSON(ctx, jsonFactory.createParser(reader), writer);
+         return writer.toByteArray();
+      }
+   }
 
-      try (reader; baos) {
-         TagWriter writer = TagWriterImpl.newInstanceNoBuffer(ctx, baos);
-         JsonParser parser = jsonFactory.createParser(reader);
+   public static byte[] fromCanonicalJSON(ImmutableSerializationContext ctx, InputStream in) throws IOException {
+      try (in) {
+         TagWriterImpl writer = TagWriterImpl.newReusableInstance(ctx, ProtobufUtil.DEFAULT_ARRAY_BUFFER_SIZE);
+         fromCanonicalJSON(ctx, jsonFactory.createParser(in), writer);
+         return writer.toByteArray();
+      }
+   }
+
+   /**
+    * Converts JSON read from a {@link Reader} and writes the Protobuf encoding to the given writer. The writer is flushed
+    * but the reader is not closed.
+    */
+   public static void fromCanonicalJSON(ImmutableSerializationContext ctx, Reader reader, TagWriter out) throws IOException {
+      JsonParser parser = jsonFactory.createParser(reader);
+      parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+      fromCanonicalJSON(ctx, parser, out);
+   }
+
+   /**
+    * Like {@link #fromCanonicalJSON(ImmutableSerializationContext, Reader, TagWriter)}, but reads UTF-8 encoded JSON
+    * bytes, which spares the decoding to chars.
+    */
+   public static void fromCanonicalJSON(ImmutableSerializationContext ctx, InputStream in, TagWriter out) throws IOException {
+      JsonParser parser = jsonFactory.createParser(in);
+      parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+      fromCanonicalJSON(ctx, parser, out);
+   }
+
+   /**
+    * The top level fields go straight to the output. Message bodies need their length written before them, so each one
+    * is assembled in a single reusable buffer, nested messages included, and then copied to the output in one go.
+    */
+   private static void fromCanonicalJSON(ImmutableSerializationContext ctx, JsonParser parser, TagWriter out) throws IOException {
+      try (parser) {
+         TagWriterImpl messageWriter = null;
          while (true) {
             JsonToken token = parser.nextToken();
             if (token == null) {
@@ -86,7 +131,12 @@ public final class JsonUtils {
             }
             switch (token) {
                case START_OBJECT:
-                  processDocument(ctx, parser, writer);
+                  if (messageWriter == null) {
+                     messageWriter = TagWriterImpl.newReusableInstance(ctx, ProtobufUtil.DEFAULT_ARRAY_BUFFER_SIZE);
+                  } else {
+                     messageWriter.reset();
+                  }
+                  processDocument(ctx, parser, out, messageWriter);
                   break;
                case VALUE_NULL:
                   // we got null input, we write nothing out
@@ -95,14 +145,13 @@ public final class JsonUtils {
                   throw new IllegalStateException("Invalid top level object! Found token: " + token);
             }
          }
-         writer.flush();
-         return baos.toByteArray();
+         out.flush();
       } catch (JsonProcessingException e) {
          throw new IllegalStateException("Invalid JSON", e);
       }
    }
 
-   private static void processDocument(ImmutableSerializationContext ctx, JsonParser parser, TagWriter writer) throws IOException {
+   private static void processDocument(ImmutableSerializationContext ctx, JsonParser parser, TagWriter writer, TagWriterImpl messageWriter) throws IOException {
       while (true) {
          JsonToken token = parser.nextToken();
          if (token == null) {
@@ -146,9 +195,18 @@ public final class JsonUtils {
                   case ENUM:
                      processEnum(parser, writer, (EnumDescriptor) descriptorByName);
                      break;
-                  case MESSAGE:
-                     processObject(ctx, parser, writer, (Descriptor) descriptorByName, null, true);
+                  case MESSAGE: {
+                     Descriptor messageDescriptor = (Descriptor) descriptorByName;
+                     Integer topLevelTypeId = messageDescriptor.getTypeId();
+                     if (topLevelTypeId == null) {
+                        writer.writeString(WRAPPED_TYPE_NAME, messageDescriptor.getFullName());
+                     } else {
+                        writer.writeUInt32(WRAPPED_TYPE_ID, topLevelTypeId);
+                     }
+                     processFields(ctx, parser, messageWriter, messageDescriptor);
+                     writer.writeBytes(WRAPPED_MESSAGE, messageWriter.getByteBuffer());
                      break;
+                  }
                   default:
                      processPrimitive(parser, writer, fieldType);
                }
@@ -212,10 +270,13 @@ public final class JsonUtils {
       }
    }
 
-   private static void processObject(ImmutableSerializationContext ctx, JsonParser parser, TagWriter writer, Descriptor messageDescriptor, Integer fieldNumber, boolean topLevel) throws IOException {
-      ByteArrayOutputStream baos = new ByteArrayOutputStream(ProtobufUtil.DEFAULT_ARRAY_BUFFER_SIZE);
-      TagWriter nestedWriter = TagWriterImpl.newInstanceNoBuffer(ctx, baos);
+   private static void processObject(ImmutableSerializationContext ctx, JsonParser parser, TagWriterImpl writer, Descriptor messageDescriptor, int fieldNumber) throws IOException {
+      int lengthPos = writer.startLengthDelimitedField(fieldNumber);
+      processFields(ctx, parser, writer, messageDescriptor);
+      writer.endLengthDelimitedField(lengthPos);
+   }
 
+   private static void processFields(ImmutableSerializationContext ctx, JsonParser parser, TagWriterImpl writer, Descriptor messageDescriptor) throws IOException {
       String currentField = null;
 
       out:
@@ -228,18 +289,18 @@ public final class JsonUtils {
             case END_OBJECT:
                break out;
             case START_ARRAY:
-               processArray(ctx, messageDescriptor.getFullName(), currentField, parser, nestedWriter);
+               processArray(ctx, currentField, messageDescriptor.findFieldByName(currentField), parser, writer);
                break;
             case START_OBJECT: {
                FieldDescriptor fd = messageDescriptor.findFieldByName(currentField);
                if (fd.isMap()) {
-                  processMap(ctx, (MapDescriptor) fd, parser, nestedWriter);
+                  processMap(ctx, (MapDescriptor) fd, parser, writer);
                } else {
                   Descriptor messageType = fd.getMessageType();
                   if (messageType == null) {
                      throw new IllegalStateException("Field '" + currentField + "' is not an object");
                   }
-                  processObject(ctx, parser, nestedWriter, messageType, fd.getNumber(), false);
+                  processObject(ctx, parser, writer, messageType, fd.getNumber());
                }
                break;
             }
@@ -257,9 +318,9 @@ public final class JsonUtils {
                }
 
                if (fd.getType() == Type.ENUM) {
-                  writeEnumField(parser, nestedWriter, fd, fd.getNumber());
+                  writeEnumField(parser, writer, fd, fd.getNumber());
                } else {
-                  writeField(parser, nestedWriter, fd.getType(), fd.getNumber());
+                  writeField(parser, writer, fd.getType(), fd.getNumber());
                }
                break;
             }
@@ -268,25 +329,9 @@ public final class JsonUtils {
                break;
          }
       }
-
-      if (topLevel) {
-         Integer topLevelTypeId = messageDescriptor.getTypeId();
-         if (topLevelTypeId == null) {
-            writer.writeString(WRAPPED_TYPE_NAME, messageDescriptor.getFullName());
-         } else {
-            writer.writeUInt32(WRAPPED_TYPE_ID, topLevelTypeId);
-         }
-         nestedWriter.flush();
-         writer.writeBytes(WRAPPED_MESSAGE, baos.toByteArray());
-      } else {
-         nestedWriter.flush();
-         writer.writeBytes(fieldNumber, baos.toByteArray());
-      }
-
-      writer.flush();
    }
 
-   private static void processMap(ImmutableSerializationContext ctx, MapDescriptor md, JsonParser parser, TagWriter writer) throws IOException {
+   private static void processMap(ImmutableSerializationContext ctx, MapDescriptor md, JsonParser parser, TagWriterImpl writer) throws IOException {
       while (true) {
          JsonToken token = parser.nextToken();
          if (token == JsonToken.END_OBJECT) {
@@ -295,37 +340,34 @@ public final class JsonUtils {
          if (token != JsonToken.FIELD_NAME) {
             throw new IllegalStateException("Unexpected token");
          }
-         ByteArrayOutputStream baos = new ByteArrayOutputStream(ProtobufUtil.DEFAULT_ARRAY_BUFFER_SIZE);
-         TagWriter nestedWriter = TagWriterImpl.newInstanceNoBuffer(ctx, baos);
+         int lengthPos = writer.startLengthDelimitedField(md.getNumber());
          String key = parser.getCurrentName();
          switch (md.getKeyType()) {
-            case STRING -> nestedWriter.writeString(1, key);
-            case INT32 -> nestedWriter.writeInt32(1, Integer.parseInt(key));
-            case INT64 -> nestedWriter.writeInt64(1, Long.parseLong(key));
-            case FIXED32 -> nestedWriter.writeFixed32(1, Integer.parseInt(key));
-            case FIXED64 -> nestedWriter.writeFixed64(1, Long.parseLong(key));
-            case SINT32 -> nestedWriter.writeSInt32(1, Integer.parseInt(key));
-            case SINT64 -> nestedWriter.writeSInt64(1, Long.parseLong(key));
-            case SFIXED32 -> nestedWriter.writeSFixed32(1, Integer.parseInt(key));
-            case SFIXED64 -> nestedWriter.writeSFixed64(1, Long.parseLong(key));
-            case UINT32 -> nestedWriter.writeUInt32(1, Integer.parseInt(key));
-            case UINT64 -> nestedWriter.writeUInt64(1, Long.parseLong(key));
-         }
-         processMapValue(ctx, parser, nestedWriter, md);
-         writer.writeBytes(md.getNumber(), baos.toByteArray());
-         writer.flush();
+            case STRING -> writer.writeString(1, key);
+            case INT32 -> writer.writeInt32(1, Integer.parseInt(key));
+            case INT64 -> writer.writeInt64(1, Long.parseLong(key));
+            case FIXED32 -> writer.writeFixed32(1, Integer.parseInt(key));
+            case FIXED64 -> writer.writeFixed64(1, Long.parseLong(key));
+            case SINT32 -> writer.writeSInt32(1, Integer.parseInt(key));
+            case SINT64 -> writer.writeSInt64(1, Long.parseLong(key));
+            case SFIXED32 -> writer.writeSFixed32(1, Integer.parseInt(key));
+            case SFIXED64 -> writer.writeSFixed64(1, Long.parseLong(key));
+            case UINT32 -> writer.writeUInt32(1, Integer.parseInt(key));
+            case UINT64 -> writer.writeUInt64(1, Long.parseLong(key));
+         }
+         processMapValue(ctx, parser, writer, md);
+         writer.endLengthDelimitedField(lengthPos);
       }
-
    }
 
-   private static void processMapValue(ImmutableSerializationContext ctx, JsonParser parser, TagWriter writer, MapDescriptor md) throws IOException {
+   private static void processMapValue(ImmutableSerializationContext ctx, JsonParser parser, TagWriterImpl writer, MapDescriptor md) throws IOException {
       JsonToken token = parser.nextToken();
       if (token == null) {
          return;
       }
       switch (token) {
          case START_OBJECT: {
-            processObject(ctx, parser, writer, md.getMessageType(),2, false);
+            processObject(ctx, parser, writer, md.getMessageType(), 2);
             break;
          }
          case VALUE_STRING:
@@ -356,7 +398,6 @@ public final class JsonUtils {
             }
             break;
       }
-      writer.flush();
    }
 
 
@@ -410,7 +451,7 @@ public final class JsonUtils {
       };
    }
 
-   private static void processArray(ImmutableSerializationContext ctx, String type, String field, JsonParser parser, TagWriter writer) throws IOException {
+   private static void processArray(ImmutableSerializationContext ctx, String field, FieldDescriptor fd, JsonParser parser, TagWriterImpl writer) throws IOException {
       while (true) {
          JsonToken token = parser.nextToken();
          if (token == null) {
@@ -420,12 +461,11 @@ public final class JsonUtils {
             case END_ARRAY:
                return;
             case START_ARRAY:
-               processArray(ctx, type, field, parser, writer); //todo [anistor] array in array does not seem to work since initial version
+               processArray(ctx, field, fd, parser, writer); //todo [anistor] array in array does not seem to work since initial version
                break;
             case START_OBJECT: {
-               Descriptor d = (Descriptor) ctx.getDescriptorByName(type);
-               FieldDescriptor fd = d.findFieldByName(field);
-               processObject(ctx, parser, writer, fd.getMessageType(), fd.getNumber(), false);
+               checkArrayField(field, fd);
+               processObject(ctx, parser, writer, fd.getMessageType(), fd.getNumber());
                break;
             }
             case VALUE_STRING:
@@ -433,8 +473,7 @@ public final class JsonUtils {
             case VALUE_NUMBER_FLOAT:
             case VALUE_TRUE:
             case VALUE_FALSE: {
-               Descriptor d = (Descriptor) ctx.getDescriptorByName(type);
-               FieldDescriptor fd = d.findFieldByName(field);
+               checkArrayField(field, fd);
                if (!fd.isRepeated()) {
                   if (token == JsonToken.VALUE_NUMBER_INT && Type.BYTES.equals(fd.getType())) {
                      // We want to parse a byte[] not only as Base64 but also from the JSON form: [7,7,7]
@@ -469,6 +508,12 @@ public final class JsonUtils {
       }
    }
 
+   private static void checkArrayField(String field, FieldDescriptor fd) {
+      if (fd == null) {
+         throw new IllegalStateException("The field '" + field + "' was not found in the Protobuf schema");
+      }
+   }
+
    private static final class JsonNestingLevel {
 
       boolean isFirstField = true;
@@ -497,12 +542,38 @@ public final class JsonUtils {
     */
    public static String toCanonicalJSON(ImmutableSerializationContext ctx, byte[] bytes, boolean prettyPrint) throws IOException {
       StringBuilder jsonOut = new StringBuilder();
-      toCanonicalJSON(ctx, bytes, jsonOut, prettyPrint ? 0 : -1);
+      toCanonicalJSON(ctx, TagReaderImpl.newInstance(ctx, bytes), jsonOut, null, prettyPrint ? 0 : -1);
       return jsonOut.toString();
    }
 
-   private static void toCanonicalJSON(ImmutableSerializationContext ctx, byte[] bytes, StringBuilder jsonOut, int initNestingLevel) throws IOException {
-      if (bytes.length == 0) {
+   /**
+    * Converts a Protobuf encoded message to its <a href="https://developers.google.com/protocol-buffers/docs/proto3#json">
+    * canonical JSON representation</a>, writing it incrementally while the input is parsed. Only a small buffer of
+    * output is held in memory, not the whole document. The writer is flushed but not closed.
+    *
+    * @param ctx         the serialization context
+    * @param in          the Protobuf encoded message to parse
+    * @param out         the destination of the JSON representation
+    * @param prettyPrint indicates if the JSON output should use a 'pretty' human-readable format or a compact format
+    * @throws IOException if I/O operations fail
+    */
+   public static void toCanonicalJSON(ImmutableSerializationContext ctx, TagReader in, Writer out, boolean prettyPrint) throws IOException {
+      StringBuilder jsonOut = new StringBuilder(OUTPUT_BUFFER_SIZE + 256);
+      try {
+         toCanonicalJSON(ctx, in, jsonOut, out, prettyPrint ? 0 : -1);
+      } catch (UncheckedIOException e) {
+         throw e.getCause();
+      }
+      out.append(jsonOut);
+      out.flush();
+   }
+
+   /**
+    * @param writer if not {@code null}, the contents of {@code jsonOut} are moved to it whenever they reach
+    *               {@link #OUTPUT_BUFFER_SIZE}, otherwise the whole document is accumulated in {@code jsonOut}
+    */
+   private static void toCanonicalJSON(ImmutableSerializationContext ctx, TagReader in, StringBuilder jsonOut, Writer writer, int initNestingLevel) throws IOException {
+      if (in.isAtEnd()) {
          // only null values get to be encoded to an empty byte array
          jsonOut.append("null");
          return;
@@ -526,6 +597,17 @@ public final class JsonUtils {
             jsonOut.append("   ".repeat(Math.max(0, initNestingLevel + nestingLevel.indent)));
          }
 
+         private void flushIfFull() {
+            if (writer != null && jsonOut.length() >= OUTPUT_BUFFER_SIZE) {
+               try {
+                  writer.append(jsonOut);
+               } catch (IOException e) {
+                  throw new UncheckedIOException(e);
+               }
+               jsonOut.setLength(0);
+            }
+         }
+
          @Override
          public void onStart(GenericDescriptor descriptor) {
             nestingLevel = new JsonNestingLevel(null);
@@ -565,60 +647,151 @@ public final class JsonUtils {
                return;
             }
 
+            startValue(fieldDescriptor);
+
+            if (isWrappedEnum(fieldNumber, fieldDescriptor)) {
+               jsonOut.append('\"').append(tagValue).append('\"');
+            } else {
+               switch (fieldDescriptor.getType()) {
+                  case STRING:
+                     escapeJson((String) tagValue, jsonOut, true);
+                     break;
+                  case INT32:
+                  case SINT32:
+                  case SFIXED32:
+                  case UINT32:
+                  case FIXED32:
+                     appendInt32(fieldDescriptor, (Integer) tagValue);
+                     break;
+                  case INT64:
+                  case SINT64:
+                  case SFIXED64:
+                  case UINT64:
+                  case FIXED64:
+                     appendInt64(fieldDescriptor, (Long) tagValue);
+                     break;
+                  case FLOAT:
+                     appendFloat((Float) tagValue);
+                     break;
+                  case DOUBLE:
+                     appendDouble((Double) tagValue);
+                     break;
+                  case ENUM:
+                     EnumValueDescriptor enumValue = fieldDescriptor.getEnumType().findValueByNumber((Integer) tagValue);
+                     jsonOut.append('\"').append(enumValue.getName()).append('\"');
+                     break;
+                  case BYTES:
+                     String base64encoded = Base64.getEncoder().encodeToString((byte[]) tagValue);
+                     jsonOut.append('\"').append(base64encoded).append('\"');
+                     break;
+                  default:
+                     if (tagValue instanceof Date) {
+                        jsonOut.append('\"').append(formatDate((Date) tagValue)).append('\"');
+                     } else {
+                        jsonOut.append(tagValue);
+                     }
+               }
+            }
+            flushIfFull();
+         }
+
+         private boolean isWrappedEnum(int fieldNumber, FieldDescriptor fieldDescriptor) {
+            return fieldNumber == WRAPPED_ENUM && fieldDescriptor.name.equals("wrappedEnum");
+         }
+
+         private void startValue(FieldDescriptor fieldDescriptor) {
             if (missingType) {
                writeType(fieldDescriptor);
             }
-
             startSlot(fieldDescriptor);
+         }
 
-            switch (fieldDescriptor.getType()) {
-               case STRING:
-                  escapeJson((String) tagValue, jsonOut, true);
-                  break;
-               case UINT64:
-               case FIXED64:
-                  jsonOut.append(Long.toUnsignedString((Long) tagValue));
-                  break;
-               case UINT32:
-               case FIXED32:
-                  jsonOut.append(Integer.toUnsignedString((Integer) tagValue));
-                  break;
-               case FLOAT:
-                  Float f = (Float) tagValue;
-                  if (f.isInfinite() || f.isNaN()) {
-                     // Infinity and NaN need to be quoted
-                     jsonOut.append('\"').append(f).append('\"');
-                  } else {
-                     jsonOut.append(f);
-                  }
-                  break;
-               case DOUBLE:
-                  Double d = (Double) tagValue;
-                  if (d.isInfinite() || d.isNaN()) {
-                     jsonOut.append('\"').append(d).append('\"');
-                  } else {
-                     jsonOut.append(d);
-                  }
-                  break;
-               case ENUM:
-                  EnumValueDescriptor enumValue = fieldDescriptor.getEnumType().findValueByNumber((Integer) tagValue);
-                  jsonOut.append('\"').append(enumValue.getName()).append('\"');
-                  break;
-               case BYTES:
-                  String base64encoded = Base64.getEncoder().encodeToString((byte[]) tagValue);
-                  jsonOut.append('\"').append(base64encoded).append('\"');
-                  break;
-               default:
-                  if (tagValue instanceof Date) {
-                     jsonOut.append('\"').append(formatDate((Date) tagValue)).append('\"');
-                  } else if (fieldNumber == WRAPPED_ENUM && fieldDescriptor.name.equals("wrappedEnum")) {
-                     jsonOut.append('\"').append(tagValue).append('\"');
-                  } else {
-                     jsonOut.append(tagValue);
-                  }
+         private void appendInt32(FieldDescriptor fieldDescriptor, int value) {
+            if (fieldDescriptor.getType() == Type.UINT32 || fieldDescriptor.getType() == Type.FIXED32) {
+               jsonOut.append(Integer.toUnsignedString(value));
+            } else {
+               jsonOut.append(value);
+            }
+         }
+
+         private void appendInt64(FieldDescriptor fieldDescriptor, long value) {
+            if (fieldDescriptor.getType() == Type.UINT64 || fieldDescriptor.getType() == Type.FIXED64) {
+               jsonOut.append(Long.toUnsignedString(value));
+            } else {
+               jsonOut.append(value);
+            }
+         }
+
+         private void appendFloat(float value) {
+            if (Float.isInfinite(value) || Float.isNaN(value)) {
+               // Infinity and NaN need to be quoted
+               jsonOut.append('\"').append(value).append('\"');
+            } else {
+               jsonOut.append(value);
+            }
+         }
+
+         private void appendDouble(double value) {
+            if (Double.isInfinite(value) || Double.isNaN(value)) {
+               jsonOut.append('\"').append(value).append('\"');
+            } else {
+               jsonOut.append(value);
             }
          }
 
+         @Override
+         public void onInt32(int fieldNumber, FieldDescriptor fieldDescriptor, int value) {
+            if (fieldDescriptor == null) {
+               // unknown field, ignore
+               return;
+            }
+            if (isWrappedEnum(fieldNumber, fieldDescriptor)) {
+               onTag(fieldNumber, fieldDescriptor, value);
+               return;
+            }
+            startValue(fieldDescriptor);
+            appendInt32(fieldDescriptor, value);
+            flushIfFull();
+         }
+
+         @Override
+         public void onInt64(int fieldNumber, FieldDescriptor fieldDescriptor, long value) {
+            if (fieldDescriptor == null) {
+               // unknown field, ignore
+               return;
+            }
+            startValue(fieldDescriptor);
+            appendInt64(fieldDescriptor, value);
+            flushIfFull();
+         }
+
+         @Override
+         public void onFloat(int fieldNumber, FieldDescriptor fieldDescriptor, float value) {
+            if (fieldDescriptor == null) {
+               // unknown field, ignore
+               return;
+            }
+            startValue(fieldDescriptor);
+            appendFloat(value);
+            flushIfFull();
+         }
+
+         @Override
+         public void onDouble(int fieldNumber, FieldDescriptor fieldDescriptor, double value) {
+            if (fieldDescriptor == null) {
+               // unknown field, ignore
+               return;
+            }
+            startValue(fieldDescriptor);
+            appendDouble(value);
+            flushIfFull();
+         }
+
+         @Override
+         public void onBool(int fieldNumber, FieldDescriptor fieldDescriptor, boolean value) {
+            onTag(fieldNumber, fieldDescriptor, value);
+         }
+
          @Override
          public void onStartNested(int fieldNumber, FieldDescriptor fieldDescriptor) {
             if (fieldDescriptor == null) {
@@ -649,6 +822,7 @@ public final class JsonUtils {
                jsonOut.append('}');
             }
             nestingLevel = nestingLevel.previous;
+            flushIfFull();
          }
 
          @Override
@@ -794,7 +968,7 @@ public final class JsonUtils {
          }
       };
 
-      ProtobufParser.INSTANCE.parse(wrapperHandler, wrapperDescriptor, bytes);
+      ProtobufParser.INSTANCE.parse(wrapperHandler, wrapperDescriptor, in);
    }
 
    private static void writeEnumField(JsonParser parser, TagWriter writer, FieldDescriptor fd, int fieldNumber) throws IOException {
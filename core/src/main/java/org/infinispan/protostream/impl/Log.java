@@ -151,6 +151,12 @@ public interface Log extends BasicLogger {
    @Message(value = "Incompatible @ProtoTypeId in '%s', from '%s' to '%s'", id = 40)
    String incompatibleTypeIds(String name, Integer t1, Integer t2);
 
+   @Message(value = "The packed elements of a container do not match its declared size of %d elements. The message is corrupt.", id = 41)
+   MalformedProtobufException containerSizeMismatch(int containerSize, @Cause Throwable cause);
+
+   @Message(value = "The length of the next message, %d bytes, exceeds the maximum message size of %d bytes. The input is corrupt or the maximum is too low.", id = 42)
+   MalformedProtobufException messageTooLarge(int length, int maxMessageSize);
+
    class LogFactory {
       public static Log getLog(Class<?> clazz) {
          return Logger.getMessageLogger(Log.class, clazz.getName());
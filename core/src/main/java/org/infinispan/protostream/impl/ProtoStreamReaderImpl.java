@@ -54,6 +54,8 @@ final class ProtoStreamReaderImpl implements MessageMarshaller.ProtoStreamReader
 
    private final boolean logOutOfSequenceReads;
 
+   private final boolean compactUnknownFields;
+
    private final TagReaderImpl ctx;
 
    private final SerializationContextImpl serCtx;
@@ -64,11 +66,12 @@ final class ProtoStreamReaderImpl implements MessageMarshaller.ProtoStreamReader
 
       final TagReaderImpl in;
 
-      final UnknownFieldSet unknownFieldSet = new UnknownFieldSetImpl();
+      final UnknownFieldSet unknownFieldSet;
 
-      ReadMessageContext(ReadMessageContext parent, FieldDescriptor fieldDescriptor, Descriptor messageDescriptor, TagReaderImpl in) {
+      ReadMessageContext(ReadMessageContext parent, FieldDescriptor fieldDescriptor, Descriptor messageDescriptor, TagReaderImpl in, UnknownFieldSet unknownFieldSet) {
          super(parent, fieldDescriptor, messageDescriptor);
          this.in = in;
+         this.unknownFieldSet = unknownFieldSet;
       }
    }
 
@@ -76,10 +79,12 @@ final class ProtoStreamReaderImpl implements MessageMarshaller.ProtoStreamReader
       this.ctx = ctx;
       this.serCtx = serCtx;
       logOutOfSequenceReads = serCtx.getConfiguration().logOutOfSequenceReads();
+      compactUnknownFields = serCtx.getConfiguration().compactUnknownFields();
    }
 
    ReadMessageContext enterContext(FieldDescriptor fd, Descriptor messageDescriptor, TagReaderImpl in) {
-      messageContext = new ReadMessageContext(messageContext, fd, messageDescriptor, in);
+      messageContext = new ReadMessageContext(messageContext, fd, messageDescriptor, in,
+            compactUnknownFields ? new RawUnknownFieldSet() : new UnknownFieldSetImpl());
       return messageContext;
    }
 
@@ -136,7 +141,7 @@ final class ProtoStreamReaderImpl implements MessageMarshaller.ProtoStreamReader
                default -> throw new IOException("Unexpected field type : " + type);
             };
          }
-         messageContext.unknownFieldSet.readSingleField(tag, in);
+         storeUnknownField(tag, in);
       }
 
       if (fd.hasDefaultValue()) {
@@ -310,7 +315,7 @@ final class ProtoStreamReaderImpl implements MessageMarshaller.ProtoStreamReader
          if (tag == expectedTag) {
             return readNestedObject(fd, clazz, messageContext.in, -1);
          }
-         messageContext.unknownFieldSet.readSingleField(tag, messageContext.in);
+         storeUnknownField(tag, messageContext.in);
       }
 
       return null;
@@ -382,6 +387,10 @@ final class ProtoStreamReaderImpl implements MessageMarshaller.ProtoStreamReader
          collection.add(e);
       }
 
+      // packed repeated enums must be accepted regardless of the declared encoding, the unknown field set only holds
+      // unpacked ones, see storeUnknownField
+      final int packedTag = enumMarshallerDelegate != null ? WireType.makeTag(fd.getNumber(), WireType.WIRETYPE_LENGTH_DELIMITED) : -1;
+
       while (true) {
          int tag = messageContext.in.readTag();
          if (tag == 0) {
@@ -389,16 +398,33 @@ final class ProtoStreamReaderImpl implements MessageMarshaller.ProtoStreamReader
          }
          if (tag == expectedTag) {
             collection.add(readNestedObject(fd, elementClass, messageContext.in, -1));
+         } else if (tag == packedTag) {
+            TagReader in = messageContext.in;
+            int oldLimit = in.pushLimit(in.readUInt32());
+            readPackedEnums(in, expectedTag, enumMarshallerDelegate, (Collection<Object>) collection);
+            in.popLimit(oldLimit);
          } else {
-            messageContext.unknownFieldSet.readSingleField(tag, messageContext.in);
+            storeUnknownField(tag, messageContext.in);
          }
       }
       return collection;
    }
 
+   private void readPackedEnums(TagReader in, int expectedTag, EnumMarshallerDelegate<?> enumMarshallerDelegate, Collection<Object> collection) throws IOException {
+      while (!in.isAtEnd()) {
+         Object e = enumMarshallerDelegate.decode(expectedTag, in.readEnum(), messageContext.unknownFieldSet);
+         if (e != null) {
+            collection.add(e);
+         }
+      }
+   }
+
    private void readPrimitiveCollection(FieldDescriptor fd, Collection<? super Object> collection, Class<?> elementClass) throws IOException {
       final int expectedTag = fd.getWireTag();
       Type type = fd.getType();
+      // packed repeated fields must be accepted regardless of the declared encoding, the unknown field set only holds
+      // unpacked ones, see storeUnknownField
+      final int packedTag = type.isPackable() ? WireType.makeTag(fd.getNumber(), WireType.WIRETYPE_LENGTH_DELIMITED) : -1;
 
       while (true) {
          Object o = messageContext.unknownFieldSet.consumeTag(expectedTag);
@@ -414,31 +440,41 @@ final class ProtoStreamReaderImpl implements MessageMarshaller.ProtoStreamReader
             break;
          }
          if (tag == expectedTag) {
-            Object value = switch (type) {
-               case DOUBLE -> messageContext.in.readDouble();
-               case FLOAT -> messageContext.in.readFloat();
-               case BOOL -> messageContext.in.readBool();
-               case STRING -> messageContext.in.readString();
-               case BYTES -> messageContext.in.readByteArray();
-               case INT64 -> messageContext.in.readInt64();
-               case UINT64 -> messageContext.in.readUInt64();
-               case FIXED64 -> messageContext.in.readFixed64();
-               case SFIXED64 -> messageContext.in.readSFixed64();
-               case SINT64 -> messageContext.in.readSInt64();
-               case INT32 -> messageContext.in.readInt32();
-               case FIXED32 -> messageContext.in.readFixed32();
-               case UINT32 -> messageContext.in.readUInt32();
-               case SFIXED32 -> messageContext.in.readSFixed32();
-               case SINT32 -> messageContext.in.readSInt32();
-               default -> throw new IllegalStateException("Unexpected field type : " + type);
-            };
-            collection.add(value);
+            collection.add(readPrimitiveValue(messageContext.in, type));
+         } else if (tag == packedTag) {
+            TagReader in = messageContext.in;
+            int oldLimit = in.pushLimit(in.readUInt32());
+            while (!in.isAtEnd()) {
+               collection.add(readPrimitiveValue(in, type));
+            }
+            in.popLimit(oldLimit);
          } else {
-            messageContext.unknownFieldSet.readSingleField(tag, messageContext.in);
+            storeUnknownField(tag, messageContext.in);
          }
       }
    }
 
+   private static Object readPrimitiveValue(TagReader in, Type type) throws IOException {
+      return switch (type) {
+         case DOUBLE -> in.readDouble();
+         case FLOAT -> in.readFloat();
+         case BOOL -> in.readBool();
+         case STRING -> in.readString();
+         case BYTES -> in.readByteArray();
+         case INT64 -> in.readInt64();
+         case UINT64 -> in.readUInt64();
+         case FIXED64 -> in.readFixed64();
+         case SFIXED64 -> in.readSFixed64();
+         case SINT64 -> in.readSInt64();
+         case INT32 -> in.readInt32();
+         case FIXED32 -> in.readFixed32();
+         case UINT32 -> in.readUInt32();
+         case SFIXED32 -> in.readSFixed32();
+         case SINT32 -> in.readSInt32();
+         default -> throw new IllegalStateException("Unexpected field type : " + type);
+      };
+   }
+
    @Override
    public <E> E[] readArray(String fieldName, Class<? extends E> elementClass) throws IOException {
       // the number of repeated elements is not known in advance
@@ -446,6 +482,27 @@ final class ProtoStreamReaderImpl implements MessageMarshaller.ProtoStreamReader
       return values.toArray((E[]) Array.newInstance(elementClass, values.size()));
    }
 
+   /**
+    * Stores a field that is not the one being read in the unknown field set, where it can be consumed later. The
+    * elements of a packed repeated field are stored one by one, with the tag of the unpacked field, so the elements of a
+    * field that mixes both encodings are consumed in wire order.
+    */
+   private void storeUnknownField(int tag, TagReader in) throws IOException {
+      if (WireType.getTagWireType(tag) == WireType.WIRETYPE_LENGTH_DELIMITED) {
+         FieldDescriptor fd = messageContext.getMessageDescriptor().findFieldByNumber(WireType.getTagFieldNumber(tag));
+         if (fd != null && fd.isRepeated() && fd.getType().isPackable()) {
+            int elementTag = fd.getWireTag();
+            int oldLimit = in.pushLimit(in.readUInt32());
+            while (!in.isAtEnd()) {
+               messageContext.unknownFieldSet.readSingleField(elementTag, in);
+            }
+            in.popLimit(oldLimit);
+            return;
+         }
+      }
+      messageContext.unknownFieldSet.readSingleField(tag, in);
+   }
+
    private void checkFieldRead(FieldDescriptor fd, boolean expectRepeated) {
       if (expectRepeated) {
          if (!fd.isRepeated()) {
@@ -486,7 +543,7 @@ final class ProtoStreamReaderImpl implements MessageMarshaller.ProtoStreamReader
             break;
          }
          if (tag != expectedTag) {
-            messageContext.unknownFieldSet.readSingleField(tag, messageContext.in);
+            storeUnknownField(tag, messageContext.in);
             break;
          }
          int len = in.readUInt32();
@@ -131,6 +131,17 @@ final class ProtoStreamWriterImpl implements MessageMarshaller.ProtoStreamWriter
       }
       final TagWriter out = messageContext.out;
       final int fieldNumber = fd.getNumber();
+      if (fd.isPacked()) {
+         switch (fd.getType()) {
+            case INT32 -> out.writePackedInt32(fieldNumber, array);
+            case FIXED32 -> out.writePackedFixed32(fieldNumber, array);
+            case UINT32 -> out.writePackedUInt32(fieldNumber, array);
+            case SFIXED32 -> out.writePackedSFixed32(fieldNumber, array);
+            case SINT32 -> out.writePackedSInt32(fieldNumber, array);
+            default -> throw new IllegalArgumentException("The Protobuf declared field type is not compatible with the written type : " + fd.getFullName());
+         }
+         return;
+      }
       switch (fd.getType()) {
          case INT32:
             for (int value : array) {
@@ -228,6 +239,17 @@ final class ProtoStreamWriterImpl implements MessageMarshaller.ProtoStreamWriter
       }
       final TagWriter out = messageContext.out;
       final int fieldNumber = fd.getNumber();
+      if (fd.isPacked()) {
+         switch (fd.getType()) {
+            case INT64 -> out.writePackedInt64(fieldNumber, array);
+            case FIXED64 -> out.writePackedFixed64(fieldNumber, array);
+            case UINT64 -> out.writePackedUInt64(fieldNumber, array);
+            case SFIXED64 -> out.writePackedSFixed64(fieldNumber, array);
+            case SINT64 -> out.writePackedSInt64(fieldNumber, array);
+            default -> throw new IllegalArgumentException("The Protobuf declared field type is not compatible with the written type : " + fd.getFullName());
+         }
+         return;
+      }
       switch (fd.getType()) {
          case INT64:
             for (long value : array) {
@@ -312,6 +334,10 @@ final class ProtoStreamWriterImpl implements MessageMarshaller.ProtoStreamWriter
       }
       final TagWriter out = messageContext.out;
       final int fieldNumber = fd.getNumber();
+      if (fd.isPacked()) {
+         out.writePackedDouble(fieldNumber, array);
+         return;
+      }
       for (double value : array) {
          out.writeDouble(fieldNumber, value);
       }
@@ -356,6 +382,10 @@ final class ProtoStreamWriterImpl implements MessageMarshaller.ProtoStreamWriter
       }
       final TagWriter out = messageContext.out;
       final int fieldNumber = fd.getNumber();
+      if (fd.isPacked()) {
+         out.writePackedFloat(fieldNumber, array);
+         return;
+      }
       for (float value : array) {
          out.writeFloat(fieldNumber, value);
       }
@@ -400,6 +430,10 @@ final class ProtoStreamWriterImpl implements MessageMarshaller.ProtoStreamWriter
       }
       final TagWriter out = messageContext.out;
       final int fieldNumber = fd.getNumber();
+      if (fd.isPacked()) {
+         out.writePackedBool(fieldNumber, array);
+         return;
+      }
       for (boolean value : array) {
          out.writeBool(fieldNumber, value);
       }
@@ -0,0 +1,389 @@
+package org.infinispan.protostream.impl;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.infinispan.protostream.TagReader;
+import org.infinispan.protostream.TagWriter;
+import org.infinispan.protostream.UnknownFieldSet;
+import org.infinispan.protostream.descriptors.WireType;
+
+/**
+ * {@link UnknownFieldSet} implementation that keeps the fields in their wire format, tag followed by value, appended to
+ * a single growable byte array. Reading a field only copies its bytes, without boxing the value or allocating a node per
+ * field like {@link UnknownFieldSetImpl} does, and writing the set copies the whole array at once, in the order the
+ * fields were read. A field is decoded only when it is {@link #consumeTag consumed}, which scans the array for its tag.
+ * A consumed field is not removed right away, it is overwritten by a hole that the scans skip and the array is compacted
+ * once when written.
+ * <p>
+ * This is used instead of {@link UnknownFieldSetImpl} when
+ * {@link org.infinispan.protostream.config.Configuration#compactUnknownFields()} is enabled. It is not thread-safe. This
+ * class should never be directly instantiated by users even though it is marked {@code public}.
+ *
+ * @since 5.0
+ */
+public final class RawUnknownFieldSet implements UnknownFieldSet, Externalizable {
+
+   private static final int INITIAL_CAPACITY = 64;
+
+   // created lazily
+   private byte[] buf;
+
+   private int size;
+
+   // the position of the next byte to decode when scanning the fields
+   private int cursor;
+
+   // the start of the field whose tag was read last by readFieldTag
+   private int fieldStart;
+
+   // the position of the first field that was not consumed, all bytes before it belong to consumed fields
+   private int head;
+
+   // the number of bytes of the consumed fields still in buf, as holes marked by a 0 byte followed by the hole length
+   private int consumed;
+
+   public RawUnknownFieldSet() {
+      // needs to be public to be Serializable/Externalizable
+   }
+
+   private RawUnknownFieldSet(byte[] buf) {
+      this.buf = buf;
+      this.size = buf.length;
+   }
+
+   @Override
+   public boolean isEmpty() {
+      return size == consumed;
+   }
+
+   @Override
+   public void readAllFields(TagReader input) throws IOException {
+      while (true) {
+         int tag = input.readTag();
+         if (tag == 0 || !readSingleField(tag, input)) {
+            break;
+         }
+      }
+   }
+
+   @Override
+   public boolean readSingleField(int tag, TagReader input) throws IOException {
+      WireType wireType = WireType.fromTag(tag);
+      switch (wireType) {
+         case VARINT: {
+            long value = input.readInt64();
+            writeVarint(tag);
+            writeVarint(value);
+            return true;
+         }
+         case FIXED64: {
+            long value = input.readFixed64();
+            writeVarint(tag);
+            writeFixed(value, 8);
+            return true;
+         }
+         case LENGTH_DELIMITED: {
+            ByteBuffer value = input.readByteBuffer();
+            int length = value.remaining();
+            writeVarint(tag);
+            writeVarint(length);
+            ensureCapacity(length);
+            value.get(buf, size, length);
+            size += length;
+            return true;
+         }
+         case START_GROUP: {
+            int start = size;
+            try {
+               writeVarint(tag);
+               readAllFields(input);
+               int endTag = WireType.makeTag(WireType.getTagFieldNumber(tag), WireType.WIRETYPE_END_GROUP);
+               input.checkLastTagWas(endTag);
+               writeVarint(endTag);
+            } catch (IOException | RuntimeException e) {
+               // do not leave a partial group behind
+               size = start;
+               throw e;
+            }
+            return true;
+         }
+         case END_GROUP:
+            return false;
+
+         case FIXED32: {
+            int value = input.readFixed32();
+            writeVarint(tag);
+            writeFixed(value, 4);
+            return true;
+         }
+         default:
+            throw new IOException("Protocol message tag " + tag + " has invalid wire type " + wireType);
+      }
+   }
+
+   @Override
+   public void putVarintField(int tag, int value) {
+      if (tag == 0) {
+         throw new IllegalArgumentException("0 is not a valid tag");
+      }
+      if (WireType.getTagWireType(tag) != WireType.WIRETYPE_VARINT) {
+         throw new IllegalArgumentException("The tag is not a VARINT: " + tag);
+      }
+      writeVarint(tag);
+      writeVarint(value);
+   }
+
+   @Override
+   public void writeTo(TagWriter output) throws IOException {
+      compact();
+      if (size > 0) {
+         output.writeRawBytes(buf, 0, size);
+         output.flush();
+      }
+   }
+
+   @Override
+   public <A> A consumeTag(int tag) {
+      if (tag == 0) {
+         throw new IllegalArgumentException("0 is not a valid tag number");
+      }
+      if (WireType.getTagWireType(tag) == WireType.WIRETYPE_END_GROUP) {
+         throw new IllegalArgumentException("Tag " + tag + " is an end group tag");
+      }
+      cursor = head;
+      int t;
+      while ((t = readFieldTag()) != 0) {
+         int start = fieldStart;
+         if (t == tag) {
+            Object value = readValue(tag);
+            consume(start);
+            return (A) value;
+         }
+         skipValue(t);
+      }
+      return null;
+   }
+
+   /**
+    * Reads the tag of the next field that was not consumed, skipping the holes, or returns 0 at the end.
+    */
+   private int readFieldTag() {
+      while (cursor < size) {
+         fieldStart = cursor;
+         int t = (int) readVarint();
+         if (t != 0) {
+            return t;
+         }
+         cursor = fieldStart + (int) readVarint();
+      }
+      return 0;
+   }
+
+   /**
+    * Turns the field between {@code start} and the cursor into a hole, to be removed by the next {@link #compact}.
+    */
+   private void consume(int start) {
+      int length = cursor - start;
+      consumed += length;
+      if (consumed == size) {
+         size = head = consumed = 0;
+      } else if (start == head) {
+         // the fields are usually consumed in order, so the next scan starts right after this one
+         head = cursor;
+      } else {
+         // a field takes at least 2 bytes, which is enough for the marker and the length of its hole
+         int pos = start;
+         buf[pos++] = 0;
+         while ((length & ~0x7F) != 0) {
+            buf[pos++] = (byte) ((length & 0x7F) | 0x80);
+            length >>>= 7;
+         }
+         buf[pos] = (byte) length;
+      }
+   }
+
+   /**
+    * Removes the holes left by the consumed fields, in a single pass.
+    */
+   private void compact() {
+      if (consumed == 0) {
+         return;
+      }
+      int newSize = 0;
+      cursor = head;
+      int t;
+      while ((t = readFieldTag()) != 0) {
+         int start = fieldStart;
+         skipValue(t);
+         System.arraycopy(buf, start, buf, newSize, cursor - start);
+         newSize += cursor - start;
+      }
+      size = newSize;
+      head = consumed = 0;
+   }
+
+   @Override
+   public boolean hasTag(int tag) {
+      if (tag == 0) {
+         throw new IllegalArgumentException("0 is not a valid tag number");
+      }
+      cursor = head;
+      int t;
+      while ((t = readFieldTag()) != 0) {
+         if (t == tag) {
+            return true;
+         }
+         skipValue(t);
+      }
+      return false;
+   }
+
+   /**
+    * Decodes the value at the cursor to the same types {@link UnknownFieldSetImpl} holds: a {@code Long} for varint and
+    * fixed64, an {@code Integer} for fixed32, a {@code byte[]} for length delimited and a nested set for a group.
+    */
+   private Object readValue(int tag) {
+      switch (WireType.getTagWireType(tag)) {
+         case WireType.WIRETYPE_VARINT:
+            return readVarint();
+         case WireType.WIRETYPE_FIXED64:
+            return readFixed(8);
+         case WireType.WIRETYPE_FIXED32:
+            return (int) readFixed(4);
+         case WireType.WIRETYPE_LENGTH_DELIMITED: {
+            int length = (int) readVarint();
+            cursor += length;
+            return Arrays.copyOfRange(buf, cursor - length, cursor);
+         }
+         case WireType.WIRETYPE_START_GROUP: {
+            int start = cursor;
+            int end;
+            while (true) {
+               end = cursor;
+               int t = (int) readVarint();
+               if (WireType.getTagWireType(t) == WireType.WIRETYPE_END_GROUP) {
+                  break;
+               }
+               skipValue(t);
+            }
+            return new RawUnknownFieldSet(Arrays.copyOfRange(buf, start, end));
+         }
+         default:
+            throw new IllegalStateException("Tag " + tag + " has invalid wire type");
+      }
+   }
+
+   private void skipValue(int tag) {
+      switch (WireType.getTagWireType(tag)) {
+         case WireType.WIRETYPE_VARINT:
+            readVarint();
+            break;
+         case WireType.WIRETYPE_FIXED64:
+            cursor += 8;
+            break;
+         case WireType.WIRETYPE_FIXED32:
+            cursor += 4;
+            break;
+         case WireType.WIRETYPE_LENGTH_DELIMITED: {
+            int length = (int) readVarint();
+            cursor += length;
+            break;
+         }
+         case WireType.WIRETYPE_START_GROUP:
+            while (true) {
+               int t = (int) readVarint();
+               if (WireType.getTagWireType(t) == WireType.WIRETYPE_END_GROUP) {
+                  break;
+               }
+               skipValue(t);
+            }
+            break;
+         default:
+            throw new IllegalStateException("Tag " + tag + " has invalid wire type");
+      }
+   }
+
+   private long readVarint() {
+      long value = 0;
+      for (int shift = 0; ; shift += 7) {
+         byte b = buf[cursor++];
+         value |= (long) (b & 0x7F) << shift;
+         if (b >= 0) {
+            return value;
+         }
+      }
+   }
+
+   private long readFixed(int length) {
+      long value = 0;
+      for (int i = 0; i < length; i++) {
+         value |= (buf[cursor++] & 0xFFL) << (i * 8);
+      }
+      return value;
+   }
+
+   private void ensureCapacity(int length) {
+      if (buf == null) {
+         buf = new byte[Math.max(INITIAL_CAPACITY, length)];
+      } else if (size + length > buf.length) {
+         buf = Arrays.copyOf(buf, Math.max(buf.length << 1, size + length));
+      }
+   }
+
+   private void writeVarint(long value) {
+      ensureCapacity(10);
+      while ((value & ~0x7FL) != 0) {
+         buf[size++] = (byte) ((value & 0x7F) | 0x80);
+         value >>>= 7;
+      }
+      buf[size++] = (byte) value;
+   }
+
+   private void writeFixed(long value, int length) {
+      ensureCapacity(length);
+      for (int i = 0; i < length; i++) {
+         buf[size++] = (byte) (value >>> (i * 8));
+      }
+   }
+
+   @Override
+   public void writeExternal(ObjectOutput out) throws IOException {
+      compact();
+      out.writeInt(size);
+      if (size > 0) {
+         out.write(buf, 0, size);
+      }
+   }
+
+   @Override
+   public void readExternal(ObjectInput in) throws IOException {
+      int length = in.readInt();
+      if (length < 0) {
+         throw new IOException("Invalid unknown field set size: " + length);
+      }
+      // the size is not trusted for allocating the whole array upfront, it grows as the bytes are actually read and
+      // readFully fails if the input ends before
+      byte[] bytes = new byte[Math.min(length, INITIAL_CAPACITY)];
+      int read = 0;
+      while (read < length) {
+         if (read == bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.min(length, bytes.length << 1));
+         }
+         in.readFully(bytes, read, bytes.length - read);
+         read = bytes.length;
+      }
+      buf = bytes;
+      size = length;
+      cursor = head = consumed = 0;
+   }
+
+   @Override
+   public String toString() {
+      return "RawUnknownFieldSet{size=" + size + '}';
+   }
+}
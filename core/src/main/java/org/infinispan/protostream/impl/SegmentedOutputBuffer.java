@@ -0,0 +1,165 @@
+package org.infinispan.protostream.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.util.Arrays;
+
+/**
+ * An output buffer made of fixed size segments. Unlike {@link java.io.ByteArrayOutputStream} it never copies what was
+ * written when it grows, it just adds a segment, and the written bytes can be drained without any copy as an array of
+ * {@link ByteBuffer}s, for instance to a {@link GatheringByteChannel}, or copied once to an array of the exact size.
+ * <p>
+ * A {@link TagWriterImpl} created with {@link TagWriterImpl#newInstance(org.infinispan.protostream.ImmutableSerializationContext, SegmentedOutputBuffer)}
+ * writes directly into the segments. The buffer can be {@link #reset()} and used again, in which case it keeps some of
+ * its segments to be filled by the next writes instead of allocating new ones. It is not thread-safe.
+ *
+ * @since 5.0
+ */
+public final class SegmentedOutputBuffer {
+
+   public static final int DEFAULT_SEGMENT_SIZE = 8192;
+
+   // the number of segments kept by reset() for reuse, the others are left to the garbage collector
+   private static final int MAX_RETAINED_SEGMENTS = 8;
+
+   final int segmentSize;
+
+   // the segments in use, followed by the free segments kept for reuse
+   private byte[][] segments;
+
+   // the number of segments in use, the last one is the current segment
+   private int segmentCount;
+
+   // the segment being written
+   byte[] current;
+
+   // the position of the next byte in the current segment
+   int pos;
+
+   public SegmentedOutputBuffer() {
+      this(DEFAULT_SEGMENT_SIZE);
+   }
+
+   public SegmentedOutputBuffer(int segmentSize) {
+      if (segmentSize <= 0) {
+         throw new IllegalArgumentException("segmentSize must be positive");
+      }
+      this.segmentSize = segmentSize;
+      this.segments = new byte[4][];
+      this.current = segments[0] = new byte[segmentSize];
+      this.segmentCount = 1;
+   }
+
+   /**
+    * Moves to the next segment, once the current one is full.
+    */
+   void nextSegment() {
+      if (segmentCount == segments.length) {
+         segments = Arrays.copyOf(segments, segmentCount << 1);
+      }
+      byte[] segment = segments[segmentCount];
+      if (segment == null) {
+         segment = segments[segmentCount] = new byte[segmentSize];
+      }
+      segmentCount++;
+      current = segment;
+      pos = 0;
+   }
+
+   /**
+    * Discards the written bytes.
+    */
+   public void reset() {
+      for (int i = MAX_RETAINED_SEGMENTS; i < segments.length && segments[i] != null; i++) {
+         segments[i] = null;
+      }
+      segmentCount = 1;
+      current = segments[0];
+      pos = 0;
+   }
+
+   /**
+    * Returns the number of bytes written since the last {@link #reset()}.
+    */
+   public long size() {
+      return (long) (segmentCount - 1) * segmentSize + pos;
+   }
+
+   /**
+    * Returns a copy of the written bytes.
+    */
+   public byte[] toByteArray() {
+      long size = size();
+      if (size > Integer.MAX_VALUE - 8) {
+         throw new OutOfMemoryError("Required array size too large");
+      }
+      byte[] bytes = new byte[(int) size];
+      int last = segmentCount - 1;
+      for (int i = 0; i < last; i++) {
+         System.arraycopy(segments[i], 0, bytes, i * segmentSize, segmentSize);
+      }
+      System.arraycopy(current, 0, bytes, last * segmentSize, pos);
+      return bytes;
+   }
+
+   /**
+    * Returns views of the written bytes, one per segment, valid until the next write or {@link #reset()}.
+    */
+   public ByteBuffer[] toByteBuffers() {
+      ByteBuffer[] buffers = new ByteBuffer[segmentCount];
+      int last = segmentCount - 1;
+      for (int i = 0; i < last; i++) {
+         buffers[i] = ByteBuffer.wrap(segments[i], 0, segmentSize);
+      }
+      buffers[last] = ByteBuffer.wrap(current, 0, pos);
+      return buffers;
+   }
+
+   /**
+    * Writes all the written bytes to a channel, with as few gathering writes as the channel allows.
+    *
+    * @return the number of bytes written
+    * @throws IllegalArgumentException if the channel is in non-blocking mode
+    */
+   public long writeTo(GatheringByteChannel channel) throws IOException {
+      requireBlocking(channel);
+      ByteBuffer[] buffers = toByteBuffers();
+      long size = size();
+      long written = 0;
+      int first = 0;
+      while (written < size) {
+         written += channel.write(buffers, first, buffers.length - first);
+         while (first < buffers.length && !buffers[first].hasRemaining()) {
+            first++;
+         }
+      }
+      return written;
+   }
+
+   /**
+    * Checks that a channel is not in non-blocking mode, in which reads and writes may transfer nothing and loops waiting
+    * for them to complete would spin.
+    *
+    * @throws IllegalArgumentException if the channel is in non-blocking mode
+    */
+   public static void requireBlocking(Channel channel) {
+      if (channel instanceof SelectableChannel selectableChannel && !selectableChannel.isBlocking()) {
+         throw new IllegalArgumentException("Channels in non-blocking mode are not supported");
+      }
+   }
+
+   /**
+    * Writes all the written bytes to a stream, one segment at a time.
+    */
+   public void writeTo(OutputStream out) throws IOException {
+      int last = segmentCount - 1;
+      for (int i = 0; i < last; i++) {
+         out.write(segments[i], 0, segmentSize);
+      }
+      out.write(current, 0, pos);
+   }
+}
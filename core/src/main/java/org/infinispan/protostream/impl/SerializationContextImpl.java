@@ -2,11 +2,13 @@ package org.infinispan.protostream.impl;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.StampedLock;
 
 import org.infinispan.protostream.BaseMarshaller;
@@ -14,8 +16,10 @@ import org.infinispan.protostream.DescriptorParserException;
 import org.infinispan.protostream.EnumMarshaller;
 import org.infinispan.protostream.FileDescriptorSource;
 import org.infinispan.protostream.MessageMarshaller;
+import org.infinispan.protostream.ProtobufCodec;
 import org.infinispan.protostream.ProtobufTagMarshaller;
 import org.infinispan.protostream.SerializationContext;
+import org.infinispan.protostream.SerializationContextInitializer;
 import org.infinispan.protostream.config.Configuration;
 import org.infinispan.protostream.descriptors.Descriptor;
 import org.infinispan.protostream.descriptors.EnumDescriptor;
@@ -23,6 +27,7 @@ import org.infinispan.protostream.descriptors.EnumValueDescriptor;
 import org.infinispan.protostream.descriptors.FileDescriptor;
 import org.infinispan.protostream.descriptors.GenericDescriptor;
 import org.infinispan.protostream.descriptors.ResolutionContext;
+import org.infinispan.protostream.impl.parser.PrecompiledFileDescriptor;
 import org.infinispan.protostream.impl.parser.ProtostreamProtoParser;
 
 import net.jcip.annotations.GuardedBy;
@@ -37,7 +42,8 @@ public final class SerializationContextImpl implements SerializationContext {
    private static final Log log = Log.LogFactory.getLog(SerializationContextImpl.class);
 
    /**
-    * All descriptor related mutable internal state is protected by this RW lock.
+    * All descriptor related mutable internal state is protected by this RW lock. Type lookups do not use it, they read
+    * the {@link #descriptorSnapshot} instead.
     */
    private final StampedLock descriptorLock = new StampedLock();
 
@@ -47,6 +53,12 @@ public final class SerializationContextImpl implements SerializationContext {
 
    private final Map<String, FileDescriptor> fileDescriptors = new LinkedHashMap<>();
 
+   /**
+    * The digests of the contents the files in {@link #fileDescriptors} were parsed from. A file gets a digest only once
+    * it is registered again under the same name, first time registrations have nothing to be compared with.
+    */
+   private final Map<String, byte[]> fileDigests = new HashMap<>();
+
    private final Map<Integer, GenericDescriptor> typeIds = new HashMap<>();
 
    private final Map<String, GenericDescriptor> genericDescriptors = new HashMap<>();
@@ -54,7 +66,13 @@ public final class SerializationContextImpl implements SerializationContext {
    private final Map<String, EnumValueDescriptor> enumValueDescriptors = new HashMap<>();
 
    /**
-    * All marshaller related mutable internal state is protected by this RW lock.
+    * Immutable copy of the descriptor lookup maps, used by readers without locking. Replaced after each change.
+    */
+   private volatile DescriptorSnapshot descriptorSnapshot = DescriptorSnapshot.EMPTY;
+
+   /**
+    * All marshaller related mutable internal state is protected by this RW lock. Marshaller lookups do not use it, they
+    * read the {@link #marshallerSnapshot} instead.
     */
    private final StampedLock manifestLock = new StampedLock();
 
@@ -62,8 +80,27 @@ public final class SerializationContextImpl implements SerializationContext {
 
    private final Map<Class<?>, Registration> marshallersByClass = new HashMap<>();
 
+   @SuppressWarnings("deprecation")
    private final List<MarshallerProvider> legacyMarshallerProviders = new ArrayList<>();
 
+   /**
+    * Immutable copy of the marshaller lookup maps, used by readers without locking. Replaced after each change.
+    */
+   private volatile MarshallerSnapshot marshallerSnapshot = MarshallerSnapshot.EMPTY;
+
+   /**
+    * The {@link WrappingPlan}s computed so far, per Java class. A new empty map is installed after every change of the
+    * marshaller or descriptor snapshots, so a plan is never older than the snapshots it was computed from.
+    */
+   private volatile ConcurrentHashMap<Class<?>, WrappingPlan<?>> wrappingPlans = new ConcurrentHashMap<>();
+
+   /**
+    * The batch being collected by {@link #registerInitializers} on the current thread, if any.
+    */
+   private final ThreadLocal<Batch> batch = new ThreadLocal<>();
+
+   private final ProtobufCodec.Pool codecPool = new ProtobufCodec.Pool(this, 2 * Runtime.getRuntime().availableProcessors());
+
    public SerializationContextImpl(Configuration configuration) {
       if (configuration == null) {
          throw new IllegalArgumentException("configuration argument cannot be null");
@@ -77,6 +114,11 @@ public final class SerializationContextImpl implements SerializationContext {
       return configuration;
    }
 
+   @Override
+   public ProtobufCodec acquireCodec() {
+      return codecPool.acquire();
+   }
+
    @Override
    public Map<String, FileDescriptor> getFileDescriptors() {
       long stamp = descriptorLock.readLock();
@@ -89,22 +131,64 @@ public final class SerializationContextImpl implements SerializationContext {
 
    @Override
    public Map<String, GenericDescriptor> getGenericDescriptors() {
-      long stamp = descriptorLock.readLock();
-      try {
-         return Map.copyOf(genericDescriptors);
-      } finally {
-         descriptorLock.unlockRead(stamp);
+      return descriptorSnapshot.genericDescriptors;
+   }
+
+   /**
+    * Lookups are far more frequent than registrations, so the registration pays for copying the maps and the lookups
+    * just read the latest snapshot.
+    */
+   private static final class DescriptorSnapshot {
+
+      static final DescriptorSnapshot EMPTY = new DescriptorSnapshot(Map.of(), Map.of());
+
+      final Map<String, GenericDescriptor> genericDescriptors;
+      final Map<Integer, GenericDescriptor> typeIds;
+
+      DescriptorSnapshot(Map<String, GenericDescriptor> genericDescriptors, Map<Integer, GenericDescriptor> typeIds) {
+         this.genericDescriptors = genericDescriptors;
+         this.typeIds = typeIds;
       }
    }
 
+   @GuardedBy("descriptorLock")
+   private void publishDescriptors() {
+      descriptorSnapshot = new DescriptorSnapshot(Map.copyOf(genericDescriptors), Map.copyOf(typeIds));
+      wrappingPlans = new ConcurrentHashMap<>();
+   }
+
    @Override
    public void registerProtoFiles(FileDescriptorSource source) throws DescriptorParserException {
+      Batch currentBatch = batch.get();
+      if (currentBatch != null && !currentBatch.schemasRegistered) {
+         currentBatch.add(source);
+         return;
+      }
       if (log.isDebugEnabled()) {
          log.debugf("Registering proto files : %s", source.getFiles().keySet());
       }
-      Map<String, FileDescriptor> fileDescriptorMap = parser.parse(source);
+      Map<String, byte[]> digests = new HashMap<>();
+      List<String> unchangedFiles = new ArrayList<>();
+      FileDescriptorSource changedFiles = withoutUnchangedFiles(source, digests, unchangedFiles);
+      if (changedFiles == null) {
+         // everything is already registered, nothing to parse or resolve
+         return;
+      }
+      Map<String, FileDescriptor> fileDescriptorMap = parser.parse(changedFiles);
       long stamp = descriptorLock.writeLock();
       try {
+         // the unchanged files may have been replaced or unregistered since they were checked, parse them if so
+         FileDescriptorSource staleFiles = new FileDescriptorSource().withProgressCallback(source.getProgressCallback());
+         for (String fileName : unchangedFiles) {
+            if (!isUnchanged(fileName, digests.get(fileName))) {
+               addProtoFile(staleFiles, source, fileName, source.getFiles().get(fileName));
+            }
+         }
+         if (!staleFiles.getFiles().isEmpty()) {
+            fileDescriptorMap.putAll(parser.parse(staleFiles));
+            unchangedFiles.removeAll(staleFiles.getFiles().keySet());
+         }
+
          // validate all proto files before doing anything else
          if (configuration.schemaValidation() != Configuration.SchemaValidation.UNRESTRICTED) {
             List<String> errors = new ArrayList<>();
@@ -127,15 +211,178 @@ public final class SerializationContextImpl implements SerializationContext {
             }
          }
          fileDescriptors.putAll(fileDescriptorMap);
+         for (String fileName : fileDescriptorMap.keySet()) {
+            byte[] digest = digests.get(fileName);
+            if (digest != null) {
+               fileDigests.put(fileName, digest);
+            } else {
+               fileDigests.remove(fileName);
+            }
+         }
 
-         // resolve imports and types for all files
+         // resolve imports and types for the new files and for the ones left unresolved by previous registrations
          ResolutionContext resolutionContext = new ResolutionContext(source.getProgressCallback(), fileDescriptors, genericDescriptors, typeIds, enumValueDescriptors);
          resolutionContext.resolve();
+
+         if (source.getProgressCallback() != null) {
+            for (String fileName : unchangedFiles) {
+               source.getProgressCallback().handleSuccess(fileName);
+            }
+         }
       } finally {
+         publishDescriptors();
          descriptorLock.unlockWrite(stamp);
       }
    }
 
+   /**
+    * Registering a file again with the same contents would discard its types and those of all its dependants, only to
+    * rebuild the very same ones. This filters out such files if they are resolved, which is the common case of shared
+    * dependencies being registered by each of the initializers that depend on them. Files are compared by the digests
+    * of their contents, which are computed only for the files already registered under the same name.
+    *
+    * @param digests collects the digests of the files of the source that are already registered
+    * @param unchangedFiles collects the names of the skipped files
+    * @return a source with the remaining files or {@code null} if all of them were skipped
+    */
+   private FileDescriptorSource withoutUnchangedFiles(FileDescriptorSource source, Map<String, byte[]> digests, List<String> unchangedFiles) {
+      long stamp = descriptorLock.readLock();
+      try {
+         for (Map.Entry<String, String> file : source.getFiles().entrySet()) {
+            String fileName = file.getKey();
+            if (fileDescriptors.containsKey(fileName)) {
+               byte[] digest = PrecompiledFileDescriptor.digest(file.getValue());
+               digests.put(fileName, digest);
+               if (isUnchanged(fileName, digest)) {
+                  unchangedFiles.add(fileName);
+               }
+            }
+         }
+      } finally {
+         descriptorLock.unlockRead(stamp);
+      }
+      if (unchangedFiles.isEmpty()) {
+         return source;
+      }
+      if (unchangedFiles.size() == source.getFiles().size()) {
+         if (source.getProgressCallback() != null) {
+            for (String fileName : unchangedFiles) {
+               source.getProgressCallback().handleSuccess(fileName);
+            }
+         }
+         return null;
+      }
+      FileDescriptorSource changedFiles = new FileDescriptorSource().withProgressCallback(source.getProgressCallback());
+      for (Map.Entry<String, String> file : source.getFiles().entrySet()) {
+         if (!unchangedFiles.contains(file.getKey())) {
+            addProtoFile(changedFiles, source, file.getKey(), file.getValue());
+         }
+      }
+      return changedFiles;
+   }
+
+   @GuardedBy("descriptorLock")
+   private boolean isUnchanged(String fileName, byte[] digest) {
+      FileDescriptor fileDescriptor = fileDescriptors.get(fileName);
+      byte[] registeredDigest = fileDigests.get(fileName);
+      return fileDescriptor != null && fileDescriptor.isResolved() && registeredDigest != null && Arrays.equals(digest, registeredDigest);
+   }
+
+   private static void addProtoFile(FileDescriptorSource target, FileDescriptorSource source, String fileName, String contents) {
+      byte[] precompiled = source.getPrecompiledFiles().get(fileName);
+      if (precompiled != null) {
+         target.addProtoFile(fileName, contents, precompiled);
+      } else {
+         target.addProtoFile(fileName, contents);
+      }
+   }
+
+   /**
+    * Registers the schemas of all the initializers, and of the initializers they depend on, with a single
+    * {@link #registerProtoFiles} call and then registers their marshallers, publishing the new marshallers once at the
+    * end.
+    */
+   @Override
+   public void registerInitializers(Collection<? extends SerializationContextInitializer> initializers) throws DescriptorParserException {
+      if (batch.get() != null) {
+         throw new IllegalStateException("registerInitializers cannot be invoked while registering a batch");
+      }
+      Batch currentBatch = new Batch();
+      batch.set(currentBatch);
+      try {
+         for (SerializationContextInitializer initializer : initializers) {
+            initializer.registerSchema(this);
+         }
+      } finally {
+         batch.remove();
+      }
+      registerProtoFiles(currentBatch.toFileDescriptorSource());
+
+      currentBatch.schemasRegistered = true;
+      batch.set(currentBatch);
+      try {
+         for (SerializationContextInitializer initializer : initializers) {
+            initializer.registerMarshallers(this);
+         }
+      } finally {
+         batch.remove();
+         long stamp = manifestLock.writeLock();
+         try {
+            publishMarshallers();
+         } finally {
+            manifestLock.unlockWrite(stamp);
+         }
+      }
+   }
+
+   /**
+    * The files collected during a {@link #registerInitializers} call. Errors are reported to the callback of the source
+    * a file came from, or thrown if that source did not have a callback.
+    */
+   private static final class Batch implements FileDescriptorSource.ProgressCallback {
+
+      private final FileDescriptorSource files = new FileDescriptorSource();
+
+      private final Map<String, FileDescriptorSource.ProgressCallback> progressCallbacks = new HashMap<>();
+
+      /**
+       * Once set, files are registered right away and only the publication of marshallers is deferred.
+       */
+      boolean schemasRegistered;
+
+      void add(FileDescriptorSource source) {
+         for (Map.Entry<String, String> file : source.getFiles().entrySet()) {
+            addProtoFile(files, source, file.getKey(), file.getValue());
+            if (source.getProgressCallback() != null) {
+               progressCallbacks.put(file.getKey(), source.getProgressCallback());
+            } else {
+               progressCallbacks.remove(file.getKey());
+            }
+         }
+      }
+
+      FileDescriptorSource toFileDescriptorSource() {
+         return files.withProgressCallback(progressCallbacks.isEmpty() ? null : this);
+      }
+
+      @Override
+      public void handleError(String fileName, DescriptorParserException exception) {
+         FileDescriptorSource.ProgressCallback progressCallback = progressCallbacks.get(fileName);
+         if (progressCallback == null) {
+            throw exception;
+         }
+         progressCallback.handleError(fileName, exception);
+      }
+
+      @Override
+      public void handleSuccess(String fileName) {
+         FileDescriptorSource.ProgressCallback progressCallback = progressCallbacks.get(fileName);
+         if (progressCallback != null) {
+            progressCallback.handleSuccess(fileName);
+         }
+      }
+   }
+
    @Override
    public void unregisterProtoFile(String fileName) {
       log.debugf("Unregistering proto file : %s", fileName);
@@ -143,11 +390,13 @@ public final class SerializationContextImpl implements SerializationContext {
       try {
          FileDescriptor fileDescriptor = fileDescriptors.remove(fileName);
          if (fileDescriptor != null) {
+            fileDigests.remove(fileName);
             unregisterFileDescriptorTypes(fileDescriptor);
          } else {
             throw new IllegalArgumentException("File " + fileName + " does not exist");
          }
       } finally {
+         publishDescriptors();
          descriptorLock.unlockWrite(stamp);
       }
    }
@@ -160,12 +409,14 @@ public final class SerializationContextImpl implements SerializationContext {
          for (String fileName : fileNames) {
             FileDescriptor fileDescriptor = fileDescriptors.remove(fileName);
             if (fileDescriptor != null) {
+               fileDigests.remove(fileName);
                unregisterFileDescriptorTypes(fileDescriptor);
             } else {
                throw new IllegalArgumentException("File " + fileName + " does not exist");
             }
          }
       } finally {
+         publishDescriptors();
          descriptorLock.unlockWrite(stamp);
       }
    }
@@ -234,6 +485,33 @@ public final class SerializationContextImpl implements SerializationContext {
       }
    }
 
+   @SuppressWarnings("deprecation")
+   private static final class MarshallerSnapshot {
+
+      static final MarshallerSnapshot EMPTY = new MarshallerSnapshot(Map.of(), Map.of(), List.of());
+
+      final Map<String, Registration> marshallersByName;
+      final Map<Class<?>, Registration> marshallersByClass;
+      final List<MarshallerProvider> legacyMarshallerProviders;
+
+      MarshallerSnapshot(Map<String, Registration> marshallersByName, Map<Class<?>, Registration> marshallersByClass,
+                         List<MarshallerProvider> legacyMarshallerProviders) {
+         this.marshallersByName = marshallersByName;
+         this.marshallersByClass = marshallersByClass;
+         this.legacyMarshallerProviders = legacyMarshallerProviders;
+      }
+   }
+
+   @GuardedBy("manifestLock")
+   private void publishMarshallers() {
+      if (batch.get() != null) {
+         // published once at the end of the batch
+         return;
+      }
+      marshallerSnapshot = new MarshallerSnapshot(Map.copyOf(marshallersByName), Map.copyOf(marshallersByClass), List.copyOf(legacyMarshallerProviders));
+      wrappingPlans = new ConcurrentHashMap<>();
+   }
+
    @Override
    public void registerMarshaller(BaseMarshaller<?> marshaller) {
       if (marshaller == null) {
@@ -242,50 +520,79 @@ public final class SerializationContextImpl implements SerializationContext {
 
       long stamp = manifestLock.writeLock();
       try {
-         Registration existingByName = marshallersByName.get(marshaller.getTypeName());
-         Registration existingByClass = marshallersByClass.get(marshaller.getJavaClass());
-         if (existingByName != null && existingByName.marshallerProvider != null ||
-               existingByClass != null && existingByClass.marshallerProvider != null) {
-            throw new IllegalArgumentException("The given marshaller attempts to override an existing marshaller registered indirectly via an InstanceMarshallerProvider. Please unregister it first.");
+         addMarshaller(marshaller);
+      } finally {
+         publishMarshallers();
+         manifestLock.unlockWrite(stamp);
+      }
+   }
+
+   /**
+    * Registers all the marshallers under a single lock acquisition and publishes the new marshallers once at the end,
+    * instead of copying the lookup maps after each one.
+    */
+   @Override
+   public void registerMarshallers(Collection<? extends BaseMarshaller<?>> marshallers) {
+      for (BaseMarshaller<?> marshaller : marshallers) {
+         if (marshaller == null) {
+            throw new IllegalArgumentException("marshallers argument cannot contain null elements");
          }
+      }
 
-         final Class<?>[] subClasses;
-         String[] subClassNames = marshaller.getSubClassNames();
-         if (subClassNames.length > 0) {
-            subClasses = Arrays.stream(subClassNames).map(SerializationContextImpl::classForName).toArray(Class[]::new);
-         } else {
-            subClasses = EMPTY_CLASSES;
+      long stamp = manifestLock.writeLock();
+      try {
+         for (BaseMarshaller<?> marshaller : marshallers) {
+            addMarshaller(marshaller);
          }
+      } finally {
+         publishMarshallers();
+         manifestLock.unlockWrite(stamp);
+      }
+   }
 
-         if (existingByName != null) {
-            Registration anotherByClass = marshallersByClass.get(existingByName.marshallerDelegate.getMarshaller().getJavaClass());
-            if (anotherByClass == null) {
+   @GuardedBy("manifestLock")
+   private void addMarshaller(BaseMarshaller<?> marshaller) {
+      Registration existingByName = marshallersByName.get(marshaller.getTypeName());
+      Registration existingByClass = marshallersByClass.get(marshaller.getJavaClass());
+      if (existingByName != null && existingByName.marshallerProvider != null ||
+            existingByClass != null && existingByClass.marshallerProvider != null) {
+         throw new IllegalArgumentException("The given marshaller attempts to override an existing marshaller registered indirectly via an InstanceMarshallerProvider. Please unregister it first.");
+      }
+
+      final Class<?>[] subClasses;
+      String[] subClassNames = marshaller.getSubClassNames();
+      if (subClassNames.length > 0) {
+         subClasses = Arrays.stream(subClassNames).map(SerializationContextImpl::classForName).toArray(Class[]::new);
+      } else {
+         subClasses = EMPTY_CLASSES;
+      }
+
+      if (existingByName != null) {
+         Registration anotherByClass = marshallersByClass.get(existingByName.marshallerDelegate.getMarshaller().getJavaClass());
+         if (anotherByClass == null) {
+            throw new IllegalStateException("Inconsistent marshaller definitions!");
+         }
+         if (anotherByClass.marshallerProvider != null) {
+            throw new IllegalArgumentException("The given marshaller attempts to override an existing marshaller registered indirectly via an InstanceMarshallerProvider. Please unregister that first.");
+         } else {
+            if (!anotherByClass.marshallerDelegate.getMarshaller().getTypeName().equals(marshaller.getTypeName())) {
                throw new IllegalStateException("Inconsistent marshaller definitions!");
             }
-            if (anotherByClass.marshallerProvider != null) {
-               throw new IllegalArgumentException("The given marshaller attempts to override an existing marshaller registered indirectly via an InstanceMarshallerProvider. Please unregister that first.");
-            } else {
-               if (!anotherByClass.marshallerDelegate.getMarshaller().getTypeName().equals(marshaller.getTypeName())) {
-                  throw new IllegalStateException("Inconsistent marshaller definitions!");
-               }
-            }
-            marshallersByClass.remove(existingByName.marshallerDelegate.getMarshaller().getJavaClass());
-            for (Class<?> subClass : subClasses) {
-               marshallersByClass.remove(subClass);
-            }
-         }
-         if (existingByClass != null) {
-            marshallersByName.remove(existingByClass.marshallerDelegate.getMarshaller().getTypeName());
          }
-
-         Registration registration = new Registration(makeMarshallerDelegate(marshaller));
-         marshallersByClass.put(marshaller.getJavaClass(), registration);
-         marshallersByName.put(marshaller.getTypeName(), registration);
+         marshallersByClass.remove(existingByName.marshallerDelegate.getMarshaller().getJavaClass());
          for (Class<?> subClass : subClasses) {
-            marshallersByClass.put(subClass, registration);
+            marshallersByClass.remove(subClass);
          }
-      } finally {
-         manifestLock.unlockWrite(stamp);
+      }
+      if (existingByClass != null) {
+         marshallersByName.remove(existingByClass.marshallerDelegate.getMarshaller().getTypeName());
+      }
+
+      Registration registration = new Registration(makeMarshallerDelegate(marshaller));
+      marshallersByClass.put(marshaller.getJavaClass(), registration);
+      marshallersByName.put(marshaller.getTypeName(), registration);
+      for (Class<?> subClass : subClasses) {
+         marshallersByClass.put(subClass, registration);
       }
    }
 
@@ -333,6 +640,7 @@ public final class SerializationContextImpl implements SerializationContext {
          marshallersByName.remove(marshaller.getTypeName());
          marshallersByClass.remove(marshaller.getJavaClass());
       } finally {
+         publishMarshallers();
          manifestLock.unlockWrite(stamp);
       }
    }
@@ -348,6 +656,7 @@ public final class SerializationContextImpl implements SerializationContext {
       try {
          legacyMarshallerProviders.add(marshallerProvider);
       } finally {
+         publishMarshallers();
          manifestLock.unlockWrite(stamp);
       }
    }
@@ -363,6 +672,7 @@ public final class SerializationContextImpl implements SerializationContext {
       try {
          legacyMarshallerProviders.remove(marshallerProvider);
       } finally {
+         publishMarshallers();
          manifestLock.unlockWrite(stamp);
       }
    }
@@ -391,6 +701,7 @@ public final class SerializationContextImpl implements SerializationContext {
             marshallersByName.put(typeName, new Registration(makeMarshallerDelegate(marshaller), marshallerProvider));
          }
       } finally {
+         publishMarshallers();
          manifestLock.unlockWrite(stamp);
       }
    }
@@ -410,54 +721,43 @@ public final class SerializationContextImpl implements SerializationContext {
          marshallersByClass.remove(marshallerProvider.getJavaClass());
          marshallersByName.keySet().removeAll(marshallerProvider.getTypeNames());
       } finally {
+         publishMarshallers();
          manifestLock.unlockWrite(stamp);
       }
    }
 
    @Override
    public boolean canMarshall(Class<?> javaClass) {
-      long stamp = manifestLock.readLock();
-      try {
-         return marshallersByClass.containsKey(javaClass) || getMarshallerFromLegacyProvider(javaClass) != null;
-      } finally {
-         manifestLock.unlockRead(stamp);
-      }
+      MarshallerSnapshot snapshot = marshallerSnapshot;
+      return snapshot.marshallersByClass.containsKey(javaClass) || getMarshallerFromLegacyProvider(snapshot, javaClass) != null;
    }
 
    @Override
    public boolean canMarshall(String fullTypeName) {
-      long stamp = manifestLock.readLock();
-      try {
-         return marshallersByName.containsKey(fullTypeName) || getMarshallerFromLegacyProvider(fullTypeName) != null;
-      } finally {
-         manifestLock.unlockRead(stamp);
-      }
+      MarshallerSnapshot snapshot = marshallerSnapshot;
+      return snapshot.marshallersByName.containsKey(fullTypeName) || getMarshallerFromLegacyProvider(snapshot, fullTypeName) != null;
    }
 
    @Override
    public boolean canMarshall(Object object) {
       Class<?> javaClass = object.getClass();
-      long stamp = manifestLock.readLock();
-      try {
-         Registration registration = marshallersByClass.get(javaClass);
-         if (registration != null) {
-            if (registration.marshallerProvider != null) {
-               String typeName = ((InstanceMarshallerProvider<Object>) registration.marshallerProvider).getTypeName(object);
-               if (typeName == null) {
-                  throw new IllegalArgumentException("No marshaller registered for object of Java type " + javaClass.getName() + " : " + object);
-               }
-               registration = marshallersByName.get(typeName);
-            }
-            if (registration != null) {
-               return true;
+      MarshallerSnapshot snapshot = marshallerSnapshot;
+      Registration registration = snapshot.marshallersByClass.get(javaClass);
+      if (registration != null) {
+         if (registration.marshallerProvider != null) {
+            String typeName = ((InstanceMarshallerProvider<Object>) registration.marshallerProvider).getTypeName(object);
+            if (typeName == null) {
+               throw new IllegalArgumentException("No marshaller registered for object of Java type " + javaClass.getName() + " : " + object);
             }
+            registration = snapshot.marshallersByName.get(typeName);
+         }
+         if (registration != null) {
+            return true;
          }
-
-         BaseMarshaller<?> marshaller = getMarshallerFromLegacyProvider(javaClass);
-         return marshaller != null;
-      } finally {
-         manifestLock.unlockRead(stamp);
       }
+
+      BaseMarshaller<?> marshaller = getMarshallerFromLegacyProvider(snapshot, javaClass);
+      return marshaller != null;
    }
 
    @Override
@@ -476,98 +776,102 @@ public final class SerializationContextImpl implements SerializationContext {
    }
 
    public <T> BaseMarshallerDelegate<T> getMarshallerDelegate(String typeName) {
-      long stamp = manifestLock.readLock();
-      try {
-         Registration registration = marshallersByName.get(typeName);
-         if (registration != null) {
-            return (BaseMarshallerDelegate<T>) registration.marshallerDelegate;
-         }
+      MarshallerSnapshot snapshot = marshallerSnapshot;
+      Registration registration = snapshot.marshallersByName.get(typeName);
+      if (registration != null) {
+         return (BaseMarshallerDelegate<T>) registration.marshallerDelegate;
+      }
 
-         BaseMarshaller<T> marshaller = getMarshallerFromLegacyProvider(typeName);
-         if (marshaller == null) {
-            throw new IllegalArgumentException("No marshaller registered for Protobuf type " + typeName);
-         }
-         //todo [anistor] A marshaller delegate is created per call and cannot be cached! This is just legacy.
-         return makeMarshallerDelegate(marshaller);
-      } finally {
-         manifestLock.unlockRead(stamp);
+      BaseMarshaller<T> marshaller = getMarshallerFromLegacyProvider(snapshot, typeName);
+      if (marshaller == null) {
+         throw new IllegalArgumentException("No marshaller registered for Protobuf type " + typeName);
       }
+      //todo [anistor] A marshaller delegate is created per call and cannot be cached! This is just legacy.
+      return makeMarshallerDelegate(marshaller);
    }
 
    public <T> BaseMarshallerDelegate<T> getMarshallerDelegate(Class<T> javaClass) {
-      long stamp = manifestLock.readLock();
-      try {
-         Registration registration = marshallersByClass.get(javaClass);
-         if (registration != null) {
-            if (registration.marshallerProvider != null) {
-               throw new IllegalArgumentException("Java type " + javaClass.getName()
-                     + " is mapped to multiple protobuf types : " + registration.marshallerProvider.getTypeNames()
-                     + ". Object instance needed for disambiguation.");
-            }
-            return (BaseMarshallerDelegate<T>) registration.marshallerDelegate;
+      MarshallerSnapshot snapshot = marshallerSnapshot;
+      Registration registration = snapshot.marshallersByClass.get(javaClass);
+      if (registration != null) {
+         if (registration.marshallerProvider != null) {
+            throw new IllegalArgumentException("Java type " + javaClass.getName()
+                  + " is mapped to multiple protobuf types : " + registration.marshallerProvider.getTypeNames()
+                  + ". Object instance needed for disambiguation.");
          }
+         return (BaseMarshallerDelegate<T>) registration.marshallerDelegate;
+      }
 
-         BaseMarshaller<T> marshaller = getMarshallerFromLegacyProvider(javaClass);
-         if (marshaller == null) {
-            throw new IllegalArgumentException("No marshaller registered for Java type " + javaClass.getName());
-         }
-         //todo [anistor] A marshaller delegate is created per call and cannot be cached! This is just legacy.
-         return makeMarshallerDelegate(marshaller);
-      } finally {
-         manifestLock.unlockRead(stamp);
+      BaseMarshaller<T> marshaller = getMarshallerFromLegacyProvider(snapshot, javaClass);
+      if (marshaller == null) {
+         throw new IllegalArgumentException("No marshaller registered for Java type " + javaClass.getName());
       }
+      //todo [anistor] A marshaller delegate is created per call and cannot be cached! This is just legacy.
+      return makeMarshallerDelegate(marshaller);
    }
 
    public <T> BaseMarshallerDelegate<T> getMarshallerDelegate(T object) {
       Class<T> javaClass = (Class<T>) object.getClass();
-      long stamp = manifestLock.readLock();
-      try {
-         Registration registration = marshallersByClass.get(javaClass);
-         if (registration != null) {
-            if (registration.marshallerProvider != null) {
-               String typeName = ((InstanceMarshallerProvider<T>) registration.marshallerProvider).getTypeName(object);
-               if (typeName == null) {
-                  throw new IllegalArgumentException("No marshaller registered for object of Java type " + javaClass.getName() + " : " + object);
-               }
-               registration = marshallersByName.get(typeName);
-            }
-            if (registration != null) {
-               return (BaseMarshallerDelegate<T>) registration.marshallerDelegate;
+      MarshallerSnapshot snapshot = marshallerSnapshot;
+      Registration registration = snapshot.marshallersByClass.get(javaClass);
+      if (registration != null) {
+         if (registration.marshallerProvider != null) {
+            String typeName = ((InstanceMarshallerProvider<T>) registration.marshallerProvider).getTypeName(object);
+            if (typeName == null) {
+               throw new IllegalArgumentException("No marshaller registered for object of Java type " + javaClass.getName() + " : " + object);
             }
+            registration = snapshot.marshallersByName.get(typeName);
          }
+         if (registration != null) {
+            return (BaseMarshallerDelegate<T>) registration.marshallerDelegate;
+         }
+      }
 
-         BaseMarshaller<T> marshaller = getMarshallerFromLegacyProvider(javaClass);
-         if (marshaller == null) {
-            throw new IllegalArgumentException("No marshaller registered for object of Java type " + javaClass.getName() + " : " + object);
+      BaseMarshaller<T> marshaller = getMarshallerFromLegacyProvider(snapshot, javaClass);
+      if (marshaller == null) {
+         throw new IllegalArgumentException("No marshaller registered for object of Java type " + javaClass.getName() + " : " + object);
+      }
+      //todo [anistor] A marshaller delegate is created per call and cannot be cached! This is just legacy.
+      return makeMarshallerDelegate(marshaller);
+   }
+
+   /**
+    * Obtains the plan for wrapping the given object in a {@link org.infinispan.protostream.WrappedMessage}. Plans are
+    * cached per Java class, except for classes handled by an {@link InstanceMarshallerProvider} or by a legacy
+    * {@link MarshallerProvider}, where the marshaller can change from one instance to another.
+    */
+   public <T> WrappingPlan<T> getWrappingPlan(T object) {
+      // read the cache before the snapshots, so a plan cached here is computed from snapshots that are at least as new
+      ConcurrentHashMap<Class<?>, WrappingPlan<?>> plans = wrappingPlans;
+      Class<?> javaClass = object.getClass();
+      WrappingPlan<T> plan = (WrappingPlan<T>) plans.get(javaClass);
+      if (plan == null) {
+         Registration registration = marshallerSnapshot.marshallersByClass.get(javaClass);
+         plan = new WrappingPlan<>(this, getMarshallerDelegate(object), javaClass);
+         if (registration != null && registration.marshallerProvider == null) {
+            plans.putIfAbsent(javaClass, plan);
          }
-         //todo [anistor] A marshaller delegate is created per call and cannot be cached! This is just legacy.
-         return makeMarshallerDelegate(marshaller);
-      } finally {
-         manifestLock.unlockRead(stamp);
       }
+      return plan;
    }
 
-   @GuardedBy("manifestLock")
-   private <T> BaseMarshaller<T> getMarshallerFromLegacyProvider(Class<T> javaClass) {
-      if (!legacyMarshallerProviders.isEmpty()) {
-         for (MarshallerProvider mp : legacyMarshallerProviders) {
-            BaseMarshaller<T> marshaller = (BaseMarshaller<T>) mp.getMarshaller(javaClass);
-            if (marshaller != null) {
-               return marshaller;
-            }
+   @SuppressWarnings("deprecation")
+   private static <T> BaseMarshaller<T> getMarshallerFromLegacyProvider(MarshallerSnapshot snapshot, Class<T> javaClass) {
+      for (MarshallerProvider mp : snapshot.legacyMarshallerProviders) {
+         BaseMarshaller<T> marshaller = (BaseMarshaller<T>) mp.getMarshaller(javaClass);
+         if (marshaller != null) {
+            return marshaller;
          }
       }
       return null;
    }
 
-   @GuardedBy("manifestLock")
-   private <T> BaseMarshaller<T> getMarshallerFromLegacyProvider(String fullTypeName) {
-      if (!legacyMarshallerProviders.isEmpty()) {
-         for (MarshallerProvider mp : legacyMarshallerProviders) {
-            BaseMarshaller<T> marshaller = (BaseMarshaller<T>) mp.getMarshaller(fullTypeName);
-            if (marshaller != null) {
-               return marshaller;
-            }
+   @SuppressWarnings("deprecation")
+   private static <T> BaseMarshaller<T> getMarshallerFromLegacyProvider(MarshallerSnapshot snapshot, String fullTypeName) {
+      for (MarshallerProvider mp : snapshot.legacyMarshallerProviders) {
+         BaseMarshaller<T> marshaller = (BaseMarshaller<T>) mp.getMarshaller(fullTypeName);
+         if (marshaller != null) {
+            return marshaller;
          }
       }
       return null;
@@ -591,16 +895,11 @@ public final class SerializationContextImpl implements SerializationContext {
          throw new IllegalArgumentException("Type name argument cannot be null");
       }
 
-      long stamp = descriptorLock.readLock();
-      try {
-         GenericDescriptor descriptor = genericDescriptors.get(fullTypeName);
-         if (descriptor == null) {
-            throw new IllegalArgumentException("Unknown type name : " + fullTypeName);
-         }
-         return descriptor;
-      } finally {
-         descriptorLock.unlockRead(stamp);
+      GenericDescriptor descriptor = descriptorSnapshot.genericDescriptors.get(fullTypeName);
+      if (descriptor == null) {
+         throw new IllegalArgumentException("Unknown type name : " + fullTypeName);
       }
+      return descriptor;
    }
 
    @Override
@@ -609,15 +908,10 @@ public final class SerializationContextImpl implements SerializationContext {
          throw new IllegalArgumentException("Type id argument cannot be null");
       }
 
-      long stamp = descriptorLock.readLock();
-      try {
-         GenericDescriptor descriptor = typeIds.get(typeId);
-         if (descriptor == null) {
-            throw new IllegalArgumentException("Unknown type id : " + typeId);
-         }
-         return descriptor;
-      } finally {
-         descriptorLock.unlockRead(stamp);
+      GenericDescriptor descriptor = descriptorSnapshot.typeIds.get(typeId);
+      if (descriptor == null) {
+         throw new IllegalArgumentException("Unknown type id : " + typeId);
       }
+      return descriptor;
    }
 }
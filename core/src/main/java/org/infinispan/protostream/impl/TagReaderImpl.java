@@ -7,9 +7,12 @@ import static org.infinispan.protostream.descriptors.WireType.MAX_VARINT_SIZE;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.PushbackInputStream;
+import java.io.SequenceInputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
@@ -19,6 +22,7 @@ import java.util.Map;
 import org.infinispan.protostream.ImmutableSerializationContext;
 import org.infinispan.protostream.MalformedProtobufException;
 import org.infinispan.protostream.ProtobufTagMarshaller;
+import org.infinispan.protostream.ProtobufUtil;
 import org.infinispan.protostream.TagReader;
 import org.infinispan.protostream.descriptors.WireType;
 
@@ -36,8 +40,8 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
 
    private final SerializationContextImpl serCtx;
 
-   // all reads are delegated to a lower level protocol decoder
-   private final Decoder decoder;
+   // all reads are delegated to a lower level protocol decoder, replaced on reset of a top level reader
+   private Decoder decoder;
 
    private final TagReaderImpl parent;
 
@@ -60,23 +64,54 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
       this.decoder = decoder;
    }
 
+   /**
+    * Creates a reader for a nested message read from a stream. It borrows the read ahead buffer of the parent if the
+    * parent reads from a stream too and has no buffered bytes left, so it must be done with its input before the parent
+    * reads again.
+    */
    public static TagReaderImpl newNestedInstance(ProtobufTagMarshaller.ReadContext parent, InputStream input) {
-      return new TagReaderImpl((TagReaderImpl) parent, new InputStreamDecoder(input));
+      TagReaderImpl parentReader = (TagReaderImpl) parent;
+      Decoder parentDecoder = parentReader.decoder;
+      byte[] buffer = parentDecoder instanceof InputStreamDecoder ? ((InputStreamDecoder) parentDecoder).borrowBuffer() : null;
+      if (buffer == null) {
+         buffer = new byte[ProtobufUtil.DEFAULT_STREAM_BUFFER_SIZE];
+      }
+      return new TagReaderImpl(parentReader, new InputStreamDecoder(input, buffer));
    }
 
    public static TagReaderImpl newNestedInstance(ProtobufTagMarshaller.ReadContext parent, byte[] buf) {
       return new TagReaderImpl((TagReaderImpl) parent, new ByteArrayDecoder(buf, 0, buf.length));
    }
 
+   public static TagReaderImpl newNestedInstance(ProtobufTagMarshaller.ReadContext parent, ByteBuffer buf) {
+      return new TagReaderImpl((TagReaderImpl) parent, newDecoder(buf));
+   }
+
+   /**
+    * Creates a reader for a message read from a stream. A top level message extends to the end of the stream, so the
+    * reader takes ownership of the stream and reads ahead from it. Reading ahead never goes beyond a limit set with
+    * {@link #pushLimit}, so the bytes following a message of known length are left in the stream.
+    */
    public static TagReaderImpl newInstance(ImmutableSerializationContext serCtx, InputStream input) {
-      return new TagReaderImpl((SerializationContextImpl) serCtx, new InputStreamDecoder(input));
+      return new TagReaderImpl((SerializationContextImpl) serCtx, new InputStreamDecoder(input, ProtobufUtil.DEFAULT_STREAM_BUFFER_SIZE));
+   }
+
+   /**
+    * Same as {@link #newInstance(ImmutableSerializationContext, InputStream)}, with a read ahead buffer of the given
+    * size.
+    */
+   public static TagReaderImpl newInstance(ImmutableSerializationContext serCtx, InputStream input, int bufferSize) {
+      return new TagReaderImpl((SerializationContextImpl) serCtx, new InputStreamDecoder(input, bufferSize));
    }
 
    public static TagReaderImpl newInstance(ImmutableSerializationContext serCtx, ByteBuffer buf) {
-      Decoder decoder = buf.hasArray()
+      return new TagReaderImpl((SerializationContextImpl) serCtx, newDecoder(buf));
+   }
+
+   private static Decoder newDecoder(ByteBuffer buf) {
+      return buf.hasArray()
             ? new ByteArrayDecoder(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining())
             : new ByteBufferDecoder(buf);
-      return new TagReaderImpl((SerializationContextImpl) serCtx, decoder);
    }
 
    public static TagReaderImpl newInstance(ImmutableSerializationContext serCtx, byte[] buf) {
@@ -87,6 +122,40 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
       return new TagReaderImpl((SerializationContextImpl) serCtx, new ByteArrayDecoder(buf, offset, length));
    }
 
+   /**
+    * Points this reader to new input and discards all state of the previous unmarshalling operation, so a top level
+    * reader can be reused instead of creating a new one for each message.
+    */
+   public void reset(byte[] buf, int offset, int length) {
+      checkResettable();
+      if (decoder instanceof ByteArrayDecoder) {
+         ((ByteArrayDecoder) decoder).reset(buf, offset, length);
+      } else {
+         decoder = new ByteArrayDecoder(buf, offset, length);
+      }
+   }
+
+   /**
+    * Points this reader to the remaining bytes of a buffer. See {@link #reset(byte[], int, int)}.
+    */
+   public void reset(ByteBuffer buf) {
+      if (buf.hasArray()) {
+         reset(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+      } else {
+         checkResettable();
+         decoder = new ByteBufferDecoder(buf);
+      }
+   }
+
+   private void checkResettable() {
+      if (parent != null) {
+         throw new IllegalStateException("Only a top level reader can be reset");
+      }
+      if (params != null) {
+         params.clear();
+      }
+   }
+
    @Override
    public boolean isAtEnd() throws IOException {
       return decoder.isAtEnd();
@@ -208,6 +277,13 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
       decoder.popLimit(oldLimit);
    }
 
+   /**
+    * Skips all bytes up to the limit set by the last {@link #pushLimit}, without parsing the fields in between.
+    */
+   public void skipToLimit() throws IOException {
+      decoder.skipToLimit();
+   }
+
    @Override
    public SerializationContextImpl getSerializationContext() {
       return serCtx;
@@ -368,6 +444,11 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
 
       abstract void skipRawBytes(int length) throws IOException;
 
+      /**
+       * Skips the bytes remaining until the current limit.
+       */
+      abstract void skipToLimit() throws IOException;
+
       abstract String readString() throws IOException;
 
       abstract byte readRawByte() throws IOException;
@@ -405,11 +486,19 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
 
    private static final class ByteArrayDecoder extends Decoder {
 
-      private final byte[] array;
+      // little endian views of the array, for reading fixed size values and 8 bytes of a varint with a single access
+      private static final VarHandle INT_HANDLE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+      private static final VarHandle LONG_HANDLE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+      // the continuation bit of each byte of a long
+      private static final long CONTINUATION_BITS = 0x8080808080808080L;
+
+      private byte[] array;
 
       // all positions are absolute
-      private final int start;
-      private final int stop;
+      private int start;
+      private int stop;
       private int pos;
       private int end; // limit adjusted
 
@@ -417,6 +506,10 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
       private int limit;
 
       private ByteArrayDecoder(byte[] array, int offset, int length) {
+         reset(array, offset, length);
+      }
+
+      void reset(byte[] array, int offset, int length) {
          if (array == null) {
             throw new IllegalArgumentException("array cannot be null");
          }
@@ -436,6 +529,8 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
          this.start = this.pos = offset;
          this.limit = length;
          this.stop = this.end = offset + length;
+         this.globalLimit = Integer.MAX_VALUE;
+         this.lastTag = 0;
          adjustEnd();
       }
 
@@ -521,10 +616,14 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
       @Override
       protected void skipVarint() throws IOException {
          if (end - pos >= MAX_VARINT_SIZE) {
-            for (int i = 0; i < MAX_VARINT_SIZE; i++) {
-               if (array[pos++] >= 0) {
-                  return;
-               }
+            long stopBits = ~(long) LONG_HANDLE.get(array, pos) & CONTINUATION_BITS;
+            if (stopBits != 0) {
+               pos += (Long.numberOfTrailingZeros(stopBits) + 1) >>> 3;
+               return;
+            }
+            pos += 8;
+            if (array[pos++] >= 0 || array[pos++] >= 0) {
+               return;
             }
          } else {
             for (int i = 0; i < MAX_VARINT_SIZE; i++) {
@@ -538,16 +637,30 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
 
       @Override
       long readVarint64() throws IOException {
-         long value = 0;
          if (end - pos >= MAX_VARINT_SIZE) {
-            for (int i = 0; i < 64; i += 7) {
-               byte b = array[pos++];
-               value |= (long) (b & 0x7F) << i;
-               if (b >= 0) {
-                  return value;
-               }
+            // load the first 8 bytes at once, the varint ends at the first byte whose continuation bit is clear
+            long word = (long) LONG_HANDLE.get(array, pos);
+            long stopBits = ~word & CONTINUATION_BITS;
+            if (stopBits != 0) {
+               int bits = Long.numberOfTrailingZeros(stopBits) + 1;
+               pos += bits >>> 3;
+               return compactVarint(word & (-1L >>> (64 - bits)));
+            }
+            // 9 or 10 bytes, only negative numbers and huge positive ones are this long
+            pos += 8;
+            long value = compactVarint(word);
+            byte b = array[pos++];
+            value |= (long) (b & 0x7F) << 56;
+            if (b >= 0) {
+               return value;
+            }
+            b = array[pos++];
+            value |= (long) (b & 0x7F) << 63;
+            if (b >= 0) {
+               return value;
             }
          } else {
+            long value = 0;
             for (int i = 0; i < 64; i += 7) {
                byte b = readRawByte();
                value |= (long) (b & 0x7F) << i;
@@ -559,36 +672,34 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
          throw log.malformedVarint();
       }
 
+      /**
+       * Drops the continuation bit of the 8 bytes of a word and packs their 7 bit groups together, pairing them up
+       * in 3 steps instead of shifting each one.
+       */
+      private static long compactVarint(long word) {
+         word = (word & 0x007F007F007F007FL) | ((word & 0x7F007F007F007F00L) >>> 1);
+         word = (word & 0x00003FFF00003FFFL) | ((word & 0x3FFF00003FFF0000L) >>> 2);
+         return (word & 0x000000000FFFFFFFL) | ((word & 0x0FFFFFFF00000000L) >>> 4);
+      }
+
       @Override
       int readFixed32() throws IOException {
-         try {
-            int value = (array[pos] & 0xFF)
-                  | ((array[pos + 1] & 0xFF) << 8)
-                  | ((array[pos + 2] & 0xFF) << 16)
-                  | ((array[pos + 3] & 0xFF) << 24);
-            pos += FIXED_32_SIZE;
-            return value;
-         } catch (ArrayIndexOutOfBoundsException e) {
-            throw log.messageTruncated(e);
+         if (end - pos < FIXED_32_SIZE) {
+            throw log.messageTruncated();
          }
+         int value = (int) INT_HANDLE.get(array, pos);
+         pos += FIXED_32_SIZE;
+         return value;
       }
 
       @Override
       long readFixed64() throws IOException {
-         try {
-            long value = (array[pos] & 0xFFL)
-                  | ((array[pos + 1] & 0xFFL) << 8)
-                  | ((array[pos + 2] & 0xFFL) << 16)
-                  | ((array[pos + 3] & 0xFFL) << 24)
-                  | ((array[pos + 4] & 0xFFL) << 32)
-                  | ((array[pos + 5] & 0xFFL) << 40)
-                  | ((array[pos + 6] & 0xFFL) << 48)
-                  | ((array[pos + 7] & 0xFFL) << 56);
-            pos += FIXED_64_SIZE;
-            return value;
-         } catch (ArrayIndexOutOfBoundsException e) {
-            throw log.messageTruncated(e);
+         if (end - pos < FIXED_64_SIZE) {
+            throw log.messageTruncated();
          }
+         long value = (long) LONG_HANDLE.get(array, pos);
+         pos += FIXED_64_SIZE;
+         return value;
       }
 
       @Override
@@ -628,6 +739,11 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
          throw log.messageTruncated();
       }
 
+      @Override
+      void skipToLimit() throws IOException {
+         skipRawBytes(start + limit - pos);
+      }
+
       @Override
       int setGlobalLimit(int globalLimit) {
          return Integer.MAX_VALUE;
@@ -636,6 +752,11 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
 
    private static final class ByteBufferDecoder extends Decoder {
 
+      // strings up to this size are copied out of the buffer into a reused array
+      private static final int MAX_STRING_BUFFER_SIZE = 4096;
+
+      private static final int MIN_STRING_BUFFER_SIZE = 64;
+
       private final ByteBuffer buf;
 
       // all positions are absolute
@@ -646,11 +767,21 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
       // number of bytes we are allowed to read starting from start position
       private int limit;
 
+      /**
+       * If buffer byte order is not LITTLE_ENDIAN as expected by Protobuf binary format then we need to reverse bytes
+       * whenever we read a fixed32 or fixed64 value.
+       */
+      private final boolean reverse;
+
+      // lazily allocated and reused to copy the bytes of strings out of the buffer
+      private byte[] stringBuffer;
+
       private ByteBufferDecoder(ByteBuffer buf) {
          this.buf = buf;
          this.start = buf.position();
          this.limit = buf.remaining();
          this.stop = this.end = this.start + this.limit;
+         this.reverse = buf.order() == ByteOrder.BIG_ENDIAN;
       }
 
       @Override
@@ -704,8 +835,9 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
       String readString() throws IOException {
          int length = readVarint32();
          if (length > 0 && length <= end - buf.position()) {
-            byte[] bytes = new byte[length];
-            buf.get(bytes);
+            // the String constructor copies the bytes, so a reused array is enough to get them out of the buffer
+            byte[] bytes = length <= MAX_STRING_BUFFER_SIZE ? getStringBuffer(length) : new byte[length];
+            buf.get(bytes, 0, length);
             return new String(bytes, 0, length, UTF8);
          }
          if (length == 0) {
@@ -717,6 +849,13 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
          throw log.messageTruncated();
       }
 
+      private byte[] getStringBuffer(int length) {
+         if (stringBuffer == null || stringBuffer.length < length) {
+            stringBuffer = new byte[Math.max(length, MIN_STRING_BUFFER_SIZE)];
+         }
+         return stringBuffer;
+      }
+
       @Override
       ByteBuffer readRawByteBuffer(int length) throws IOException {
          if (length > 0 && length <= end - buf.position()) {
@@ -755,11 +894,14 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
       @Override
       long readVarint64() throws IOException {
          long value = 0;
-         if (end - buf.position() >= MAX_VARINT_SIZE) {
+         int pos = buf.position();
+         if (end - pos >= MAX_VARINT_SIZE) {
+            // absolute reads, the position is updated once at the end
             for (int i = 0; i < 64; i += 7) {
-               byte b = buf.get();
+               byte b = buf.get(pos++);
                value |= (long) (b & 0x7F) << i;
                if (b >= 0) {
+                  buf.position(pos);
                   return value;
                }
             }
@@ -777,20 +919,24 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
 
       @Override
       int readFixed32() throws IOException {
-         try {
-            return buf.getInt();  //todo [anistor] should we worry about byte order?
-         } catch (BufferUnderflowException e) {
-            throw log.messageTruncated(e);
+         int pos = buf.position();
+         if (end - pos < FIXED_32_SIZE) {
+            throw log.messageTruncated();
          }
+         int value = buf.getInt(pos);
+         buf.position(pos + FIXED_32_SIZE);
+         return reverse ? Integer.reverseBytes(value) : value;
       }
 
       @Override
       long readFixed64() throws IOException {
-         try {
-            return buf.getLong();  //todo [anistor] should we worry about byte order?
-         } catch (BufferUnderflowException e) {
-            throw log.messageTruncated(e);
+         int pos = buf.position();
+         if (end - pos < FIXED_64_SIZE) {
+            throw log.messageTruncated();
          }
+         long value = buf.getLong(pos);
+         buf.position(pos + FIXED_64_SIZE);
+         return reverse ? Long.reverseBytes(value) : value;
       }
 
       @Override
@@ -830,6 +976,11 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
          throw log.messageTruncated();
       }
 
+      @Override
+      void skipToLimit() throws IOException {
+         skipRawBytes(start + limit - buf.position());
+      }
+
       @Override
       int setGlobalLimit(int globalLimit) {
          return Integer.MAX_VALUE;
@@ -840,6 +991,15 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
 
       private final InputStream in;
 
+      /**
+       * Bytes read ahead from the stream and not consumed yet, between {@link #bufPos} and {@link #bufEnd}.
+       */
+      private final byte[] buf;
+
+      private int bufPos;
+
+      private int bufEnd;
+
       /**
        * Current position.
        */
@@ -850,21 +1010,66 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
        */
       private int limit = Integer.MAX_VALUE;
 
-      private InputStreamDecoder(InputStream in) {
+      private InputStreamDecoder(InputStream in, int bufferSize) {
+         this(in, newBuffer(bufferSize));
+      }
+
+      private InputStreamDecoder(InputStream in, byte[] buf) {
          if (in == null) {
             throw new IllegalArgumentException("input stream cannot be null");
          }
-         if (in.markSupported()) {
-            this.in = in;
-         } else {
-            this.in = new PushbackInputStream(in);
+         this.in = in;
+         this.buf = buf;
+      }
+
+      private static byte[] newBuffer(int bufferSize) {
+         if (bufferSize < 1) {
+            throw new IllegalArgumentException("buffer size must be greater than 0");
          }
+         return new byte[bufferSize];
+      }
+
+      /**
+       * Returns the buffer to be used by a nested decoder, or {@code null} if it still holds bytes not consumed yet.
+       */
+      byte[] borrowBuffer() {
+         return bufPos == bufEnd ? buf : null;
+      }
+
+      /**
+       * Reads ahead more bytes from the stream into the buffer, which must be empty. We never read beyond the current
+       * limit so the bytes following a nested message are not consumed from the stream before they are needed.
+       *
+       * @return {@code false} if no more bytes could be read, {@code true} otherwise
+       */
+      private boolean fill() throws IOException {
+         int length = Math.min(buf.length, limit - pos);
+         if (length <= 0) {
+            return false;
+         }
+         int readAmount = in.read(buf, 0, length);
+         if (readAmount <= 0) {
+            return false;
+         }
+         bufPos = 0;
+         bufEnd = readAmount;
+         return true;
       }
 
       @Override
       String readString() throws IOException {
          int length = readVarint32();
          if (length > 0 && length <= limit - pos) {
+            if (length <= bufEnd - bufPos) {
+               if (pos + length > globalLimit) {
+                  throw log.globalLimitExceeded();
+               }
+               // fast path, the string is already buffered
+               String value = new String(buf, bufPos, length, UTF8);
+               bufPos += length;
+               pos += length;
+               return value;
+            }
             byte[] bytes = readRawByteArray(length);
             return new String(bytes, 0, length, UTF8);
          }
@@ -898,6 +1103,21 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
 
       @Override
       long readVarint64() throws IOException {
+         if (bufEnd - bufPos >= MAX_VARINT_SIZE && limit - pos >= MAX_VARINT_SIZE) {
+            // fast path, decode directly from the buffer without bounds checks
+            int p = bufPos;
+            long value = 0;
+            for (int i = 0; i < 64; i += 7) {
+               byte b = buf[p++];
+               value |= (long) (b & 0x7F) << i;
+               if (b >= 0) {
+                  pos += p - bufPos;
+                  bufPos = p;
+                  return value;
+               }
+            }
+            throw log.malformedVarint();
+         }
          long value = 0;
          for (int i = 0; i < 64; i += 7) {
             byte b = readRawByte();
@@ -914,6 +1134,15 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
          if (limit - pos < FIXED_32_SIZE) {
             throw log.messageTruncated();
          }
+         if (bufEnd - bufPos >= FIXED_32_SIZE) {
+            int p = bufPos;
+            bufPos += FIXED_32_SIZE;
+            pos += FIXED_32_SIZE;
+            return (buf[p] & 0xFF)
+                  | ((buf[p + 1] & 0xFF) << 8)
+                  | ((buf[p + 2] & 0xFF) << 16)
+                  | ((buf[p + 3] & 0xFF) << 24);
+         }
          return (readRawByte() & 0xFF)
                | ((readRawByte() & 0xFF) << 8)
                | ((readRawByte() & 0xFF) << 16)
@@ -925,6 +1154,19 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
          if (limit - pos < FIXED_64_SIZE) {
             throw log.messageTruncated();
          }
+         if (bufEnd - bufPos >= FIXED_64_SIZE) {
+            int p = bufPos;
+            bufPos += FIXED_64_SIZE;
+            pos += FIXED_64_SIZE;
+            return (buf[p] & 0xFFL)
+                  | ((buf[p + 1] & 0xFFL) << 8)
+                  | ((buf[p + 2] & 0xFFL) << 16)
+                  | ((buf[p + 3] & 0xFFL) << 24)
+                  | ((buf[p + 4] & 0xFFL) << 32)
+                  | ((buf[p + 5] & 0xFFL) << 40)
+                  | ((buf[p + 6] & 0xFFL) << 48)
+                  | ((buf[p + 7] & 0xFFL) << 56);
+         }
          return (readRawByte() & 0xFFL)
                | ((readRawByte() & 0xFFL) << 8)
                | ((readRawByte() & 0xFFL) << 16)
@@ -979,15 +1221,33 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
       byte[] getBufferArray() throws IOException {
          if (globalLimit == Integer.MAX_VALUE) {
             pos = Integer.MAX_VALUE;
-            return in.readAllBytes();
+            byte[] remaining = in.readAllBytes();
+            int buffered = bufEnd - bufPos;
+            if (buffered == 0) {
+               return remaining;
+            }
+            byte[] array = new byte[buffered + remaining.length];
+            System.arraycopy(buf, bufPos, array, 0, buffered);
+            System.arraycopy(remaining, 0, array, buffered, remaining.length);
+            bufPos = bufEnd;
+            return array;
          } else {
             int length = globalLimit - pos;
             return readRawByteArray(length);
          }
       }
 
+      /**
+       * Returns a stream providing the bytes that were not consumed yet, including the ones that are already buffered.
+       */
       InputStream getInputStream() {
-         return in;
+         if (bufPos == bufEnd) {
+            return in;
+         }
+         // copied, the buffer may be borrowed by a nested decoder reading from the returned stream
+         InputStream buffered = new ByteArrayInputStream(Arrays.copyOfRange(buf, bufPos, bufEnd));
+         bufPos = bufEnd;
+         return new SequenceInputStream(buffered, in);
       }
 
       @Override
@@ -995,45 +1255,19 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
          if (pos == limit) {
             return true;
          }
-         if (in.available() > 0) {
-            return false;
-         }
-         if (in instanceof PushbackInputStream) {
-            return isPushbackDone();
-         }
-         return isMarkDone();
-      }
-
-      private boolean isPushbackDone() throws IOException {
-         int intVal = in.read();
-         if (intVal < 0) {
-            return true;
-         }
-         ((PushbackInputStream) in).unread(intVal);
-         return false;
-      }
-
-      private boolean isMarkDone() throws IOException {
-         in.mark(1);
-         if (in.read() < 0) {
-            return true;
-         }
-         in.reset();
-         return false;
+         return bufPos == bufEnd && !fill();
       }
 
-
       @Override
       byte readRawByte() throws IOException {
          if (pos == limit) {
             throw log.messageTruncated();
          }
-         int byteValue = in.read();
-         if (byteValue < 0) {
+         if (bufPos == bufEnd && !fill()) {
             throw log.messageTruncated();
          }
          pos++;
-         return (byte) byteValue;
+         return buf[bufPos++];
       }
 
       @Override
@@ -1043,17 +1277,22 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
             if (pos > globalLimit) {
                throw log.globalLimitExceeded();
             }
-            int readTotal = 0;
-            int readAmount;
             byte[] array = new byte[length];
-            while ((readAmount = in.read(array, readTotal, length - readTotal)) != -1) {
-               readTotal += readAmount;
-               if (readTotal == length) {
-                  break;
+            int readTotal = Math.min(length, bufEnd - bufPos);
+            System.arraycopy(buf, bufPos, array, 0, readTotal);
+            bufPos += readTotal;
+            if (readTotal < length) {
+               // the buffer is exhausted, read the rest directly into the target array
+               int readAmount;
+               while ((readAmount = in.read(array, readTotal, length - readTotal)) != -1) {
+                  readTotal += readAmount;
+                  if (readTotal == length) {
+                     break;
+                  }
+               }
+               if (readTotal != length) {
+                  throw log.messageTruncated();
                }
-            }
-            if (readTotal != length) {
-               throw log.messageTruncated();
             }
             return array;
          }
@@ -1070,7 +1309,9 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
       protected void skipRawBytes(int length) throws IOException {
          if (length <= limit - pos && length >= 0) {
             pos += length;
-            skipNBytes(length);
+            int buffered = Math.min(length, bufEnd - bufPos);
+            bufPos += buffered;
+            skipNBytes(length - buffered);
          } else {
             if (length < 0) {
                throw log.negativeLength();
@@ -1079,6 +1320,11 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
          }
       }
 
+      @Override
+      void skipToLimit() throws IOException {
+         skipRawBytes(limit - pos);
+      }
+
       // Copied from InputStream, we can't use Java 12 or newer just yet, can be removed when on a newer version.
       private void skipNBytes(long n) throws IOException {
          while (n > 0) {
@@ -10,7 +10,9 @@ import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
 
 import org.infinispan.protostream.ImmutableSerializationContext;
@@ -27,6 +29,15 @@ public final class TagWriterImpl implements TagWriter, ProtobufTagMarshaller.Wri
 
    private static final Log log = Log.LogFactory.getLog(TagWriterImpl.class);
 
+   /**
+    * The largest field number whose tag can be pre-encoded by {@link #preEncodeTag}. The tags of these fields take at
+    * most two bytes, whatever the wire type.
+    */
+   public static final int MAX_PRE_ENCODED_FIELD_NUMBER = (1 << 11) - 1;
+
+   // the size of the largest pre-encoded tag
+   private static final int MAX_PRE_ENCODED_TAG_SIZE = 2;
+
    private final SerializationContextImpl serCtx;
 
    // all writes are delegated to a lower level protocol encoder
@@ -39,6 +50,9 @@ public final class TagWriterImpl implements TagWriter, ProtobufTagMarshaller.Wri
    // lazily initialized
    private Map<Object, Object> params = null;
 
+   // lazily initialized, only used by the root writer to memoize the size of nested messages
+   private Map<Object, Integer> nestedMessageSizes = null;
+
    // lazily initialized
    @Deprecated
    private ProtoStreamWriterImpl writer = null;
@@ -94,6 +108,82 @@ public final class TagWriterImpl implements TagWriter, ProtobufTagMarshaller.Wri
       return new TagWriterImpl((SerializationContextImpl) ctx, new OutputStreamNoBufferEncoder(out));
    }
 
+   /**
+    * Creates a writer that writes directly into the segments of the given buffer. The writer can be reused for multiple
+    * marshalling operations by calling {@link #reset()} in between, which also resets the buffer.
+    */
+   public static TagWriterImpl newInstance(ImmutableSerializationContext serCtx, SegmentedOutputBuffer buffer) {
+      return new TagWriterImpl((SerializationContextImpl) serCtx, new SegmentedEncoder(buffer));
+   }
+
+   /**
+    * Creates a writer that accumulates the output in an internal array that grows as needed. The writer can be reused
+    * for multiple marshalling operations by calling {@link #reset()} in between.
+    */
+   public static TagWriterImpl newReusableInstance(ImmutableSerializationContext ctx, int initialCapacity) {
+      return new TagWriterImpl((SerializationContextImpl) ctx, new ExpandableArrayEncoder(initialCapacity));
+   }
+
+   /**
+    * Discards the written bytes and all state of the previous marshalling operation. Only applicable to writers created
+    * with {@link #newReusableInstance} or over a {@link SegmentedOutputBuffer}.
+    */
+   public void reset() {
+      if (parent != null) {
+         throw new IllegalStateException("Only a top level writer can be reset");
+      }
+      if (encoder instanceof SegmentedEncoder segmentedEncoder) {
+         segmentedEncoder.buffer.reset();
+      } else {
+         // the CCE here will signal misuse; let it happen
+         ((ExpandableArrayEncoder) encoder).reset();
+      }
+      if (params != null) {
+         params.clear();
+      }
+      if (nestedMessageSizes != null) {
+         nestedMessageSizes.clear();
+      }
+   }
+
+   /**
+    * Returns a copy of the bytes written since the last {@link #reset()}. Only applicable to writers created with
+    * {@link #newReusableInstance}.
+    */
+   public byte[] toByteArray() {
+      // the CCE here will signal misuse; let it happen
+      return ((ExpandableArrayEncoder) encoder).toByteArray();
+   }
+
+   /**
+    * Returns a view of the bytes written since the last {@link #reset()}, valid until the next write. Only applicable
+    * to writers created with {@link #newReusableInstance}.
+    */
+   public ByteBuffer getByteBuffer() {
+      // the CCE here will signal misuse; let it happen
+      ExpandableArrayEncoder arrayEncoder = (ExpandableArrayEncoder) encoder;
+      return ByteBuffer.wrap(arrayEncoder.array, 0, arrayEncoder.pos);
+   }
+
+   /**
+    * Starts a length delimited field whose contents are written next, directly into this writer, and returns the
+    * position of its length to be passed to {@link #endLengthDelimitedField}. Fields can be nested. Only applicable to
+    * writers created with {@link #newReusableInstance}.
+    */
+   public int startLengthDelimitedField(int fieldNumber) {
+      // the CCE here will signal misuse; let it happen
+      ExpandableArrayEncoder arrayEncoder = (ExpandableArrayEncoder) encoder;
+      arrayEncoder.writeVarint32(WireType.makeTag(fieldNumber, WireType.WIRETYPE_LENGTH_DELIMITED));
+      return arrayEncoder.reserveLength();
+   }
+
+   /**
+    * Ends the length delimited field started by {@link #startLengthDelimitedField}.
+    */
+   public void endLengthDelimitedField(int lengthPos) {
+      ((ExpandableArrayEncoder) encoder).fillLength(lengthPos);
+   }
+
    public int getWrittenBytes() {
       // the CCE here will signal misuse; let it happen
       return ((NoOpEncoder) encoder).getWrittenBytes();
@@ -126,14 +216,7 @@ public final class TagWriterImpl implements TagWriter, ProtobufTagMarshaller.Wri
 
    @Override
    public void writeString(int number, String value) throws IOException {
-      // TODO [anistor] This is expensive! What can we do to make it more efficient?
-      // Also, when just count bytes for message size we do a useless first conversion, and another one will follow later.
-
-      // Charset.encode is not able to encode directly into our own buffers!
-      byte[] utf8buffer = value.getBytes(StandardCharsets.UTF_8);
-
-      encoder.writeLengthDelimitedField(number, utf8buffer.length);
-      encoder.writeBytes(utf8buffer, 0, utf8buffer.length);
+      encoder.writeStringField(number, value);
    }
 
    @Override
@@ -234,6 +317,352 @@ public final class TagWriterImpl implements TagWriter, ProtobufTagMarshaller.Wri
       encoder.writeBytes(value, offset, length);
    }
 
+   /**
+    * Encodes the tag of a field ahead of time, for the {@code writeTagged} and {@code putTagged} methods. The bytes of
+    * the varint are packed in the returned int, the first one in the lowest 8 bits, so that writing the tag copies one
+    * or two bytes instead of computing and encoding it again. Generated marshallers keep the result in a constant.
+    *
+    * @throws IllegalArgumentException if the field number is not between 1 and {@link #MAX_PRE_ENCODED_FIELD_NUMBER}
+    */
+   public static int preEncodeTag(int fieldNumber, WireType wireType) {
+      if (fieldNumber < 1 || fieldNumber > MAX_PRE_ENCODED_FIELD_NUMBER) {
+         throw new IllegalArgumentException("Cannot pre-encode the tag of field number " + fieldNumber);
+      }
+      int tag = WireType.makeTag(fieldNumber, wireType);
+      return tag < 0x80 ? tag : (tag & 0x7F | 0x80) | (tag >>> 7) << 8;
+   }
+
+   // Writes of fields whose tag was pre-encoded by preEncodeTag, invoked by generated code. Each one checks for space
+   // once, for both the tag and the value.
+
+   public void writeTaggedInt32(int encodedTag, int value) throws IOException {
+      if (value >= 0) {
+         encoder.writeTaggedVarint32(encodedTag, value);
+      } else {
+         encoder.writeTaggedVarint64(encodedTag, value);
+      }
+   }
+
+   public void writeTaggedUInt32(int encodedTag, int value) throws IOException {
+      encoder.writeTaggedVarint32(encodedTag, value);
+   }
+
+   public void writeTaggedSInt32(int encodedTag, int value) throws IOException {
+      encoder.writeTaggedVarint32(encodedTag, (value << 1) ^ (value >> 31));
+   }
+
+   public void writeTaggedFixed32(int encodedTag, int value) throws IOException {
+      encoder.writeTaggedFixed32(encodedTag, value);
+   }
+
+   public void writeTaggedSFixed32(int encodedTag, int value) throws IOException {
+      encoder.writeTaggedFixed32(encodedTag, value);
+   }
+
+   public void writeTaggedInt64(int encodedTag, long value) throws IOException {
+      encoder.writeTaggedVarint64(encodedTag, value);
+   }
+
+   public void writeTaggedUInt64(int encodedTag, long value) throws IOException {
+      encoder.writeTaggedVarint64(encodedTag, value);
+   }
+
+   public void writeTaggedSInt64(int encodedTag, long value) throws IOException {
+      encoder.writeTaggedVarint64(encodedTag, (value << 1) ^ (value >> 63));
+   }
+
+   public void writeTaggedFixed64(int encodedTag, long value) throws IOException {
+      encoder.writeTaggedFixed64(encodedTag, value);
+   }
+
+   public void writeTaggedSFixed64(int encodedTag, long value) throws IOException {
+      encoder.writeTaggedFixed64(encodedTag, value);
+   }
+
+   public void writeTaggedEnum(int encodedTag, int value) throws IOException {
+      writeTaggedInt32(encodedTag, value);
+   }
+
+   public void writeTaggedBool(int encodedTag, boolean value) throws IOException {
+      encoder.writeTaggedBool(encodedTag, value);
+   }
+
+   public void writeTaggedDouble(int encodedTag, double value) throws IOException {
+      encoder.writeTaggedFixed64(encodedTag, Double.doubleToRawLongBits(value));
+   }
+
+   public void writeTaggedFloat(int encodedTag, float value) throws IOException {
+      encoder.writeTaggedFixed32(encodedTag, Float.floatToRawIntBits(value));
+   }
+
+   public void writeTaggedString(int encodedTag, String value) throws IOException {
+      encoder.writeTaggedString(encodedTag, value);
+   }
+
+   public void writeTaggedBytes(int encodedTag, byte[] value) throws IOException {
+      encoder.writeTaggedLength(encodedTag, value.length);
+      encoder.writeBytes(value, 0, value.length);
+   }
+
+   public void writeTaggedBytes(int encodedTag, ByteBuffer value) throws IOException {
+      encoder.writeTaggedLength(encodedTag, value.remaining());
+      encoder.writeBytes(value);
+   }
+
+   /**
+    * Makes room for the next {@code space} bytes, so that they can be written by the {@code putTagged} methods without
+    * checking for space again. Invoked by generated code to write a run of fixed size fields with a single check.
+    *
+    * @return {@code false} if this writer cannot guarantee the space, in which case the {@code writeTagged} methods
+    * must be used instead
+    */
+   public boolean reserve(int space) throws IOException {
+      return encoder.reserve(space);
+   }
+
+   // Writes of fixed size fields into space made by reserve, invoked by generated code.
+
+   public void putTaggedFixed32(int encodedTag, int value) {
+      encoder.putTaggedFixed32(encodedTag, value);
+   }
+
+   public void putTaggedSFixed32(int encodedTag, int value) {
+      encoder.putTaggedFixed32(encodedTag, value);
+   }
+
+   public void putTaggedFixed64(int encodedTag, long value) {
+      encoder.putTaggedFixed64(encodedTag, value);
+   }
+
+   public void putTaggedSFixed64(int encodedTag, long value) {
+      encoder.putTaggedFixed64(encodedTag, value);
+   }
+
+   public void putTaggedBool(int encodedTag, boolean value) {
+      encoder.putTaggedBool(encodedTag, value);
+   }
+
+   public void putTaggedDouble(int encodedTag, double value) {
+      encoder.putTaggedFixed64(encodedTag, Double.doubleToRawLongBits(value));
+   }
+
+   public void putTaggedFloat(int encodedTag, float value) {
+      encoder.putTaggedFixed32(encodedTag, Float.floatToRawIntBits(value));
+   }
+
+   @Override
+   public void writePackedInt32(int number, int[] values) throws IOException {
+      if (values.length == 0) {
+         return;
+      }
+      int size = 0;
+      for (int value : values) {
+         // negative values are sign extended to 64 bits
+         size += value >= 0 ? varint32Size(value) : MAX_VARINT_SIZE;
+      }
+      encoder.writeLengthDelimitedField(number, size);
+      for (int value : values) {
+         if (value >= 0) {
+            encoder.writeVarint32(value);
+         } else {
+            encoder.writeVarint64(value);
+         }
+      }
+   }
+
+   @Override
+   public void writePackedUInt32(int number, int[] values) throws IOException {
+      if (values.length == 0) {
+         return;
+      }
+      int size = 0;
+      for (int value : values) {
+         size += varint32Size(value);
+      }
+      encoder.writeLengthDelimitedField(number, size);
+      for (int value : values) {
+         encoder.writeVarint32(value);
+      }
+   }
+
+   @Override
+   public void writePackedSInt32(int number, int[] values) throws IOException {
+      if (values.length == 0) {
+         return;
+      }
+      int size = 0;
+      for (int value : values) {
+         size += varint32Size((value << 1) ^ (value >> 31));
+      }
+      encoder.writeLengthDelimitedField(number, size);
+      for (int value : values) {
+         encoder.writeVarint32((value << 1) ^ (value >> 31));
+      }
+   }
+
+   @Override
+   public void writePackedFixed32(int number, int[] values) throws IOException {
+      if (values.length == 0) {
+         return;
+      }
+      encoder.writeLengthDelimitedField(number, values.length * FIXED_32_SIZE);
+      for (int value : values) {
+         encoder.writeFixed32(value);
+      }
+   }
+
+   @Override
+   public void writePackedSFixed32(int number, int[] values) throws IOException {
+      writePackedFixed32(number, values);
+   }
+
+   @Override
+   public void writePackedInt64(int number, long[] values) throws IOException {
+      writePackedUInt64(number, values);
+   }
+
+   @Override
+   public void writePackedUInt64(int number, long[] values) throws IOException {
+      if (values.length == 0) {
+         return;
+      }
+      int size = 0;
+      for (long value : values) {
+         size += varint64Size(value);
+      }
+      encoder.writeLengthDelimitedField(number, size);
+      for (long value : values) {
+         encoder.writeVarint64(value);
+      }
+   }
+
+   @Override
+   public void writePackedSInt64(int number, long[] values) throws IOException {
+      if (values.length == 0) {
+         return;
+      }
+      int size = 0;
+      for (long value : values) {
+         size += varint64Size((value << 1) ^ (value >> 63));
+      }
+      encoder.writeLengthDelimitedField(number, size);
+      for (long value : values) {
+         encoder.writeVarint64((value << 1) ^ (value >> 63));
+      }
+   }
+
+   @Override
+   public void writePackedFixed64(int number, long[] values) throws IOException {
+      if (values.length == 0) {
+         return;
+      }
+      encoder.writeLengthDelimitedField(number, values.length * FIXED_64_SIZE);
+      for (long value : values) {
+         encoder.writeFixed64(value);
+      }
+   }
+
+   @Override
+   public void writePackedSFixed64(int number, long[] values) throws IOException {
+      writePackedFixed64(number, values);
+   }
+
+   @Override
+   public void writePackedEnum(int number, int[] values) throws IOException {
+      writePackedInt32(number, values);
+   }
+
+   @Override
+   public void writePackedBool(int number, boolean[] values) throws IOException {
+      if (values.length == 0) {
+         return;
+      }
+      encoder.writeLengthDelimitedField(number, values.length);
+      for (boolean value : values) {
+         encoder.writeByte((byte) (value ? 1 : 0));
+      }
+   }
+
+   @Override
+   public void writePackedDouble(int number, double[] values) throws IOException {
+      if (values.length == 0) {
+         return;
+      }
+      encoder.writeLengthDelimitedField(number, values.length * FIXED_64_SIZE);
+      for (double value : values) {
+         encoder.writeFixed64(Double.doubleToRawLongBits(value));
+      }
+   }
+
+   @Override
+   public void writePackedFloat(int number, float[] values) throws IOException {
+      if (values.length == 0) {
+         return;
+      }
+      encoder.writeLengthDelimitedField(number, values.length * FIXED_32_SIZE);
+      for (float value : values) {
+         encoder.writeFixed32(Float.floatToRawIntBits(value));
+      }
+   }
+
+   private static int varint32Size(int value) {
+      // the number of significant bits divided by 7, rounded up
+      return (38 - Integer.numberOfLeadingZeros(value | 1)) / 7;
+   }
+
+   private static int varint64Size(long value) {
+      return (70 - Long.numberOfLeadingZeros(value | 1)) / 7;
+   }
+
+   // encoding into an array at a given position, shared by the encoders that write to arrays; the callers make sure
+   // there is enough space and continue from the returned position
+
+   private static int putEncodedTag(byte[] array, int pos, int encodedTag) {
+      array[pos++] = (byte) encodedTag;
+      if (encodedTag > 0xFF) {
+         array[pos++] = (byte) (encodedTag >>> 8);
+      }
+      return pos;
+   }
+
+   private static int putVarint32(byte[] array, int pos, int value) {
+      while ((value & 0xFFFFFF80) != 0) {
+         array[pos++] = (byte) (value & 0x7F | 0x80);
+         value >>>= 7;
+      }
+      array[pos++] = (byte) value;
+      return pos;
+   }
+
+   private static int putVarint64(byte[] array, int pos, long value) {
+      while ((value & 0xFFFFFFFFFFFFFF80L) != 0) {
+         array[pos++] = (byte) ((int) value & 0x7F | 0x80);
+         value >>>= 7;
+      }
+      array[pos++] = (byte) value;
+      return pos;
+   }
+
+   private static int putFixed32(byte[] array, int pos, int value) {
+      array[pos++] = (byte) (value & 0xFF);
+      array[pos++] = (byte) ((value >> 8) & 0xFF);
+      array[pos++] = (byte) ((value >> 16) & 0xFF);
+      array[pos++] = (byte) ((value >> 24) & 0xFF);
+      return pos;
+   }
+
+   private static int putFixed64(byte[] array, int pos, long value) {
+      array[pos++] = (byte) (value & 0xFF);
+      array[pos++] = (byte) ((value >> 8) & 0xFF);
+      array[pos++] = (byte) ((value >> 16) & 0xFF);
+      array[pos++] = (byte) ((value >> 24) & 0xFF);
+      array[pos++] = (byte) ((int) (value >> 32) & 0xFF);
+      array[pos++] = (byte) ((int) (value >> 40) & 0xFF);
+      array[pos++] = (byte) ((int) (value >> 48) & 0xFF);
+      array[pos++] = (byte) ((int) (value >> 56) & 0xFF);
+      return pos;
+   }
+
    @Override
    public SerializationContextImpl getSerializationContext() {
       return serCtx;
@@ -273,6 +702,82 @@ public final class TagWriterImpl implements TagWriter, ProtobufTagMarshaller.Wri
       return depth;
    }
 
+   /**
+    * Writes a nested message as a length delimited field directly into the encoder of this writer, without buffering.
+    * The size of the nested message is computed first (by marshalling it with a byte counting encoder) and is memoized
+    * by object identity for the duration of the top level marshalling operation, so that deeper nested messages are
+    * sized only once. The memoized sizes are released once a nested message of the top level writer is written.
+    *
+    * @throws IllegalStateException if the marshaller does not write the same number of bytes when sizing and writing
+    *                               the message, which would corrupt the output
+    */
+   public <T> void writeNestedMessage(BaseMarshallerDelegate<T> marshallerDelegate, int fieldNumber, T message) throws IOException {
+      try {
+         int size = computeNestedMessageSize(marshallerDelegate, message);
+         encoder.writeLengthDelimitedField(fieldNumber, size);
+         if (encoder instanceof NoOpEncoder) {
+            // we are in the sizing pass, no need to marshall it again
+            ((NoOpEncoder) encoder).count += size;
+         } else {
+            long start = encoder.position();
+            marshallerDelegate.marshall(new TagWriterImpl(this, encoder), null, message);
+            long written = encoder.position() - start;
+            if (written != size) {
+               throw new IllegalStateException("The marshaller of " + message.getClass().getName() + " wrote "
+                     + written + " bytes but " + size + " bytes were computed beforehand. Its output must be deterministic.");
+            }
+         }
+      } finally {
+         if (parent == null && nestedMessageSizes != null) {
+            nestedMessageSizes.clear();
+         }
+      }
+   }
+
+   /**
+    * Writes a top level message as a length delimited field, the way {@link org.infinispan.protostream.WrappedMessage}
+    * embeds the wrapped object. Writers backed by an expandable array marshall the message in place and fill in the
+    * length afterwards. Other writers marshall it into a temporary buffer first.
+    */
+   public <T> void writeMessageField(BaseMarshallerDelegate<T> marshallerDelegate, int fieldNumber, T message) throws IOException {
+      if (encoder instanceof ExpandableArrayEncoder) {
+         ExpandableArrayEncoder arrayEncoder = (ExpandableArrayEncoder) encoder;
+         arrayEncoder.writeVarint32(WireType.makeTag(fieldNumber, WireType.WIRETYPE_LENGTH_DELIMITED));
+         int lengthPos = arrayEncoder.reserveLength();
+         // a top level writer has no state of its own yet, so it can marshall the message itself
+         marshallerDelegate.marshall(parent == null ? this : new TagWriterImpl(serCtx, encoder), null, message);
+         arrayEncoder.fillLength(lengthPos);
+      } else {
+         ByteArrayOutputStreamEx buffer = new ByteArrayOutputStreamEx();
+         TagWriterImpl nestedCtx = newInstanceNoBuffer(serCtx, buffer);
+         marshallerDelegate.marshall(nestedCtx, null, message);
+         nestedCtx.flush();
+         writeBytes(fieldNumber, buffer.getByteBuffer());
+      }
+   }
+
+   private <T> int computeNestedMessageSize(BaseMarshallerDelegate<T> marshallerDelegate, T message) throws IOException {
+      Map<Object, Integer> sizes = getNestedMessageSizes();
+      Integer size = sizes.get(message);
+      if (size == null) {
+         TagWriterImpl sizer = new TagWriterImpl(this, new NoOpEncoder());
+         marshallerDelegate.marshall(sizer, null, message);
+         size = sizer.getWrittenBytes();
+         sizes.put(message, size);
+      }
+      return size;
+   }
+
+   private Map<Object, Integer> getNestedMessageSizes() {
+      if (parent != null) {
+         return parent.getNestedMessageSizes();
+      }
+      if (nestedMessageSizes == null) {
+         nestedMessageSizes = new IdentityHashMap<>();
+      }
+      return nestedMessageSizes;
+   }
+
    public ProtoStreamWriterImpl getProtoStreamWriter() {
       if (parent != null) {
          return parent.getProtoStreamWriter();
@@ -324,260 +829,772 @@ public final class TagWriterImpl implements TagWriter, ProtobufTagMarshaller.Wri
          writeVarint32(length);
       }
 
-      // low level ops, writing values without tag
+      final void writeStringField(int fieldNumber, String value) throws IOException {
+         int length = Utf8.encodedLength(value);
+         writeLengthDelimitedField(fieldNumber, length);
+         writeString(value, length);
+      }
 
-      abstract void writeVarint32(int value) throws IOException;
+      /**
+       * Writes the UTF-8 bytes of a string whose encoded length is already known and was already written.
+       */
+      void writeString(String value, int length) throws IOException {
+         // Charset.encode is not able to encode directly into our own buffers, so encoders that have a buffer override this
+         byte[] utf8buffer = value.getBytes(StandardCharsets.UTF_8);
+         writeBytes(utf8buffer, 0, utf8buffer.length);
+      }
 
-      abstract void writeVarint64(long value) throws IOException;
+      // high level ops, writing fields with a tag pre-encoded by preEncodeTag
 
-      abstract void writeFixed32(int value) throws IOException;
+      void writeEncodedTag(int encodedTag) throws IOException {
+         writeByte((byte) encodedTag);
+         if (encodedTag > 0xFF) {
+            writeByte((byte) (encodedTag >>> 8));
+         }
+      }
 
-      abstract void writeFixed64(long value) throws IOException;
+      // these reserve the space for the whole field and put it at once if the encoder supports it, so the encoders only
+      // implement the put methods
 
-      abstract void writeByte(byte value) throws IOException;
+      void writeTaggedVarint32(int encodedTag, int value) throws IOException {
+         if (reserve(MAX_PRE_ENCODED_TAG_SIZE + MAX_VARINT_SIZE)) {
+            putTaggedVarint32(encodedTag, value);
+         } else {
+            writeEncodedTag(encodedTag);
+            writeVarint32(value);
+         }
+      }
 
-      abstract void writeBytes(byte[] value, int offset, int length) throws IOException;
+      void writeTaggedVarint64(int encodedTag, long value) throws IOException {
+         if (reserve(MAX_PRE_ENCODED_TAG_SIZE + MAX_VARINT_SIZE)) {
+            putTaggedVarint64(encodedTag, value);
+         } else {
+            writeEncodedTag(encodedTag);
+            writeVarint64(value);
+         }
+      }
 
-      abstract void writeBytes(ByteBuffer value) throws IOException;
-   }
+      void writeTaggedFixed32(int encodedTag, int value) throws IOException {
+         if (reserve(MAX_PRE_ENCODED_TAG_SIZE + FIXED_32_SIZE)) {
+            putTaggedFixed32(encodedTag, value);
+         } else {
+            writeEncodedTag(encodedTag);
+            writeFixed32(value);
+         }
+      }
 
-   /**
-    * An encoder that just counts the bytes and does not write anything and does not allocate buffers.
-    * Useful for computing message size.
-    */
-   private static final class NoOpEncoder extends Encoder {
+      void writeTaggedFixed64(int encodedTag, long value) throws IOException {
+         if (reserve(MAX_PRE_ENCODED_TAG_SIZE + FIXED_64_SIZE)) {
+            putTaggedFixed64(encodedTag, value);
+         } else {
+            writeEncodedTag(encodedTag);
+            writeFixed64(value);
+         }
+      }
 
-      private int count = 0;
+      void writeTaggedBool(int encodedTag, boolean value) throws IOException {
+         if (reserve(MAX_PRE_ENCODED_TAG_SIZE + 1)) {
+            putTaggedBool(encodedTag, value);
+         } else {
+            writeEncodedTag(encodedTag);
+            writeByte((byte) (value ? 1 : 0));
+         }
+      }
 
-      int getWrittenBytes() {
-         return count;
+      void writeTaggedLength(int encodedTag, int length) throws IOException {
+         writeTaggedVarint32(encodedTag, length);
+      }
+
+      final void writeTaggedString(int encodedTag, String value) throws IOException {
+         int length = Utf8.encodedLength(value);
+         writeTaggedLength(encodedTag, length);
+         writeString(value, length);
+      }
+
+      /**
+       * Makes room for {@code space} bytes to be written by the put operations. Encoders that cannot guarantee it
+       * return {@code false}.
+       */
+      boolean reserve(int space) throws IOException {
+         return false;
+      }
+
+      // ops writing into space made by reserve, which encoders that support it override to skip the space checks
+
+      void putTaggedVarint32(int encodedTag, int value) {
+         throw new IllegalStateException("reserve() is not supported");
+      }
+
+      void putTaggedVarint64(int encodedTag, long value) {
+         throw new IllegalStateException("reserve() is not supported");
+      }
+
+      void putTaggedFixed32(int encodedTag, int value) {
+         throw new IllegalStateException("reserve() is not supported");
+      }
+
+      void putTaggedFixed64(int encodedTag, long value) {
+         throw new IllegalStateException("reserve() is not supported");
+      }
+
+      void putTaggedBool(int encodedTag, boolean value) {
+         throw new IllegalStateException("reserve() is not supported");
+      }
+
+      // low level ops, writing values without tag
+
+      abstract void writeVarint32(int value) throws IOException;
+
+      abstract void writeVarint64(long value) throws IOException;
+
+      abstract void writeFixed32(int value) throws IOException;
+
+      abstract void writeFixed64(long value) throws IOException;
+
+      abstract void writeByte(byte value) throws IOException;
+
+      abstract void writeBytes(byte[] value, int offset, int length) throws IOException;
+
+      abstract void writeBytes(ByteBuffer value) throws IOException;
+
+      /**
+       * Returns the number of bytes written so far, or a position that increases by that number.
+       */
+      abstract long position();
+   }
+
+   /**
+    * An encoder that just counts the bytes and does not write anything and does not allocate buffers.
+    * Useful for computing message size.
+    */
+   private static final class NoOpEncoder extends Encoder {
+
+      private int count = 0;
+
+      int getWrittenBytes() {
+         return count;
+      }
+
+      @Override
+      long position() {
+         return count;
+      }
+
+      /**
+       * Resets the written bytes counter. Needed if we intend to reuse this to count the size of another message.
+       */
+      void reset() {
+         count = 0;
+      }
+
+      @Override
+      void writeString(String value, int length) {
+         // only the length is needed, no need to encode
+         count += length;
+      }
+
+      @Override
+      void writeEncodedTag(int encodedTag) {
+         count += encodedTag > 0xFF ? 2 : 1;
+      }
+
+      @Override
+      boolean reserve(int space) {
+         return true;
+      }
+
+      @Override
+      void putTaggedVarint32(int encodedTag, int value) {
+         writeEncodedTag(encodedTag);
+         writeVarint32(value);
+      }
+
+      @Override
+      void putTaggedVarint64(int encodedTag, long value) {
+         writeEncodedTag(encodedTag);
+         writeVarint64(value);
+      }
+
+      @Override
+      void putTaggedFixed32(int encodedTag, int value) {
+         writeEncodedTag(encodedTag);
+         count += FIXED_32_SIZE;
+      }
+
+      @Override
+      void putTaggedFixed64(int encodedTag, long value) {
+         writeEncodedTag(encodedTag);
+         count += FIXED_64_SIZE;
+      }
+
+      @Override
+      void putTaggedBool(int encodedTag, boolean value) {
+         writeEncodedTag(encodedTag);
+         count++;
+      }
+
+      @Override
+      void writeByte(byte value) {
+         count++;
+      }
+
+      @Override
+      void writeBytes(byte[] value, int offset, int length) {
+         count += length;
+      }
+
+      @Override
+      void writeBytes(ByteBuffer value) {
+         count += value.remaining();
+      }
+
+      @Override
+      void writeVarint32(int value) {
+         while (true) {
+            count++;
+            if ((value & 0xFFFFFF80) == 0) {
+               break;
+            }
+            value >>>= 7;
+         }
+      }
+
+      @Override
+      void writeVarint64(long value) {
+         while (true) {
+            count++;
+            if ((value & 0xFFFFFFFFFFFFFF80L) == 0) {
+               break;
+            }
+            value >>>= 7;
+         }
+      }
+
+      @Override
+      void writeFixed32(int value) {
+         count += FIXED_32_SIZE;
+      }
+
+      @Override
+      void writeFixed64(long value) {
+         count += FIXED_64_SIZE;
+      }
+   }
+
+   /**
+    * Writes to a user provided byte array.
+    */
+   private static class ByteArrayEncoder extends Encoder {
+
+      private final byte[] array;
+
+      protected final int offset;
+
+      protected final int limit;
+
+      protected int pos;
+
+      /**
+       * The number of bytes flushed to a stream so far.
+       */
+      protected long flushed;
+
+      private ByteArrayEncoder(byte[] array, int offset, int length) {
+         if (array == null) {
+            throw new IllegalArgumentException("array cannot be null");
+         }
+         if (offset < 0) {
+            throw new IllegalArgumentException("offset cannot be negative");
+         }
+         if (length < 0) {
+            throw new IllegalArgumentException("length cannot be negative");
+         }
+         if (offset >= array.length) {
+            throw new IllegalArgumentException("start position is outside array bounds");
+         }
+         if (offset + length > array.length) {
+            throw new IllegalArgumentException("end position is outside array bounds");
+         }
+         this.array = array;
+         this.offset = offset;
+         this.limit = offset + length;
+         this.pos = offset;
+      }
+
+      protected final int remainingSpace() {
+         return limit - pos;
+      }
+
+      @Override
+      long position() {
+         return pos;
+      }
+
+      /**
+       * Make room for the required space by flushing the entire buffer to stream if the available space is not enough.
+       */
+      protected final void flushToStream(OutputStream out, int requiredSpace) throws IOException {
+         if (requiredSpace > limit - pos) {
+            out.write(array, 0, pos);
+            flushed += pos;
+            pos = 0;
+         }
+      }
+
+      /**
+       * Flush the entire buffer to an output stream.
+       */
+      protected final void flushToStream(OutputStream out) throws IOException {
+         if (pos > 0) {
+            out.write(array, 0, pos);
+            flushed += pos;
+            pos = 0;
+         }
+      }
+
+      /**
+       * Copies from {@code byteBuffer} buffer to our internal buffer the maximum bytes allowed by the available space
+       * and the remaining bytes. Multiple invocations preceded by a {@link #flushToStream(OutputStream)} invocation are
+       * needed if the {@code byteBuffer} buffer still has remaining bytes after this call.
+       */
+      protected final void fillFromBuffer(ByteBuffer byteBuffer) {
+         int length = byteBuffer.remaining();
+         int free = array.length - pos;
+         if (free >= length) {
+            byteBuffer.get(array, pos, length);
+            pos += length;
+         } else {
+            byteBuffer.get(array, pos, free);
+            pos = array.length;
+         }
+      }
+
+      @Override
+      final void writeEncodedTag(int encodedTag) throws IOException {
+         try {
+            pos = putEncodedTag(array, pos, encodedTag);
+         } catch (IndexOutOfBoundsException e) {
+            throw log.outOfWriteBufferSpace(e);
+         }
+      }
+
+      @Override
+      final boolean reserve(int space) {
+         return space <= limit - pos;
+      }
+
+      @Override
+      final void putTaggedVarint32(int encodedTag, int value) {
+         pos = putVarint32(array, putEncodedTag(array, pos, encodedTag), value);
+      }
+
+      @Override
+      final void putTaggedVarint64(int encodedTag, long value) {
+         pos = putVarint64(array, putEncodedTag(array, pos, encodedTag), value);
+      }
+
+      @Override
+      final void putTaggedFixed32(int encodedTag, int value) {
+         pos = putFixed32(array, putEncodedTag(array, pos, encodedTag), value);
+      }
+
+      @Override
+      final void putTaggedFixed64(int encodedTag, long value) {
+         pos = putFixed64(array, putEncodedTag(array, pos, encodedTag), value);
+      }
+
+      @Override
+      final void putTaggedBool(int encodedTag, boolean value) {
+         pos = putEncodedTag(array, pos, encodedTag);
+         array[pos++] = (byte) (value ? 1 : 0);
+      }
+
+      @Override
+      final void writeString(String value, int length) throws IOException {
+         if (length > limit - pos) {
+            throw log.outOfWriteBufferSpace(new IndexOutOfBoundsException());
+         }
+         pos = Utf8.encode(value, array, pos);
+      }
+
+      @Override
+      final void writeByte(byte value) throws IOException {
+         try {
+            array[pos++] = value;
+         } catch (IndexOutOfBoundsException e) {
+            throw log.outOfWriteBufferSpace(e);
+         }
+      }
+
+      @Override
+      final void writeBytes(byte[] value, int offset, int length) throws IOException {
+         try {
+            System.arraycopy(value, offset, array, pos, length);
+            pos += length;
+         } catch (IndexOutOfBoundsException e) {
+            throw log.outOfWriteBufferSpace(e);
+         }
+      }
+
+      @Override
+      final void writeBytes(ByteBuffer value) throws IOException {
+         int length = value.remaining();
+         if (value.hasArray()) {
+            writeBytes(value.array(), value.arrayOffset() + value.position(), length);
+            value.position(value.position() + length);
+         } else {
+            try {
+               value.get(array, pos, length);
+               pos += length;
+            } catch (IndexOutOfBoundsException e) {
+               throw log.outOfWriteBufferSpace(e);
+            }
+         }
+      }
+
+      @Override
+      final void writeVarint32(int value) throws IOException {
+         try {
+            pos = putVarint32(array, pos, value);
+         } catch (IndexOutOfBoundsException e) {
+            throw log.outOfWriteBufferSpace(e);
+         }
+      }
+
+      @Override
+      final void writeVarint64(long value) throws IOException {
+         try {
+            pos = putVarint64(array, pos, value);
+         } catch (IndexOutOfBoundsException e) {
+            throw log.outOfWriteBufferSpace(e);
+         }
+      }
+
+      @Override
+      final void writeFixed32(int value) throws IOException {
+         try {
+            pos = putFixed32(array, pos, value);
+         } catch (IndexOutOfBoundsException e) {
+            throw log.outOfWriteBufferSpace(e);
+         }
+      }
+
+      @Override
+      final void writeFixed64(long value) throws IOException {
+         try {
+            pos = putFixed64(array, pos, value);
+         } catch (IndexOutOfBoundsException e) {
+            throw log.outOfWriteBufferSpace(e);
+         }
+      }
+   }
+
+   /**
+    * Writes to an internal array that grows as needed. The array is kept across {@link #reset()} calls unless it grew
+    * beyond {@link #MAX_RETAINED_CAPACITY}, so a reused writer stops allocating once it has seen its typical message.
+    */
+   private static final class ExpandableArrayEncoder extends Encoder {
+
+      private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+      // a length is a non-negative int, so its varint encoding takes at most 5 bytes
+      private static final int MAX_LENGTH_SIZE = 5;
+
+      private final int initialCapacity;
+
+      private byte[] array;
+
+      private int pos;
+
+      private ExpandableArrayEncoder(int initialCapacity) {
+         if (initialCapacity <= 0) {
+            throw new IllegalArgumentException("initialCapacity must be positive");
+         }
+         this.initialCapacity = initialCapacity;
+         this.array = new byte[initialCapacity];
+      }
+
+      void reset() {
+         pos = 0;
+         if (array.length > MAX_RETAINED_CAPACITY) {
+            array = new byte[initialCapacity];
+         }
+      }
+
+      byte[] toByteArray() {
+         return Arrays.copyOf(array, pos);
+      }
+
+      @Override
+      long position() {
+         return pos;
+      }
+
+      private void ensureCapacity(int requiredSpace) {
+         if (requiredSpace > array.length - pos) {
+            int newLength = Math.max(array.length << 1, pos + requiredSpace);
+            if (newLength < 0) {
+               throw new OutOfMemoryError("Required array size too large");
+            }
+            array = Arrays.copyOf(array, newLength);
+         }
+      }
+
+      /**
+       * Skips the space needed by the largest possible length prefix and returns its position.
+       */
+      int reserveLength() {
+         ensureCapacity(MAX_LENGTH_SIZE);
+         int lengthPos = pos;
+         pos += MAX_LENGTH_SIZE;
+         return lengthPos;
       }
 
       /**
-       * Resets the written bytes counter. Needed if we intend to reuse this to count the size of another message.
+       * Writes the length of everything written after the space reserved at {@code lengthPos} and moves the data next to
+       * it, if the length needs less than the reserved space.
        */
-      void reset() {
-         count = 0;
+      void fillLength(int lengthPos) {
+         int dataPos = lengthPos + MAX_LENGTH_SIZE;
+         int length = pos - dataPos;
+         pos = lengthPos;
+         writeVarint32(length);
+         if (pos != dataPos) {
+            System.arraycopy(array, dataPos, array, pos, length);
+         }
+         pos += length;
+      }
+
+      @Override
+      void writeString(String value, int length) {
+         ensureCapacity(length);
+         pos = Utf8.encode(value, array, pos);
       }
 
       @Override
       void writeByte(byte value) {
-         count++;
+         ensureCapacity(1);
+         array[pos++] = value;
       }
 
       @Override
       void writeBytes(byte[] value, int offset, int length) {
-         count += length;
+         ensureCapacity(length);
+         System.arraycopy(value, offset, array, pos, length);
+         pos += length;
       }
 
       @Override
       void writeBytes(ByteBuffer value) {
-         count += value.remaining();
+         int length = value.remaining();
+         ensureCapacity(length);
+         value.get(array, pos, length);
+         pos += length;
       }
 
       @Override
       void writeVarint32(int value) {
-         while (true) {
-            count++;
-            if ((value & 0xFFFFFF80) == 0) {
-               break;
-            }
-            value >>>= 7;
-         }
+         ensureCapacity(MAX_VARINT_SIZE);
+         pos = putVarint32(array, pos, value);
       }
 
       @Override
       void writeVarint64(long value) {
-         while (true) {
-            count++;
-            if ((value & 0xFFFFFFFFFFFFFF80L) == 0) {
-               break;
-            }
-            value >>>= 7;
-         }
+         ensureCapacity(MAX_VARINT_SIZE);
+         pos = putVarint64(array, pos, value);
       }
 
       @Override
       void writeFixed32(int value) {
-         count += FIXED_32_SIZE;
+         ensureCapacity(FIXED_32_SIZE);
+         pos = putFixed32(array, pos, value);
       }
 
       @Override
       void writeFixed64(long value) {
-         count += FIXED_64_SIZE;
+         ensureCapacity(FIXED_64_SIZE);
+         pos = putFixed64(array, pos, value);
+      }
+
+      @Override
+      void writeEncodedTag(int encodedTag) {
+         ensureCapacity(MAX_PRE_ENCODED_TAG_SIZE);
+         pos = putEncodedTag(array, pos, encodedTag);
+      }
+
+      @Override
+      boolean reserve(int space) {
+         ensureCapacity(space);
+         return true;
+      }
+
+      @Override
+      void putTaggedVarint32(int encodedTag, int value) {
+         pos = putVarint32(array, putEncodedTag(array, pos, encodedTag), value);
+      }
+
+      @Override
+      void putTaggedVarint64(int encodedTag, long value) {
+         pos = putVarint64(array, putEncodedTag(array, pos, encodedTag), value);
+      }
+
+      @Override
+      void putTaggedFixed32(int encodedTag, int value) {
+         pos = putFixed32(array, putEncodedTag(array, pos, encodedTag), value);
+      }
+
+      @Override
+      void putTaggedFixed64(int encodedTag, long value) {
+         pos = putFixed64(array, putEncodedTag(array, pos, encodedTag), value);
+      }
+
+      @Override
+      void putTaggedBool(int encodedTag, boolean value) {
+         pos = putEncodedTag(array, pos, encodedTag);
+         array[pos++] = (byte) (value ? 1 : 0);
       }
    }
 
    /**
-    * Writes to a user provided byte array.
+    * Writes into the segments of a {@link SegmentedOutputBuffer}. Values are written directly into the current segment
+    * when they fit, otherwise byte by byte across the segment boundary, so all segments but the last one are full.
     */
-   private static class ByteArrayEncoder extends Encoder {
-
-      private final byte[] array;
+   private static final class SegmentedEncoder extends Encoder {
 
-      protected final int offset;
+      private final SegmentedOutputBuffer buffer;
 
-      protected final int limit;
+      private SegmentedEncoder(SegmentedOutputBuffer buffer) {
+         this.buffer = buffer;
+      }
 
-      protected int pos;
+      @Override
+      long position() {
+         return buffer.size();
+      }
 
-      private ByteArrayEncoder(byte[] array, int offset, int length) {
-         if (array == null) {
-            throw new IllegalArgumentException("array cannot be null");
-         }
-         if (offset < 0) {
-            throw new IllegalArgumentException("offset cannot be negative");
-         }
-         if (length < 0) {
-            throw new IllegalArgumentException("length cannot be negative");
-         }
-         if (offset >= array.length) {
-            throw new IllegalArgumentException("start position is outside array bounds");
-         }
-         if (offset + length > array.length) {
-            throw new IllegalArgumentException("end position is outside array bounds");
+      @Override
+      void writeString(String value, int length) {
+         if (length <= buffer.segmentSize - buffer.pos) {
+            buffer.pos = Utf8.encode(value, buffer.current, buffer.pos);
+         } else {
+            // spans segments
+            byte[] utf8buffer = value.getBytes(StandardCharsets.UTF_8);
+            writeBytes(utf8buffer, 0, utf8buffer.length);
          }
-         this.array = array;
-         this.offset = offset;
-         this.limit = offset + length;
-         this.pos = offset;
       }
 
-      protected final int remainingSpace() {
-         return limit - pos;
+      @Override
+      boolean reserve(int space) {
+         return space <= buffer.segmentSize - buffer.pos;
       }
 
-      /**
-       * Make room for the required space by flushing the entire buffer to stream if the available space is not enough.
-       */
-      protected final void flushToStream(OutputStream out, int requiredSpace) throws IOException {
-         if (requiredSpace > limit - pos) {
-            out.write(array, 0, pos);
-            pos = 0;
-         }
+      @Override
+      void putTaggedVarint32(int encodedTag, int value) {
+         buffer.pos = putVarint32(buffer.current, putEncodedTag(buffer.current, buffer.pos, encodedTag), value);
       }
 
-      /**
-       * Flush the entire buffer to an output stream.
-       */
-      protected final void flushToStream(OutputStream out) throws IOException {
-         if (pos > 0) {
-            out.write(array, 0, pos);
-            pos = 0;
-         }
+      @Override
+      void putTaggedVarint64(int encodedTag, long value) {
+         buffer.pos = putVarint64(buffer.current, putEncodedTag(buffer.current, buffer.pos, encodedTag), value);
       }
 
-      /**
-       * Copies from {@code byteBuffer} buffer to our internal buffer the maximum bytes allowed by the available space
-       * and the remaining bytes. Multiple invocations preceded by a {@link #flushToStream(OutputStream)} invocation are
-       * needed if the {@code byteBuffer} buffer still has remaining bytes after this call.
-       */
-      protected final void fillFromBuffer(ByteBuffer byteBuffer) {
-         int length = byteBuffer.remaining();
-         int free = array.length - pos;
-         if (free >= length) {
-            byteBuffer.get(array, pos, length);
-            pos += length;
-         } else {
-            byteBuffer.get(array, pos, free);
-            pos = array.length;
-         }
+      @Override
+      void putTaggedFixed32(int encodedTag, int value) {
+         buffer.pos = putFixed32(buffer.current, putEncodedTag(buffer.current, buffer.pos, encodedTag), value);
       }
 
       @Override
-      final void writeByte(byte value) throws IOException {
-         try {
-            array[pos++] = value;
-         } catch (IndexOutOfBoundsException e) {
-            throw log.outOfWriteBufferSpace(e);
+      void putTaggedFixed64(int encodedTag, long value) {
+         buffer.pos = putFixed64(buffer.current, putEncodedTag(buffer.current, buffer.pos, encodedTag), value);
+      }
+
+      @Override
+      void putTaggedBool(int encodedTag, boolean value) {
+         buffer.pos = putEncodedTag(buffer.current, buffer.pos, encodedTag);
+         buffer.current[buffer.pos++] = (byte) (value ? 1 : 0);
+      }
+
+      @Override
+      void writeByte(byte value) {
+         if (buffer.pos == buffer.segmentSize) {
+            buffer.nextSegment();
          }
+         buffer.current[buffer.pos++] = value;
       }
 
       @Override
-      final void writeBytes(byte[] value, int offset, int length) throws IOException {
-         try {
-            System.arraycopy(value, offset, array, pos, length);
-            pos += length;
-         } catch (IndexOutOfBoundsException e) {
-            throw log.outOfWriteBufferSpace(e);
+      void writeBytes(byte[] value, int offset, int length) {
+         while (length > 0) {
+            if (buffer.pos == buffer.segmentSize) {
+               buffer.nextSegment();
+            }
+            int n = Math.min(length, buffer.segmentSize - buffer.pos);
+            System.arraycopy(value, offset, buffer.current, buffer.pos, n);
+            buffer.pos += n;
+            offset += n;
+            length -= n;
          }
       }
 
       @Override
-      final void writeBytes(ByteBuffer value) throws IOException {
+      void writeBytes(ByteBuffer value) {
          int length = value.remaining();
-         if (value.hasArray()) {
-            writeBytes(value.array(), value.arrayOffset() + value.position(), length);
-            value.position(value.position() + length);
-         } else {
-            try {
-               value.get(array, pos, length);
-               pos += length;
-            } catch (IndexOutOfBoundsException e) {
-               throw log.outOfWriteBufferSpace(e);
+         while (length > 0) {
+            if (buffer.pos == buffer.segmentSize) {
+               buffer.nextSegment();
             }
+            int n = Math.min(length, buffer.segmentSize - buffer.pos);
+            value.get(buffer.current, buffer.pos, n);
+            buffer.pos += n;
+            length -= n;
          }
       }
 
       @Override
-      final void writeVarint32(int value) throws IOException {
-         try {
-            while (true) {
-               if ((value & 0xFFFFFF80) == 0) {
-                  array[pos++] = (byte) value;
-                  break;
-               } else {
-                  array[pos++] = (byte) (value & 0x7F | 0x80);
-                  value >>>= 7;
-               }
+      void writeVarint32(int value) {
+         if (buffer.segmentSize - buffer.pos < MAX_VARINT_SIZE) {
+            while ((value & 0xFFFFFF80) != 0) {
+               writeByte((byte) ((value & 0x7F) | 0x80));
+               value >>>= 7;
             }
-         } catch (IndexOutOfBoundsException e) {
-            throw log.outOfWriteBufferSpace(e);
+            writeByte((byte) value);
+            return;
          }
+         buffer.pos = putVarint32(buffer.current, buffer.pos, value);
       }
 
       @Override
-      final void writeVarint64(long value) throws IOException {
-         try {
-            while (true) {
-               if ((value & 0xFFFFFFFFFFFFFF80L) == 0) {
-                  array[pos++] = (byte) value;
-                  break;
-               } else {
-                  array[pos++] = (byte) ((int) value & 0x7F | 0x80);
-                  value >>>= 7;
-               }
+      void writeVarint64(long value) {
+         if (buffer.segmentSize - buffer.pos < MAX_VARINT_SIZE) {
+            while ((value & 0xFFFFFFFFFFFFFF80L) != 0) {
+               writeByte((byte) ((value & 0x7F) | 0x80));
+               value >>>= 7;
             }
-         } catch (IndexOutOfBoundsException e) {
-            throw log.outOfWriteBufferSpace(e);
+            writeByte((byte) value);
+            return;
          }
+         buffer.pos = putVarint64(buffer.current, buffer.pos, value);
       }
 
       @Override
-      final void writeFixed32(int value) throws IOException {
-         try {
-            array[pos++] = (byte) (value & 0xFF);
-            array[pos++] = (byte) ((value >> 8) & 0xFF);
-            array[pos++] = (byte) ((value >> 16) & 0xFF);
-            array[pos++] = (byte) ((value >> 24) & 0xFF);
-         } catch (IndexOutOfBoundsException e) {
-            throw log.outOfWriteBufferSpace(e);
+      void writeFixed32(int value) {
+         if (buffer.segmentSize - buffer.pos < FIXED_32_SIZE) {
+            for (int i = 0; i < FIXED_32_SIZE; i++) {
+               writeByte((byte) (value >> (i << 3)));
+            }
+         } else {
+            buffer.pos = putFixed32(buffer.current, buffer.pos, value);
          }
       }
 
       @Override
-      final void writeFixed64(long value) throws IOException {
-         try {
-            array[pos++] = (byte) (value & 0xFF);
-            array[pos++] = (byte) ((value >> 8) & 0xFF);
-            array[pos++] = (byte) ((value >> 16) & 0xFF);
-            array[pos++] = (byte) ((value >> 24) & 0xFF);
-            array[pos++] = (byte) ((int) (value >> 32) & 0xFF);
-            array[pos++] = (byte) ((int) (value >> 40) & 0xFF);
-            array[pos++] = (byte) ((int) (value >> 48) & 0xFF);
-            array[pos++] = (byte) ((int) (value >> 56) & 0xFF);
-         } catch (IndexOutOfBoundsException e) {
-            throw log.outOfWriteBufferSpace(e);
+      void writeFixed64(long value) {
+         if (buffer.segmentSize - buffer.pos < FIXED_64_SIZE) {
+            for (int i = 0; i < FIXED_64_SIZE; i++) {
+               writeByte((byte) (value >> (i << 3)));
+            }
+         } else {
+            buffer.pos = putFixed64(buffer.current, buffer.pos, value);
          }
       }
    }
@@ -622,6 +1639,19 @@ public final class TagWriterImpl implements TagWriter, ProtobufTagMarshaller.Wri
          this.reverse = buffer.order() == ByteOrder.BIG_ENDIAN;
       }
 
+      @Override
+      long position() {
+         return buffer.position();
+      }
+
+      @Override
+      void writeString(String value, int length) throws IOException {
+         if (length > buffer.remaining()) {
+            throw log.outOfWriteBufferSpace(new BufferOverflowException());
+         }
+         Utf8.encode(value, buffer);
+      }
+
       @Override
       void writeByte(byte value) throws IOException {
          try {
@@ -651,6 +1681,17 @@ public final class TagWriterImpl implements TagWriter, ProtobufTagMarshaller.Wri
 
       @Override
       void writeVarint32(int value) throws IOException {
+         if (buffer.remaining() >= MAX_VARINT_SIZE) {
+            // absolute writes, the position is updated once at the end
+            int pos = buffer.position();
+            while ((value & 0xFFFFFF80) != 0) {
+               buffer.put(pos++, (byte) (value & 0x7F | 0x80));
+               value >>>= 7;
+            }
+            buffer.put(pos++, (byte) value);
+            buffer.position(pos);
+            return;
+         }
          try {
             while (true) {
                if ((value & 0xFFFFFF80) == 0) {
@@ -668,6 +1709,16 @@ public final class TagWriterImpl implements TagWriter, ProtobufTagMarshaller.Wri
 
       @Override
       void writeVarint64(long value) throws IOException {
+         if (buffer.remaining() >= MAX_VARINT_SIZE) {
+            int pos = buffer.position();
+            while ((value & 0xFFFFFFFFFFFFFF80L) != 0) {
+               buffer.put(pos++, (byte) ((int) value & 0x7F | 0x80));
+               value >>>= 7;
+            }
+            buffer.put(pos++, (byte) value);
+            buffer.position(pos);
+            return;
+         }
          try {
             while (true) {
                if ((value & 0xFFFFFFFFFFFFFF80L) == 0) {
@@ -712,13 +1763,24 @@ public final class TagWriterImpl implements TagWriter, ProtobufTagMarshaller.Wri
 
       private final OutputStream out;
 
+      /**
+       * The number of bytes written so far.
+       */
+      private long count;
+
       private OutputStreamNoBufferEncoder(OutputStream out) {
          this.out = out;
       }
 
+      @Override
+      long position() {
+         return count;
+      }
+
       @Override
       void writeVarint32(int value) throws IOException {
          while (true) {
+            count++;
             if ((value & 0xFFFFFF80) == 0) {
                out.write((byte) value);
                break;
@@ -733,6 +1795,7 @@ public final class TagWriterImpl implements TagWriter, ProtobufTagMarshaller.Wri
       void writeVarint64(long value) throws IOException {
          try {
             while (true) {
+               count++;
                if ((value & 0xFFFFFFFFFFFFFF80L) == 0) {
                   out.write((byte) value);
                   break;
@@ -752,6 +1815,7 @@ public final class TagWriterImpl implements TagWriter, ProtobufTagMarshaller.Wri
          out.write((byte) ((value >> 8) & 0xFF));
          out.write((byte) ((value >> 16) & 0xFF));
          out.write((byte) ((value >> 24) & 0xFF));
+         count += FIXED_32_SIZE;
       }
 
       @Override
@@ -764,25 +1828,31 @@ public final class TagWriterImpl implements TagWriter, ProtobufTagMarshaller.Wri
          out.write((byte) ((int) (value >> 40) & 0xFF));
          out.write((byte) ((int) (value >> 48) & 0xFF));
          out.write((byte) ((int) (value >> 56) & 0xFF));
+         count += FIXED_64_SIZE;
       }
 
       @Override
       void writeByte(byte value) throws IOException {
          out.write(value);
+         count++;
       }
 
       @Override
       void writeBytes(byte[] value, int offset, int length) throws IOException {
          out.write(value, offset, length);
+         count += length;
       }
 
       @Override
       void writeBytes(ByteBuffer value) throws IOException {
+         int length = value.remaining();
+         count += length;
          if (value.hasArray()) {
-            out.write(value.array(), value.arrayOffset(), value.remaining());
+            out.write(value.array(), value.arrayOffset() + value.position(), length);
+            value.position(value.position() + length);
          } else {
-            byte[] buffer = new byte[value.remaining()];
-            value.get(buffer, value.position(), value.remaining());
+            byte[] buffer = new byte[length];
+            value.get(buffer);
             out.write(buffer);
          }
       }
@@ -803,6 +1873,11 @@ public final class TagWriterImpl implements TagWriter, ProtobufTagMarshaller.Wri
 
       private final OutputStream out;
 
+      /**
+       * The number of bytes written directly to the stream, bypassing the buffer.
+       */
+      private long written;
+
       OutputStreamEncoder(OutputStream out, int bufferSize) {
          // Must fit at least 2 varints without having to flush, so we can write the biggest possible tag and also
          // the biggest possible field value, except for length delimited fields which can be arbitrarily big, but at
@@ -812,6 +1887,11 @@ public final class TagWriterImpl implements TagWriter, ProtobufTagMarshaller.Wri
          this.out = out;
       }
 
+      @Override
+      long position() {
+         return written + buffer.flushed + buffer.pos;
+      }
+
       @Override
       void writeUInt32Field(int fieldNumber, int value) throws IOException {
          buffer.flushToStream(out, MAX_VARINT_SIZE * 2);
@@ -848,6 +1928,58 @@ public final class TagWriterImpl implements TagWriter, ProtobufTagMarshaller.Wri
          buffer.writeLengthDelimitedField(fieldNumber, length);
       }
 
+      @Override
+      void writeString(String value, int length) throws IOException {
+         buffer.flushToStream(out, length);
+         if (buffer.remainingSpace() >= length) {
+            buffer.writeString(value, length);
+         } else {
+            // too big for our buffer
+            out.write(value.getBytes(StandardCharsets.UTF_8));
+            written += length;
+         }
+      }
+
+      @Override
+      void writeEncodedTag(int encodedTag) throws IOException {
+         buffer.flushToStream(out, MAX_PRE_ENCODED_TAG_SIZE);
+         buffer.writeEncodedTag(encodedTag);
+      }
+
+      @Override
+      boolean reserve(int space) throws IOException {
+         if (space > buffer.limit) {
+            return false;
+         }
+         buffer.flushToStream(out, space);
+         return true;
+      }
+
+      @Override
+      void putTaggedVarint32(int encodedTag, int value) {
+         buffer.putTaggedVarint32(encodedTag, value);
+      }
+
+      @Override
+      void putTaggedVarint64(int encodedTag, long value) {
+         buffer.putTaggedVarint64(encodedTag, value);
+      }
+
+      @Override
+      void putTaggedFixed32(int encodedTag, int value) {
+         buffer.putTaggedFixed32(encodedTag, value);
+      }
+
+      @Override
+      void putTaggedFixed64(int encodedTag, long value) {
+         buffer.putTaggedFixed64(encodedTag, value);
+      }
+
+      @Override
+      void putTaggedBool(int encodedTag, boolean value) {
+         buffer.putTaggedBool(encodedTag, value);
+      }
+
       @Override
       void writeVarint32(int value) throws IOException {
          buffer.flushToStream(out, MAX_VARINT_SIZE);
@@ -885,14 +2017,18 @@ public final class TagWriterImpl implements TagWriter, ProtobufTagMarshaller.Wri
          } else {
             buffer.flushToStream(out);
             out.write(value, offset, length);
+            written += length;
          }
       }
 
       @Override
       void writeBytes(ByteBuffer value) throws IOException {
          if (value.hasArray()) {
+            int length = value.remaining();
             buffer.flushToStream(out);
-            out.write(value.array(), value.arrayOffset(), value.remaining());
+            out.write(value.array(), value.arrayOffset() + value.position(), length);
+            value.position(value.position() + length);
+            written += length;
             return;
          }
          while (value.hasRemaining()) {
@@ -0,0 +1,120 @@
+package org.infinispan.protostream.impl;
+
+import java.nio.ByteBuffer;
+
+/**
+ * UTF-8 encoding helpers that compute the encoded length and encode directly into our own buffers, avoiding the
+ * intermediate byte[] allocated by {@link String#getBytes}. The output is identical to the one of
+ * {@code String.getBytes(StandardCharsets.UTF_8)}, including the replacement of unpaired surrogates with {@code '?'}.
+ *
+ * @since 5.0
+ */
+final class Utf8 {
+
+   private static final byte REPLACEMENT = (byte) '?';
+
+   private Utf8() {
+   }
+
+   /**
+    * Computes the number of bytes needed to encode the given string in UTF-8.
+    */
+   static int encodedLength(String value) {
+      int length = value.length();
+      int i = 0;
+      // fast path for ASCII
+      while (i < length && value.charAt(i) < 0x80) {
+         i++;
+      }
+      int encodedLength = length;
+      for (; i < length; i++) {
+         char c = value.charAt(i);
+         if (c < 0x80) {
+            continue;
+         }
+         if (c < 0x800) {
+            encodedLength++;
+         } else if (Character.isSurrogate(c)) {
+            if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+               // a valid surrogate pair takes 2 chars and 4 bytes
+               encodedLength += 2;
+               i++;
+            }
+            // else an unpaired surrogate is replaced with a single byte
+         } else {
+            encodedLength += 2;
+         }
+      }
+      return encodedLength;
+   }
+
+   /**
+    * Encodes the string into the array starting at the given position. The caller must ensure there is enough space,
+    * as computed by {@link #encodedLength}.
+    *
+    * @return the position following the last written byte
+    */
+   static int encode(String value, byte[] array, int pos) {
+      int length = value.length();
+      int i = 0;
+      // fast path for ASCII
+      for (char c; i < length && (c = value.charAt(i)) < 0x80; i++) {
+         array[pos++] = (byte) c;
+      }
+      for (; i < length; i++) {
+         char c = value.charAt(i);
+         if (c < 0x80) {
+            array[pos++] = (byte) c;
+         } else if (c < 0x800) {
+            array[pos++] = (byte) (0xC0 | (c >>> 6));
+            array[pos++] = (byte) (0x80 | (c & 0x3F));
+         } else if (Character.isSurrogate(c)) {
+            if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+               int codePoint = Character.toCodePoint(c, value.charAt(++i));
+               array[pos++] = (byte) (0xF0 | (codePoint >>> 18));
+               array[pos++] = (byte) (0x80 | ((codePoint >>> 12) & 0x3F));
+               array[pos++] = (byte) (0x80 | ((codePoint >>> 6) & 0x3F));
+               array[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else {
+               array[pos++] = REPLACEMENT;
+            }
+         } else {
+            array[pos++] = (byte) (0xE0 | (c >>> 12));
+            array[pos++] = (byte) (0x80 | ((c >>> 6) & 0x3F));
+            array[pos++] = (byte) (0x80 | (c & 0x3F));
+         }
+      }
+      return pos;
+   }
+
+   /**
+    * Encodes the string into the buffer starting at its current position. The caller must ensure there is enough
+    * space, as computed by {@link #encodedLength}.
+    */
+   static void encode(String value, ByteBuffer buffer) {
+      int length = value.length();
+      for (int i = 0; i < length; i++) {
+         char c = value.charAt(i);
+         if (c < 0x80) {
+            buffer.put((byte) c);
+         } else if (c < 0x800) {
+            buffer.put((byte) (0xC0 | (c >>> 6)));
+            buffer.put((byte) (0x80 | (c & 0x3F)));
+         } else if (Character.isSurrogate(c)) {
+            if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+               int codePoint = Character.toCodePoint(c, value.charAt(++i));
+               buffer.put((byte) (0xF0 | (codePoint >>> 18)));
+               buffer.put((byte) (0x80 | ((codePoint >>> 12) & 0x3F)));
+               buffer.put((byte) (0x80 | ((codePoint >>> 6) & 0x3F)));
+               buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else {
+               buffer.put(REPLACEMENT);
+            }
+         } else {
+            buffer.put((byte) (0xE0 | (c >>> 12)));
+            buffer.put((byte) (0x80 | ((c >>> 6) & 0x3F)));
+            buffer.put((byte) (0x80 | (c & 0x3F)));
+         }
+      }
+   }
+}
@@ -0,0 +1,78 @@
+package org.infinispan.protostream.impl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import org.infinispan.protostream.BaseMarshaller;
+import org.infinispan.protostream.ImmutableSerializationContext;
+import org.infinispan.protostream.WrappedMessage;
+import org.infinispan.protostream.containers.ElementContainerAdapter;
+
+/**
+ * Everything {@link WrappedMessage} needs to know in order to write an object of a given Java class: the marshaller
+ * delegate, the kind of object and the type discriminator (type id or type name) already encoded as tag and value.
+ * Plans are cached per class by {@link SerializationContextImpl} and discarded whenever marshallers or descriptors are
+ * (un)registered.
+ *
+ * @since 5.0
+ */
+public final class WrappingPlan<T> {
+
+   public enum Kind {
+      MESSAGE,
+      ENUM,
+      CONTAINER
+   }
+
+   private final BaseMarshallerDelegate<T> marshallerDelegate;
+
+   private final Kind kind;
+
+   private final byte[] typeHeader;
+
+   WrappingPlan(ImmutableSerializationContext ctx, BaseMarshallerDelegate<T> marshallerDelegate, Class<?> javaClass) {
+      this.marshallerDelegate = marshallerDelegate;
+      BaseMarshaller<T> marshaller = marshallerDelegate.getMarshaller();
+      if (marshaller instanceof ElementContainerAdapter) {
+         kind = Kind.CONTAINER;
+      } else if (javaClass.isEnum()) {
+         kind = Kind.ENUM;
+      } else {
+         kind = Kind.MESSAGE;
+      }
+      typeHeader = encodeTypeHeader(ctx, marshaller.getTypeName(), kind == Kind.CONTAINER);
+   }
+
+   private static byte[] encodeTypeHeader(ImmutableSerializationContext ctx, String typeName, boolean container) {
+      Integer typeId = ctx.getDescriptorByName(typeName).getTypeId();
+      ByteArrayOutputStreamEx buffer = new ByteArrayOutputStreamEx(typeId == null ? typeName.length() + 8 : 8);
+      TagWriterImpl out = TagWriterImpl.newInstanceNoBuffer(ctx, buffer);
+      try {
+         if (typeId == null) {
+            out.writeString(container ? WrappedMessage.WRAPPED_CONTAINER_TYPE_NAME : WrappedMessage.WRAPPED_TYPE_NAME, typeName);
+         } else {
+            out.writeUInt32(container ? WrappedMessage.WRAPPED_CONTAINER_TYPE_ID : WrappedMessage.WRAPPED_TYPE_ID, typeId);
+         }
+         out.flush();
+      } catch (IOException e) {
+         // cannot happen when writing to memory
+         throw new UncheckedIOException(e);
+      }
+      return buffer.toByteArray();
+   }
+
+   public BaseMarshallerDelegate<T> getMarshallerDelegate() {
+      return marshallerDelegate;
+   }
+
+   public Kind getKind() {
+      return kind;
+   }
+
+   /**
+    * The encoded type id or type name field, to be copied as is into the output. Must not be modified.
+    */
+   public byte[] getTypeHeader() {
+      return typeHeader;
+   }
+}
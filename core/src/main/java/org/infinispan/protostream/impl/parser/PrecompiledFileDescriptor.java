@@ -0,0 +1,603 @@
+package org.infinispan.protostream.impl.parser;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.List;
+
+import org.infinispan.protostream.DescriptorParserException;
+import org.infinispan.protostream.TagReader;
+import org.infinispan.protostream.TagWriter;
+import org.infinispan.protostream.config.Configuration;
+import org.infinispan.protostream.descriptors.Descriptor;
+import org.infinispan.protostream.descriptors.EnumDescriptor;
+import org.infinispan.protostream.descriptors.EnumValueDescriptor;
+import org.infinispan.protostream.descriptors.FieldDescriptor;
+import org.infinispan.protostream.descriptors.FileDescriptor;
+import org.infinispan.protostream.descriptors.Label;
+import org.infinispan.protostream.descriptors.MapDescriptor;
+import org.infinispan.protostream.descriptors.OneOfDescriptor;
+import org.infinispan.protostream.descriptors.Option;
+import org.infinispan.protostream.descriptors.OptionContainer;
+import org.infinispan.protostream.descriptors.ReservableDescriptor;
+import org.infinispan.protostream.descriptors.ReservedContainer;
+import org.infinispan.protostream.descriptors.WireType;
+import org.infinispan.protostream.impl.Log;
+import org.infinispan.protostream.impl.TagReaderImpl;
+import org.infinispan.protostream.impl.TagWriterImpl;
+
+/**
+ * Binary form of a parsed .proto file, produced at build time by the annotation processor so that the
+ * {@link FileDescriptor} can be rebuilt at runtime without lexing and parsing the text again. It is encoded in the
+ * Protobuf wire format and holds exactly what the parser collects: the declarations, options, documentation comments and
+ * reserved names and numbers. Type references are resolved and annotations are processed at runtime, as for parsed
+ * files, because they depend on the other registered files and on the {@link org.infinispan.protostream.config.Configuration}.
+ * <p>
+ * The encoded form starts with a format version, the length of the source text and its SHA-256 digest. If any of them
+ * does not match,
+ * {@link #decode} returns {@code null} and the caller must parse the text instead.
+ *
+ * @since 5.0
+ */
+public final class PrecompiledFileDescriptor {
+
+   private static final Log log = Log.LogFactory.getLog(PrecompiledFileDescriptor.class);
+
+   /**
+    * Must be incremented on any change of the encoding.
+    */
+   static final int FORMAT_VERSION = 2;
+
+   // FileDescriptor
+   private static final int FILE_FORMAT_VERSION = 1;
+   private static final int FILE_SOURCE_LENGTH = 2;
+   private static final int FILE_SOURCE_DIGEST = 3;
+   private static final int FILE_SYNTAX = 4;
+   private static final int FILE_PACKAGE = 5;
+   private static final int FILE_DEPENDENCY = 6;
+   private static final int FILE_PUBLIC_DEPENDENCY = 7;
+   private static final int FILE_OPTION = 8;
+   private static final int FILE_MESSAGE = 9;
+   private static final int FILE_ENUM = 10;
+
+   // Option
+   private static final int OPTION_NAME = 1;
+   private static final int OPTION_VALUE = 2;
+
+   // Descriptor
+   private static final int MESSAGE_NAME = 1;
+   private static final int MESSAGE_DOCUMENTATION = 2;
+   private static final int MESSAGE_OPTION = 3;
+   private static final int MESSAGE_FIELD = 4;
+   private static final int MESSAGE_ONE_OF = 5;
+   private static final int MESSAGE_NESTED_MESSAGE = 6;
+   private static final int MESSAGE_NESTED_ENUM = 7;
+   private static final int MESSAGE_RESERVED_RANGE = 8;
+   private static final int MESSAGE_RESERVED_NAME = 9;
+
+   // FieldDescriptor and MapDescriptor
+   private static final int FIELD_NAME = 1;
+   private static final int FIELD_NUMBER = 2;
+   private static final int FIELD_LABEL = 3;
+   private static final int FIELD_TYPE_NAME = 4;
+   private static final int FIELD_DOCUMENTATION = 5;
+   private static final int FIELD_OPTION = 6;
+   private static final int FIELD_MAP_KEY_TYPE_NAME = 7;
+
+   // OneOfDescriptor
+   private static final int ONE_OF_NAME = 1;
+   private static final int ONE_OF_DOCUMENTATION = 2;
+   private static final int ONE_OF_FIELD = 3;
+
+   // EnumDescriptor
+   private static final int ENUM_NAME = 1;
+   private static final int ENUM_DOCUMENTATION = 2;
+   private static final int ENUM_OPTION = 3;
+   private static final int ENUM_VALUE = 4;
+   private static final int ENUM_RESERVED_RANGE = 5;
+   private static final int ENUM_RESERVED_NAME = 6;
+
+   // EnumValueDescriptor
+   private static final int VALUE_NAME = 1;
+   private static final int VALUE_NUMBER = 2;
+   private static final int VALUE_DOCUMENTATION = 3;
+   private static final int VALUE_OPTION = 4;
+
+   // reserved number range, both ends inclusive
+   private static final int RANGE_FROM = 1;
+   private static final int RANGE_TO = 2;
+
+   /**
+    * The maximum length of a Base64 chunk, well below the 65535 byte limit of a string constant in a class file.
+    */
+   private static final int BASE64_CHUNK_LENGTH = 32768;
+
+   private PrecompiledFileDescriptor() {
+   }
+
+   /**
+    * Parses the source text of a file and encodes the result.
+    *
+    * @throws DescriptorParserException if the source text cannot be parsed
+    */
+   public static byte[] precompile(String fileName, String source) throws DescriptorParserException {
+      FileDescriptor fileDescriptor;
+      try {
+         fileDescriptor = ProtoParser.parse(fileName, new StringReader(source), Configuration.builder().build());
+      } catch (ParseException | TokenMgrError e) {
+         throw new DescriptorParserException(e);
+      }
+      return encode(fileDescriptor, source);
+   }
+
+   /**
+    * Converts the encoded form to Base64 strings, each of them short enough to be used as a constant in generated code.
+    */
+   public static String[] toBase64(byte[] bytes) {
+      String s = Base64.getEncoder().encodeToString(bytes);
+      String[] chunks = new String[(s.length() + BASE64_CHUNK_LENGTH - 1) / BASE64_CHUNK_LENGTH];
+      for (int i = 0; i < chunks.length; i++) {
+         chunks[i] = s.substring(i * BASE64_CHUNK_LENGTH, Math.min(s.length(), (i + 1) * BASE64_CHUNK_LENGTH));
+      }
+      return chunks;
+   }
+
+   /**
+    * The reverse of {@link #toBase64}.
+    */
+   public static byte[] fromBase64(String... chunks) {
+      return Base64.getDecoder().decode(String.join("", chunks));
+   }
+
+   /**
+    * Encodes a file that was parsed from the given source text.
+    */
+   public static byte[] encode(FileDescriptor fileDescriptor, String source) {
+      return encodeMessage(out -> {
+         out.writeUInt32(FILE_FORMAT_VERSION, FORMAT_VERSION);
+         out.writeUInt32(FILE_SOURCE_LENGTH, source.length());
+         out.writeBytes(FILE_SOURCE_DIGEST, digest(source));
+         out.writeUInt32(FILE_SYNTAX, fileDescriptor.getSyntax().ordinal());
+         writeString(out, FILE_PACKAGE, fileDescriptor.getPackage());
+         // getDependencies() includes both kinds of imports
+         for (String dependency : fileDescriptor.getDependencies()) {
+            boolean isPublic = fileDescriptor.getPublicDependencies().contains(dependency);
+            out.writeString(isPublic ? FILE_PUBLIC_DEPENDENCY : FILE_DEPENDENCY, dependency);
+         }
+         writeOptions(out, FILE_OPTION, fileDescriptor.getOptions());
+         for (Descriptor descriptor : fileDescriptor.getMessageTypes()) {
+            out.writeBytes(FILE_MESSAGE, encodeMessageType(descriptor));
+         }
+         for (EnumDescriptor enumDescriptor : fileDescriptor.getEnumTypes()) {
+            out.writeBytes(FILE_ENUM, encodeEnumType(enumDescriptor));
+         }
+      });
+   }
+
+   private static byte[] encodeMessageType(Descriptor descriptor) {
+      return encodeMessage(out -> {
+         out.writeString(MESSAGE_NAME, descriptor.getName());
+         writeString(out, MESSAGE_DOCUMENTATION, descriptor.getDocumentation());
+         writeOptions(out, MESSAGE_OPTION, descriptor.getOptions());
+         for (FieldDescriptor field : descriptor.getFields()) {
+            out.writeBytes(MESSAGE_FIELD, encodeField(field));
+         }
+         for (OneOfDescriptor oneOf : descriptor.getOneOfs()) {
+            out.writeBytes(MESSAGE_ONE_OF, encodeMessage(o -> {
+               o.writeString(ONE_OF_NAME, oneOf.getName());
+               writeString(o, ONE_OF_DOCUMENTATION, oneOf.getDocumentation());
+               for (FieldDescriptor field : oneOf.getFields()) {
+                  o.writeBytes(ONE_OF_FIELD, encodeField(field));
+               }
+            }));
+         }
+         for (Descriptor nested : descriptor.getNestedTypes()) {
+            out.writeBytes(MESSAGE_NESTED_MESSAGE, encodeMessageType(nested));
+         }
+         for (EnumDescriptor nested : descriptor.getEnumTypes()) {
+            out.writeBytes(MESSAGE_NESTED_ENUM, encodeEnumType(nested));
+         }
+         writeReserved(out, MESSAGE_RESERVED_RANGE, MESSAGE_RESERVED_NAME, descriptor);
+      });
+   }
+
+   private static byte[] encodeField(FieldDescriptor field) {
+      return encodeMessage(out -> {
+         out.writeString(FIELD_NAME, field.getName());
+         out.writeInt32(FIELD_NUMBER, field.getNumber());
+         out.writeUInt32(FIELD_LABEL, field.getLabel().ordinal());
+         out.writeString(FIELD_TYPE_NAME, field.getTypeName());
+         writeString(out, FIELD_DOCUMENTATION, field.getDocumentation());
+         writeOptions(out, FIELD_OPTION, field.getOptions());
+         if (field instanceof MapDescriptor) {
+            out.writeString(FIELD_MAP_KEY_TYPE_NAME, ((MapDescriptor) field).getKeyTypeName());
+         }
+      });
+   }
+
+   private static byte[] encodeEnumType(EnumDescriptor enumDescriptor) {
+      return encodeMessage(out -> {
+         out.writeString(ENUM_NAME, enumDescriptor.getName());
+         writeString(out, ENUM_DOCUMENTATION, enumDescriptor.getDocumentation());
+         writeOptions(out, ENUM_OPTION, enumDescriptor.getOptions());
+         for (EnumValueDescriptor value : enumDescriptor.getValues()) {
+            out.writeBytes(ENUM_VALUE, encodeMessage(v -> {
+               v.writeString(VALUE_NAME, value.getName());
+               v.writeInt32(VALUE_NUMBER, value.getNumber());
+               writeString(v, VALUE_DOCUMENTATION, value.getDocumentation());
+               writeOptions(v, VALUE_OPTION, value.getOptions());
+            }));
+         }
+         writeReserved(out, ENUM_RESERVED_RANGE, ENUM_RESERVED_NAME, enumDescriptor);
+      });
+   }
+
+   private static void writeOptions(TagWriter out, int fieldNumber, List<Option> options) throws IOException {
+      for (Option option : options) {
+         out.writeBytes(fieldNumber, encodeMessage(o -> {
+            o.writeString(OPTION_NAME, option.getName());
+            // the parser produces string values, or null for aggregate values
+            writeString(o, OPTION_VALUE, option.getValue() == null ? null : option.getValue().toString());
+         }));
+      }
+   }
+
+   private static void writeReserved(TagWriter out, int rangeFieldNumber, int nameFieldNumber, ReservableDescriptor descriptor) throws IOException {
+      // coalesce the reserved numbers into ranges, they are usually declared as such
+      Iterator<Long> numbers = descriptor.getReservedNumbers().iterator();
+      if (numbers.hasNext()) {
+         long from = numbers.next();
+         long to = from;
+         while (numbers.hasNext()) {
+            long n = numbers.next();
+            if (n != to + 1) {
+               writeRange(out, rangeFieldNumber, from, to);
+               from = n;
+            }
+            to = n;
+         }
+         writeRange(out, rangeFieldNumber, from, to);
+      }
+      for (String name : descriptor.getReservedNames()) {
+         out.writeString(nameFieldNumber, name);
+      }
+   }
+
+   private static void writeRange(TagWriter out, int fieldNumber, long from, long to) throws IOException {
+      out.writeBytes(fieldNumber, encodeMessage(r -> {
+         r.writeInt32(RANGE_FROM, (int) from);
+         r.writeInt32(RANGE_TO, (int) to);
+      }));
+   }
+
+   private static void writeString(TagWriter out, int fieldNumber, String value) throws IOException {
+      if (value != null) {
+         out.writeString(fieldNumber, value);
+      }
+   }
+
+   private interface MessageWriter {
+      void write(TagWriter out) throws IOException;
+   }
+
+   private static byte[] encodeMessage(MessageWriter messageWriter) {
+      TagWriterImpl out = TagWriterImpl.newReusableInstance(null, 64);
+      try {
+         messageWriter.write(out);
+         out.flush();
+      } catch (IOException e) {
+         // cannot happen when writing to memory
+         throw new UncheckedIOException(e);
+      }
+      return out.toByteArray();
+   }
+
+   /**
+    * Computes the SHA-256 digest of the UTF-8 encoded source text of a file.
+    */
+   public static byte[] digest(String source) {
+      try {
+         return MessageDigest.getInstance("SHA-256").digest(source.getBytes(StandardCharsets.UTF_8));
+      } catch (NoSuchAlgorithmException e) {
+         // every Java platform is required to support SHA-256
+         throw new IllegalStateException(e);
+      }
+   }
+
+   /**
+    * Rebuilds the {@link FileDescriptor} of a file from its encoded form.
+    *
+    * @return the unresolved file descriptor, or {@code null} if the encoded form was produced by an incompatible
+    * version or from a different source text, in which case the text must be parsed instead
+    */
+   public static FileDescriptor decode(String fileName, String source, byte[] bytes) {
+      try {
+         TagReaderImpl in = TagReaderImpl.newInstance(null, bytes);
+         if (in.readTag() != WireType.makeTag(FILE_FORMAT_VERSION, WireType.WIRETYPE_VARINT) || in.readUInt32() != FORMAT_VERSION) {
+            log.debugf("Precompiled descriptor of %s has an unsupported format version, parsing the source instead", fileName);
+            return null;
+         }
+         if (in.readTag() != WireType.makeTag(FILE_SOURCE_LENGTH, WireType.WIRETYPE_VARINT) || in.readUInt32() != source.length()
+               || in.readTag() != WireType.makeTag(FILE_SOURCE_DIGEST, WireType.WIRETYPE_LENGTH_DELIMITED) || !Arrays.equals(in.readByteArray(), digest(source))) {
+            log.debugf("Precompiled descriptor of %s does not match its source, parsing the source instead", fileName);
+            return null;
+         }
+         return readFile(in, fileName);
+      } catch (IOException | RuntimeException e) {
+         log.debugf(e, "Failed to decode the precompiled descriptor of %s, parsing the source instead", fileName);
+         return null;
+      }
+   }
+
+   private static FileDescriptor readFile(TagReader in, String fileName) throws IOException {
+      FileDescriptor.Builder file = new FileDescriptor.Builder().withName(fileName);
+      int tag;
+      while ((tag = in.readTag()) != 0) {
+         switch (WireType.getTagFieldNumber(tag)) {
+            case FILE_SYNTAX:
+               file.withSyntax(FileDescriptor.Syntax.values()[in.readUInt32()]);
+               break;
+            case FILE_PACKAGE:
+               file.withPackageName(in.readString());
+               break;
+            case FILE_DEPENDENCY:
+               file.addDependency(in.readString());
+               break;
+            case FILE_PUBLIC_DEPENDENCY:
+               file.addPublicDependency(in.readString());
+               break;
+            case FILE_OPTION:
+               readOption(in, file);
+               break;
+            case FILE_MESSAGE:
+               file.addMessage(readMessageType(in, file.getFullName()));
+               break;
+            case FILE_ENUM:
+               file.addEnum(readEnumType(in));
+               break;
+            default:
+               throw unexpectedTag(tag);
+         }
+      }
+      return file.build();
+   }
+
+   private static Descriptor.Builder readMessageType(TagReader in, String parentFullName) throws IOException {
+      int oldLimit = in.pushLimit(in.readUInt32());
+      Descriptor.Builder message = new Descriptor.Builder();
+      int tag;
+      while ((tag = in.readTag()) != 0) {
+         switch (WireType.getTagFieldNumber(tag)) {
+            case MESSAGE_NAME: {
+               String name = in.readString();
+               message.withName(name).withFullName(FileDescriptor.fullName(parentFullName, name));
+               break;
+            }
+            case MESSAGE_DOCUMENTATION:
+               message.withDocumentation(in.readString());
+               break;
+            case MESSAGE_OPTION:
+               readOption(in, message);
+               break;
+            case MESSAGE_FIELD: {
+               FieldDescriptor.Builder field = readField(in);
+               if (field instanceof MapDescriptor.Builder) {
+                  message.addMap((MapDescriptor.Builder) field);
+               } else {
+                  message.addField(field);
+               }
+               break;
+            }
+            case MESSAGE_ONE_OF:
+               message.addOneOf(readOneOf(in));
+               break;
+            case MESSAGE_NESTED_MESSAGE:
+               message.addMessage(readMessageType(in, message.getFullName()));
+               break;
+            case MESSAGE_NESTED_ENUM:
+               message.addEnum(readEnumType(in));
+               break;
+            case MESSAGE_RESERVED_RANGE:
+               readRange(in, message);
+               break;
+            case MESSAGE_RESERVED_NAME:
+               message.addReserved(in.readString());
+               break;
+            default:
+               throw unexpectedTag(tag);
+         }
+      }
+      in.popLimit(oldLimit);
+      return message;
+   }
+
+   private static FieldDescriptor.Builder readField(TagReader in) throws IOException {
+      int oldLimit = in.pushLimit(in.readUInt32());
+      // the key type comes last, so the properties are collected first
+      String name = null;
+      int number = 0;
+      Label label = Label.OPTIONAL;
+      String typeName = null;
+      String documentation = null;
+      List<Option> options = new ArrayList<>();
+      String keyTypeName = null;
+      int tag;
+      while ((tag = in.readTag()) != 0) {
+         switch (WireType.getTagFieldNumber(tag)) {
+            case FIELD_NAME:
+               name = in.readString();
+               break;
+            case FIELD_NUMBER:
+               number = in.readInt32();
+               break;
+            case FIELD_LABEL:
+               label = Label.values()[in.readUInt32()];
+               break;
+            case FIELD_TYPE_NAME:
+               typeName = in.readString();
+               break;
+            case FIELD_DOCUMENTATION:
+               documentation = in.readString();
+               break;
+            case FIELD_OPTION:
+               options.add(readOption(in));
+               break;
+            case FIELD_MAP_KEY_TYPE_NAME:
+               keyTypeName = in.readString();
+               break;
+            default:
+               throw unexpectedTag(tag);
+         }
+      }
+      in.popLimit(oldLimit);
+      FieldDescriptor.Builder field;
+      if (keyTypeName != null) {
+         field = new MapDescriptor.Builder().withKeyTypeName(keyTypeName).withValueTypeName(typeName);
+      } else {
+         field = new FieldDescriptor.Builder().withTypeName(typeName).withLabel(label);
+      }
+      return field.withName(name).withNumber(number).withDocumentation(documentation).withOptions(options);
+   }
+
+   private static OneOfDescriptor.Builder readOneOf(TagReader in) throws IOException {
+      int oldLimit = in.pushLimit(in.readUInt32());
+      OneOfDescriptor.Builder oneOf = new OneOfDescriptor.Builder();
+      int tag;
+      while ((tag = in.readTag()) != 0) {
+         switch (WireType.getTagFieldNumber(tag)) {
+            case ONE_OF_NAME:
+               oneOf.withName(in.readString());
+               break;
+            case ONE_OF_DOCUMENTATION:
+               oneOf.withDocumentation(in.readString());
+               break;
+            case ONE_OF_FIELD:
+               oneOf.addField(readField(in));
+               break;
+            default:
+               throw unexpectedTag(tag);
+         }
+      }
+      in.popLimit(oldLimit);
+      return oneOf;
+   }
+
+   private static EnumDescriptor.Builder readEnumType(TagReader in) throws IOException {
+      int oldLimit = in.pushLimit(in.readUInt32());
+      EnumDescriptor.Builder enumType = new EnumDescriptor.Builder();
+      int tag;
+      while ((tag = in.readTag()) != 0) {
+         switch (WireType.getTagFieldNumber(tag)) {
+            case ENUM_NAME:
+               enumType.withName(in.readString());
+               break;
+            case ENUM_DOCUMENTATION:
+               enumType.withDocumentation(in.readString());
+               break;
+            case ENUM_OPTION:
+               readOption(in, enumType);
+               break;
+            case ENUM_VALUE:
+               enumType.addValue(readEnumValue(in));
+               break;
+            case ENUM_RESERVED_RANGE:
+               readRange(in, enumType);
+               break;
+            case ENUM_RESERVED_NAME:
+               enumType.addReserved(in.readString());
+               break;
+            default:
+               throw unexpectedTag(tag);
+         }
+      }
+      in.popLimit(oldLimit);
+      return enumType;
+   }
+
+   private static EnumValueDescriptor.Builder readEnumValue(TagReader in) throws IOException {
+      int oldLimit = in.pushLimit(in.readUInt32());
+      EnumValueDescriptor.Builder value = new EnumValueDescriptor.Builder();
+      int tag;
+      while ((tag = in.readTag()) != 0) {
+         switch (WireType.getTagFieldNumber(tag)) {
+            case VALUE_NAME:
+               value.withName(in.readString());
+               break;
+            case VALUE_NUMBER:
+               value.withTag(in.readInt32());
+               break;
+            case VALUE_DOCUMENTATION:
+               value.withDocumentation(in.readString());
+               break;
+            case VALUE_OPTION:
+               readOption(in, value);
+               break;
+            default:
+               throw unexpectedTag(tag);
+         }
+      }
+      in.popLimit(oldLimit);
+      return value;
+   }
+
+   private static void readOption(TagReader in, OptionContainer<?> container) throws IOException {
+      container.addOption(readOption(in));
+   }
+
+   private static Option readOption(TagReader in) throws IOException {
+      int oldLimit = in.pushLimit(in.readUInt32());
+      String name = null;
+      String value = null;
+      int tag;
+      while ((tag = in.readTag()) != 0) {
+         switch (WireType.getTagFieldNumber(tag)) {
+            case OPTION_NAME:
+               name = in.readString();
+               break;
+            case OPTION_VALUE:
+               value = in.readString();
+               break;
+            default:
+               throw unexpectedTag(tag);
+         }
+      }
+      in.popLimit(oldLimit);
+      return new Option(name, value);
+   }
+
+   private static void readRange(TagReader in, ReservedContainer<?> container) throws IOException {
+      int oldLimit = in.pushLimit(in.readUInt32());
+      int from = 0;
+      int to = 0;
+      int tag;
+      while ((tag = in.readTag()) != 0) {
+         switch (WireType.getTagFieldNumber(tag)) {
+            case RANGE_FROM:
+               from = in.readInt32();
+               break;
+            case RANGE_TO:
+               to = in.readInt32();
+               break;
+            default:
+               throw unexpectedTag(tag);
+         }
+      }
+      in.popLimit(oldLimit);
+      if (from == to) {
+         container.addReserved(from);
+      } else {
+         container.addReserved(from, to);
+      }
+   }
+
+   private static IOException unexpectedTag(int tag) {
+      return new IOException("Unexpected tag " + tag + " in precompiled descriptor");
+   }
+}
@@ -1,8 +1,16 @@
 package org.infinispan.protostream.impl.parser;
 
 import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.infinispan.protostream.DescriptorParserException;
 import org.infinispan.protostream.FileDescriptorSource;
@@ -31,6 +39,9 @@ public final class ProtostreamProtoParser {
     * duplicate type definitions. If the {@link FileDescriptorSource} parameter does not include a progress callback
     * parsing will stop on first encountered error. If a callback exists all files will be processed; only one error per
     * file is reported and parsing will continue with the next file.
+    * <p>
+    * If the configuration has a {@link Configuration#parserExecutor() parser executor} the files are parsed concurrently,
+    * but the results are collected, and errors reported, in the order of the files in the source.
     *
     * @param fileDescriptorSource the set of descriptors to parse
     * @return a map of successfully parsed {@link FileDescriptor} objects keyed by with their names
@@ -39,27 +50,109 @@ public final class ProtostreamProtoParser {
     */
    public Map<String, FileDescriptor> parse(FileDescriptorSource fileDescriptorSource) throws DescriptorParserException {
       Map<String, String> input = fileDescriptorSource.getFiles();
+      Map<String, byte[]> precompiledFiles = fileDescriptorSource.getPrecompiledFiles();
       Map<String, FileDescriptor> fileDescriptorMap = new LinkedHashMap<>(input.size());
-      for (Map.Entry<String, String> entry : input.entrySet()) {
-         String fileName = entry.getKey();
-         try {
-            FileDescriptor fileDescriptor = ProtoParser.parse(fileName, new StringReader(entry.getValue()), configuration);
-            fileDescriptor.setConfiguration(configuration);
-            fileDescriptor.parseAnnotations();
-            fileDescriptorMap.put(fileName, fileDescriptor);
-         } catch (DescriptorParserException e) {
-            reportParsingError(fileDescriptorSource, fileDescriptorMap, fileName, e);
-         } catch (RuntimeException | TokenMgrError e) {
-            reportParsingError(fileDescriptorSource, fileDescriptorMap, fileName, Log.LOG.parserException(fileName, e.getMessage()));
-         } catch (ParseException e) {
-            Token next = e.currentToken.next;
-            String s = String.format("Syntax error in %s at %d:%d: unexpected label: %s", fileName, next.beginLine, next.endColumn, next.image);
-            reportParsingError(fileDescriptorSource, fileDescriptorMap, fileName, new DescriptorParserException(s, e));
+      Executor executor = configuration.parserExecutor();
+      if (executor == null || input.size() < 2) {
+         for (Map.Entry<String, String> entry : input.entrySet()) {
+            String fileName = entry.getKey();
+            try {
+               fileDescriptorMap.put(fileName, parseFile(fileName, entry.getValue(), precompiledFiles.get(fileName)));
+            } catch (DescriptorParserException e) {
+               reportParsingError(fileDescriptorSource, fileDescriptorMap, fileName, e);
+            }
          }
+      } else {
+         parseConcurrently(fileDescriptorSource, executor, fileDescriptorMap);
       }
       return fileDescriptorMap;
    }
 
+   /**
+    * Parses the files with tasks submitted to the executor and in the calling thread, each of them taking the next file
+    * not taken yet until none is left. The calling thread thus only waits for files that are being parsed, never for a
+    * task that did not start, so this completes even if the executor is saturated or is running the caller itself. In
+    * fail fast mode, the files not taken yet when a file fails are skipped.
+    */
+   private void parseConcurrently(FileDescriptorSource fileDescriptorSource, Executor executor, Map<String, FileDescriptor> fileDescriptorMap) {
+      Map<String, byte[]> precompiledFiles = fileDescriptorSource.getPrecompiledFiles();
+      List<Map.Entry<String, String>> files = new ArrayList<>(fileDescriptorSource.getFiles().entrySet());
+      List<CompletableFuture<FileDescriptor>> results = new ArrayList<>(files.size());
+      for (int i = 0; i < files.size(); i++) {
+         results.add(new CompletableFuture<>());
+      }
+      boolean failFast = fileDescriptorSource.getProgressCallback() == null;
+      AtomicInteger nextFile = new AtomicInteger();
+      AtomicBoolean failed = new AtomicBoolean();
+      Runnable task = () -> {
+         int i;
+         while ((i = nextFile.getAndIncrement()) < files.size()) {
+            CompletableFuture<FileDescriptor> result = results.get(i);
+            if (failed.get()) {
+               result.cancel(false);
+               continue;
+            }
+            String fileName = files.get(i).getKey();
+            try {
+               result.complete(parseFile(fileName, files.get(i).getValue(), precompiledFiles.get(fileName)));
+            } catch (Throwable t) {
+               if (failFast || !(t instanceof DescriptorParserException)) {
+                  failed.set(true);
+               }
+               result.completeExceptionally(t);
+            }
+         }
+      };
+      for (int i = 1; i < files.size(); i++) {
+         try {
+            executor.execute(task);
+         } catch (RejectedExecutionException e) {
+            // the calling thread parses the files left
+            break;
+         }
+      }
+      task.run();
+
+      // files are taken in order, so a skipped file always comes after the failure that is thrown here
+      for (int i = 0; i < files.size(); i++) {
+         String fileName = files.get(i).getKey();
+         try {
+            fileDescriptorMap.put(fileName, results.get(i).join());
+         } catch (CompletionException e) {
+            if (!(e.getCause() instanceof DescriptorParserException)) {
+               throw e;
+            }
+            reportParsingError(fileDescriptorSource, fileDescriptorMap, fileName, (DescriptorParserException) e.getCause());
+         }
+      }
+   }
+
+   /**
+    * Parses a single file, or decodes its precompiled form if there is a usable one. This may run in any thread.
+    */
+   private FileDescriptor parseFile(String fileName, String contents, byte[] precompiled) throws DescriptorParserException {
+      try {
+         FileDescriptor fileDescriptor = precompiled == null ? null : PrecompiledFileDescriptor.decode(fileName, contents, precompiled);
+         if (fileDescriptor == null) {
+            fileDescriptor = ProtoParser.parse(fileName, new StringReader(contents), configuration);
+         }
+         fileDescriptor.setConfiguration(configuration);
+         fileDescriptor.parseAnnotations();
+         return fileDescriptor;
+      } catch (DescriptorParserException e) {
+         throw e;
+      } catch (RuntimeException | TokenMgrError e) {
+         throw Log.LOG.parserException(fileName, e.getMessage());
+      } catch (ParseException e) {
+         Token next = e.currentToken.next;
+         String s = String.format("Syntax error in %s at %d:%d: unexpected label: %s", fileName, next.beginLine, next.endColumn, next.image);
+         throw new DescriptorParserException(s, e);
+      } finally {
+         // a comment that was not attached to any element must not leak into the next file parsed by this thread
+         comments.remove();
+      }
+   }
+
    /**
     * Report the error to the callback if any, or just throw it otherwise.
     */
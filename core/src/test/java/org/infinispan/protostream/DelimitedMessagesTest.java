@@ -0,0 +1,188 @@
+package org.infinispan.protostream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.Collectors;
+
+import org.infinispan.protostream.config.Configuration;
+import org.infinispan.protostream.domain.Address;
+import org.infinispan.protostream.domain.User;
+import org.infinispan.protostream.impl.SegmentedOutputBuffer;
+import org.infinispan.protostream.test.AbstractProtoStreamTest;
+import org.junit.Test;
+
+public class DelimitedMessagesTest extends AbstractProtoStreamTest {
+
+   private static List<User> createUsers(int count) {
+      List<User> users = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+         User user = new User();
+         user.setId(i);
+         user.setName("John" + i);
+         user.setSurname("Batman");
+         user.setGender(User.Gender.MALE);
+         user.setAccountIds(new HashSet<>(Arrays.asList(i, i + 1)));
+         user.setAddresses(Collections.singletonList(new Address("Old Street", "XYZ42", i)));
+         users.add(user);
+      }
+      // larger than a segment and than the default read buffer
+      char[] chars = new char[3 * SegmentedOutputBuffer.DEFAULT_SEGMENT_SIZE];
+      Arrays.fill(chars, 'x');
+      users.get(count / 2).setNotes(new String(chars));
+      return users;
+   }
+
+   @Test
+   public void testStream() throws Exception {
+      ImmutableSerializationContext ctx = createContext();
+      List<User> users = createUsers(50);
+
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      DelimitedMessageWriter writer = new DelimitedMessageWriter(ctx, out);
+      for (User user : users) {
+         writer.write(user);
+      }
+      byte[] bytes = out.toByteArray();
+
+      DelimitedMessageReader<User> reader = DelimitedMessageReader.of(ctx, new ByteArrayInputStream(bytes), User.class);
+      assertEquals(users, reader.stream().collect(Collectors.toList()));
+      assertFalse(reader.hasNext());
+
+      assertEquals(users, DelimitedMessageReader.of(ctx, ByteBuffer.wrap(bytes), User.class).stream().collect(Collectors.toList()));
+   }
+
+   @Test
+   public void testWrappedChannel() throws Exception {
+      ImmutableSerializationContext ctx = createContext();
+      List<Object> messages = new ArrayList<>(createUsers(10));
+      messages.add(1, "a string");
+      messages.add(3, 42L);
+      messages.add(new Address("Bond Street", "W23", 2));
+
+      Path file = Files.createTempFile("delimited", ".bin");
+      try {
+         try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            DelimitedMessageWriter writer = new DelimitedMessageWriter(ctx, channel);
+            for (Object message : messages) {
+               writer.writeWrapped(message);
+            }
+         }
+         try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            DelimitedMessageReader<Object> reader = DelimitedMessageReader.ofWrapped(ctx, channel);
+            List<Object> read = new ArrayList<>();
+            reader.forEachRemaining(read::add);
+            assertEquals(messages, read);
+         }
+
+         ByteBuffer direct = ByteBuffer.allocateDirect((int) Files.size(file));
+         direct.put(Files.readAllBytes(file)).flip();
+         DelimitedMessageReader<Object> reader = DelimitedMessageReader.ofWrapped(ctx, direct);
+         assertEquals(messages, reader.stream().collect(Collectors.toList()));
+         assertFalse(direct.hasRemaining());
+      } finally {
+         Files.delete(file);
+      }
+   }
+
+   @Test
+   public void testTruncated() throws Exception {
+      ImmutableSerializationContext ctx = createContext();
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      DelimitedMessageWriter writer = new DelimitedMessageWriter(ctx, out);
+      for (User user : createUsers(3)) {
+         writer.writeWrapped(user);
+      }
+      byte[] bytes = out.toByteArray();
+      byte[] truncated = Arrays.copyOf(bytes, bytes.length - 1);
+
+      DelimitedMessageReader<Object> reader = DelimitedMessageReader.ofWrapped(ctx, new ByteArrayInputStream(truncated));
+      reader.next();
+      reader.next();
+      try {
+         reader.hasNext();
+         fail("UncheckedIOException expected");
+      } catch (UncheckedIOException e) {
+         assertTrue(e.getCause() instanceof MalformedProtobufException);
+      }
+
+      reader = DelimitedMessageReader.ofWrapped(ctx, ByteBuffer.wrap(new byte[0]));
+      assertFalse(reader.hasNext());
+      try {
+         reader.next();
+         fail("NoSuchElementException expected");
+      } catch (NoSuchElementException e) {
+         // expected
+      }
+   }
+
+   @Test
+   public void testZeroCopyBytes() throws Exception {
+      ImmutableSerializationContext ctx = createContext(Configuration.builder().zeroCopyBytes(true));
+      List<ByteBuffer> messages = new ArrayList<>();
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      DelimitedMessageWriter writer = new DelimitedMessageWriter(ctx, out);
+      // the second message does not fit in the read buffer, which has to move the bytes it holds
+      for (int size : new int[]{100, 3 * ProtobufUtil.DEFAULT_STREAM_BUFFER_SIZE, 10}) {
+         byte[] bytes = new byte[size];
+         Arrays.fill(bytes, (byte) messages.size());
+         writer.writeWrapped(bytes);
+         messages.add(ByteBuffer.wrap(bytes));
+      }
+
+      DelimitedMessageReader<Object> reader = DelimitedMessageReader.ofWrapped(ctx, new ByteArrayInputStream(out.toByteArray()));
+      // the views over the bytes of each message stay valid after the next messages are read
+      assertEquals(messages, reader.stream().collect(Collectors.toList()));
+   }
+
+   @Test
+   public void testMaxMessageSize() throws Exception {
+      ImmutableSerializationContext ctx = createContext();
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      new DelimitedMessageWriter(ctx, out).writeWrapped("a string");
+      byte[] bytes = out.toByteArray();
+
+      DelimitedMessageReader<Object> reader = DelimitedMessageReader.ofWrapped(ctx, new ByteArrayInputStream(bytes)).withMaxMessageSize(4);
+      assertTooLarge(reader);
+      assertTooLarge(DelimitedMessageReader.ofWrapped(ctx, ByteBuffer.wrap(bytes)).withMaxMessageSize(4));
+
+      // a corrupt length of almost 2 GB, followed by few bytes
+      byte[] corrupt = {(byte) 0xF0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07, 1, 2, 3};
+      assertTooLarge(DelimitedMessageReader.ofWrapped(ctx, new ByteArrayInputStream(corrupt)));
+
+      // a corrupt length below the maximum is detected at the end of the input, without allocating a buffer that large
+      reader = DelimitedMessageReader.ofWrapped(ctx, new ByteArrayInputStream(corrupt)).withMaxMessageSize(Integer.MAX_VALUE);
+      try {
+         reader.hasNext();
+         fail("UncheckedIOException expected");
+      } catch (UncheckedIOException e) {
+         assertTrue(e.getCause().getMessage().contains("IPROTO000003"));
+      }
+   }
+
+   private static void assertTooLarge(DelimitedMessageReader<?> reader) {
+      try {
+         reader.hasNext();
+         fail("UncheckedIOException expected");
+      } catch (UncheckedIOException e) {
+         assertTrue(e.getCause() instanceof MalformedProtobufException);
+         assertTrue(e.getCause().getMessage().contains("IPROTO000042"));
+      }
+   }
+}
@@ -1,13 +1,23 @@
 package org.infinispan.protostream;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.fail;
+
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.HashSet;
+import java.util.List;
 
 import org.infinispan.protostream.descriptors.Descriptor;
 import org.infinispan.protostream.descriptors.EnumDescriptor;
 import org.infinispan.protostream.descriptors.FieldDescriptor;
 import org.infinispan.protostream.descriptors.GenericDescriptor;
+import org.infinispan.protostream.descriptors.WireType;
+import org.infinispan.protostream.domain.Account;
 import org.infinispan.protostream.domain.Address;
 import org.infinispan.protostream.domain.User;
 import org.infinispan.protostream.impl.Log;
@@ -156,4 +166,200 @@ public class ProtobufParserTest extends AbstractProtoStreamTest {
 
       ProtobufParser.INSTANCE.parse(wrapperHandler, wrapperDescriptor, userBytes);
    }
+
+   @Test
+   public void testTypedCallbacks() throws Exception {
+      ImmutableSerializationContext ctx = createContext();
+
+      User user = new User();
+      user.setId(1);
+      user.setName("John");
+      user.setSurname("Batman");
+      user.setGender(User.Gender.MALE);
+      user.setAccountIds(new HashSet<>(Arrays.asList(1, 3)));
+      user.setAddresses(Arrays.asList(new Address("Old Street", "XYZ42", -12), new Address("Bond Street", "W23", 2)));
+      user.setAge(-7);
+
+      Account account = new Account();
+      account.setId(2);
+      account.setDescription("test account");
+      Account.Limits limits = new Account.Limits();
+      limits.setMaxDailyLimit(1.5);
+      limits.setMaxTransactionLimit(3.5);
+      limits.setPayees(new String[]{"Madoff", "Ponzi"});
+      account.setLimits(limits);
+      account.setHardLimits(limits);
+      account.setCreationDate(new Date(1500508800000L));
+      account.setBlurb(Arrays.asList(new byte[0], new byte[]{123}, new byte[]{1, 2, 3, 4}));
+      account.setCurrencies(new Account.Currency[]{Account.Currency.USD, Account.Currency.BRL});
+
+      assertTypedCallbacks(ctx, ctx.getMessageDescriptor("sample_bank_account.User"), ProtobufUtil.toByteArray(ctx, user));
+      assertTypedCallbacks(ctx, ctx.getMessageDescriptor("sample_bank_account.Account"), ProtobufUtil.toByteArray(ctx, account));
+   }
+
+   @Test
+   public void testPackedNonRepeatedField() throws Exception {
+      ImmutableSerializationContext ctx = createContext();
+      // User.id is a non-repeated int32, a length delimited record for it is not a packed field but an unknown one
+      byte[] bytes = {(byte) WireType.makeTag(1, WireType.WIRETYPE_LENGTH_DELIMITED), 2, 5, 6};
+      List<String> events = new ArrayList<>();
+      ProtobufParser.INSTANCE.parse(new TagHandler() {
+         @Override
+         public void onTag(int fieldNumber, FieldDescriptor fieldDescriptor, Object tagValue) {
+            events.add(fieldNumber + "=" + (tagValue instanceof byte[] ? Arrays.toString((byte[]) tagValue) : tagValue)
+                  + (fieldDescriptor == null ? " unknown" : ""));
+         }
+      }, ctx.getMessageDescriptor("sample_bank_account.User"), bytes);
+      assertEquals(List.of("1=[5, 6] unknown"), events);
+   }
+
+   /**
+    * Parses the message with a handler that only implements {@code onTag} and with one that implements the typed
+    * callbacks, which must see the same values without {@code onTag} ever being called.
+    */
+   private void assertTypedCallbacks(ImmutableSerializationContext ctx, Descriptor descriptor, byte[] bytes) throws IOException {
+      List<String> boxed = new ArrayList<>();
+      ProtobufParser.INSTANCE.parse(new TagHandler() {
+         @Override
+         public void onTag(int fieldNumber, FieldDescriptor fieldDescriptor, Object tagValue) {
+            boxed.add(fieldNumber + "=" + (tagValue instanceof byte[] ? Arrays.toString((byte[]) tagValue) : tagValue));
+         }
+      }, descriptor, bytes);
+
+      List<String> typed = new ArrayList<>();
+      ProtobufParser.INSTANCE.parse(new TagHandler() {
+         @Override
+         public void onTag(int fieldNumber, FieldDescriptor fieldDescriptor, Object tagValue) {
+            fail("Unexpected boxed value for field " + fieldNumber);
+         }
+
+         @Override
+         public void onInt32(int fieldNumber, FieldDescriptor fieldDescriptor, int value) {
+            typed.add(fieldNumber + "=" + value);
+         }
+
+         @Override
+         public void onInt64(int fieldNumber, FieldDescriptor fieldDescriptor, long value) {
+            typed.add(fieldNumber + "=" + value);
+         }
+
+         @Override
+         public void onFloat(int fieldNumber, FieldDescriptor fieldDescriptor, float value) {
+            typed.add(fieldNumber + "=" + value);
+         }
+
+         @Override
+         public void onDouble(int fieldNumber, FieldDescriptor fieldDescriptor, double value) {
+            typed.add(fieldNumber + "=" + value);
+         }
+
+         @Override
+         public void onBool(int fieldNumber, FieldDescriptor fieldDescriptor, boolean value) {
+            typed.add(fieldNumber + "=" + value);
+         }
+
+         @Override
+         public void onEnum(int fieldNumber, FieldDescriptor fieldDescriptor, int value) {
+            typed.add(fieldNumber + "=" + value);
+         }
+
+         @Override
+         public void onString(int fieldNumber, FieldDescriptor fieldDescriptor, String value) {
+            typed.add(fieldNumber + "=" + value);
+         }
+
+         @Override
+         public void onBytes(int fieldNumber, FieldDescriptor fieldDescriptor, ByteBuffer value) {
+            byte[] bytes = new byte[value.remaining()];
+            value.get(bytes);
+            typed.add(fieldNumber + "=" + Arrays.toString(bytes));
+         }
+      }, descriptor, bytes);
+
+      assertEquals(boxed, typed);
+   }
+
+   @Test
+   public void testProjection() throws Exception {
+      ImmutableSerializationContext ctx = createContext();
+
+      User user = new User();
+      user.setId(1);
+      user.setName("John");
+      user.setSurname("Batman");
+      user.setGender(User.Gender.MALE);
+      user.setAccountIds(new HashSet<>(Arrays.asList(1, 3)));
+      user.setAddresses(Arrays.asList(new Address("Old Street", "XYZ42", -12), new Address("Bond Street", "W23", 2)));
+
+      // a repeated field cannot stop the parsing early, so all addresses are reported
+      FieldProjection projection = FieldProjection.of(ctx.getMessageDescriptor("sample_bank_account.User"), "addresses.street", "name", "addresses");
+      assertEquals("FieldProjection{sample_bank_account.User:[addresses, name]}", projection.toString());
+      projection = FieldProjection.of(ctx.getMessageDescriptor("sample_bank_account.User"), "addresses.street", "name");
+      assertEquals("FieldProjection{sample_bank_account.User:[addresses[street], name]}", projection.toString());
+      assertEquals(Arrays.asList("start sample_bank_account.User", "3=John",
+                  "startNested 6", "1=Old Street", "endNested 6", "startNested 6", "1=Bond Street", "endNested 6", "end"),
+            parseProjection(projection, ProtobufUtil.toByteArray(ctx, user)));
+
+      Account account = new Account();
+      account.setId(2);
+      account.setDescription("test account");
+      Account.Limits limits = new Account.Limits();
+      limits.setMaxDailyLimit(1.5);
+      limits.setMaxTransactionLimit(3.5);
+      limits.setPayees(new String[]{"Madoff", "Ponzi"});
+      account.setLimits(limits);
+      account.setHardLimits(limits);
+      account.setCreationDate(new Date(1500508800000L));
+      account.setCurrencies(new Account.Currency[]{Account.Currency.USD});
+
+      // append an invalid tag, which is never reached because the parsing stops once the selected fields were seen
+      byte[] accountBytes = ProtobufUtil.toByteArray(ctx, account);
+      byte[] bytes = Arrays.copyOf(accountBytes, accountBytes.length + 1);
+      Descriptor accountDescriptor = ctx.getMessageDescriptor("sample_bank_account.Account");
+      assertThrows(MalformedProtobufException.class, () -> ProtobufParser.INSTANCE.parse(new TagHandler() {}, accountDescriptor, bytes));
+
+      projection = FieldProjection.of(accountDescriptor, "limits.maxTransactionLimit", "description");
+      assertEquals(Arrays.asList("start sample_bank_account.Account", "2=test account",
+                  "startNested 4", "2=3.5", "endNested 4", "end"),
+            parseProjection(projection, bytes));
+
+      projection = FieldProjection.of(accountDescriptor, "id");
+      assertEquals(Arrays.asList("start sample_bank_account.Account", "1=2", "end"), parseProjection(projection, bytes));
+
+      assertThrows(IllegalArgumentException.class, () -> FieldProjection.of(accountDescriptor, "limits.unknown"));
+      assertThrows(IllegalArgumentException.class, () -> FieldProjection.of(accountDescriptor, "description.length"));
+      assertThrows(IllegalArgumentException.class, () -> FieldProjection.of(accountDescriptor, "limits", "limits..payees"));
+      assertThrows(IllegalArgumentException.class, () -> FieldProjection.of(accountDescriptor));
+   }
+
+   private static List<String> parseProjection(FieldProjection projection, byte[] bytes) throws IOException {
+      List<String> events = new ArrayList<>();
+      ProtobufParser.INSTANCE.parse(new TagHandler() {
+         @Override
+         public void onStart(GenericDescriptor descriptor) {
+            events.add("start " + descriptor.getFullName());
+         }
+
+         @Override
+         public void onTag(int fieldNumber, FieldDescriptor fieldDescriptor, Object tagValue) {
+            events.add(fieldNumber + "=" + tagValue);
+         }
+
+         @Override
+         public void onStartNested(int fieldNumber, FieldDescriptor fieldDescriptor) {
+            events.add("startNested " + fieldNumber);
+         }
+
+         @Override
+         public void onEndNested(int fieldNumber, FieldDescriptor fieldDescriptor) {
+            events.add("endNested " + fieldNumber);
+         }
+
+         @Override
+         public void onEnd() {
+            events.add("end");
+         }
+      }, projection, bytes);
+      return events;
+   }
 }
@@ -9,8 +9,13 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
@@ -121,6 +126,64 @@ public class ProtobufUtilTest extends AbstractProtoStreamTest {
       assertArrayEquals(userBytes1, userBytes2);
    }
 
+   @Test
+   public void testReusableCodec() throws Exception {
+      ImmutableSerializationContext ctx = createContext();
+
+      User user = new User();
+      user.setId(1);
+      user.setName("John");
+      user.setSurname("Batman");
+      user.setGender(User.Gender.MALE);
+      user.setAccountIds(new HashSet<>(Arrays.asList(1, 3)));
+      user.setAddresses(Arrays.asList(new Address("Old Street", "XYZ42", -12), new Address("Bond Street", "W23", 2)));
+
+      // a message larger than the initial buffer, to force it to grow
+      User bigUser = new User();
+      bigUser.setId(2);
+      bigUser.setName("x".repeat(ProtobufUtil.DEFAULT_ARRAY_BUFFER_SIZE * 3));
+      bigUser.setSurname("Robin");
+      bigUser.setAccountIds(new HashSet<>());
+      bigUser.setAddresses(new ArrayList<>());
+
+      // the reference encoding, streamed without reusing anything
+      byte[] expected = ProtobufUtil.toWrappedByteArray(ctx, user, 16);
+      byte[] expectedBig = ProtobufUtil.toWrappedByteArray(ctx, bigUser, 16);
+
+      ProtobufCodec codec = ctx.newCodec();
+      for (int i = 0; i < 3; i++) {
+         assertArrayEquals(expected, codec.toWrappedByteArray(user));
+         assertArrayEquals(expectedBig, codec.toWrappedByteArray(bigUser));
+
+         User decoded = codec.fromWrappedByteArray(expected);
+         assertEquals("John", decoded.getName());
+         assertEquals(2, decoded.getAddresses().size());
+         decoded = codec.fromWrappedByteArray(expectedBig);
+         assertEquals(bigUser.getName(), decoded.getName());
+
+         decoded = codec.fromByteArray(codec.toByteArray(user), User.class);
+         assertEquals("Batman", decoded.getSurname());
+      }
+   }
+
+   @Test
+   public void testPooledCodec() throws Exception {
+      ImmutableSerializationContext ctx = createContext();
+
+      ProtobufCodec codec1 = ctx.acquireCodec();
+      ProtobufCodec codec2 = ctx.acquireCodec();
+      assertTrue(codec1 != codec2);
+      codec1.close();
+
+      // a released codec is handed out again
+      ProtobufCodec codec3 = ctx.acquireCodec();
+      assertTrue(codec3 == codec1);
+
+      assertEquals("abc", codec3.fromWrappedByteArray(codec2.toWrappedByteArray("abc")));
+      codec2.close();
+      codec3.close();
+   }
+
    @Test
    public void testWithInvalidJson() throws Exception {
       Throwable error = testFromJson("john");
@@ -289,6 +352,84 @@ public class ProtobufUtilTest extends AbstractProtoStreamTest {
       testJsonConversion(ctx, user);
    }
 
+   @Test
+   public void testStreamingCanonicalJSON() throws Exception {
+      ImmutableSerializationContext ctx = createContext();
+
+      // big enough for the output to be flushed several times
+      List<Address> addresses = new ArrayList<>();
+      for (int i = 0; i < 500; i++) {
+         addresses.add(new Address("Street \u00e9 <" + i + ">", "PC" + i, i));
+      }
+      User user = new User();
+      user.setId(1);
+      user.setName("John");
+      user.setSurname("Batman");
+      user.setAddresses(addresses);
+
+      for (Object o : Arrays.asList(user, "Merry Christmas", 3.14, null)) {
+         byte[] bytes = ProtobufUtil.toWrappedByteArray(ctx, o);
+         for (boolean prettyPrint : new boolean[]{false, true}) {
+            String expected = ProtobufUtil.toCanonicalJSON(ctx, bytes, prettyPrint);
+
+            StringWriter writer = new StringWriter();
+            ProtobufUtil.toCanonicalJSON(ctx, bytes, writer, prettyPrint);
+            assertEquals(expected, writer.toString());
+
+            writer = new StringWriter();
+            ProtobufUtil.toCanonicalJSON(ctx, new ByteArrayInputStream(bytes), writer, prettyPrint);
+            assertEquals(expected, writer.toString());
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ProtobufUtil.toCanonicalJSON(ctx, ByteBuffer.wrap(bytes), out, prettyPrint);
+            assertEquals(expected, out.toString(StandardCharsets.UTF_8));
+
+            out = new ByteArrayOutputStream();
+            ProtobufUtil.toCanonicalJSON(ctx, new ByteArrayInputStream(bytes), out, prettyPrint);
+            assertEquals(expected, out.toString(StandardCharsets.UTF_8));
+         }
+      }
+   }
+
+   @Test
+   public void testStreamingFromCanonicalJSON() throws Exception {
+      ImmutableSerializationContext ctx = createContext();
+
+      // enough addresses for the length of the user message to need a multi-byte varint
+      List<Address> addresses = new ArrayList<>();
+      for (int i = 0; i < 50; i++) {
+         addresses.add(new Address("Street \u00e9 <" + i + ">", "PC" + i, i));
+      }
+      User user = new User();
+      user.setId(1);
+      user.setName("John");
+      user.setSurname("Batman");
+      user.setGender(User.Gender.MALE);
+      user.setAddresses(addresses);
+
+      for (Object o : Arrays.asList(user, createAccount(), new Address("Abbey Rd", "NW89AY", 3), User.Gender.FEMALE, "Merry Christmas", 3.14)) {
+         String json = ProtobufUtil.toCanonicalJSON(ctx, ProtobufUtil.toWrappedByteArray(ctx, o));
+         byte[] expected = ProtobufUtil.fromCanonicalJSON(ctx, new StringReader(json));
+         assertEquals(json, ProtobufUtil.toCanonicalJSON(ctx, expected));
+
+         byte[] utf8 = json.getBytes(StandardCharsets.UTF_8);
+         assertArrayEquals(expected, ProtobufUtil.fromCanonicalJSON(ctx, new ByteArrayInputStream(utf8)));
+
+         ByteArrayOutputStream out = new ByteArrayOutputStream();
+         ProtobufUtil.fromCanonicalJSON(ctx, new StringReader(json), out);
+         assertArrayEquals(expected, out.toByteArray());
+
+         out = new ByteArrayOutputStream();
+         ProtobufUtil.fromCanonicalJSON(ctx, new ByteArrayInputStream(utf8), out);
+         assertArrayEquals(expected, out.toByteArray());
+
+         ByteBuffer buffer = ByteBuffer.allocate(expected.length + 10);
+         ProtobufUtil.fromCanonicalJSON(ctx, new ByteArrayInputStream(utf8), buffer);
+         assertEquals(expected.length, buffer.position());
+         assertArrayEquals(expected, Arrays.copyOf(buffer.array(), expected.length));
+      }
+   }
+
    @Test
    public void testNumericPrimitives() throws Exception {
       ImmutableSerializationContext ctx = createContext();
@@ -6,7 +6,9 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -15,8 +17,10 @@ import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 
+import org.infinispan.protostream.config.Configuration;
 import org.infinispan.protostream.domain.Address;
 import org.infinispan.protostream.domain.User;
+import org.infinispan.protostream.impl.TagWriterImpl;
 import org.infinispan.protostream.test.AbstractProtoStreamTest;
 import org.junit.Test;
 
@@ -158,6 +162,51 @@ public class WrappingTest extends AbstractProtoStreamTest {
       roundtrip(new byte[]{1, 2, 3, 4});
    }
 
+   @Test
+   public void testZeroCopyBytes() throws Exception {
+      SerializationContext ctx = createContext(Configuration.builder().zeroCopyBytes(true));
+
+      byte[] bytes = ProtobufUtil.toWrappedByteArray(ctx, new byte[]{1, 2, 3, 4});
+      // a ByteBuffer is written just like the equivalent byte[]
+      assertArrayEquals(bytes, ProtobufUtil.toWrappedByteArray(ctx, ByteBuffer.wrap(new byte[]{0, 1, 2, 3, 4}, 1, 4)));
+
+      ByteBuffer out = ProtobufUtil.fromWrappedByteArray(ctx, bytes);
+      assertTrue(out.isReadOnly());
+      assertEquals(ByteBuffer.wrap(new byte[]{1, 2, 3, 4}), out);
+
+      // the value is a view of the input, not a copy
+      bytes[bytes.length - 1] = 42;
+      assertEquals(42, out.get(3));
+   }
+
+   @Test
+   public void testWriteByteBufferToStream() throws Exception {
+      SerializationContext ctx = createContext();
+      byte[] expected = ProtobufUtil.toWrappedByteArray(ctx, new byte[]{1, 2, 3, 4});
+
+      ByteBuffer direct = ByteBuffer.allocateDirect(6).put(new byte[]{0, 1, 2, 3, 4, 5});
+      direct.position(1).limit(5);
+      ByteBuffer[] values = {
+            ByteBuffer.wrap(new byte[]{0, 1, 2, 3, 4}, 1, 4),
+            ByteBuffer.wrap(new byte[]{0, 0, 1, 2, 3, 4}, 1, 5).slice().position(1),
+            direct
+      };
+      for (ByteBuffer value : values) {
+         ByteArrayOutputStream out = new ByteArrayOutputStream();
+         ProtobufUtil.toWrappedStream(ctx, out, value);
+         assertArrayEquals(expected, out.toByteArray());
+
+         out = new ByteArrayOutputStream();
+         TagWriterImpl writer = TagWriterImpl.newInstanceNoBuffer(ctx, out);
+         WrappedMessage.write(ctx, writer, value);
+         writer.flush();
+         assertArrayEquals(expected, out.toByteArray());
+
+         // the caller's buffer is left untouched
+         assertEquals(4, value.remaining());
+      }
+   }
+
    @Test
    public void testMarshallEnum() throws Exception {
       roundtrip(User.Gender.MALE);
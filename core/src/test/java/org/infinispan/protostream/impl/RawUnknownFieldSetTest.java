@@ -0,0 +1,184 @@
+package org.infinispan.protostream.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.infinispan.protostream.ImmutableSerializationContext;
+import org.infinispan.protostream.ProtobufUtil;
+import org.infinispan.protostream.TagWriter;
+import org.infinispan.protostream.UnknownFieldSet;
+import org.infinispan.protostream.descriptors.WireType;
+import org.infinispan.protostream.domain.Address;
+import org.infinispan.protostream.domain.User;
+import org.infinispan.protostream.test.AbstractProtoStreamTest;
+import org.junit.Test;
+
+public class RawUnknownFieldSetTest extends AbstractProtoStreamTest {
+
+   private byte[] createMarshalledObject() throws IOException {
+      ImmutableSerializationContext ctx = createContext();
+      User user = new User();
+      user.setId(1);
+      user.setName("John");
+      user.setSurname("Batman");
+      user.setGender(User.Gender.MALE);
+      user.setAccountIds(new HashSet<>(Arrays.asList(1, 3)));
+      user.setAddresses(Collections.singletonList(new Address("Old Street", "XYZ42", -12)));
+      return ProtobufUtil.toByteArray(ctx, user);
+   }
+
+   /**
+    * Fields of every wire type, including a repeated field and a group.
+    */
+   private byte[] createFields() throws IOException {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      TagWriter out = TagWriterImpl.newInstance(null, baos);
+      out.writeInt64(1, -7);
+      out.writeFixed32(2, 0xCAFEBABE);
+      out.writeFixed64(3, Long.MAX_VALUE);
+      out.writeString(4, "bytes");
+      out.writeInt64(1, 300);
+      out.writeTag(5, WireType.START_GROUP);
+      out.writeInt64(1, 42);
+      out.writeTag(5, WireType.END_GROUP);
+      out.flush();
+      return baos.toByteArray();
+   }
+
+   private byte[] marshall(UnknownFieldSet unknownFieldSet) throws IOException {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      TagWriter tagWriter = TagWriterImpl.newInstance(null, baos);
+      unknownFieldSet.writeTo(tagWriter);
+      tagWriter.flush();
+      return baos.toByteArray();
+   }
+
+   private <T extends UnknownFieldSet> T unmarshall(byte[] bytes, T unknownFieldSet) throws IOException {
+      unknownFieldSet.readAllFields(TagReaderImpl.newInstance(null, bytes));
+      return unknownFieldSet;
+   }
+
+   @Test
+   public void testProtobufRoundtrip() throws Exception {
+      byte[] bytes = createMarshalledObject();
+      assertArrayEquals(bytes, marshall(unmarshall(bytes, new RawUnknownFieldSet())));
+
+      bytes = createFields();
+      assertArrayEquals(bytes, marshall(unmarshall(bytes, new RawUnknownFieldSet())));
+   }
+
+   @Test
+   public void testSerializationRoundtrip() throws Exception {
+      byte[] bytes = createMarshalledObject();
+
+      RawUnknownFieldSet unknownFieldSet = unmarshall(bytes, new RawUnknownFieldSet());
+
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      ObjectOutputStream oos = new ObjectOutputStream(baos);
+      oos.writeObject(unknownFieldSet);
+      oos.flush();
+
+      ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()));
+      RawUnknownFieldSet unserialized = (RawUnknownFieldSet) ois.readObject();
+
+      assertArrayEquals(bytes, marshall(unserialized));
+   }
+
+   @Test
+   public void testConsumeTag() throws Exception {
+      byte[] bytes = createFields();
+      RawUnknownFieldSet raw = unmarshall(bytes, new RawUnknownFieldSet());
+      UnknownFieldSetImpl decoded = unmarshall(bytes, new UnknownFieldSetImpl());
+
+      int varintTag = WireType.makeTag(1, WireType.WIRETYPE_VARINT);
+      int groupTag = WireType.makeTag(5, WireType.WIRETYPE_START_GROUP);
+      assertTrue(raw.hasTag(groupTag));
+      assertFalse(raw.hasTag(WireType.makeTag(6, WireType.WIRETYPE_VARINT)));
+      assertNull(raw.consumeTag(WireType.makeTag(6, WireType.WIRETYPE_VARINT)));
+
+      // the values are decoded to the same types as by UnknownFieldSetImpl, first occurrence first
+      assertEquals(decoded.<Long>consumeTag(varintTag), raw.consumeTag(varintTag));
+      assertEquals(decoded.<Integer>consumeTag(WireType.makeTag(2, WireType.WIRETYPE_FIXED32)), raw.consumeTag(WireType.makeTag(2, WireType.WIRETYPE_FIXED32)));
+      assertEquals(decoded.<Long>consumeTag(WireType.makeTag(3, WireType.WIRETYPE_FIXED64)), raw.consumeTag(WireType.makeTag(3, WireType.WIRETYPE_FIXED64)));
+      assertArrayEquals(decoded.consumeTag(WireType.makeTag(4, WireType.WIRETYPE_LENGTH_DELIMITED)), raw.<byte[]>consumeTag(WireType.makeTag(4, WireType.WIRETYPE_LENGTH_DELIMITED)));
+      assertEquals(300L, (long) raw.<Long>consumeTag(varintTag));
+      assertFalse(raw.hasTag(varintTag));
+
+      UnknownFieldSet group = raw.consumeTag(groupTag);
+      assertEquals(42L, (long) group.<Long>consumeTag(varintTag));
+      assertTrue(group.isEmpty());
+      assertTrue(raw.isEmpty());
+      assertArrayEquals(new byte[0], marshall(raw));
+   }
+
+   @Test
+   public void testConsumeTagOutOfOrder() throws Exception {
+      RawUnknownFieldSet raw = unmarshall(createFields(), new RawUnknownFieldSet());
+
+      assertArrayEquals("bytes".getBytes(), raw.consumeTag(WireType.makeTag(4, WireType.WIRETYPE_LENGTH_DELIMITED)));
+      assertEquals(0xCAFEBABE, (int) raw.<Integer>consumeTag(WireType.makeTag(2, WireType.WIRETYPE_FIXED32)));
+      assertFalse(raw.hasTag(WireType.makeTag(4, WireType.WIRETYPE_LENGTH_DELIMITED)));
+      int varintTag = WireType.makeTag(1, WireType.WIRETYPE_VARINT);
+      assertEquals(-7L, (long) raw.<Long>consumeTag(varintTag));
+
+      // the consumed fields are left out when written
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      TagWriter out = TagWriterImpl.newInstance(null, baos);
+      out.writeFixed64(3, Long.MAX_VALUE);
+      out.writeInt64(1, 300);
+      out.writeTag(5, WireType.START_GROUP);
+      out.writeInt64(1, 42);
+      out.writeTag(5, WireType.END_GROUP);
+      out.flush();
+      assertArrayEquals(baos.toByteArray(), marshall(raw));
+      assertArrayEquals(baos.toByteArray(), marshall(raw));
+
+      assertEquals(300L, (long) raw.<Long>consumeTag(varintTag));
+      assertFalse(raw.isEmpty());
+   }
+
+   @Test
+   public void testReadExternalInvalidSize() throws Exception {
+      for (int size : new int[]{-1, 1000}) {
+         ByteArrayOutputStream baos = new ByteArrayOutputStream();
+         try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            oos.writeInt(size);
+            oos.write(new byte[10]);
+         }
+         ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()));
+         assertThrows(IOException.class, () -> new RawUnknownFieldSet().readExternal(ois));
+      }
+   }
+
+   @Test
+   public void testPutVarintField() throws Exception {
+      RawUnknownFieldSet raw = new RawUnknownFieldSet();
+      int tag = WireType.makeTag(3, WireType.WIRETYPE_VARINT);
+      raw.putVarintField(tag, -1);
+      raw.putVarintField(tag, 5);
+
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      TagWriter out = TagWriterImpl.newInstance(null, baos);
+      out.writeEnum(3, -1);
+      out.writeEnum(3, 5);
+      out.flush();
+      assertArrayEquals(baos.toByteArray(), marshall(raw));
+
+      assertEquals(-1, ((Long) raw.consumeTag(tag)).intValue());
+      assertEquals(5L, (long) raw.<Long>consumeTag(tag));
+      assertTrue(raw.isEmpty());
+   }
+}
@@ -0,0 +1,113 @@
+package org.infinispan.protostream.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.Pipe;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.infinispan.protostream.ImmutableSerializationContext;
+import org.infinispan.protostream.ProtobufUtil;
+import org.infinispan.protostream.TagWriter;
+import org.infinispan.protostream.domain.Address;
+import org.infinispan.protostream.domain.User;
+import org.infinispan.protostream.test.AbstractProtoStreamTest;
+import org.junit.Test;
+
+public class SegmentedOutputBufferTest extends AbstractProtoStreamTest {
+
+   private static void write(TagWriter writer) throws IOException {
+      char[] chars = new char[100];
+      Arrays.fill(chars, '\u20ac');
+      for (int i = 1; i < 50; i++) {
+         writer.writeInt32(i, -i);
+         writer.writeUInt64(i, Long.MAX_VALUE >>> i);
+         writer.writeFixed32(i, i * 31);
+         writer.writeDouble(i, i * 1.5);
+         writer.writeBool(i, (i & 1) == 0);
+         writer.writeString(i, new String(chars, 0, i));
+         writer.writeBytes(i, new byte[i]);
+         writer.writeBytes(i, ByteBuffer.wrap(new byte[i]));
+      }
+      writer.flush();
+   }
+
+   @Test
+   public void testWriteAcrossSegments() throws Exception {
+      ImmutableSerializationContext ctx = createContext();
+      ByteArrayOutputStream expected = new ByteArrayOutputStream();
+      write(TagWriterImpl.newInstanceNoBuffer(ctx, expected));
+
+      for (int segmentSize : new int[]{1, 3, 7, 64, 4096}) {
+         SegmentedOutputBuffer buffer = new SegmentedOutputBuffer(segmentSize);
+         TagWriterImpl writer = TagWriterImpl.newInstance(ctx, buffer);
+         for (int i = 0; i < 2; i++) {
+            // the second round reuses the segments of the first one
+            writer.reset();
+            write(writer);
+            assertEquals(expected.size(), buffer.size());
+            assertArrayEquals(expected.toByteArray(), buffer.toByteArray());
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            buffer.writeTo(out);
+            assertArrayEquals(expected.toByteArray(), out.toByteArray());
+
+            ByteArrayOutputStream views = new ByteArrayOutputStream();
+            for (ByteBuffer view : buffer.toByteBuffers()) {
+               views.write(view.array(), view.arrayOffset() + view.position(), view.remaining());
+            }
+            assertArrayEquals(expected.toByteArray(), views.toByteArray());
+         }
+      }
+   }
+
+   @Test
+   public void testGatheringWrite() throws Exception {
+      ImmutableSerializationContext ctx = createContext();
+      User user = new User();
+      user.setId(1);
+      user.setName("John");
+      user.setSurname("Batman");
+      user.setGender(User.Gender.MALE);
+      user.setAccountIds(new HashSet<>(Arrays.asList(1, 3)));
+      user.setAddresses(Collections.singletonList(new Address("Old Street", "XYZ42", -12)));
+      byte[] expected = ProtobufUtil.toWrappedByteArray(ctx, user);
+
+      assertArrayEquals(expected, ProtobufUtil.toWrappedByteArray(ctx, user, 5));
+      ByteBuffer byteBuffer = ProtobufUtil.toWrappedByteBuffer(ctx, user);
+      byte[] bytes = new byte[byteBuffer.remaining()];
+      byteBuffer.get(bytes);
+      assertArrayEquals(expected, bytes);
+
+      Path file = Files.createTempFile("segmented", ".bin");
+      try {
+         try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            assertEquals(expected.length, ProtobufUtil.toWrappedChannel(ctx, channel, user));
+         }
+         assertArrayEquals(expected, Files.readAllBytes(file));
+      } finally {
+         Files.delete(file);
+      }
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void testNonBlockingChannel() throws Exception {
+      SegmentedOutputBuffer buffer = new SegmentedOutputBuffer(16);
+      write(TagWriterImpl.newInstance(createContext(), buffer));
+      Pipe pipe = Pipe.open();
+      try (Pipe.SinkChannel sink = pipe.sink(); Pipe.SourceChannel source = pipe.source()) {
+         // a full pipe would make the write loop spin
+         sink.configureBlocking(false);
+         buffer.writeTo(sink);
+      }
+   }
+}
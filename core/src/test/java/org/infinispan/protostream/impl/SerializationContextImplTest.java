@@ -3,15 +3,19 @@ package org.infinispan.protostream.impl;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.infinispan.protostream.BaseMarshaller;
 import org.infinispan.protostream.DescriptorParserException;
@@ -20,7 +24,9 @@ import org.infinispan.protostream.MessageMarshaller;
 import org.infinispan.protostream.ProtobufTagMarshaller;
 import org.infinispan.protostream.ProtobufUtil;
 import org.infinispan.protostream.SerializationContext;
+import org.infinispan.protostream.SerializationContextInitializer;
 import org.infinispan.protostream.TagReader;
+import org.infinispan.protostream.WrappedMessage;
 import org.infinispan.protostream.descriptors.FileDescriptor;
 import org.infinispan.protostream.descriptors.WireType;
 import org.junit.Test;
@@ -273,6 +279,72 @@ public class SerializationContextImplTest {
       assertEquals(1234, ((X) out).f.intValue());
    }
 
+   @Test
+   public void testWrappingPlanFollowsTypeIdChanges() throws Exception {
+      SerializationContext ctx = createContext();
+
+      class X {
+
+         final int f;
+
+         private X(int f) {
+            this.f = f;
+         }
+      }
+
+      ctx.registerProtoFiles(FileDescriptorSource.fromString("file.proto", """
+            syntax = "proto3";
+            package test;
+            message X {
+               optional int32 f = 1;
+            }"""));
+      ctx.registerMarshaller(new ProtobufTagMarshaller<X>() {
+
+         @Override
+         public X read(ReadContext ctx) throws IOException {
+            int f = 0;
+            TagReader in = ctx.getReader();
+            if (in.readTag() == WireType.makeTag(1, WireType.WIRETYPE_VARINT)) {
+               f = in.readInt32();
+            }
+            return new X(f);
+         }
+
+         @Override
+         public void write(WriteContext ctx, X x) throws IOException {
+            ctx.getWriter().writeInt32(1, x.f);
+         }
+
+         @Override
+         public Class<X> getJavaClass() {
+            return X.class;
+         }
+
+         @Override
+         public String getTypeName() {
+            return "test.X";
+         }
+      });
+
+      byte[] bytes = ProtobufUtil.toWrappedByteArray(ctx, new X(1));
+      assertEquals(WireType.makeTag(WrappedMessage.WRAPPED_TYPE_NAME, WireType.WIRETYPE_LENGTH_DELIMITED), TagReaderImpl.newInstance(ctx, bytes).readTag());
+
+      // the cached plan must not survive a change of the type id
+      ctx.unregisterProtoFile("file.proto");
+      ctx.registerProtoFiles(FileDescriptorSource.fromString("file.proto", """
+            syntax = "proto3";
+            package test;
+            /**@TypeId(1000)*/
+            message X {
+               optional int32 f = 1;
+            }"""));
+
+      bytes = ProtobufUtil.toWrappedByteArray(ctx, new X(2));
+      assertEquals(WireType.makeTag(WrappedMessage.WRAPPED_TYPE_ID, WireType.WIRETYPE_VARINT), TagReaderImpl.newInstance(ctx, bytes).readTag());
+      X x = ProtobufUtil.fromWrappedByteArray(ctx, bytes);
+      assertEquals(2, x.f);
+   }
+
    @Test
    public void testTwoFilesWithErrorsAtOnce() {
       SerializationContext ctx = createContext();
@@ -357,6 +429,96 @@ public class SerializationContextImplTest {
       assertFalse(ctx.getFileDescriptors().get("test2.proto").isResolved());
    }
 
+   @Test
+   public void testRegisterSameFileTwice() {
+      SerializationContext ctx = createContext();
+      String file1 = "package p1; message A { optional int32 f1 = 1; }";
+      String file2 = "package p2; import \"file1.proto\"; message B { optional p1.A a = 1; }";
+      ctx.registerProtoFiles(FileDescriptorSource.fromString("file1.proto", file1).addProtoFile("file2.proto", file2));
+      // the first registration under an existing name records the digest to compare the following ones with
+      ctx.registerProtoFiles(FileDescriptorSource.fromString("file1.proto", file1));
+      FileDescriptor fd1 = ctx.getFileDescriptors().get("file1.proto");
+      FileDescriptor fd2 = ctx.getFileDescriptors().get("file2.proto");
+
+      // identical contents are skipped and the dependants stay resolved
+      List<String> successful = new ArrayList<>();
+      ctx.registerProtoFiles(FileDescriptorSource.fromString("file1.proto", file1)
+            .withProgressCallback(new FileDescriptorSource.ProgressCallback() {
+               @Override
+               public void handleSuccess(String fileName) {
+                  successful.add(fileName);
+               }
+            }));
+      assertEquals(List.of("file1.proto"), successful);
+      assertSame(fd1, ctx.getFileDescriptors().get("file1.proto"));
+      assertSame(fd2, ctx.getFileDescriptors().get("file2.proto"));
+      assertTrue(fd2.isResolved());
+
+      // changed contents replace the file and its dependants are resolved again
+      ctx.registerProtoFiles(FileDescriptorSource.fromString("file1.proto", file1.replace("}", "optional int32 f2 = 2; }")));
+      assertNotSame(fd1, ctx.getFileDescriptors().get("file1.proto"));
+      assertTrue(fd2.isResolved());
+      assertEquals(2, ctx.getMessageDescriptor("p1.A").getFields().size());
+   }
+
+   @Test
+   public void testRegisterInitializers() {
+      SerializationContext ctx = createContext();
+      SerializationContextInitializer common = initializer("common.proto", "package common; message C { optional int32 f1 = 1; }");
+      SerializationContextInitializer first = initializer("first.proto", "package first; import \"common.proto\"; message F { optional common.C c = 1; }", common);
+      SerializationContextInitializer second = initializer("second.proto", "package second; import \"common.proto\"; message S { optional common.C c = 1; }", common);
+
+      // the dependencies of each initializer come along, the one shared by both is registered once
+      ctx.registerInitializers(List.of(first, second));
+      assertEquals(Set.of("common.proto", "first.proto", "second.proto"), fileNames(ctx));
+      FileDescriptor commonFile = ctx.getFileDescriptors().get("common.proto");
+      assertTrue(commonFile.isResolved());
+      assertEquals(Set.of("first.proto", "second.proto"), commonFile.getDependants().keySet());
+      assertNotNull(ctx.getMessageDescriptor("second.S"));
+
+      // once registered again, registering the same files changes nothing
+      ctx.registerInitializers(List.of(second));
+      commonFile = ctx.getFileDescriptors().get("common.proto");
+      ctx.registerInitializers(List.of(first, second));
+      assertSame(commonFile, ctx.getFileDescriptors().get("common.proto"));
+   }
+
+   @Test
+   public void testRegisterInitializersWithErrors() {
+      SerializationContext ctx = createContext();
+      SerializationContextInitializer valid = initializer("valid.proto", "package valid; message V { optional int32 f1 = 1; }");
+      SerializationContextInitializer invalid = initializer("invalid.proto", "package invalid; message I { optional Missing m = 1; }");
+
+      exception.expect(DescriptorParserException.class);
+      exception.expectMessage("Failed to resolve type of field \"invalid.I.m\"");
+      ctx.registerInitializers(List.of(valid, invalid));
+   }
+
+   private static Set<String> fileNames(SerializationContext ctx) {
+      Set<String> fileNames = new HashSet<>(ctx.getFileDescriptors().keySet());
+      fileNames.removeAll(ProtobufUtil.newSerializationContext().getFileDescriptors().keySet());
+      return fileNames;
+   }
+
+   private static SerializationContextInitializer initializer(String fileName, String contents, SerializationContextInitializer... dependencies) {
+      return new SerializationContextInitializer() {
+         @Override
+         public void registerSchema(SerializationContext serCtx) {
+            for (SerializationContextInitializer dependency : dependencies) {
+               dependency.registerSchema(serCtx);
+            }
+            serCtx.registerProtoFiles(FileDescriptorSource.fromString(fileName, contents));
+         }
+
+         @Override
+         public void registerMarshallers(SerializationContext serCtx) {
+            for (SerializationContextInitializer dependency : dependencies) {
+               dependency.registerMarshallers(serCtx);
+            }
+         }
+      };
+   }
+
    @Test
    public void testUnregisterMissingFiles() {
       exception.expect(IllegalArgumentException.class);
@@ -2,16 +2,30 @@ package org.infinispan.protostream.impl;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 
+import org.infinispan.protostream.FileDescriptorSource;
+import org.infinispan.protostream.MalformedProtobufException;
+import org.infinispan.protostream.MessageMarshaller;
+import org.infinispan.protostream.ProtobufParser;
+import org.infinispan.protostream.ProtobufTagMarshaller;
 import org.infinispan.protostream.ProtobufUtil;
 import org.infinispan.protostream.SerializationContext;
+import org.infinispan.protostream.TagHandler;
 import org.infinispan.protostream.TagReader;
 import org.infinispan.protostream.TagWriter;
+import org.infinispan.protostream.descriptors.FieldDescriptor;
 import org.infinispan.protostream.descriptors.WireType;
 import org.junit.Test;
 
@@ -56,6 +70,471 @@ public class TagWriterImplTest {
       });
    }
 
+   @Test
+   public void testOutputStreamEncodeAndDecodeSmallReadBuffer() throws Exception {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream(MAX_BYTE_ARRAY_SIZE);
+      doTest(new Factory() {
+         @Override
+         public TagWriter newWriter(SerializationContext ctx) {
+            return TagWriterImpl.newInstance(ctx, baos);
+         }
+
+         @Override
+         public TagReader newReader(SerializationContext ctx) {
+            // a buffer smaller than most fields forces refills in the middle of varints, fixed values and byte arrays
+            return TagReaderImpl.newInstance(ctx, new ByteArrayInputStream(baos.toByteArray()), 3);
+         }
+      });
+   }
+
+   @Test
+   public void testDirectByteBufferEncodeAndDecode() throws Exception {
+      for (ByteOrder order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+         ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_BYTE_ARRAY_SIZE).order(order);
+         doTest(new Factory() {
+            @Override
+            public TagWriter newWriter(SerializationContext ctx) {
+               return TagWriterImpl.newInstance(ctx, buffer);
+            }
+
+            @Override
+            public TagReader newReader(SerializationContext ctx) {
+               ByteBuffer in = buffer.duplicate().order(order);
+               in.flip();
+               return TagReaderImpl.newInstance(ctx, in);
+            }
+         });
+      }
+   }
+
+   @Test
+   public void testDirectByteBufferFixedValues() throws Exception {
+      SerializationContext ctx = ProtobufUtil.newSerializationContext();
+      byte[] bytes = new byte[32];
+      TagWriter writer = TagWriterImpl.newInstance(ctx, bytes);
+      writer.writeFixed32(1, 0x01020304);
+      writer.writeFixed64(2, 0x0102030405060708L);
+      writer.flush();
+      for (ByteOrder order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+         ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length).order(order);
+         direct.put(bytes).flip();
+         TagReader reader = TagReaderImpl.newInstance(ctx, direct);
+         checkFieldNumber(1, reader);
+         assertEquals(0x01020304, reader.readFixed32());
+         checkFieldNumber(2, reader);
+         assertEquals(0x0102030405060708L, reader.readFixed64());
+      }
+   }
+
+   @Test
+   public void testVarintSizes() throws Exception {
+      SerializationContext ctx = ProtobufUtil.newSerializationContext();
+      Random random = new Random(SEED);
+      long[] values = new long[640];
+      for (int i = 0; i < values.length; i++) {
+         // every size from 1 to 10 bytes
+         int bits = i % 64;
+         values[i] = (random.nextLong() >>> (63 - bits)) | (1L << bits);
+      }
+      TagWriterImpl sizer = TagWriterImpl.newInstance(ctx);
+      for (long v : values) {
+         sizer.writeVarint64(v);
+      }
+      byte[] bytes = new byte[sizer.getWrittenBytes()];
+      TagWriter writer = TagWriterImpl.newInstance(ctx, bytes);
+      for (long v : values) {
+         writer.writeVarint64(v);
+      }
+      writer.flush();
+
+      // the last varints are too close to the end of the array for the fast path
+      TagReader reader = TagReaderImpl.newInstance(ctx, bytes);
+      for (long v : values) {
+         assertEquals(v, reader.readUInt64());
+      }
+      assertTrue(reader.isAtEnd());
+   }
+
+   @Test(expected = MalformedProtobufException.class)
+   public void testFixedBeyondLimit() throws Exception {
+      SerializationContext ctx = ProtobufUtil.newSerializationContext();
+      byte[] bytes = new byte[16];
+      TagReader reader = TagReaderImpl.newInstance(ctx, bytes);
+      reader.pushLimit(3);
+      reader.readFixed32();
+   }
+
+   @Test
+   public void testInputStreamDecodeNestedLimits() throws Exception {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream(MAX_BYTE_ARRAY_SIZE);
+      SerializationContext ctx = ProtobufUtil.newSerializationContext();
+      TagWriter writer = TagWriterImpl.newInstance(ctx, baos);
+      writer.writeTag(1, WireType.LENGTH_DELIMITED);
+      writer.writeVarint32(5);
+      writer.writeInt32(1, 300);
+      writer.writeBool(2, true);
+      writer.writeString(2, "after");
+      writer.flush();
+
+      TagReader reader = TagReaderImpl.newInstance(ctx, new ByteArrayInputStream(baos.toByteArray()), 2);
+      checkFieldNumber(1, reader);
+      int oldLimit = reader.pushLimit(reader.readUInt32());
+      checkFieldNumber(1, reader);
+      assertEquals(300, reader.readInt32());
+      checkFieldNumber(2, reader);
+      assertTrue(reader.readBool());
+      assertTrue(reader.isAtEnd());
+      assertEquals(0, reader.readTag());
+      reader.checkLastTagWas(0);
+      reader.popLimit(oldLimit);
+      checkFieldNumber(2, reader);
+      assertEquals("after", reader.readString());
+      assertTrue(reader.isAtEnd());
+   }
+
+   @Test
+   public void testInputStreamDecodeNestedStream() throws Exception {
+      SerializationContext ctx = ProtobufUtil.newSerializationContext();
+      ByteArrayOutputStream outer = new ByteArrayOutputStream();
+      TagWriter writer = TagWriterImpl.newInstance(ctx, outer);
+      writer.writeInt32(1, 7);
+      writer.writeString(2, "after");
+      writer.flush();
+      ByteArrayOutputStream inner = new ByteArrayOutputStream();
+      writer = TagWriterImpl.newInstance(ctx, inner);
+      writer.writeString(1, "nested");
+      writer.writeInt32(2, 300);
+      writer.flush();
+
+      // the parent has consumed all it buffered, so the nested reader borrows its buffer
+      TagReaderImpl reader = TagReaderImpl.newInstance(ctx, new ByteArrayInputStream(outer.toByteArray()), 2);
+      checkFieldNumber(1, reader);
+      assertEquals(7, reader.readInt32());
+      TagReader nested = TagReaderImpl.newNestedInstance(reader, new ByteArrayInputStream(inner.toByteArray()));
+      checkFieldNumber(1, nested);
+      assertEquals("nested", nested.readString());
+      checkFieldNumber(2, nested);
+      assertEquals(300, nested.readInt32());
+      assertTrue(nested.isAtEnd());
+      checkFieldNumber(2, reader);
+      assertEquals("after", reader.readString());
+      assertTrue(reader.isAtEnd());
+   }
+
+   @Test
+   public void testStringEncoding() throws Exception {
+      String[] strings = {
+            "",
+            "ascii only",
+            "Latin-1: \u00e9t\u00e9 \u00fc\u00df",
+            "3 bytes: \u20ac \u4e2d\u6587",
+            "surrogate pair: \ud83d\ude00!",
+            "unpaired: \ud83d x \ude00",
+            "trailing high surrogate \ud83d"
+      };
+      SerializationContext ctx = ProtobufUtil.newSerializationContext();
+      for (String s : strings) {
+         byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+         ByteArrayOutputStream expected = new ByteArrayOutputStream();
+         TagWriter writer = TagWriterImpl.newInstanceNoBuffer(ctx, expected);
+         writer.writeBytes(1, utf8);
+         writer.flush();
+
+         byte[] array = new byte[expected.size()];
+         writer = TagWriterImpl.newInstance(ctx, array);
+         writer.writeString(1, s);
+         writer.flush();
+         assertArrayEquals(expected.toByteArray(), array);
+
+         ByteBuffer direct = ByteBuffer.allocateDirect(expected.size());
+         writer = TagWriterImpl.newInstance(ctx, direct);
+         writer.writeString(1, s);
+         writer.flush();
+         direct.flip();
+         byte[] directBytes = new byte[direct.remaining()];
+         direct.get(directBytes);
+         assertArrayEquals(expected.toByteArray(), directBytes);
+
+         for (int bufferSize : new int[]{1, 64}) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            writer = TagWriterImpl.newInstance(ctx, baos, bufferSize);
+            writer.writeString(1, s);
+            writer.flush();
+            assertArrayEquals(expected.toByteArray(), baos.toByteArray());
+         }
+
+         TagWriterImpl sizer = TagWriterImpl.newInstance(ctx);
+         sizer.writeString(1, s);
+         assertEquals(expected.size(), sizer.getWrittenBytes());
+
+         TagReader reader = TagReaderImpl.newInstance(ctx, array);
+         checkFieldNumber(1, reader);
+         assertEquals(new String(utf8, StandardCharsets.UTF_8), reader.readString());
+      }
+   }
+
+   @Test
+   public void testPackedEncoding() throws Exception {
+      SerializationContext ctx = ProtobufUtil.newSerializationContext();
+      int[] ints = {0, 1, -1, 300, Integer.MAX_VALUE, Integer.MIN_VALUE};
+      long[] longs = {0, 1, -1, 300, Long.MAX_VALUE, Long.MIN_VALUE};
+      double[] doubles = {0, -1.5, Double.MAX_VALUE};
+      float[] floats = {0, -1.5f, Float.MIN_VALUE};
+      boolean[] booleans = {true, false, true};
+
+      TagWriterImpl sizer = TagWriterImpl.newInstance(ctx);
+      writePacked(sizer, ints, longs, doubles, floats, booleans);
+      byte[] bytes = new byte[sizer.getWrittenBytes()];
+      TagWriter writer = TagWriterImpl.newInstance(ctx, bytes);
+      writePacked(writer, ints, longs, doubles, floats, booleans);
+      writer.flush();
+
+      TagReader reader = TagReaderImpl.newInstance(ctx, bytes);
+      checkFieldNumber(1, reader);
+      int limit = reader.pushLimit(reader.readUInt32());
+      for (int v : ints) assertEquals(v, reader.readInt32());
+      assertTrue(reader.isAtEnd());
+      reader.popLimit(limit);
+      checkFieldNumber(2, reader);
+      limit = reader.pushLimit(reader.readUInt32());
+      for (int v : ints) assertEquals(v, reader.readSInt32());
+      reader.popLimit(limit);
+      checkFieldNumber(3, reader);
+      limit = reader.pushLimit(reader.readUInt32());
+      for (int v : ints) assertEquals(v, reader.readSFixed32());
+      reader.popLimit(limit);
+      checkFieldNumber(4, reader);
+      limit = reader.pushLimit(reader.readUInt32());
+      for (long v : longs) assertEquals(v, reader.readUInt64());
+      reader.popLimit(limit);
+      checkFieldNumber(5, reader);
+      limit = reader.pushLimit(reader.readUInt32());
+      for (long v : longs) assertEquals(v, reader.readSInt64());
+      reader.popLimit(limit);
+      checkFieldNumber(6, reader);
+      limit = reader.pushLimit(reader.readUInt32());
+      for (long v : longs) assertEquals(v, reader.readFixed64());
+      reader.popLimit(limit);
+      checkFieldNumber(7, reader);
+      limit = reader.pushLimit(reader.readUInt32());
+      for (double v : doubles) assertEquals(v, reader.readDouble(), 0);
+      reader.popLimit(limit);
+      checkFieldNumber(8, reader);
+      limit = reader.pushLimit(reader.readUInt32());
+      for (float v : floats) assertEquals(v, reader.readFloat(), 0);
+      reader.popLimit(limit);
+      checkFieldNumber(9, reader);
+      limit = reader.pushLimit(reader.readUInt32());
+      for (boolean v : booleans) assertEquals(v, reader.readBool());
+      reader.popLimit(limit);
+      // empty arrays are not written at all
+      assertEquals(0, reader.readTag());
+   }
+
+   @Test
+   public void testPreEncodedTagWrites() throws Exception {
+      SerializationContext ctx = ProtobufUtil.newSerializationContext();
+      ByteArrayOutputStream expected = new ByteArrayOutputStream();
+      TagWriter plainWriter = TagWriterImpl.newInstanceNoBuffer(ctx, expected);
+      writePlain(plainWriter);
+      plainWriter.flush();
+
+      TagWriterImpl sizer = TagWriterImpl.newInstance(ctx);
+      writeTagged(sizer);
+      assertEquals(expected.size(), sizer.getWrittenBytes());
+
+      byte[] array = new byte[expected.size()];
+      TagWriterImpl writer = TagWriterImpl.newInstance(ctx, array);
+      writeTagged(writer);
+      writer.flush();
+      assertArrayEquals(expected.toByteArray(), array);
+
+      ByteBuffer direct = ByteBuffer.allocateDirect(expected.size());
+      writer = TagWriterImpl.newInstance(ctx, direct);
+      writeTagged(writer);
+      writer.flush();
+      direct.flip();
+      byte[] directBytes = new byte[direct.remaining()];
+      direct.get(directBytes);
+      assertArrayEquals(expected.toByteArray(), directBytes);
+
+      for (int bufferSize : new int[]{1, 16, 1024}) {
+         ByteArrayOutputStream baos = new ByteArrayOutputStream();
+         writer = TagWriterImpl.newInstance(ctx, baos, bufferSize);
+         writeTagged(writer);
+         writer.flush();
+         assertArrayEquals(expected.toByteArray(), baos.toByteArray());
+      }
+   }
+
+   private static void writePlain(TagWriter writer) throws IOException {
+      writer.writeInt32(1, -1);
+      writer.writeSInt64(2, Long.MIN_VALUE);
+      writer.writeString(3, "\u20ac tagged");
+      writer.writeBytes(2000, new byte[]{1, 2, 3});
+      writer.writeDouble(4, 1.5);
+      writer.writeFixed32(5, 300);
+      writer.writeBool(2001, true);
+      writer.writeSFixed64(6, -2);
+   }
+
+   private static void writeTagged(TagWriterImpl writer) throws IOException {
+      writer.writeTaggedInt32(TagWriterImpl.preEncodeTag(1, WireType.VARINT), -1);
+      writer.writeTaggedSInt64(TagWriterImpl.preEncodeTag(2, WireType.VARINT), Long.MIN_VALUE);
+      writer.writeTaggedString(TagWriterImpl.preEncodeTag(3, WireType.LENGTH_DELIMITED), "\u20ac tagged");
+      writer.writeTaggedBytes(TagWriterImpl.preEncodeTag(2000, WireType.LENGTH_DELIMITED), new byte[]{1, 2, 3});
+      int tag4 = TagWriterImpl.preEncodeTag(4, WireType.FIXED64);
+      int tag5 = TagWriterImpl.preEncodeTag(5, WireType.FIXED32);
+      int tag2001 = TagWriterImpl.preEncodeTag(2001, WireType.VARINT);
+      int tag6 = TagWriterImpl.preEncodeTag(6, WireType.FIXED64);
+      if (writer.reserve(1 + 8 + 1 + 4 + 2 + 1 + 1 + 8)) {
+         writer.putTaggedDouble(tag4, 1.5);
+         writer.putTaggedFixed32(tag5, 300);
+         writer.putTaggedBool(tag2001, true);
+         writer.putTaggedSFixed64(tag6, -2);
+      } else {
+         writer.writeTaggedDouble(tag4, 1.5);
+         writer.writeTaggedFixed32(tag5, 300);
+         writer.writeTaggedBool(tag2001, true);
+         writer.writeTaggedSFixed64(tag6, -2);
+      }
+   }
+
+   private static void writePacked(TagWriter writer, int[] ints, long[] longs, double[] doubles, float[] floats, boolean[] booleans) throws IOException {
+      writer.writePackedInt32(1, ints);
+      writer.writePackedSInt32(2, ints);
+      writer.writePackedSFixed32(3, ints);
+      writer.writePackedUInt64(4, longs);
+      writer.writePackedSInt64(5, longs);
+      writer.writePackedFixed64(6, longs);
+      writer.writePackedDouble(7, doubles);
+      writer.writePackedFloat(8, floats);
+      writer.writePackedBool(9, booleans);
+      writer.writePackedInt32(10, new int[0]);
+   }
+
+   @Test
+   public void testParsePackedField() throws Exception {
+      SerializationContext ctx = ProtobufUtil.newSerializationContext();
+      ctx.registerProtoFiles(FileDescriptorSource.fromString("packed.proto",
+            "package test;\nmessage P {\n repeated sint32 a = 1 [packed = true];\n repeated sint32 b = 2;\n}"));
+      assertTrue(ctx.getMessageDescriptor("test.P").findFieldByNumber(1).isPacked());
+      assertTrue(!ctx.getMessageDescriptor("test.P").findFieldByNumber(2).isPacked());
+
+      TagWriterImpl sizer = TagWriterImpl.newInstance(ctx);
+      sizer.writePackedSInt32(1, new int[]{1, -2, 3});
+      sizer.writePackedSInt32(2, new int[]{-4});
+      sizer.writeSInt32(2, 5);
+      byte[] bytes = new byte[sizer.getWrittenBytes()];
+      TagWriter writer = TagWriterImpl.newInstance(ctx, bytes);
+      writer.writePackedSInt32(1, new int[]{1, -2, 3});
+      writer.writePackedSInt32(2, new int[]{-4});
+      writer.writeSInt32(2, 5);
+      writer.flush();
+
+      List<Object> values = new ArrayList<>();
+      ProtobufParser.INSTANCE.parse(new TagHandler() {
+         @Override
+         public void onTag(int fieldNumber, FieldDescriptor fieldDescriptor, Object tagValue) {
+            values.add(fieldNumber + ":" + tagValue);
+         }
+      }, ctx.getMessageDescriptor("test.P"), bytes);
+      assertEquals(List.of("1:1", "1:-2", "1:3", "2:-4", "2:5"), values);
+   }
+
+   @Test
+   public void testReadMixedPackedFieldInWireOrder() throws Exception {
+      SerializationContext ctx = ProtobufUtil.newSerializationContext();
+      ctx.registerProtoFiles(FileDescriptorSource.fromString("mixed.proto",
+            "package test;\nmessage Mixed {\n repeated int32 a = 1;\n optional int32 b = 2;\n}"));
+      ctx.registerMarshaller(new MessageMarshaller<Mixed>() {
+         @Override
+         public Mixed readFrom(ProtoStreamReader reader) throws IOException {
+            // b is read first, so all occurrences of a are stored in the unknown field set
+            Mixed mixed = new Mixed();
+            mixed.b = reader.readInt("b");
+            mixed.a = reader.readCollection("a", new ArrayList<>(), Integer.class);
+            return mixed;
+         }
+
+         @Override
+         public void writeTo(ProtoStreamWriter writer, Mixed mixed) {
+            throw new UnsupportedOperationException();
+         }
+
+         @Override
+         public Class<Mixed> getJavaClass() {
+            return Mixed.class;
+         }
+
+         @Override
+         public String getTypeName() {
+            return "test.Mixed";
+         }
+      });
+
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      TagWriter writer = TagWriterImpl.newInstanceNoBuffer(ctx, baos);
+      writer.writeInt32(1, 1);
+      writer.writePackedInt32(1, new int[]{2, 3});
+      writer.writeInt32(1, 4);
+      writer.writeInt32(2, 5);
+      writer.writePackedInt32(1, new int[]{6, 7});
+      writer.writeInt32(1, 8);
+      writer.flush();
+
+      Mixed mixed = ProtobufUtil.fromByteArray(ctx, baos.toByteArray(), Mixed.class);
+      assertEquals(Integer.valueOf(5), mixed.b);
+      assertEquals(List.of(1, 2, 3, 4, 6, 7, 8), mixed.a);
+   }
+
+   private static final class Mixed {
+      List<Integer> a;
+      Integer b;
+   }
+
+   @Test
+   public void testNestedMessageSizeMismatch() throws Exception {
+      SerializationContext ctx = ProtobufUtil.newSerializationContext();
+      ctx.registerProtoFiles(FileDescriptorSource.fromString("counter.proto",
+            "package test;\nmessage Counter {\n optional string s = 1;\n}"));
+      ctx.registerMarshaller(new ProtobufTagMarshaller<Counter>() {
+         @Override
+         public Counter read(ReadContext ctx) {
+            throw new UnsupportedOperationException();
+         }
+
+         @Override
+         public void write(WriteContext ctx, Counter counter) throws IOException {
+            // every write is longer than the previous one
+            ctx.getWriter().writeString(1, "x".repeat(++counter.writes));
+         }
+
+         @Override
+         public Class<Counter> getJavaClass() {
+            return Counter.class;
+         }
+
+         @Override
+         public String getTypeName() {
+            return "test.Counter";
+         }
+      });
+      BaseMarshallerDelegate<Counter> marshallerDelegate = ((SerializationContextImpl) ctx).getMarshallerDelegate(Counter.class);
+
+      TagWriterImpl writer = TagWriterImpl.newInstance(ctx, new ByteArrayOutputStream());
+      try {
+         writer.writeNestedMessage(marshallerDelegate, 1, new Counter());
+         fail("IllegalStateException expected");
+      } catch (IllegalStateException e) {
+         assertTrue(e.getMessage().contains(Counter.class.getName()));
+      }
+   }
+
+   private static final class Counter {
+      int writes;
+   }
+
    private void doTest(Factory factory) throws IOException {
       log.infof("SEED is %s", SEED);
       Random random = new Random(SEED);
@@ -1098,6 +1098,36 @@ public class DescriptorsTest {
       parseAndResolve(fileDescriptorSource);
    }
 
+   @Test
+   public void testFindFieldByNumber() {
+      String testProto = """
+            syntax = "proto3";
+            message M {
+              int32 a = 1;
+              string b = 7;
+              oneof choice {
+                 bool c = 255;
+                 bool d = 256;
+              }
+              int64 e = 100000;
+            }
+            message Empty {
+            }""";
+
+      Map<String, FileDescriptor> descriptors = parseAndResolve(FileDescriptorSource.fromString("test.proto", testProto));
+      Descriptor m = descriptors.get("test.proto").getMessageTypes().get(0);
+      for (String name : new String[]{"a", "b", "c", "d", "e"}) {
+         FieldDescriptor fd = m.findFieldByName(name);
+         assertThat(m.findFieldByNumber(fd.getNumber())).isSameAs(fd);
+      }
+      for (int number : new int[]{-1, 0, 2, 8, 254, 257, 99999, Integer.MAX_VALUE}) {
+         assertThat(m.findFieldByNumber(number)).isNull();
+      }
+      Descriptor empty = descriptors.get("test.proto").getMessageTypes().get(1);
+      assertThat(empty.findFieldByNumber(0)).isNull();
+      assertThat(empty.findFieldByNumber(1)).isNull();
+   }
+
    public static void resolve(Map<String, FileDescriptor> fileDescriptorMap) {
       // resolve imports and types
       ResolutionContext resolutionContext = new ResolutionContext(null, fileDescriptorMap,
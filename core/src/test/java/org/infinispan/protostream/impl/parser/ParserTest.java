@@ -1,12 +1,25 @@
 package org.infinispan.protostream.impl.parser;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
+import org.infinispan.protostream.DescriptorParserException;
+import org.infinispan.protostream.FileDescriptorSource;
 import org.infinispan.protostream.config.Configuration;
 import org.infinispan.protostream.descriptors.Descriptor;
 import org.infinispan.protostream.descriptors.EnumDescriptor;
@@ -17,6 +30,7 @@ import org.infinispan.protostream.descriptors.Label;
 import org.infinispan.protostream.descriptors.OneOfDescriptor;
 import org.infinispan.protostream.descriptors.Option;
 import org.infinispan.protostream.descriptors.Type;
+import org.infinispan.protostream.impl.ResourceUtils;
 import org.junit.Test;
 
 /**
@@ -103,6 +117,121 @@ public class ParserTest {
       }
    }
 
+   @Test
+   public void testPrecompiled() throws Exception {
+      String source = ResourceUtils.getResourceAsString(ParserTest.class, "/sample_bank_account/bank.proto");
+      byte[] precompiled = PrecompiledFileDescriptor.precompile("bank.proto", source);
+      FileDescriptor input = PrecompiledFileDescriptor.decode("bank.proto", source, precompiled);
+      assertNotNull(input);
+      assertSameAsParsed(source, input);
+
+      // the binary form survives its Base64 encoding in generated code
+      assertSameAsParsed(source, PrecompiledFileDescriptor.decode("bank.proto", source,
+            PrecompiledFileDescriptor.fromBase64(PrecompiledFileDescriptor.toBase64(precompiled))));
+
+      // registering through the precompiled form gives the same result as parsing
+      FileDescriptorSource fileDescriptorSource = FileDescriptorSource.fromString("bank.proto", source, precompiled);
+      assertSameAsParsed(source, new ProtostreamProtoParser(Configuration.builder().build()).parse(fileDescriptorSource).get("bank.proto"));
+   }
+
+   @Test
+   public void testPrecompiledMismatch() throws Exception {
+      String source = ResourceUtils.getResourceAsString(ParserTest.class, "/sample_bank_account/bank.proto");
+      byte[] precompiled = PrecompiledFileDescriptor.precompile("bank.proto", source);
+
+      // a different source text is detected
+      assertNull(PrecompiledFileDescriptor.decode("bank.proto", source + "\n", precompiled));
+
+      // even when it has the same length
+      assertNull(PrecompiledFileDescriptor.decode("bank.proto", source.replace("message User", "message Usex"), precompiled));
+
+      // so is a different format version
+      byte[] otherVersion = precompiled.clone();
+      otherVersion[1] = (byte) (PrecompiledFileDescriptor.FORMAT_VERSION + 1);
+      assertNull(PrecompiledFileDescriptor.decode("bank.proto", source, otherVersion));
+
+      // and garbage
+      assertNull(PrecompiledFileDescriptor.decode("bank.proto", source, new byte[]{8, 1, 21, 1}));
+
+      // in all these cases the source text is parsed instead
+      FileDescriptorSource fileDescriptorSource = FileDescriptorSource.fromString("bank.proto", source, otherVersion);
+      assertSameAsParsed(source, new ProtostreamProtoParser(Configuration.builder().build()).parse(fileDescriptorSource).get("bank.proto"));
+   }
+
+   @Test
+   public void testParallelParsing() {
+      FileDescriptorSource source = new FileDescriptorSource();
+      for (int i = 0; i < 32; i++) {
+         source.addProtoFile("file" + i + ".proto", i % 5 == 3 ? "kabooom" + i :
+               "package p" + i + ";\n/** Message " + i + " */\nmessage M { optional int32 f = 1; }\n// trailing comment " + i + "\n");
+      }
+      List<String> sequentialEvents = new ArrayList<>();
+      Map<String, FileDescriptor> sequential = new ProtostreamProtoParser(Configuration.builder().build())
+            .parse(source.withProgressCallback(recorder(sequentialEvents)));
+
+      ExecutorService executor = Executors.newFixedThreadPool(4);
+      try {
+         List<String> parallelEvents = new ArrayList<>();
+         Map<String, FileDescriptor> parallel = new ProtostreamProtoParser(Configuration.builder().parserExecutor(executor).build())
+               .parse(source.withProgressCallback(recorder(parallelEvents)));
+
+         assertEquals(new ArrayList<>(sequential.keySet()), new ArrayList<>(parallel.keySet()));
+         assertEquals(sequentialEvents, parallelEvents);
+         assertEquals(6, parallelEvents.size());
+         for (int i = 0; i < 32; i++) {
+            if (i % 5 != 3) {
+               // the trailing comment of a file never ends up in the documentation of another file
+               assertEquals("Message " + i + "\n", parallel.get("file" + i + ".proto").getMessageTypes().get(0).getDocumentation());
+            }
+         }
+      } finally {
+         executor.shutdown();
+      }
+   }
+
+   @Test
+   public void testParallelParsingOnExecutorThread() throws Exception {
+      FileDescriptorSource source = new FileDescriptorSource();
+      for (int i = 0; i < 8; i++) {
+         source.addProtoFile("file" + i + ".proto", i == 5 ? "kabooom" : "package p" + i + ";\nmessage M { optional int32 f = 1; }\n");
+      }
+      ExecutorService executor = Executors.newSingleThreadExecutor();
+      try {
+         ProtostreamProtoParser parser = new ProtostreamProtoParser(Configuration.builder().parserExecutor(executor).build());
+         // the only thread of the executor is busy registering, the registering thread must parse the files itself
+         Future<Throwable> failure = executor.submit(() -> {
+            try {
+               parser.parse(source);
+               return null;
+            } catch (DescriptorParserException e) {
+               return e;
+            }
+         });
+         Throwable e = failure.get(30, TimeUnit.SECONDS);
+         assertNotNull(e);
+         assertTrue(e.getMessage().contains("file5.proto"));
+      } finally {
+         executor.shutdown();
+      }
+   }
+
+   /**
+    * The encoded form holds everything the parser collects, so two files with the same encoded form are the same.
+    */
+   private static void assertSameAsParsed(String source, FileDescriptor fileDescriptor) throws Exception {
+      FileDescriptor parsed = ProtoParser.parse("bank.proto", new StringReader(source), Configuration.builder().build());
+      assertArrayEquals(PrecompiledFileDescriptor.encode(parsed, source), PrecompiledFileDescriptor.encode(fileDescriptor, source));
+   }
+
+   private static FileDescriptorSource.ProgressCallback recorder(List<String> events) {
+      return new FileDescriptorSource.ProgressCallback() {
+         @Override
+         public void handleError(String fileName, DescriptorParserException exception) {
+            events.add(fileName + ": " + exception.getMessage());
+         }
+      };
+   }
+
    private void assertReserved(Descriptor message, String... names) {
       for(String name : names) {
          assertTrue(name, message.isReserved(name));
@@ -7,22 +7,36 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.StringReader;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
 
+import org.infinispan.protostream.EnumMarshaller;
+import org.infinispan.protostream.FileDescriptorSource;
 import org.infinispan.protostream.GeneratedSchema;
 import org.infinispan.protostream.ProtobufUtil;
 import org.infinispan.protostream.SerializationContext;
+import org.infinispan.protostream.TagWriter;
 import org.infinispan.protostream.annotations.ProtoSchema;
 import org.infinispan.protostream.annotations.ProtoSyntax;
+import org.infinispan.protostream.config.Configuration;
 import org.infinispan.protostream.exception.ProtoStreamException;
 import org.infinispan.protostream.impl.JsonUtils;
+import org.infinispan.protostream.impl.TagWriterImpl;
+import org.infinispan.protostream.impl.parser.PrecompiledFileDescriptor;
+import org.infinispan.protostream.integrationtests.processor.marshaller.model.EnumModel;
+import org.infinispan.protostream.integrationtests.processor.marshaller.model.FixedFieldsModel;
 import org.infinispan.protostream.integrationtests.processor.marshaller.model.FootballSchema;
 import org.infinispan.protostream.integrationtests.processor.marshaller.model.FootballSchemaImpl;
 import org.infinispan.protostream.integrationtests.processor.marshaller.model.FootballTeam;
+import org.infinispan.protostream.integrationtests.processor.marshaller.model.GappedEnum;
 import org.infinispan.protostream.integrationtests.processor.marshaller.model.MapOfLong;
 import org.infinispan.protostream.integrationtests.processor.marshaller.model.MapOfMapOfUUID;
 import org.infinispan.protostream.integrationtests.processor.marshaller.model.MapOfString;
@@ -30,9 +44,12 @@ import org.infinispan.protostream.integrationtests.processor.marshaller.model.Ma
 import org.infinispan.protostream.integrationtests.processor.marshaller.model.MapSchema;
 import org.infinispan.protostream.integrationtests.processor.marshaller.model.ModelWithMap;
 import org.infinispan.protostream.integrationtests.processor.marshaller.model.NullTestModel;
+import org.infinispan.protostream.integrationtests.processor.marshaller.model.PackedModel;
 import org.infinispan.protostream.integrationtests.processor.marshaller.model.Player;
 import org.infinispan.protostream.integrationtests.processor.marshaller.model.SimpleEnum;
 import org.infinispan.protostream.integrationtests.processor.marshaller.model.SimpleRecord;
+import org.infinispan.protostream.integrationtests.processor.marshaller.model.SparseEnum;
+import org.infinispan.protostream.integrationtests.processor.marshaller.model.UnpackedModel;
 import org.junit.Test;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -61,6 +78,133 @@ public class GeneratedMarshallerTest {
             .hasMessageContaining("IPROTO000008");
    }
 
+   @Test
+   public void testPrecomputedNestedMessageSizes() throws IOException {
+      SerializationContext ctx = ProtobufUtil.newSerializationContext();
+      FootballSchema.INSTANCE.registerSchema(ctx);
+      FootballSchema.INSTANCE.registerMarshallers(ctx);
+      MapSchema.INSTANCE.registerSchema(ctx);
+      MapSchema.INSTANCE.registerMarshallers(ctx);
+
+      SerializationContext precomputingCtx = ProtobufUtil.newSerializationContext(Configuration.builder().precomputeNestedMessageSizes(true).build());
+      FootballSchema.INSTANCE.registerSchema(precomputingCtx);
+      FootballSchema.INSTANCE.registerMarshallers(precomputingCtx);
+      MapSchema.INSTANCE.registerSchema(precomputingCtx);
+      MapSchema.INSTANCE.registerMarshallers(precomputingCtx);
+
+      FootballTeam team = new FootballTeam();
+      team.setName("New-Team");
+      FootballTeam youthTeam = new FootballTeam();
+      youthTeam.setName("Youth-Team");
+      youthTeam.setPlayers(Collections.singletonList(new Player("junior", null, 7, 5, new byte[]{1, 2, 3})));
+      Player captain = new Player("captain", youthTeam, 10, 9, null);
+      team.setPlayers(Arrays.asList(captain, new Player("fax4ever", youthTeam, 9, 10, null), captain));
+
+      byte[] expected = ProtobufUtil.toWrappedByteArray(ctx, team);
+      byte[] bytes = ProtobufUtil.toWrappedByteArray(precomputingCtx, team);
+      assertArrayEquals(expected, bytes);
+      assertEquals(expected.length, ProtobufUtil.computeWrappedMessageSize(precomputingCtx, team));
+
+      FootballTeam copy = ProtobufUtil.fromWrappedByteArray(precomputingCtx, bytes);
+      assertEquals(3, copy.getPlayers().size());
+      assertEquals("Youth-Team", copy.getPlayers().get(1).getFootballTeam().getName());
+      assertArrayEquals(new byte[]{1, 2, 3}, copy.getPlayers().get(1).getFootballTeam().getPlayers().get(0).getBytes());
+
+      var m = new MapOfUUID();
+      m.data = Map.of("1", uuid, "3", uuid);
+      var m2 = new MapOfMapOfUUID();
+      m2.data1 = Map.of("1", "2");
+      m2.data2 = m;
+      m2.data3 = SimpleEnum.SECOND;
+      assertArrayEquals(ProtobufUtil.toWrappedByteArray(ctx, m2), ProtobufUtil.toWrappedByteArray(precomputingCtx, m2));
+
+      Player player = new Player("fax4ever", team, 9, 10, null);
+      team.setPlayers(Collections.singletonList(player));
+      assertThatThrownBy(() -> ProtobufUtil.toWrappedByteArray(precomputingCtx, player))
+            .isInstanceOf(ProtoStreamException.class)
+            .hasMessageContaining("IPROTO000008");
+   }
+
+   @Test
+   public void testPrecompiledSchema() {
+      // schema source embedded in the initializer
+      assertPrecompiled(new PrecompiledSchemaImpl());
+      // schema source loaded from a resource file
+      assertPrecompiled(MapSchema.INSTANCE);
+   }
+
+   @Test
+   public void testEmbeddedSchemaText() {
+      String source = new PrecompiledSchemaImpl().getProtoFile();
+      // the schema is now embedded verbatim, the text block used before stripped the trailing spaces of each line and
+      // added a final newline, which is all that differs
+      String previous = """
+            // File name: precompiled.proto
+            // Generated from : precompiled.proto
+            syntax = "proto3";
+            package precompiled;
+
+
+
+            message SimpleRecord {
+
+               string string = 1;
+
+               int32 boxedInt = 2;
+            }
+
+
+            /**
+             * @TypeId(111111)
+             */
+            enum SimpleEnum {
+
+               FIRST = 0;
+
+               SECOND = 1;
+            }
+
+            """;
+      assertEquals(previous, source.replaceAll("(?m)[ \\t]+$", "") + "\n");
+      assertTrue(source.contains("{\n   \n"));
+      assertTrue(source.endsWith("}\n"));
+   }
+
+   private static void assertPrecompiled(GeneratedSchema generatedSchema) {
+      AtomicReference<FileDescriptorSource> registered = new AtomicReference<>();
+      SerializationContext recorder = (SerializationContext) Proxy.newProxyInstance(SerializationContext.class.getClassLoader(),
+            new Class<?>[]{SerializationContext.class}, (proxy, method, args) -> {
+               if (method.getName().equals("registerProtoFiles")) {
+                  registered.set((FileDescriptorSource) args[0]);
+               }
+               return null;
+            });
+      generatedSchema.registerSchema(recorder);
+
+      String fileName = generatedSchema.getProtoFileName();
+      byte[] precompiled = registered.get().getPrecompiledFiles().get(fileName);
+      assertNotNull(precompiled);
+      assertNotNull(PrecompiledFileDescriptor.decode(fileName, generatedSchema.getProtoFile(), precompiled));
+
+      // and the precompiled form is usable
+      SerializationContext ctx = ProtobufUtil.newSerializationContext();
+      generatedSchema.registerSchema(ctx);
+      generatedSchema.registerMarshallers(ctx);
+      assertNotNull(ctx.getFileDescriptors().get(fileName));
+   }
+
+   @ProtoSchema(
+         includeClasses = {
+               SimpleEnum.class,
+               SimpleRecord.class
+         },
+         schemaPackageName = "precompiled",
+         schemaFileName = "precompiled.proto",
+         syntax = ProtoSyntax.PROTO3
+   )
+   interface PrecompiledSchema extends GeneratedSchema {
+   }
+
    @Test
    public void testRegisterTwice() {
       var ctx = ProtobufUtil.newSerializationContext();
@@ -184,6 +328,164 @@ public class GeneratedMarshallerTest {
    interface NullsAllowedSchema extends GeneratedSchema {}
 
 
+   @Test
+   public void testPackedRepeatedFields() throws IOException {
+      var ctx = ProtobufUtil.newSerializationContext();
+      var schema = new PackedSchemaImpl();
+      schema.registerSchema(ctx);
+      schema.registerMarshallers(ctx);
+      assertTrue(schema.getProtoFile().contains("repeated int32 ints = 1 [packed = true];"));
+
+      PackedModel packed = new PackedModel();
+      packed.ints = new int[]{1, -1, 300};
+      packed.longs = List.of(1L, Long.MAX_VALUE);
+      packed.doubles = new double[]{1.5, -2};
+      packed.enums = List.of(SimpleEnum.SECOND, SimpleEnum.FIRST);
+      packed.flags = new boolean[]{true, false, true};
+
+      byte[] packedBytes = ProtobufUtil.toByteArray(ctx, packed);
+      assertPacked(packed, ProtobufUtil.fromByteArray(ctx, packedBytes, PackedModel.class));
+
+      // the packed encoding is readable by a reader that declares the fields unpacked, and vice versa
+      UnpackedModel unpacked = ProtobufUtil.fromByteArray(ctx, packedBytes, UnpackedModel.class);
+      assertArrayEquals(packed.ints, unpacked.ints);
+      assertEquals(packed.longs, unpacked.longs);
+      assertArrayEquals(packed.doubles, unpacked.doubles, 0);
+      assertEquals(packed.enums, unpacked.enums);
+      assertArrayEquals(packed.flags, unpacked.flags);
+
+      byte[] unpackedBytes = ProtobufUtil.toByteArray(ctx, unpacked);
+      assertTrue(packedBytes.length < unpackedBytes.length);
+      assertPacked(packed, ProtobufUtil.fromByteArray(ctx, unpackedBytes, PackedModel.class));
+   }
+
+   private static void assertPacked(PackedModel expected, PackedModel actual) {
+      assertArrayEquals(expected.ints, actual.ints);
+      assertEquals(expected.longs, actual.longs);
+      assertArrayEquals(expected.doubles, actual.doubles, 0);
+      assertEquals(expected.enums, actual.enums);
+      assertArrayEquals(expected.flags, actual.flags);
+   }
+
+   @ProtoSchema(
+         includeClasses = {
+               PackedModel.class,
+               UnpackedModel.class,
+               SimpleEnum.class
+         },
+         schemaPackageName = "packed",
+         schemaFilePath = "proto",
+         schemaFileName = "packed.proto",
+         syntax = ProtoSyntax.PROTO3
+   )
+   interface PackedSchema extends GeneratedSchema {
+   }
+
+   @Test
+   public void testEnumTables() throws IOException {
+      var ctx = ProtobufUtil.newSerializationContext();
+      var schema = new EnumSchemaImpl();
+      schema.registerSchema(ctx);
+      schema.registerMarshallers(ctx);
+
+      // gapped numbers are decoded with a table, sparse ones with a switch
+      EnumMarshaller<GappedEnum> gapped = (EnumMarshaller<GappedEnum>) ctx.getMarshaller(GappedEnum.class);
+      EnumMarshaller<SparseEnum> sparse = (EnumMarshaller<SparseEnum>) ctx.getMarshaller(SparseEnum.class);
+      for (GappedEnum e : GappedEnum.values()) {
+         assertEquals(e, gapped.decode(gapped.encode(e)));
+      }
+      for (SparseEnum e : SparseEnum.values()) {
+         assertEquals(e, sparse.decode(sparse.encode(e)));
+      }
+      assertEquals(5, gapped.encode(GappedEnum.FIVE));
+      assertEquals(100000, sparse.encode(SparseEnum.LARGE));
+      for (int number : new int[]{-1, 1, 3, 4, 6, Integer.MIN_VALUE, Integer.MAX_VALUE}) {
+         assertNull(gapped.decode(number));
+         assertNull(sparse.decode(number));
+      }
+
+      EnumModel model = new EnumModel();
+      for (GappedEnum g : GappedEnum.values()) {
+         for (SparseEnum s : SparseEnum.values()) {
+            model.gapped = g;
+            model.sparse = s;
+            EnumModel copy = ProtobufUtil.fromByteArray(ctx, ProtobufUtil.toByteArray(ctx, model), EnumModel.class);
+            assertEquals(g, copy.gapped);
+            assertEquals(s, copy.sparse);
+            assertEquals(g, ProtobufUtil.fromWrappedByteArray(ctx, ProtobufUtil.toWrappedByteArray(ctx, g)));
+            assertEquals(s, ProtobufUtil.fromWrappedByteArray(ctx, ProtobufUtil.toWrappedByteArray(ctx, s)));
+         }
+      }
+   }
+
+   @ProtoSchema(
+         includeClasses = {
+               EnumModel.class,
+               GappedEnum.class,
+               SparseEnum.class
+         },
+         schemaPackageName = "enums",
+         schemaFilePath = "proto",
+         schemaFileName = "enums.proto",
+         syntax = ProtoSyntax.PROTO3
+   )
+   interface EnumSchema extends GeneratedSchema {
+   }
+
+   @Test
+   public void testPreEncodedTags() throws IOException {
+      var ctx = ProtobufUtil.newSerializationContext();
+      var schema = new FixedFieldsSchemaImpl();
+      schema.registerSchema(ctx);
+      schema.registerMarshallers(ctx);
+
+      FixedFieldsModel model = new FixedFieldsModel();
+      model.d = 1.5;
+      model.f = -2.5f;
+      model.fixed64 = Long.MIN_VALUE;
+      model.flag = true;
+      model.name = "fixed";
+      model.sfixed32 = -7;
+      model.wideTag = Double.MAX_VALUE;
+      model.sint64 = -300;
+
+      // the generated marshaller must produce the same bytes as plain writes with computed tags
+      ByteArrayOutputStream expected = new ByteArrayOutputStream();
+      TagWriter writer = TagWriterImpl.newInstanceNoBuffer(ctx, expected);
+      writer.writeDouble(1, model.d);
+      writer.writeFloat(2, model.f);
+      writer.writeFixed64(3, model.fixed64);
+      writer.writeBool(4, model.flag);
+      writer.writeString(5, model.name);
+      writer.writeSFixed32(6, model.sfixed32);
+      writer.writeDouble(200, model.wideTag);
+      writer.writeSInt64(201, model.sint64);
+      writer.flush();
+
+      byte[] bytes = ProtobufUtil.toByteArray(ctx, model);
+      assertArrayEquals(expected.toByteArray(), bytes);
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      ProtobufUtil.toWrappedStream(ctx, out, model);
+      FixedFieldsModel copy = ProtobufUtil.fromWrappedByteArray(ctx, out.toByteArray());
+      assertEquals(model.d, copy.d, 0);
+      assertEquals(model.f, copy.f, 0);
+      assertEquals(model.fixed64, copy.fixed64);
+      assertEquals(model.flag, copy.flag);
+      assertEquals(model.name, copy.name);
+      assertEquals(model.sfixed32, copy.sfixed32);
+      assertEquals(model.wideTag, copy.wideTag, 0);
+      assertEquals(model.sint64, copy.sint64);
+   }
+
+   @ProtoSchema(
+         includeClasses = FixedFieldsModel.class,
+         schemaPackageName = "fixed",
+         schemaFilePath = "proto",
+         schemaFileName = "fixed.proto"
+   )
+   interface FixedFieldsSchema extends GeneratedSchema {
+   }
+
    @Test
    public void testMapOfStringToJson() throws IOException {
       var ctx = ProtobufUtil.newSerializationContext();
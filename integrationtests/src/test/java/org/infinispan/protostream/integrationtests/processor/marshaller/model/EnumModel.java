@@ -0,0 +1,12 @@
+package org.infinispan.protostream.integrationtests.processor.marshaller.model;
+
+import org.infinispan.protostream.annotations.ProtoField;
+
+public class EnumModel {
+
+   @ProtoField(1)
+   public GappedEnum gapped;
+
+   @ProtoField(2)
+   public SparseEnum sparse;
+}
@@ -0,0 +1,31 @@
+package org.infinispan.protostream.integrationtests.processor.marshaller.model;
+
+import org.infinispan.protostream.annotations.ProtoField;
+import org.infinispan.protostream.descriptors.Type;
+
+public class FixedFieldsModel {
+
+   @ProtoField(number = 1, defaultValue = "0")
+   public double d;
+
+   @ProtoField(number = 2, defaultValue = "0")
+   public float f;
+
+   @ProtoField(number = 3, type = Type.FIXED64, defaultValue = "0")
+   public long fixed64;
+
+   @ProtoField(number = 4, defaultValue = "false")
+   public boolean flag;
+
+   @ProtoField(number = 5)
+   public String name;
+
+   @ProtoField(number = 6, type = Type.SFIXED32, defaultValue = "0")
+   public int sfixed32;
+
+   @ProtoField(number = 200, defaultValue = "0")
+   public double wideTag;
+
+   @ProtoField(number = 201, type = Type.SINT64, defaultValue = "0")
+   public long sint64;
+}
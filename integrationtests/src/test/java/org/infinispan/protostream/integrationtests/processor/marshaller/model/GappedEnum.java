@@ -0,0 +1,15 @@
+package org.infinispan.protostream.integrationtests.processor.marshaller.model;
+
+import org.infinispan.protostream.annotations.ProtoEnumValue;
+
+public enum GappedEnum {
+
+   @ProtoEnumValue(5)
+   FIVE,
+
+   @ProtoEnumValue(0)
+   ZERO,
+
+   @ProtoEnumValue(2)
+   TWO
+}
@@ -0,0 +1,24 @@
+package org.infinispan.protostream.integrationtests.processor.marshaller.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.infinispan.protostream.annotations.ProtoField;
+
+public class PackedModel {
+
+   @ProtoField(number = 1, packed = true)
+   public int[] ints;
+
+   @ProtoField(number = 2, packed = true, collectionImplementation = ArrayList.class)
+   public List<Long> longs;
+
+   @ProtoField(number = 3, packed = true)
+   public double[] doubles;
+
+   @ProtoField(number = 4, packed = true, collectionImplementation = ArrayList.class)
+   public List<SimpleEnum> enums;
+
+   @ProtoField(number = 5, packed = true)
+   public boolean[] flags;
+}
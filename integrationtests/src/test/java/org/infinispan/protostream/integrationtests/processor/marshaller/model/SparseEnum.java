@@ -0,0 +1,15 @@
+package org.infinispan.protostream.integrationtests.processor.marshaller.model;
+
+import org.infinispan.protostream.annotations.ProtoEnumValue;
+
+public enum SparseEnum {
+
+   @ProtoEnumValue(0)
+   NONE,
+
+   @ProtoEnumValue(100000)
+   LARGE,
+
+   @ProtoEnumValue(1000)
+   MEDIUM
+}
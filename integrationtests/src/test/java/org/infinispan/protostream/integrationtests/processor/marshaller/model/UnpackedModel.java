@@ -0,0 +1,27 @@
+package org.infinispan.protostream.integrationtests.processor.marshaller.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.infinispan.protostream.annotations.ProtoField;
+
+/**
+ * Same fields as {@link PackedModel}, but using the unpacked encoding.
+ */
+public class UnpackedModel {
+
+   @ProtoField(number = 1)
+   public int[] ints;
+
+   @ProtoField(number = 2, collectionImplementation = ArrayList.class)
+   public List<Long> longs;
+
+   @ProtoField(number = 3)
+   public double[] doubles;
+
+   @ProtoField(number = 4, collectionImplementation = ArrayList.class)
+   public List<SimpleEnum> enums;
+
+   @ProtoField(number = 5)
+   public boolean[] flags;
+}
@@ -49,6 +49,7 @@ import org.infinispan.protostream.annotations.impl.processor.types.HasModelEleme
 import org.infinispan.protostream.annotations.impl.processor.types.MirrorTypeFactory;
 import org.infinispan.protostream.annotations.impl.types.XClass;
 import org.infinispan.protostream.annotations.impl.types.XMethod;
+import org.infinispan.protostream.impl.parser.PrecompiledFileDescriptor;
 
 import com.google.auto.service.AutoService;
 
@@ -399,7 +400,8 @@ public final class AutoProtoSchemaBuilderAnnotationProcessor extends AbstractPro
 
    private void warnOverrideExistingMethod(XClass xclass, String methodName, XClass... argTypes) {
       XMethod method = xclass.getMethod(methodName, argTypes);
-      if (method != null && !method.isAbstract()) {
+      // the deprecated defaults of SerializationContextInitializer are meant to be overridden
+      if (method != null && !method.isAbstract() && !method.getDeclaringClass().getName().equals(SerializationContextInitializer.class.getName())) {
          reportWarning(((HasModelElement) method).getElement(), "Code generated by the Protostream processor will override your %s.%s method.",
                method.getDeclaringClass().getName(), method.getName());
       }
@@ -497,6 +499,18 @@ public final class AutoProtoSchemaBuilderAnnotationProcessor extends AbstractPro
          iw.append("private static final String PROTO_SCHEMA = ").append(makeStringLiteral(schemaSrc)).append(";\n\n");
       }
 
+      if (schemaSrc != null) {
+         // the descriptor must be precompiled from the exact text returned by getProtoFile() at runtime
+         String protoFile = schemaSrc;
+         iw.append("private static final String[] PRECOMPILED_SCHEMA = {\n");
+         iw.inc();
+         for (String chunk : PrecompiledFileDescriptor.toBase64(PrecompiledFileDescriptor.precompile(fileName, protoFile))) {
+            iw.append('"').append(chunk).append("\",\n");
+         }
+         iw.dec();
+         iw.append("};\n\n");
+      }
+
       int k = 0;
       for (String s : serCtxInitDeps) {
          iw.append("private final ").append(s).append(" dep").append(String.valueOf(k++)).append(" = new ").append(s).append("();\n\n");
@@ -529,7 +543,8 @@ public final class AutoProtoSchemaBuilderAnnotationProcessor extends AbstractPro
          iw.append("dep").append(String.valueOf(j)).append(".registerSchema(serCtx);\n");
       }
       if (schemaSrc != null) {
-         iw.append("serCtx.registerProtoFiles(org.infinispan.protostream.FileDescriptorSource.fromString(getProtoFileName(), getProtoFile()));\n");
+         iw.append("serCtx.registerProtoFiles(org.infinispan.protostream.FileDescriptorSource.fromString(getProtoFileName(), getProtoFile(),\n");
+         iw.append("      org.infinispan.protostream.impl.parser.PrecompiledFileDescriptor.fromBase64(PRECOMPILED_SCHEMA)));\n");
       }
       iw.dec();
       iw.append("}\n\n");
@@ -540,8 +555,21 @@ public final class AutoProtoSchemaBuilderAnnotationProcessor extends AbstractPro
       for (int j = 0; j < serCtxInitDeps.size(); j++) {
          iw.append("dep").append(String.valueOf(j)).append(".registerMarshallers(serCtx);\n");
       }
-      for (String name : generatedMarshallerClasses) {
-         iw.append("serCtx.registerMarshaller(new ").append(name).append("());\n");
+      if (!generatedMarshallerClasses.isEmpty()) {
+         // registered together, so the context publishes them once
+         iw.append("serCtx.registerMarshallers(java.util.List.of(\n");
+         iw.inc();
+         boolean first = true;
+         for (String name : generatedMarshallerClasses) {
+            if (!first) {
+               iw.append(",\n");
+            }
+            first = false;
+            iw.append("new ").append(name).append("()");
+         }
+         iw.append("\n");
+         iw.dec();
+         iw.append("));\n");
       }
       iw.dec();
       iw.append("}\n");
@@ -632,12 +660,44 @@ public final class AutoProtoSchemaBuilderAnnotationProcessor extends AbstractPro
       iw.append(")*/\n");
    }
 
+   /**
+    * Makes a string literal, one line of the given text per line of code, whose value is exactly the given text. This
+    * replaces the text block emitted by earlier versions, whose value differed from the text: javac stripped the trailing
+    * spaces of each line, translated escape sequences and added a final newline. The precompiled descriptor must be
+    * computed from the exact value returned by {@code getProtoFile()}, which is only known this way.
+    */
    private String makeStringLiteral(String s) {
-      return new StringBuilder(s.length() + 8)
-              .append("\"\"\"\n")
-              .append(s)
-              .append("\n\"\"\"")
-              .toString();
+      StringBuilder sb = new StringBuilder(s.length() + 64).append('"');
+      for (int i = 0; i < s.length(); i++) {
+         char c = s.charAt(i);
+         switch (c) {
+            case '"':
+               sb.append("\\\"");
+               break;
+            case '\\':
+               sb.append("\\\\");
+               break;
+            case '\n':
+               sb.append("\\n");
+               if (i < s.length() - 1) {
+                  sb.append("\" +\n      \"");
+               }
+               break;
+            case '\r':
+               sb.append("\\r");
+               break;
+            case '\t':
+               sb.append("\\t");
+               break;
+            default:
+               if (c < ' ') {
+                  sb.append(String.format("\\u%04x", (int) c));
+               } else {
+                  sb.append(c);
+               }
+         }
+      }
+      return sb.append('"').toString();
    }
 
    private String makeNestedClassName(TypeElement e, String className) {
@@ -17,6 +17,8 @@ import javax.lang.model.element.Element;
 import org.infinispan.protostream.EnumMarshaller;
 import org.infinispan.protostream.ProtobufTagMarshaller;
 import org.infinispan.protostream.SerializationContext;
+import org.infinispan.protostream.TagReader;
+import org.infinispan.protostream.TagWriter;
 import org.infinispan.protostream.annotations.impl.AbstractMarshallerCodeGenerator;
 import org.infinispan.protostream.annotations.impl.GeneratedMarshallerBase;
 import org.infinispan.protostream.annotations.impl.IndentWriter;
@@ -29,6 +31,7 @@ import org.infinispan.protostream.annotations.impl.processor.types.HasModelEleme
 import org.infinispan.protostream.annotations.impl.types.XClass;
 import org.infinispan.protostream.annotations.impl.types.XTypeFactory;
 import org.infinispan.protostream.containers.IndexedElementContainerAdapter;
+import org.infinispan.protostream.containers.PrimitiveArrayContainerAdapter;
 import org.infinispan.protostream.containers.IterableElementContainerAdapter;
 import org.infinispan.protostream.impl.BaseMarshallerDelegate;
 import org.infinispan.protostream.impl.EnumMarshallerDelegate;
@@ -117,6 +120,8 @@ final class MarshallerSourceCodeGenerator extends AbstractMarshallerCodeGenerato
             .append(" implements ").append(EnumMarshaller.class.getName()).append('<').append(petm.getJavaClassName()).append("> {\n\n");
       iw.inc();
 
+      generateEnumTableFields(petm, iw);
+
       iw.println("@Override");
       iw.append("public Class<").append(petm.getJavaClassName()).append("> getJavaClass() { return ").append(petm.getJavaClassName()).append(".class; }\n\n");
 
@@ -183,7 +188,8 @@ final class MarshallerSourceCodeGenerator extends AbstractMarshallerCodeGenerato
       String elementType = null;
       if (pmtm.isIndexedContainer()) {
          elementType = pmtm.getAnnotatedClass().getGenericInterfaceParameterTypes(IndexedElementContainerAdapter.class)[1];
-         iw.printf(", %s<%s, %s>", IndexedElementContainerAdapter.class.getName(), pmtm.getJavaClassName(), elementType);
+         Class<?> containerInterface = pmtm.isPrimitiveArrayContainer() ? PrimitiveArrayContainerAdapter.class : IndexedElementContainerAdapter.class;
+         iw.printf(", %s<%s, %s>", containerInterface.getName(), pmtm.getJavaClassName(), elementType);
       } else if (pmtm.isIterableContainer()) {
          elementType = pmtm.getAnnotatedClass().getGenericInterfaceParameterTypes(IterableElementContainerAdapter.class)[1];
          iw.printf(", %s<%s, %s>", IterableElementContainerAdapter.class.getName(), pmtm.getJavaClassName(), elementType);
@@ -197,6 +203,7 @@ final class MarshallerSourceCodeGenerator extends AbstractMarshallerCodeGenerato
       }
 
       addMarshallerDelegateFields(iw, pmtm);
+      generateTagFields(pmtm, iw);
       iw.println("@Override");
       iw.printf("public Class<%s> getJavaClass() { return %s.class; }\n", pmtm.getJavaClassName(), pmtm.getJavaClassName());
       iw.println();
@@ -221,6 +228,14 @@ final class MarshallerSourceCodeGenerator extends AbstractMarshallerCodeGenerato
             iw.printf("public %s getElement(%s container, int index) { return %s.getElement(container, index); }\n", elementType, pmtm.getJavaClassName(), ADAPTER_FIELD_NAME);
             iw.println("@Override");
             iw.printf("public void setElement(%s container, int index, %s element) { %s.setElement(container, index, element); }\n", pmtm.getJavaClassName(), elementType, ADAPTER_FIELD_NAME);
+            if (pmtm.isPrimitiveArrayContainer()) {
+               iw.println("@Override");
+               iw.printf("public int getElementFieldNumber() { return %s.getElementFieldNumber(); }\n", ADAPTER_FIELD_NAME);
+               iw.println("@Override");
+               iw.printf("public void writeElements(%s out, int fieldNumber, %s container) throws java.io.IOException { %s.writeElements(out, fieldNumber, container); }\n", TagWriter.class.getName(), pmtm.getJavaClassName(), ADAPTER_FIELD_NAME);
+               iw.println("@Override");
+               iw.printf("public void readElements(%s in, %s container) throws java.io.IOException { %s.readElements(in, container); }\n", TagReader.class.getName(), pmtm.getJavaClassName(), ADAPTER_FIELD_NAME);
+            }
          } else {
             iw.println("@Override");
             iw.printf("public int getNumElements(%s container) { return ((%s) container).getNumElements(); }\n", pmtm.getJavaClassName(), IndexedElementContainerAdapter.class.getName());
@@ -1,9 +1,14 @@
 package org.infinispan.protostream.types.java.arrays;
 
+import java.io.IOException;
+
+import org.infinispan.protostream.TagReader;
+import org.infinispan.protostream.TagWriter;
+import org.infinispan.protostream.WrappedMessage;
 import org.infinispan.protostream.annotations.ProtoAdapter;
 import org.infinispan.protostream.annotations.ProtoFactory;
 import org.infinispan.protostream.annotations.ProtoName;
-import org.infinispan.protostream.containers.IndexedElementContainerAdapter;
+import org.infinispan.protostream.containers.PrimitiveArrayContainerAdapter;
 
 /**
  * @author anistor@redhat.com
@@ -11,7 +16,7 @@ import org.infinispan.protostream.containers.IndexedElementContainerAdapter;
  */
 @ProtoAdapter(boolean[].class)
 @ProtoName("BooleanArray")
-public final class BooleanArrayAdapter implements IndexedElementContainerAdapter<boolean[], Boolean> {
+public final class BooleanArrayAdapter implements PrimitiveArrayContainerAdapter<boolean[], Boolean> {
 
    @ProtoFactory
    public boolean[] create(int size) {
@@ -32,4 +37,21 @@ public final class BooleanArrayAdapter implements IndexedElementContainerAdapter
    public void setElement(boolean[] array, int index, Boolean element) {
       array[index] = element;
    }
+
+   @Override
+   public int getElementFieldNumber() {
+      return WrappedMessage.WRAPPED_BOOL;
+   }
+
+   @Override
+   public void writeElements(TagWriter out, int fieldNumber, boolean[] array) throws IOException {
+      out.writePackedBool(fieldNumber, array);
+   }
+
+   @Override
+   public void readElements(TagReader in, boolean[] array) throws IOException {
+      for (int i = 0; i < array.length; i++) {
+         array[i] = in.readBool();
+      }
+   }
 }
@@ -1,9 +1,14 @@
 package org.infinispan.protostream.types.java.arrays;
 
+import java.io.IOException;
+
+import org.infinispan.protostream.TagReader;
+import org.infinispan.protostream.TagWriter;
+import org.infinispan.protostream.WrappedMessage;
 import org.infinispan.protostream.annotations.ProtoAdapter;
 import org.infinispan.protostream.annotations.ProtoFactory;
 import org.infinispan.protostream.annotations.ProtoName;
-import org.infinispan.protostream.containers.IndexedElementContainerAdapter;
+import org.infinispan.protostream.containers.PrimitiveArrayContainerAdapter;
 
 /**
  * @author anistor@redhat.com
@@ -11,7 +16,7 @@ import org.infinispan.protostream.containers.IndexedElementContainerAdapter;
  */
 @ProtoAdapter(double[].class)
 @ProtoName("DoubleArray")
-public final class DoubleArrayAdapter implements IndexedElementContainerAdapter<double[], Double> {
+public final class DoubleArrayAdapter implements PrimitiveArrayContainerAdapter<double[], Double> {
 
    @ProtoFactory
    public double[] create(int size) {
@@ -32,4 +37,21 @@ public final class DoubleArrayAdapter implements IndexedElementContainerAdapter<
    public void setElement(double[] array, int index, Double element) {
       array[index] = element;
    }
+
+   @Override
+   public int getElementFieldNumber() {
+      return WrappedMessage.WRAPPED_DOUBLE;
+   }
+
+   @Override
+   public void writeElements(TagWriter out, int fieldNumber, double[] array) throws IOException {
+      out.writePackedDouble(fieldNumber, array);
+   }
+
+   @Override
+   public void readElements(TagReader in, double[] array) throws IOException {
+      for (int i = 0; i < array.length; i++) {
+         array[i] = in.readDouble();
+      }
+   }
 }
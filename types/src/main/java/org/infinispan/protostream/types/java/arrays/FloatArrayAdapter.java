@@ -1,9 +1,14 @@
 package org.infinispan.protostream.types.java.arrays;
 
+import java.io.IOException;
+
+import org.infinispan.protostream.TagReader;
+import org.infinispan.protostream.TagWriter;
+import org.infinispan.protostream.WrappedMessage;
 import org.infinispan.protostream.annotations.ProtoAdapter;
 import org.infinispan.protostream.annotations.ProtoFactory;
 import org.infinispan.protostream.annotations.ProtoName;
-import org.infinispan.protostream.containers.IndexedElementContainerAdapter;
+import org.infinispan.protostream.containers.PrimitiveArrayContainerAdapter;
 
 /**
  * @author anistor@redhat.com
@@ -11,7 +16,7 @@ import org.infinispan.protostream.containers.IndexedElementContainerAdapter;
  */
 @ProtoAdapter(float[].class)
 @ProtoName("FloatArray")
-public final class FloatArrayAdapter implements IndexedElementContainerAdapter<float[], Float> {
+public final class FloatArrayAdapter implements PrimitiveArrayContainerAdapter<float[], Float> {
 
    @ProtoFactory
    public float[] create(int size) {
@@ -32,4 +37,21 @@ public final class FloatArrayAdapter implements IndexedElementContainerAdapter<f
    public void setElement(float[] array, int index, Float element) {
       array[index] = element;
    }
+
+   @Override
+   public int getElementFieldNumber() {
+      return WrappedMessage.WRAPPED_FLOAT;
+   }
+
+   @Override
+   public void writeElements(TagWriter out, int fieldNumber, float[] array) throws IOException {
+      out.writePackedFloat(fieldNumber, array);
+   }
+
+   @Override
+   public void readElements(TagReader in, float[] array) throws IOException {
+      for (int i = 0; i < array.length; i++) {
+         array[i] = in.readFloat();
+      }
+   }
 }
@@ -1,9 +1,14 @@
 package org.infinispan.protostream.types.java.arrays;
 
+import java.io.IOException;
+
+import org.infinispan.protostream.TagReader;
+import org.infinispan.protostream.TagWriter;
+import org.infinispan.protostream.WrappedMessage;
 import org.infinispan.protostream.annotations.ProtoAdapter;
 import org.infinispan.protostream.annotations.ProtoFactory;
 import org.infinispan.protostream.annotations.ProtoName;
-import org.infinispan.protostream.containers.IndexedElementContainerAdapter;
+import org.infinispan.protostream.containers.PrimitiveArrayContainerAdapter;
 
 /**
  * @author anistor@redhat.com
@@ -11,7 +16,7 @@ import org.infinispan.protostream.containers.IndexedElementContainerAdapter;
  */
 @ProtoAdapter(long[].class)
 @ProtoName("LongArray")
-public final class LongArrayAdapter implements IndexedElementContainerAdapter<long[], Long> {
+public final class LongArrayAdapter implements PrimitiveArrayContainerAdapter<long[], Long> {
 
    @ProtoFactory
    public long[] create(int size) {
@@ -32,4 +37,21 @@ public final class LongArrayAdapter implements IndexedElementContainerAdapter<lo
    public void setElement(long[] array, int index, Long element) {
       array[index] = element;
    }
+
+   @Override
+   public int getElementFieldNumber() {
+      return WrappedMessage.WRAPPED_INT64;
+   }
+
+   @Override
+   public void writeElements(TagWriter out, int fieldNumber, long[] array) throws IOException {
+      out.writePackedInt64(fieldNumber, array);
+   }
+
+   @Override
+   public void readElements(TagReader in, long[] array) throws IOException {
+      for (int i = 0; i < array.length; i++) {
+         array[i] = in.readInt64();
+      }
+   }
 }
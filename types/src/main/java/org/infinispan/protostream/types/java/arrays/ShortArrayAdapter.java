@@ -1,9 +1,15 @@
 package org.infinispan.protostream.types.java.arrays;
 
+import java.io.IOException;
+
+import org.infinispan.protostream.TagReader;
+import org.infinispan.protostream.TagWriter;
+import org.infinispan.protostream.WrappedMessage;
 import org.infinispan.protostream.annotations.ProtoAdapter;
 import org.infinispan.protostream.annotations.ProtoFactory;
 import org.infinispan.protostream.annotations.ProtoName;
-import org.infinispan.protostream.containers.IndexedElementContainerAdapter;
+import org.infinispan.protostream.containers.PrimitiveArrayContainerAdapter;
+import org.infinispan.protostream.descriptors.WireType;
 
 /**
  * @author anistor@redhat.com
@@ -11,7 +17,7 @@ import org.infinispan.protostream.containers.IndexedElementContainerAdapter;
  */
 @ProtoAdapter(short[].class)
 @ProtoName("ShortArray")
-public final class ShortArrayAdapter implements IndexedElementContainerAdapter<short[], Short> {
+public final class ShortArrayAdapter implements PrimitiveArrayContainerAdapter<short[], Short> {
 
    @ProtoFactory
    public short[] create(int size) {
@@ -32,4 +38,34 @@ public final class ShortArrayAdapter implements IndexedElementContainerAdapter<s
    public void setElement(short[] array, int index, Short element) {
       array[index] = element;
    }
+
+   @Override
+   public int getElementFieldNumber() {
+      return WrappedMessage.WRAPPED_SHORT;
+   }
+
+   @Override
+   public void writeElements(TagWriter out, int fieldNumber, short[] array) throws IOException {
+      if (array.length == 0) {
+         return;
+      }
+      // shorts are written as int32, like a single WrappedMessage.WRAPPED_SHORT, packed in a length delimited field
+      int size = 0;
+      for (short value : array) {
+         // negative values are sign extended to 64 bits
+         size += value < 0 ? WireType.MAX_VARINT_SIZE : value < 1 << 7 ? 1 : value < 1 << 14 ? 2 : 3;
+      }
+      out.writeTag(fieldNumber, WireType.LENGTH_DELIMITED);
+      out.writeVarint32(size);
+      for (short value : array) {
+         out.writeVarint64(value);
+      }
+   }
+
+   @Override
+   public void readElements(TagReader in, short[] array) throws IOException {
+      for (int i = 0; i < array.length; i++) {
+         array[i] = (short) in.readInt32();
+      }
+   }
 }
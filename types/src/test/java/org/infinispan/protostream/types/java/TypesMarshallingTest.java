@@ -2,6 +2,8 @@ package org.infinispan.protostream.types.java;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.junit.Assume.assumeTrue;
 
 import java.io.ByteArrayInputStream;
@@ -38,6 +40,7 @@ import java.util.stream.Stream;
 
 import org.infinispan.protostream.GeneratedSchema;
 import org.infinispan.protostream.ImmutableSerializationContext;
+import org.infinispan.protostream.MalformedProtobufException;
 import org.infinispan.protostream.ProtobufUtil;
 import org.infinispan.protostream.SerializationContext;
 import org.infinispan.protostream.config.Configuration;
@@ -150,6 +153,67 @@ public class TypesMarshallingTest {
       assertEquals(list, listCopy);
    }
 
+   @Test
+   public void testPrimitiveArrayCompatibility() throws IOException {
+      assumeTrue(testConfiguration.method == MarshallingMethodType.WRAPPED_MESSAGE);
+      var packedCtx = newContext(true, true);
+      var unpackedCtx = newContext(false, false);
+      Object[] arrays = {
+            new int[]{0, 1, -1, Integer.MAX_VALUE},
+            new long[]{0, 1, -1, Long.MIN_VALUE},
+            new double[]{0, -1.5, Double.NaN},
+            new float[]{0, -1.5f, Float.MAX_VALUE},
+            new short[]{0, 1, -1, Short.MAX_VALUE},
+            new boolean[]{true, false, true},
+            new int[0]
+      };
+      for (Object array : arrays) {
+         var packed = ProtobufUtil.toWrappedByteArray(packedCtx, array, 512);
+         var unpacked = ProtobufUtil.toWrappedByteArray(unpackedCtx, array, 512);
+         if (java.lang.reflect.Array.getLength(array) > 1) {
+            assertTrue(packed.length < unpacked.length);
+         }
+
+         // both formats are readable, regardless of the configuration of the reader
+         for (var ctx : List.of(packedCtx, unpackedCtx, context)) {
+            assertPrimitiveArrayEquals(array, ProtobufUtil.fromWrappedByteArray(ctx, packed));
+            assertPrimitiveArrayEquals(array, ProtobufUtil.fromWrappedByteArray(ctx, unpacked));
+         }
+      }
+   }
+
+   @Test
+   public void testPackedPrimitiveArraySizeMismatch() throws IOException {
+      assumeTrue(testConfiguration.method == MarshallingMethodType.WRAPPED_MESSAGE);
+      var packedCtx = newContext(true, true);
+      byte[] bytes = ProtobufUtil.toWrappedByteArray(packedCtx, new int[]{1, 2, 3}, 512);
+      // the tag of the container size field, followed by the size
+      byte[] sizeField = {(byte) 0xD8, 0x01, 3};
+      int sizePos = -1;
+      for (int i = 0; i <= bytes.length - sizeField.length && sizePos < 0; i++) {
+         if (Arrays.equals(bytes, i, i + sizeField.length, sizeField, 0, sizeField.length)) {
+            sizePos = i + 2;
+         }
+      }
+      assertTrue(sizePos > 0);
+
+      for (byte size : new byte[]{2, 4}) {
+         byte[] corrupt = bytes.clone();
+         corrupt[sizePos] = size;
+         try {
+            ProtobufUtil.fromWrappedByteArray(packedCtx, corrupt);
+            fail("MalformedProtobufException expected");
+         } catch (MalformedProtobufException e) {
+            assertTrue(e.getMessage().contains("IPROTO000041"));
+         }
+      }
+   }
+
+   private static void assertPrimitiveArrayEquals(Object expected, Object actual) {
+      assertEquals(expected.getClass(), actual.getClass());
+      assertTrue(Arrays.deepEquals(new Object[]{expected}, new Object[]{actual}));
+   }
+
    @Test
    public void testLocalDate() throws IOException {
       LocalDate date = LocalDate.of(1985, 10, 26);
@@ -228,7 +292,14 @@ public class TypesMarshallingTest {
    }
 
    private static ImmutableSerializationContext newContext(boolean wrapCollectionElements) {
-      var config = Configuration.builder().wrapCollectionElements(wrapCollectionElements).build();
+      return newContext(wrapCollectionElements, false);
+   }
+
+   private static ImmutableSerializationContext newContext(boolean wrapCollectionElements, boolean packPrimitiveArrays) {
+      var config = Configuration.builder()
+            .wrapCollectionElements(wrapCollectionElements)
+            .packPrimitiveArrays(packPrimitiveArrays)
+            .build();
       var ctx = ProtobufUtil.newSerializationContext(config);
       register(new CommonTypesSchema(), ctx);
       register(new CommonContainerTypesSchema(), ctx);